@@ -0,0 +1,59 @@
+package com.cloud.kevin.authclient;
+
+/**
+ * 从auth-server获取到的access token
+ *
+ * @author Kevin
+ */
+public final class AccessToken {
+
+    private final String value;
+
+    private final long issuedAt;
+
+    private final long expiresAt;
+
+    /**
+     * @param value     token的值
+     * @param issuedAt  获取到token的时间(毫秒)
+     * @param expiresAt token的过期时间(毫秒)
+     */
+    public AccessToken(String value, long issuedAt, long expiresAt) {
+        this.value = value;
+        this.issuedAt = issuedAt;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public long getIssuedAt() {
+        return issuedAt;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * 距离过期还有clockSkew毫秒以上时token仍可使用，预留出请求在途和服务间时钟偏差的时间
+     *
+     * @param now
+     * @param clockSkew
+     * @return
+     */
+    public boolean isUsable(long now, long clockSkew) {
+        return now < expiresAt - clockSkew;
+    }
+
+    /**
+     * 有效期已过去refreshRatio比例时开始提前刷新
+     *
+     * @param refreshRatio
+     * @return 开始刷新的时间(毫秒)
+     */
+    public long refreshAt(double refreshRatio) {
+        return issuedAt + (long) ((expiresAt - issuedAt) * refreshRatio);
+    }
+}
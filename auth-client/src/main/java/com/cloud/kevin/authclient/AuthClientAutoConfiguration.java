@@ -0,0 +1,127 @@
+package com.cloud.kevin.authclient;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.Data;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 配置了auth-client.token-uri时生效
+ * 配置了auth-client.client-id时额外提供该客户端的RestTemplate拦截器和WebClient过滤器，需由使用方自行加到访问内部服务的客户端上
+ *
+ * @author Kevin
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "auth-client", name = "token-uri")
+@EnableConfigurationProperties(AuthClientAutoConfiguration.AuthClientSetting.class)
+public class AuthClientAutoConfiguration {
+
+    /**
+     * 获取token使用独立的RestTemplate，不经过应用中的RestTemplateCustomizer，避免被加上本库的拦截器
+     *
+     * @param setting
+     * @return
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public TokenFetcher tokenFetcher(AuthClientSetting setting) {
+        return new RestTemplateTokenFetcher(setting.getTokenUri(),
+                new RestTemplateBuilder()
+                        .setConnectTimeout(setting.getConnectTimeout())
+                        .setReadTimeout(setting.getReadTimeout())
+                        .build(),
+                setting.getFetchThreads());
+    }
+
+    @Bean
+    public ClientCredentialsTokenManager clientCredentialsTokenManager(TokenFetcher tokenFetcher,
+                                                                       AuthClientSetting setting,
+                                                                       ObjectProvider<MeterRegistry> meterRegistry) {
+        return new ClientCredentialsTokenManager(tokenFetcher, setting.getRefreshRatio(), setting.getClockSkew(),
+                setting.getIdleTimeout(), setting.getRetryInterval(),
+                meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "auth-client", name = "client-id")
+    public OAuth2ClientCredentialsInterceptor oauth2ClientCredentialsInterceptor(
+            ClientCredentialsTokenManager tokenManager, AuthClientSetting setting) {
+        return new OAuth2ClientCredentialsInterceptor(tokenManager, setting.toCredentials());
+    }
+
+    @Configuration
+    @ConditionalOnClass(name = "org.springframework.web.reactive.function.client.WebClient")
+    @ConditionalOnProperty(prefix = "auth-client", name = "client-id")
+    static class WebClientConfiguration {
+
+        @Bean
+        public OAuth2ClientCredentialsExchangeFilterFunction oauth2ClientCredentialsExchangeFilterFunction(
+                ClientCredentialsTokenManager tokenManager, AuthClientSetting setting) {
+            return new OAuth2ClientCredentialsExchangeFilterFunction(tokenManager, setting.toCredentials());
+        }
+    }
+
+    @ConfigurationProperties(prefix = "auth-client")
+    @Data
+    public static class AuthClientSetting {
+        /**
+         * auth-server的/oauth/token地址
+         */
+        private String tokenUri;
+        /**
+         * 客户端ID
+         */
+        private String clientId;
+        /**
+         * 客户端密码
+         */
+        private String clientSecret;
+        /**
+         * 申请的scope
+         */
+        private List<String> scopes = new ArrayList<>();
+        /**
+         * 有效期过去该比例后开始后台刷新
+         */
+        private double refreshRatio = 0.8;
+        /**
+         * 距离过期不足该时间(秒)的token视为不可用
+         */
+        private long clockSkew = 30;
+        /**
+         * 超过该时间(秒)没有被使用的token不再刷新
+         */
+        private long idleTimeout = 1800;
+        /**
+         * 后台刷新失败后的重试间隔(秒)
+         */
+        private long retryInterval = 5;
+        /**
+         * 执行获取请求的线程数
+         */
+        private int fetchThreads = 2;
+        /**
+         * 连接auth-server的超时时间(毫秒)
+         */
+        private int connectTimeout = 2000;
+        /**
+         * 读取auth-server响应的超时时间(毫秒)
+         */
+        private int readTimeout = 5000;
+
+        public ClientCredentials toCredentials() {
+            return new ClientCredentials(clientId, clientSecret, scopes);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.cloud.kevin.authclient;
+
+/**
+ * 获取token失败
+ *
+ * @author Kevin
+ */
+public class AuthClientException extends RuntimeException {
+
+    public AuthClientException(String message) {
+        super(message);
+    }
+
+    public AuthClientException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
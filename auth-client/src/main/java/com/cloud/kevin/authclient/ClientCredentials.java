@@ -0,0 +1,70 @@
+package com.cloud.kevin.authclient;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * client_credentials授权所需的客户端凭证，同时作为token缓存的key
+ * scope在构造时排序去重，保证相同的(client, scopes)命中同一个缓存项
+ *
+ * @author Kevin
+ */
+public final class ClientCredentials {
+
+    private final String clientId;
+
+    private final String clientSecret;
+
+    private final SortedSet<String> scopes;
+
+    public ClientCredentials(String clientId, String clientSecret, Collection<String> scopes) {
+        this.clientId = Objects.requireNonNull(clientId, "clientId");
+        this.clientSecret = Objects.requireNonNull(clientSecret, "clientSecret");
+        this.scopes = null == scopes
+                ? Collections.emptySortedSet()
+                : Collections.unmodifiableSortedSet(new TreeSet<>(scopes));
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public String getClientSecret() {
+        return clientSecret;
+    }
+
+    public SortedSet<String> getScopes() {
+        return scopes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ClientCredentials)) {
+            return false;
+        }
+
+        ClientCredentials that = (ClientCredentials) o;
+        return clientId.equals(that.clientId) && clientSecret.equals(that.clientSecret) && scopes.equals(that.scopes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(clientId, clientSecret, scopes);
+    }
+
+    /**
+     * 不输出clientSecret，避免出现在日志中
+     *
+     * @return
+     */
+    @Override
+    public String toString() {
+        return clientId + scopes;
+    }
+}
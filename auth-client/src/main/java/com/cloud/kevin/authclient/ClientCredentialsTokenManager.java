@@ -0,0 +1,257 @@
+package com.cloud.kevin.authclient;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按(client, scopes)共享的token缓存
+ * 缓存中有可用的token时直接返回，不会阻塞调用方；有效期过去refreshRatio比例后在后台提前刷新，
+ * 刷新失败时在token过期前按retryInterval重试。同一(client, scopes)同时只有一个获取请求，并发的调用方共享它的结果。
+ * 超过idleTimeout没有被使用的缓存项不再刷新并被移除。
+ *
+ * @author Kevin
+ */
+@Slf4j
+public class ClientCredentialsTokenManager implements DisposableBean {
+
+    /**
+     * 两次后台刷新之间的最小间隔(毫秒)，避免有效期很短的token被反复刷新
+     */
+    private static final long MIN_REFRESH_DELAY = 1000;
+
+    private final TokenFetcher tokenFetcher;
+
+    private final double refreshRatio;
+
+    private final long clockSkew;
+
+    private final long idleTimeout;
+
+    private final long retryInterval;
+
+    private final ConcurrentMap<ClientCredentials, TokenEntry> entries = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Counter hitCounter;
+
+    private final Counter missCounter;
+
+    private final Timer refreshSuccessTimer;
+
+    private final Timer refreshFailureTimer;
+
+    /**
+     * @param tokenFetcher  获取token的方式
+     * @param refreshRatio  有效期过去该比例后开始后台刷新，取值范围(0, 1)
+     * @param clockSkew     距离过期不足该时间(秒)的token视为不可用
+     * @param idleTimeout   超过该时间(秒)没有被使用的缓存项不再刷新
+     * @param retryInterval 后台刷新失败后的重试间隔(秒)
+     * @param meterRegistry
+     */
+    public ClientCredentialsTokenManager(TokenFetcher tokenFetcher, double refreshRatio, long clockSkew,
+                                         long idleTimeout, long retryInterval, MeterRegistry meterRegistry) {
+        this.tokenFetcher = tokenFetcher;
+        this.refreshRatio = refreshRatio;
+        this.clockSkew = TimeUnit.SECONDS.toMillis(clockSkew);
+        this.idleTimeout = TimeUnit.SECONDS.toMillis(idleTimeout);
+        this.retryInterval = TimeUnit.SECONDS.toMillis(retryInterval);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "auth-client-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.hitCounter = Counter.builder("auth.client.token.requests")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("auth.client.token.requests")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.refreshSuccessTimer = Timer.builder("auth.client.token.refresh")
+                .tag("result", "success")
+                .register(meterRegistry);
+        this.refreshFailureTimer = Timer.builder("auth.client.token.refresh")
+                .tag("result", "failure")
+                .register(meterRegistry);
+        Gauge.builder("auth.client.token.cached", entries, Map::size)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 获取token，缓存中有可用的token时返回已完成的future
+     *
+     * @param credentials
+     * @return
+     */
+    public CompletableFuture<String> getTokenAsync(ClientCredentials credentials) {
+        long now = System.currentTimeMillis();
+        TokenEntry entry = entries.computeIfAbsent(credentials, TokenEntry::new);
+        entry.lastAccess = now;
+
+        AccessToken token = entry.token;
+        if (null != token && token.isUsable(now, clockSkew)) {
+            hitCounter.increment();
+            // 后台刷新没有按时完成时由调用方触发，但不等待结果
+            if (now >= token.refreshAt(refreshRatio)) {
+                refresh(entry);
+            }
+            return CompletableFuture.completedFuture(token.getValue());
+        }
+
+        missCounter.increment();
+        return refresh(entry).thenApply(AccessToken::getValue);
+    }
+
+    /**
+     * 获取token，只有缓存中没有可用的token时才会等待获取请求完成
+     *
+     * @param credentials
+     * @return
+     * @throws AuthClientException 获取失败时抛出
+     */
+    public String getToken(ClientCredentials credentials) {
+        try {
+            return getTokenAsync(credentials).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof AuthClientException
+                    ? (AuthClientException) e.getCause()
+                    : new AuthClientException("Failed to fetch token for " + credentials, e.getCause());
+        }
+    }
+
+    /**
+     * 资源服务拒绝了token(如已被撤销)时调用，缓存中仍是该token时将其丢弃，下次获取时重新请求
+     *
+     * @param credentials
+     * @param tokenValue
+     */
+    public void invalidate(ClientCredentials credentials, String tokenValue) {
+        TokenEntry entry = entries.get(credentials);
+        if (null == entry) {
+            return;
+        }
+
+        synchronized (entry) {
+            if (null != entry.token && entry.token.getValue().equals(tokenValue)) {
+                entry.token = null;
+            }
+        }
+    }
+
+    private CompletableFuture<AccessToken> refresh(TokenEntry entry) {
+        CompletableFuture<AccessToken> result;
+        synchronized (entry) {
+            if (null != entry.inFlight) {
+                return entry.inFlight;
+            }
+            result = new CompletableFuture<>();
+            entry.inFlight = result;
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<AccessToken> fetched;
+        try {
+            fetched = tokenFetcher.fetch(entry.credentials);
+        } catch (RuntimeException e) {
+            fetched = new CompletableFuture<>();
+            fetched.completeExceptionally(e);
+        }
+        fetched.whenComplete((token, error) -> onFetched(entry, result, token, error, System.nanoTime() - start));
+
+        return result;
+    }
+
+    /**
+     * 先更新缓存项再通知等待的调用方，保证调用方返回后缓存中已是新token
+     */
+    private void onFetched(TokenEntry entry, CompletableFuture<AccessToken> result, AccessToken token,
+                           Throwable error, long elapsed) {
+        long now = System.currentTimeMillis();
+
+        synchronized (entry) {
+            entry.inFlight = null;
+            if (null != entry.scheduled) {
+                entry.scheduled.cancel(false);
+                entry.scheduled = null;
+            }
+
+            if (null == error) {
+                entry.token = token;
+                schedule(entry, Math.max(token.refreshAt(refreshRatio) - now, MIN_REFRESH_DELAY));
+            } else if (null != entry.token && entry.token.isUsable(now, clockSkew)) {
+                schedule(entry, retryInterval);
+            }
+        }
+
+        if (null == error) {
+            refreshSuccessTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            result.complete(token);
+        } else {
+            refreshFailureTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            Throwable cause = error instanceof CompletionException && null != error.getCause()
+                    ? error.getCause() : error;
+            log.warn("Failed to refresh token for {}: {}", entry.credentials, cause.getMessage());
+            result.completeExceptionally(cause);
+        }
+    }
+
+    private void schedule(TokenEntry entry, long delay) {
+        try {
+            entry.scheduled = scheduler.schedule(() -> scheduledRefresh(entry), delay, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            // 已关闭
+            log.debug("Token refresh not scheduled for {}: {}", entry.credentials, e.getMessage());
+        }
+    }
+
+    private void scheduledRefresh(TokenEntry entry) {
+        if (System.currentTimeMillis() - entry.lastAccess > idleTimeout) {
+            entries.remove(entry.credentials, entry);
+            log.debug("Token for {} is idle, stop refreshing", entry.credentials);
+            return;
+        }
+
+        refresh(entry);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    private static final class TokenEntry {
+
+        private final ClientCredentials credentials;
+
+        private volatile AccessToken token;
+
+        private volatile long lastAccess;
+
+        /**
+         * 以下字段由entry自身的锁保护
+         */
+        private CompletableFuture<AccessToken> inFlight;
+
+        private ScheduledFuture<?> scheduled;
+
+        private TokenEntry(ClientCredentials credentials) {
+            this.credentials = credentials;
+        }
+    }
+}
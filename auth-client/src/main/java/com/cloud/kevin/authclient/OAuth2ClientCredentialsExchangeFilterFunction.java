@@ -0,0 +1,42 @@
+package com.cloud.kevin.authclient;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * 为WebClient的请求加上Bearer token，获取token的过程不阻塞事件循环线程
+ * 只应加到访问内部服务的WebClient上，避免token被发送给第三方
+ *
+ * @author Kevin
+ */
+public class OAuth2ClientCredentialsExchangeFilterFunction implements ExchangeFilterFunction {
+
+    private final ClientCredentialsTokenManager tokenManager;
+
+    private final ClientCredentials credentials;
+
+    public OAuth2ClientCredentialsExchangeFilterFunction(ClientCredentialsTokenManager tokenManager,
+                                                         ClientCredentials credentials) {
+        this.tokenManager = tokenManager;
+        this.credentials = credentials;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.defer(() -> Mono.fromFuture(tokenManager.getTokenAsync(credentials)))
+                .flatMap(token -> next.exchange(ClientRequest.from(request)
+                        .headers(headers -> headers.set(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+                        .build())
+                        .doOnNext(response -> {
+                            // token被拒绝时丢弃缓存，下次请求重新获取
+                            if (response.statusCode() == HttpStatus.UNAUTHORIZED) {
+                                tokenManager.invalidate(credentials, token);
+                            }
+                        }));
+    }
+}
@@ -0,0 +1,44 @@
+package com.cloud.kevin.authclient;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+
+/**
+ * 为RestTemplate的请求加上Bearer token
+ * 只应加到访问内部服务的RestTemplate上，避免token被发送给第三方
+ *
+ * @author Kevin
+ */
+public class OAuth2ClientCredentialsInterceptor implements ClientHttpRequestInterceptor {
+
+    private final ClientCredentialsTokenManager tokenManager;
+
+    private final ClientCredentials credentials;
+
+    public OAuth2ClientCredentialsInterceptor(ClientCredentialsTokenManager tokenManager,
+                                              ClientCredentials credentials) {
+        this.tokenManager = tokenManager;
+        this.credentials = credentials;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        String token = tokenManager.getToken(credentials);
+        request.getHeaders().set(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+
+        ClientHttpResponse response = execution.execute(request, body);
+        // token被拒绝时丢弃缓存，下次请求重新获取，本次的401照常返回给调用方
+        if (response.getRawStatusCode() == HttpStatus.UNAUTHORIZED.value()) {
+            tokenManager.invalidate(credentials, token);
+        }
+
+        return response;
+    }
+}
@@ -0,0 +1,92 @@
+package com.cloud.kevin.authclient;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 通过auth-server的/oauth/token以client_credentials方式获取token
+ * 请求在独立的线程池中执行，调用方线程不会被阻塞。
+ * 注意：这里使用的RestTemplate不能再配置{@link OAuth2ClientCredentialsInterceptor}，否则会递归获取token
+ *
+ * @author Kevin
+ */
+public class RestTemplateTokenFetcher implements TokenFetcher, DisposableBean {
+
+    private final String tokenUri;
+
+    private final RestTemplate restTemplate;
+
+    private final ExecutorService executor;
+
+    /**
+     * @param tokenUri     auth-server的/oauth/token地址
+     * @param restTemplate 应配置连接和读取超时
+     * @param threads      执行获取请求的线程数，同一(client, scopes)同时只有一个请求，一般很小即可
+     */
+    public RestTemplateTokenFetcher(String tokenUri, RestTemplate restTemplate, int threads) {
+        this.tokenUri = tokenUri;
+        this.restTemplate = restTemplate;
+
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "auth-client-fetch-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public CompletableFuture<AccessToken> fetch(ClientCredentials credentials) {
+        return CompletableFuture.supplyAsync(() -> doFetch(credentials), executor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private AccessToken doFetch(ClientCredentials credentials) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        headers.set(HttpHeaders.AUTHORIZATION, "Basic " + Base64.getEncoder().encodeToString(
+                (credentials.getClientId() + ":" + credentials.getClientSecret()).getBytes(StandardCharsets.UTF_8)));
+
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        form.add("grant_type", "client_credentials");
+        if (!credentials.getScopes().isEmpty()) {
+            form.add("scope", StringUtils.collectionToDelimitedString(credentials.getScopes(), " "));
+        }
+
+        long issuedAt = System.currentTimeMillis();
+        Map<String, Object> response;
+        try {
+            response = restTemplate.postForObject(tokenUri, new HttpEntity<>(form, headers), Map.class);
+        } catch (RestClientException e) {
+            throw new AuthClientException("Failed to fetch token for " + credentials, e);
+        }
+
+        if (null == response || !(response.get("access_token") instanceof String)
+                || !(response.get("expires_in") instanceof Number)) {
+            throw new AuthClientException("Invalid token response for " + credentials);
+        }
+
+        return new AccessToken((String) response.get("access_token"), issuedAt,
+                issuedAt + ((Number) response.get("expires_in")).longValue() * 1000);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,20 @@
+package com.cloud.kevin.authclient;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 从auth-server获取token
+ *
+ * @author Kevin
+ */
+@FunctionalInterface
+public interface TokenFetcher {
+
+    /**
+     * 异步获取一个新的token，失败时以{@link AuthClientException}结束
+     *
+     * @param credentials
+     * @return
+     */
+    CompletableFuture<AccessToken> fetch(ClientCredentials credentials);
+}
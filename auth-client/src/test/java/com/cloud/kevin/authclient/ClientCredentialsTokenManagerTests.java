@@ -0,0 +1,70 @@
+package com.cloud.kevin.authclient;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClientCredentialsTokenManagerTests {
+
+	private final ClientCredentials credentials = new ClientCredentials("client_2", "123456", Arrays.asList("select"));
+
+	private final AtomicInteger fetches = new AtomicInteger();
+
+	private CompletableFuture<AccessToken> pending = new CompletableFuture<>();
+
+	private final ClientCredentialsTokenManager tokenManager = new ClientCredentialsTokenManager(
+			c -> {
+				fetches.incrementAndGet();
+				return pending;
+			}, 0.8, 0, 1800, 5, new SimpleMeterRegistry());
+
+	@After
+	public void destroy() {
+		tokenManager.destroy();
+	}
+
+	@Test
+	public void concurrentCallersShareOneFetch() {
+		CompletableFuture<String> first = tokenManager.getTokenAsync(credentials);
+		CompletableFuture<String> second = tokenManager.getTokenAsync(
+				new ClientCredentials("client_2", "123456", Arrays.asList("select", "select")));
+		assertFalse(first.isDone());
+		assertEquals(1, fetches.get());
+
+		long now = System.currentTimeMillis();
+		pending.complete(new AccessToken("token-1", now, now + 3600_000));
+		assertEquals("token-1", first.join());
+		assertEquals("token-1", second.join());
+
+		// 缓存命中时返回已完成的future
+		assertTrue(tokenManager.getTokenAsync(credentials).isDone());
+		assertEquals(1, fetches.get());
+	}
+
+	@Test
+	public void rejectedTokenIsRefetched() {
+		long now = System.currentTimeMillis();
+		pending.complete(new AccessToken("token-1", now, now + 3600_000));
+		assertEquals("token-1", tokenManager.getToken(credentials));
+
+		pending = new CompletableFuture<>();
+		pending.complete(new AccessToken("token-2", now, now + 3600_000));
+		tokenManager.invalidate(credentials, "token-1");
+		assertEquals("token-2", tokenManager.getToken(credentials));
+		assertEquals(2, fetches.get());
+	}
+
+	@Test(expected = AuthClientException.class)
+	public void fetchFailureIsPropagated() {
+		pending.completeExceptionally(new AuthClientException("unavailable"));
+		tokenManager.getToken(credentials);
+	}
+}
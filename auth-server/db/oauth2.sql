@@ -113,8 +113,11 @@ CREATE TABLE `oauth_client_token` (
 DROP TABLE IF EXISTS `oauth_code`;
 
 CREATE TABLE `oauth_code` (
-  `code` varchar(256) DEFAULT NULL,
-  `authentication` blob
+  `code` varchar(64) NOT NULL,
+  `authentication` blob NOT NULL,
+  `expires_at` datetime NOT NULL,
+  PRIMARY KEY (`code`),
+  KEY `idx_oauth_code_expires_at` (`expires_at`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
 
 /*Data for the table `oauth_code` */
@@ -138,7 +141,9 @@ DROP TABLE IF EXISTS `users`;
 CREATE TABLE `users` (
   `id` bigint(20) DEFAULT NULL,
   `username` varchar(30) DEFAULT NULL,
-  `password` varchar(60) DEFAULT NULL
+  `password` varchar(60) DEFAULT NULL,
+  UNIQUE KEY `uk_users_username` (`username`),
+  KEY `idx_users_id` (`id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
 
 /*Data for the table `users` */
@@ -148,6 +153,56 @@ insert  into `users`(`id`,`username`,`password`) values
 (222,'lisi','$2a$10$CtVeDT1V7cFu9gby4bEu.uuPnKxhqI9H7ScRRJM/EzacEKdgxTS7S'),
 (333,'wang','above password is \'123456\'');
 
+/*Table structure for table `user_authorities` */
+
+DROP TABLE IF EXISTS `user_authorities`;
+
+CREATE TABLE `user_authorities` (
+  `user_id` bigint(20) NOT NULL,
+  `authority` varchar(64) NOT NULL,
+  PRIMARY KEY (`user_id`,`authority`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+/*Data for the table `user_authorities` */
+
+insert  into `user_authorities`(`user_id`,`authority`) values 
+(111,'ROLE_ADMIN'),
+(111,'ROLE_USER'),
+(111,'USER:DEL'),
+(222,'ROLE_USER'),
+(333,'ROLE_USER');
+
+/*Table structure for table `oauth_audit_event` */
+
+DROP TABLE IF EXISTS `oauth_audit_event`;
+
+CREATE TABLE `oauth_audit_event` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `event_type` varchar(32) NOT NULL,
+  `principal` varchar(256) DEFAULT NULL,
+  `client_id` varchar(256) DEFAULT NULL,
+  `remote_address` varchar(64) DEFAULT NULL,
+  `detail` varchar(1024) DEFAULT NULL,
+  `created_at` datetime(3) NOT NULL,
+  PRIMARY KEY (`id`),
+  KEY `idx_oauth_audit_event_created_at` (`created_at`),
+  KEY `idx_oauth_audit_event_principal` (`principal`(64), `created_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+/*Table structure for table `oauth_revoked_token` */
+
+DROP TABLE IF EXISTS `oauth_revoked_token`;
+
+CREATE TABLE `oauth_revoked_token` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `jti` varchar(64) NOT NULL,
+  `expires_at` datetime NOT NULL,
+  `revoked_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_oauth_revoked_token_jti` (`jti`),
+  KEY `idx_oauth_revoked_token_expires_at` (`expires_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
 /*!40101 SET SQL_MODE=@OLD_SQL_MODE */;
 /*!40014 SET FOREIGN_KEY_CHECKS=@OLD_FOREIGN_KEY_CHECKS */;
 /*!40014 SET UNIQUE_CHECKS=@OLD_UNIQUE_CHECKS */;
@@ -89,8 +89,11 @@ DEFAULT CHARACTER SET = utf8;
 -- Table `oatuh2`.`oauth_code`
 -- -----------------------------------------------------
 CREATE TABLE IF NOT EXISTS `oauth2`.`oauth_code` (
-  `code` VARCHAR(256) NULL DEFAULT NULL,
-  `authentication` BLOB NULL DEFAULT NULL)
+  `code` VARCHAR(64) NOT NULL,
+  `authentication` BLOB NOT NULL,
+  `expires_at` DATETIME NOT NULL,
+  PRIMARY KEY (`code`),
+  INDEX `idx_oauth_code_expires_at` (`expires_at` ASC))
 ENGINE = InnoDB
 DEFAULT CHARACTER SET = utf8;
 
@@ -106,3 +109,60 @@ ENGINE = InnoDB
 DEFAULT CHARACTER SET = utf8;
 
 
+
+
+-- -----------------------------------------------------
+-- Table `oatuh2`.`users`
+-- -----------------------------------------------------
+CREATE TABLE IF NOT EXISTS `oauth2`.`users` (
+  `id` BIGINT(20) NULL DEFAULT NULL,
+  `username` VARCHAR(30) NULL DEFAULT NULL,
+  `password` VARCHAR(60) NULL DEFAULT NULL,
+  UNIQUE INDEX `uk_users_username` (`username` ASC),
+  INDEX `idx_users_id` (`id` ASC))
+ENGINE = InnoDB
+DEFAULT CHARACTER SET = utf8;
+
+
+-- -----------------------------------------------------
+-- Table `oatuh2`.`user_authorities`
+-- -----------------------------------------------------
+CREATE TABLE IF NOT EXISTS `oauth2`.`user_authorities` (
+  `user_id` BIGINT(20) NOT NULL,
+  `authority` VARCHAR(64) NOT NULL,
+  PRIMARY KEY (`user_id`, `authority`))
+ENGINE = InnoDB
+DEFAULT CHARACTER SET = utf8;
+
+
+-- -----------------------------------------------------
+-- Table `oatuh2`.`oauth_revoked_token`
+-- -----------------------------------------------------
+CREATE TABLE IF NOT EXISTS `oauth2`.`oauth_revoked_token` (
+  `id` BIGINT(20) NOT NULL AUTO_INCREMENT,
+  `jti` VARCHAR(64) NOT NULL,
+  `expires_at` DATETIME NOT NULL,
+  `revoked_at` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`id`),
+  UNIQUE INDEX `uk_oauth_revoked_token_jti` (`jti` ASC),
+  INDEX `idx_oauth_revoked_token_expires_at` (`expires_at` ASC))
+ENGINE = InnoDB
+DEFAULT CHARACTER SET = utf8;
+
+
+-- -----------------------------------------------------
+-- Table `oatuh2`.`oauth_audit_event`
+-- -----------------------------------------------------
+CREATE TABLE IF NOT EXISTS `oauth2`.`oauth_audit_event` (
+  `id` BIGINT(20) NOT NULL AUTO_INCREMENT,
+  `event_type` VARCHAR(32) NOT NULL,
+  `principal` VARCHAR(256) NULL DEFAULT NULL,
+  `client_id` VARCHAR(256) NULL DEFAULT NULL,
+  `remote_address` VARCHAR(64) NULL DEFAULT NULL,
+  `detail` VARCHAR(1024) NULL DEFAULT NULL,
+  `created_at` DATETIME(3) NOT NULL,
+  PRIMARY KEY (`id`),
+  INDEX `idx_oauth_audit_event_created_at` (`created_at` ASC),
+  INDEX `idx_oauth_audit_event_principal` (`principal`(64) ASC, `created_at` ASC))
+ENGINE = InnoDB
+DEFAULT CHARACTER SET = utf8;
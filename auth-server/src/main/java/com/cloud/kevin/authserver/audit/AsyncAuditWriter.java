@@ -0,0 +1,194 @@
+package com.cloud.kevin.authserver.audit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步批量写入的审计记录
+ * 登录和签发token的线程只把事件放入{@link AuditRingBuffer}，由后台线程按批写入oauth_audit_event表，不在请求线程中访问数据库。
+ * 缓冲区已满时按overflowPolicy处理：
+ * DROP  丢弃事件并计数
+ * BLOCK 等待写入线程腾出空间，最多blockTimeout毫秒，超时后丢弃
+ * 写入失败的批次记录日志后丢弃，不影响后续批次。
+ *
+ * @author Kevin
+ */
+@Slf4j
+public class AsyncAuditWriter implements InitializingBean, DisposableBean, MeterBinder {
+
+    public enum OverflowPolicy {
+        DROP, BLOCK
+    }
+
+    private static final String INSERT_SQL = "insert into oauth_audit_event"
+            + "(event_type, principal, client_id, remote_address, detail, created_at) values (?, ?, ?, ?, ?, ?)";
+
+    private static final int DETAIL_LENGTH = 1024;
+
+    /**
+     * BLOCK策略下缓冲区已满时重试的间隔
+     */
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final AuditRingBuffer<AuditEvent> buffer;
+
+    private final int batchSize;
+
+    private final long flushInterval;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final long blockTimeout;
+
+    private final LongAdder written = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private volatile Timer batchTimer;
+
+    private volatile boolean running;
+
+    private Thread writer;
+
+    /**
+     * @param dataSource
+     * @param capacity       缓冲区容量
+     * @param batchSize      每批写入的最大条数
+     * @param flushInterval  缓冲区为空时写入线程的等待间隔(毫秒)，也是事件写入的最大延迟
+     * @param overflowPolicy 缓冲区已满时的处理方式
+     * @param blockTimeout   BLOCK策略下的最长等待时间(毫秒)
+     */
+    public AsyncAuditWriter(DataSource dataSource, int capacity, int batchSize, long flushInterval,
+                            OverflowPolicy overflowPolicy, long blockTimeout) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.buffer = new AuditRingBuffer<>(capacity);
+        this.batchSize = batchSize;
+        this.flushInterval = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeout = TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        running = true;
+        writer = new Thread(this::run, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * 记录一个事件，不访问数据库
+     *
+     * @param event
+     */
+    public void publish(AuditEvent event) {
+        if (buffer.offer(event)) {
+            return;
+        }
+
+        if (OverflowPolicy.BLOCK == overflowPolicy) {
+            long deadline = System.nanoTime() + blockTimeout;
+            while (System.nanoTime() < deadline) {
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                if (buffer.offer(event)) {
+                    return;
+                }
+            }
+        }
+
+        dropped.increment();
+    }
+
+    private void run() {
+        List<AuditEvent> batch = new ArrayList<>(batchSize);
+        while (running) {
+            if (buffer.drainTo(batch, batchSize) == 0) {
+                LockSupport.parkNanos(flushInterval);
+                continue;
+            }
+            write(batch);
+            batch.clear();
+        }
+
+        // 关闭时写完剩余的事件
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<AuditEvent> batch) {
+        long start = System.nanoTime();
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, event) -> {
+                ps.setString(1, event.getType().name());
+                ps.setString(2, event.getPrincipal());
+                ps.setString(3, event.getClientId());
+                ps.setString(4, event.getRemoteAddress());
+                ps.setString(5, truncate(event.getDetail()));
+                ps.setTimestamp(6, new Timestamp(event.getTimestamp()));
+            });
+            written.add(batch.size());
+        } catch (RuntimeException e) {
+            failed.add(batch.size());
+            log.error("Failed to write {} audit events: ", batch.size(), e);
+        } finally {
+            if (null != batchTimer) {
+                batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private static String truncate(String detail) {
+        return null == detail || detail.length() <= DETAIL_LENGTH ? detail : detail.substring(0, DETAIL_LENGTH);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        if (null != writer) {
+            LockSupport.unpark(writer);
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("auth.audit.queue.depth", buffer, AuditRingBuffer::size)
+                .register(registry);
+        Gauge.builder("auth.audit.queue.capacity", buffer, AuditRingBuffer::capacity)
+                .register(registry);
+        FunctionCounter.builder("auth.audit.events", written, LongAdder::sum)
+                .tag("result", "written")
+                .register(registry);
+        FunctionCounter.builder("auth.audit.events", dropped, LongAdder::sum)
+                .tag("result", "dropped")
+                .description("Events dropped because the buffer was full")
+                .register(registry);
+        FunctionCounter.builder("auth.audit.events", failed, LongAdder::sum)
+                .tag("result", "failed")
+                .description("Events lost because their batch insert failed")
+                .register(registry);
+        batchTimer = Timer.builder("auth.audit.batch.write")
+                .register(registry);
+    }
+}
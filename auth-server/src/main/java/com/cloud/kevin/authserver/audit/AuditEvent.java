@@ -0,0 +1,55 @@
+package com.cloud.kevin.authserver.audit;
+
+import lombok.Getter;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * 一条审计记录，创建时记录时间和当前请求的来源地址
+ *
+ * @author Kevin
+ */
+@Getter
+public class AuditEvent {
+
+    public enum Type {
+        LOGIN_SUCCESS, LOGIN_FAILURE, TOKEN_ISSUED, TOKEN_REFRESHED, TOKEN_REVOKED
+    }
+
+    private final Type type;
+
+    private final String principal;
+
+    private final String clientId;
+
+    private final String remoteAddress;
+
+    private final String detail;
+
+    private final long timestamp;
+
+    /**
+     * @param type
+     * @param principal 用户名，client_credentials模式下为空
+     * @param clientId  不经过client的表单登录时为空
+     * @param detail    事件相关的补充信息，例如失败原因、grant_type、jti
+     */
+    public AuditEvent(Type type, String principal, String clientId, String detail) {
+        this.type = type;
+        this.principal = principal;
+        this.clientId = clientId;
+        this.remoteAddress = currentRemoteAddress();
+        this.detail = detail;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    private static String currentRemoteAddress() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes) {
+            return ((ServletRequestAttributes) attributes).getRequest().getRemoteAddr();
+        }
+
+        return null;
+    }
+}
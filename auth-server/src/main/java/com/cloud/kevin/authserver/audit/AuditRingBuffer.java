@@ -0,0 +1,92 @@
+package com.cloud.kevin.authserver.audit;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 多生产者、单消费者的有界无锁环形缓冲区
+ * 生产者用CAS占用序号后写入对应的槽，消费者按序号顺序取出并清空槽；
+ * 槽为空说明占用该序号的生产者还未写入，消费者停在这里等下一次。
+ *
+ * @author Kevin
+ */
+public class AuditRingBuffer<E> {
+
+    private final AtomicReferenceArray<E> slots;
+
+    private final int mask;
+
+    /**
+     * 下一个写入的序号
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * 下一个取出的序号，只由消费者更新
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * @param capacity 容量，向上取整为2的幂
+     */
+    public AuditRingBuffer(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * @param element
+     * @return 缓冲区已满时返回false
+     */
+    public boolean offer(E element) {
+        while (true) {
+            long current = tail.get();
+            if (current - head.get() >= slots.length()) {
+                return false;
+            }
+            if (tail.compareAndSet(current, current + 1)) {
+                slots.lazySet((int) (current & mask), element);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 取出最多max个元素，只能由一个线程调用
+     *
+     * @param target
+     * @param max
+     * @return 取出的数量
+     */
+    public int drainTo(List<E> target, int max) {
+        long current = head.get();
+        int count = 0;
+        while (count < max) {
+            int index = (int) (current & mask);
+            E element = slots.get(index);
+            if (null == element) {
+                break;
+            }
+            slots.lazySet(index, null);
+            target.add(element);
+            current++;
+            count++;
+        }
+        head.lazySet(current);
+
+        return count;
+    }
+
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+}
@@ -0,0 +1,59 @@
+package com.cloud.kevin.authserver.audit;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.web.authentication.AuthenticationFailureHandler;
+import org.springframework.security.web.authentication.AuthenticationSuccessHandler;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 记录表单登录的结果，之后的跳转交给原有的处理器
+ *
+ * @author Kevin
+ */
+public class AuditingAuthenticationHandler implements AuthenticationSuccessHandler, AuthenticationFailureHandler {
+
+    private static final String SOURCE = "form_login";
+
+    private final AsyncAuditWriter auditWriter;
+
+    private final String usernameParameter;
+
+    private final AuthenticationSuccessHandler successHandler;
+
+    private final AuthenticationFailureHandler failureHandler;
+
+    /**
+     * @param auditWriter
+     * @param usernameParameter 登录表单中用户名的参数名，认证失败时用于记录用户名
+     * @param successHandler
+     * @param failureHandler
+     */
+    public AuditingAuthenticationHandler(AsyncAuditWriter auditWriter, String usernameParameter,
+                                         AuthenticationSuccessHandler successHandler,
+                                         AuthenticationFailureHandler failureHandler) {
+        this.auditWriter = auditWriter;
+        this.usernameParameter = usernameParameter;
+        this.successHandler = successHandler;
+        this.failureHandler = failureHandler;
+    }
+
+    @Override
+    public void onAuthenticationSuccess(HttpServletRequest request, HttpServletResponse response,
+                                        Authentication authentication) throws IOException, ServletException {
+        auditWriter.publish(new AuditEvent(AuditEvent.Type.LOGIN_SUCCESS, authentication.getName(), null, SOURCE));
+        successHandler.onAuthenticationSuccess(request, response, authentication);
+    }
+
+    @Override
+    public void onAuthenticationFailure(HttpServletRequest request, HttpServletResponse response,
+                                        AuthenticationException exception) throws IOException, ServletException {
+        auditWriter.publish(new AuditEvent(AuditEvent.Type.LOGIN_FAILURE, request.getParameter(usernameParameter),
+                null, SOURCE + ": " + exception.getMessage()));
+        failureHandler.onAuthenticationFailure(request, response, exception);
+    }
+}
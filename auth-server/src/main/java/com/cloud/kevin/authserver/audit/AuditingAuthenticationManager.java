@@ -0,0 +1,37 @@
+package com.cloud.kevin.authserver.audit;
+
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+
+/**
+ * 记录密码模式下用户认证的结果
+ *
+ * @author Kevin
+ */
+public class AuditingAuthenticationManager implements AuthenticationManager {
+
+    private static final String SOURCE = "password_grant";
+
+    private final AuthenticationManager delegate;
+
+    private final AsyncAuditWriter auditWriter;
+
+    public AuditingAuthenticationManager(AuthenticationManager delegate, AsyncAuditWriter auditWriter) {
+        this.delegate = delegate;
+        this.auditWriter = auditWriter;
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        try {
+            Authentication result = delegate.authenticate(authentication);
+            auditWriter.publish(new AuditEvent(AuditEvent.Type.LOGIN_SUCCESS, result.getName(), null, SOURCE));
+            return result;
+        } catch (AuthenticationException e) {
+            auditWriter.publish(new AuditEvent(AuditEvent.Type.LOGIN_FAILURE, authentication.getName(), null,
+                    SOURCE + ": " + e.getMessage()));
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.cloud.kevin.authserver.audit;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.TokenEnhancer;
+
+/**
+ * 记录签发和刷新的token，放在TokenEnhancerChain的最后，此时jti已经生成
+ * 签发和刷新token时TokenServices都会调用TokenEnhancer，这里不修改token。
+ *
+ * @author Kevin
+ */
+public class AuditingTokenEnhancer implements TokenEnhancer {
+
+    private final AsyncAuditWriter auditWriter;
+
+    public AuditingTokenEnhancer(AsyncAuditWriter auditWriter) {
+        this.auditWriter = auditWriter;
+    }
+
+    @Override
+    public OAuth2AccessToken enhance(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+        OAuth2Request request = authentication.getOAuth2Request();
+        AuditEvent.Type type = request.isRefresh() ? AuditEvent.Type.TOKEN_REFRESHED : AuditEvent.Type.TOKEN_ISSUED;
+        String principal = authentication.isClientOnly() ? null : authentication.getName();
+
+        auditWriter.publish(new AuditEvent(type, principal, request.getClientId(),
+                "grant_type=" + request.getGrantType() + ", jti=" + accessToken.getAdditionalInformation().get("jti")));
+
+        return accessToken;
+    }
+}
@@ -0,0 +1,215 @@
+package com.cloud.kevin.authserver.client;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.oauth2.provider.ClientAlreadyExistsException;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.ClientRegistrationException;
+import org.springframework.security.oauth2.provider.ClientRegistrationService;
+import org.springframework.security.oauth2.provider.NoSuchClientException;
+import org.springframework.security.oauth2.provider.client.JdbcClientDetailsService;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 带本地缓存的ClientDetailsService
+ * client信息几乎不会变化，缓存后/oauth/token、/oauth/authorize不再需要每次都查询数据库。
+ * 条目在写入refreshAfterWrite秒后被访问时会在后台异步刷新，在expireAfterWrite秒后过期，并按条目数量进行淘汰；
+ * 不存在的client缓存negativeTtl秒，避免用随机的client_id请求时每次都查询数据库。
+ * 通过本类修改client信息时会同步清除对应的缓存，直接修改数据库时需要调用{@link #evict(String)}。
+ * 不调用evict时，在数据库中删除或修改(例如去掉授权类型、更换secret)的client最多还能按旧信息认证refreshAfterWrite秒：
+ * 之后的第一次访问触发刷新，刷新完成前的请求仍使用旧信息，刷新发现client已删除时条目变为不存在。
+ * 刷新失败(例如数据库不可用)时保留旧信息，直到expireAfterWrite秒后过期。
+ *
+ * @author Kevin
+ */
+@Slf4j
+public class CachingClientDetailsService implements ClientDetailsService, ClientRegistrationService, MeterBinder {
+
+    private final JdbcClientDetailsService delegate;
+
+    private final LoadingCache<String, CachedClient> cache;
+
+    private final List<EvictionListener> evictionListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param delegate          实际加载client信息的JdbcClientDetailsService
+     * @param maximumSize       缓存的最大条目数
+     * @param expireAfterWrite  条目写入后的过期时间(秒)
+     * @param refreshAfterWrite 条目写入后开始后台刷新的时间(秒)，需小于expireAfterWrite
+     * @param negativeTtl       不存在的client的缓存时间(秒)
+     */
+    public CachingClientDetailsService(JdbcClientDetailsService delegate, long maximumSize,
+                                       long expireAfterWrite, long refreshAfterWrite, long negativeTtl) {
+        this.delegate = delegate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new CachedClientExpiry(TimeUnit.SECONDS.toNanos(expireAfterWrite),
+                        TimeUnit.SECONDS.toNanos(negativeTtl)))
+                .refreshAfterWrite(refreshAfterWrite, TimeUnit.SECONDS)
+                .recordStats()
+                .build(this::load);
+    }
+
+    /**
+     * 不存在的client会抛出NoSuchClientException，查询出错时不缓存
+     *
+     * @param clientId
+     * @return
+     * @throws ClientRegistrationException
+     */
+    @Override
+    public ClientDetails loadClientByClientId(String clientId) throws ClientRegistrationException {
+        ClientDetails client = cache.get(clientId).client;
+        if (null == client) {
+            throw new NoSuchClientException("No client with requested id: " + clientId);
+        }
+
+        return client;
+    }
+
+    /**
+     * 首次加载和后台刷新都经过这里，刷新时发现client已删除会把条目替换为不存在
+     */
+    private CachedClient load(String clientId) {
+        try {
+            return new CachedClient(delegate.loadClientByClientId(clientId));
+        } catch (NoSuchClientException e) {
+            return new CachedClient(null);
+        }
+    }
+
+    @Override
+    public void addClientDetails(ClientDetails clientDetails) throws ClientAlreadyExistsException {
+        delegate.addClientDetails(clientDetails);
+        evict(clientDetails.getClientId());
+    }
+
+    @Override
+    public void updateClientDetails(ClientDetails clientDetails) throws NoSuchClientException {
+        delegate.updateClientDetails(clientDetails);
+        evict(clientDetails.getClientId());
+    }
+
+    @Override
+    public void updateClientSecret(String clientId, String secret) throws NoSuchClientException {
+        delegate.updateClientSecret(clientId, secret);
+        evict(clientId);
+    }
+
+    @Override
+    public void removeClientDetails(String clientId) throws NoSuchClientException {
+        delegate.removeClientDetails(clientId);
+        evict(clientId);
+    }
+
+    @Override
+    public List<ClientDetails> listClientDetails() {
+        return delegate.listClientDetails();
+    }
+
+    /**
+     * 清除指定client的缓存，下次访问时重新从数据库加载
+     *
+     * @param clientId
+     */
+    public void evict(String clientId) {
+        log.info("Evicting cached client details: {}", clientId);
+        cache.invalidate(clientId);
+        for (EvictionListener listener : evictionListeners) {
+            listener.evict(clientId);
+        }
+    }
+
+    /**
+     * 清除所有client的缓存
+     */
+    public void evictAll() {
+        log.info("Evicting all cached client details");
+        cache.invalidateAll();
+        for (EvictionListener listener : evictionListeners) {
+            listener.evictAll();
+        }
+    }
+
+    /**
+     * 注册依赖client信息的其他缓存，client缓存被清除时一并清除
+     *
+     * @param listener
+     */
+    public void addEvictionListener(EvictionListener listener) {
+        evictionListeners.add(listener);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new CaffeineCacheMetrics(cache, "clientDetails", Tags.empty()).bindTo(registry);
+    }
+
+    /**
+     * client为null表示client不存在
+     */
+    private static final class CachedClient {
+
+        private final ClientDetails client;
+
+        private CachedClient(ClientDetails client) {
+            this.client = client;
+        }
+    }
+
+    private static final class CachedClientExpiry implements Expiry<String, CachedClient> {
+
+        private final long expireAfterWrite;
+
+        private final long negativeTtl;
+
+        private CachedClientExpiry(long expireAfterWrite, long negativeTtl) {
+            this.expireAfterWrite = expireAfterWrite;
+            this.negativeTtl = negativeTtl;
+        }
+
+        @Override
+        public long expireAfterCreate(String key, CachedClient value, long currentTime) {
+            return null == value.client ? negativeTtl : expireAfterWrite;
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, CachedClient value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, CachedClient value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    /**
+     * 依赖client信息的缓存
+     */
+    public interface EvictionListener {
+
+        void evict(String clientId);
+
+        void evictAll();
+    }
+}
@@ -0,0 +1,55 @@
+package com.cloud.kevin.authserver.client;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * client缓存的管理端点
+ * GET    /actuator/clientcache            查看缓存统计
+ * DELETE /actuator/clientcache            清除所有client的缓存
+ * DELETE /actuator/clientcache/{clientId} 数据库中的client信息变化后清除对应的缓存
+ * DELETE操作只允许ROLE_ADMIN调用，见WebSecurityConfiguration
+ *
+ * @author Kevin
+ */
+@Endpoint(id = "clientcache")
+public class ClientDetailsCacheEndpoint {
+
+    private final CachingClientDetailsService clientDetailsService;
+
+    public ClientDetailsCacheEndpoint(CachingClientDetailsService clientDetailsService) {
+        this.clientDetailsService = clientDetailsService;
+    }
+
+    @ReadOperation
+    public Map<String, Object> stats() {
+        CacheStats stats = clientDetailsService.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+
+        result.put("size", clientDetailsService.size());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        result.put("loadFailureCount", stats.loadFailureCount());
+        result.put("averageLoadPenalty", stats.averageLoadPenalty());
+
+        return result;
+    }
+
+    @DeleteOperation
+    public void evictAll() {
+        clientDetailsService.evictAll();
+    }
+
+    @DeleteOperation
+    public void evict(@Selector String clientId) {
+        clientDetailsService.evict(clientId);
+    }
+}
@@ -0,0 +1,98 @@
+package com.cloud.kevin.authserver.code;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.common.util.RandomValueStringGenerator;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.code.AuthorizationCodeServices;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 授权码存储的公共部分：生成授权码、碰撞时重新生成、统计签发和兑换结果
+ * 授权码签发后ttl秒内有效，只能兑换一次，同一授权码并发兑换时只有一个请求成功。
+ *
+ * @author Kevin
+ */
+public abstract class ExpiringAuthorizationCodeServices implements AuthorizationCodeServices, MeterBinder {
+
+    /**
+     * 生成的授权码已存在时重新生成的次数
+     */
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final RandomValueStringGenerator generator = new RandomValueStringGenerator();
+
+    protected final long ttl;
+
+    private final LongAdder issued = new LongAdder();
+
+    private final LongAdder consumed = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param ttl 授权码的有效期(秒)
+     */
+    protected ExpiringAuthorizationCodeServices(long ttl) {
+        this.ttl = TimeUnit.SECONDS.toMillis(ttl);
+    }
+
+    @Override
+    public String createAuthorizationCode(OAuth2Authentication authentication) {
+        for (int i = 0; i < MAX_ATTEMPTS; i++) {
+            String code = generator.generate();
+            if (store(code, authentication, System.currentTimeMillis() + ttl)) {
+                issued.increment();
+                return code;
+            }
+        }
+
+        throw new IllegalStateException("Failed to generate a unique authorization code");
+    }
+
+    @Override
+    public OAuth2Authentication consumeAuthorizationCode(String code) throws InvalidGrantException {
+        OAuth2Authentication authentication = remove(code);
+        if (null == authentication) {
+            rejected.increment();
+            throw new InvalidGrantException("Invalid authorization code: " + code);
+        }
+
+        consumed.increment();
+        return authentication;
+    }
+
+    /**
+     * @param code
+     * @param authentication
+     * @param expiresAt      过期时间(毫秒)
+     * @return 授权码已存在时返回false
+     */
+    protected abstract boolean store(String code, OAuth2Authentication authentication, long expiresAt);
+
+    /**
+     * 取出并删除授权码，并发调用时最多只有一次返回非空
+     *
+     * @param code
+     * @return 授权码不存在、已兑换或已过期时返回null
+     */
+    protected abstract OAuth2Authentication remove(String code);
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("oauth.authorization.codes", issued, LongAdder::sum)
+                .tag("result", "issued")
+                .register(registry);
+        FunctionCounter.builder("oauth.authorization.codes", consumed, LongAdder::sum)
+                .tag("result", "consumed")
+                .register(registry);
+        FunctionCounter.builder("oauth.authorization.codes", rejected, LongAdder::sum)
+                .tag("result", "rejected")
+                .description("Redemptions of unknown, already consumed or expired codes")
+                .register(registry);
+    }
+}
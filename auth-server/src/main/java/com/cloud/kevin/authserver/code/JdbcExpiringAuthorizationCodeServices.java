@@ -0,0 +1,147 @@
+package com.cloud.kevin.authserver.code;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 保存在oauth_code表中的授权码，多个auth-server节点共享
+ * 兑换时先读出再按授权码删除，只有删除成功(影响1行)的请求返回认证信息，并发兑换同一授权码时只有一个节点成功。
+ * 过期的授权码由后台线程按expires_at分批删除，每批一个短事务，不会长时间锁表。
+ *
+ * @author Kevin
+ */
+@Slf4j
+public class JdbcExpiringAuthorizationCodeServices extends ExpiringAuthorizationCodeServices
+        implements InitializingBean, DisposableBean {
+
+    private static final String INSERT_SQL = "insert into oauth_code(code, authentication, expires_at) values (?, ?, ?)";
+
+    private static final String SELECT_SQL = "select authentication, expires_at from oauth_code where code = ?";
+
+    private static final String DELETE_SQL = "delete from oauth_code where code = ?";
+
+    private static final String DELETE_EXPIRED_SQL = "delete from oauth_code where expires_at < ? limit ?";
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final long cleanupInterval;
+
+    private final LongAdder expired = new LongAdder();
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param dataSource
+     * @param ttl             授权码的有效期(秒)
+     * @param cleanupInterval 删除过期授权码的间隔(秒)
+     */
+    public JdbcExpiringAuthorizationCodeServices(DataSource dataSource, long ttl, long cleanupInterval) {
+        super(ttl);
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.cleanupInterval = cleanupInterval;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "authorization-code-cleanup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                deleteExpired();
+            } catch (Exception e) {
+                log.error("Failed to delete expired authorization codes: ", e);
+            }
+        }, cleanupInterval, cleanupInterval, TimeUnit.SECONDS);
+    }
+
+    @Override
+    protected boolean store(String code, OAuth2Authentication authentication, long expiresAt) {
+        try {
+            jdbcTemplate.update(INSERT_SQL, code, SerializationUtils.serialize(authentication),
+                    new Timestamp(expiresAt));
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    @Override
+    protected OAuth2Authentication remove(String code) {
+        List<StoredCode> stored = jdbcTemplate.query(SELECT_SQL, (rs, rowNum) -> new StoredCode(
+                rs.getBytes(1), rs.getTimestamp(2).getTime()), code);
+        if (stored.isEmpty()) {
+            return null;
+        }
+
+        // 并发兑换时只有一个请求能删除这一行
+        if (jdbcTemplate.update(DELETE_SQL, code) != 1) {
+            return null;
+        }
+
+        StoredCode storedCode = stored.get(0);
+        if (storedCode.expiresAt <= System.currentTimeMillis()) {
+            return null;
+        }
+
+        return SerializationUtils.deserialize(storedCode.authentication);
+    }
+
+    /**
+     * 分批删除过期的授权码，多个节点同时执行时互不影响
+     */
+    private void deleteExpired() {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(DELETE_EXPIRED_SQL, now, BATCH_SIZE);
+            expired.add(deleted);
+        } while (deleted == BATCH_SIZE);
+    }
+
+    @Override
+    public void destroy() {
+        if (null != scheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        super.bindTo(registry);
+        FunctionCounter.builder("oauth.authorization.codes", expired, LongAdder::sum)
+                .tag("result", "expired")
+                .register(registry);
+    }
+
+    private static final class StoredCode {
+
+        private final byte[] authentication;
+
+        private final long expiresAt;
+
+        private StoredCode(byte[] authentication, long expiresAt) {
+            this.authentication = authentication;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.cloud.kevin.authserver.code;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按授权码分段加锁的内存授权码存储，只适用于单节点部署
+ * 授权码按哈希分到多个分段，每个分段有自己的锁，不同分段的签发和兑换互不阻塞。
+ * 过期用时间轮清理：签发时把授权码放入ttl之后的槽，后台线程每个tick清理一个槽，
+ * 每次清理只涉及这个tick内到期的授权码，不需要扫描全部授权码。兑换时同样检查过期时间，不依赖清理的及时性。
+ *
+ * @author Kevin
+ */
+@Slf4j
+public class StripedInMemoryAuthorizationCodeServices extends ExpiringAuthorizationCodeServices
+        implements InitializingBean, DisposableBean {
+
+    private final Shard[] shards;
+
+    private final long tickDuration;
+
+    /**
+     * 从签发到所在的槽被清理经过的tick数
+     */
+    private final int ticksPerTtl;
+
+    private final int wheelSize;
+
+    private final LongAdder expired = new LongAdder();
+
+    /**
+     * 当前tick，只由清理线程递增
+     */
+    private volatile long tick;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param ttl          授权码的有效期(秒)
+     * @param shards       分段数，向上取整为2的幂
+     * @param tickDuration 时间轮每个槽的时长(毫秒)
+     */
+    public StripedInMemoryAuthorizationCodeServices(long ttl, int shards, long tickDuration) {
+        super(ttl);
+        this.tickDuration = tickDuration;
+        this.ticksPerTtl = (int) ((this.ttl + tickDuration - 1) / tickDuration);
+        // 多留一个槽，签发时tick恰好前进也不会落在正在清理的槽上
+        this.wheelSize = ticksPerTtl + 2;
+
+        int size = 1;
+        while (size < shards) {
+            size <<= 1;
+        }
+        this.shards = new Shard[size];
+        for (int i = 0; i < size; i++) {
+            this.shards[i] = new Shard(wheelSize);
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "authorization-code-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                advance();
+            } catch (RuntimeException e) {
+                log.error("Failed to expire authorization codes: ", e);
+            }
+        }, tickDuration, tickDuration, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected boolean store(String code, OAuth2Authentication authentication, long expiresAt) {
+        Shard shard = shard(code);
+        synchronized (shard) {
+            if (shard.codes.containsKey(code)) {
+                return false;
+            }
+            shard.codes.put(code, new Entry(authentication, expiresAt));
+            shard.wheel[(int) ((tick + ticksPerTtl) % wheelSize)].add(code);
+        }
+
+        return true;
+    }
+
+    @Override
+    protected OAuth2Authentication remove(String code) {
+        Entry entry;
+        Shard shard = shard(code);
+        synchronized (shard) {
+            entry = shard.codes.remove(code);
+        }
+
+        // 已兑换的授权码仍留在时间轮的槽中，到期清理时忽略
+        if (null == entry || entry.expiresAt <= System.currentTimeMillis()) {
+            return null;
+        }
+
+        return entry.authentication;
+    }
+
+    /**
+     * 前进一个tick，清理新槽中到期的授权码；仍未到期的(签发时与tick前进交错)移到下一个槽
+     */
+    private void advance() {
+        long current = tick + 1;
+        int slot = (int) (current % wheelSize);
+        int next = (int) ((current + 1) % wheelSize);
+        long now = System.currentTimeMillis();
+
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                List<String> due = shard.wheel[slot];
+                if (due.isEmpty()) {
+                    continue;
+                }
+                shard.wheel[slot] = new ArrayList<>();
+                for (String code : due) {
+                    Entry entry = shard.codes.get(code);
+                    if (null == entry) {
+                        continue;
+                    }
+                    if (entry.expiresAt <= now) {
+                        shard.codes.remove(code);
+                        expired.increment();
+                    } else {
+                        shard.wheel[next].add(code);
+                    }
+                }
+            }
+        }
+
+        tick = current;
+    }
+
+    private Shard shard(String code) {
+        int hash = code.hashCode();
+        return shards[(hash ^ (hash >>> 16)) & (shards.length - 1)];
+    }
+
+    private int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                size += shard.codes.size();
+            }
+        }
+
+        return size;
+    }
+
+    @Override
+    public void destroy() {
+        if (null != scheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        super.bindTo(registry);
+        FunctionCounter.builder("oauth.authorization.codes", expired, LongAdder::sum)
+                .tag("result", "expired")
+                .register(registry);
+        Gauge.builder("oauth.authorization.codes.pending", this, StripedInMemoryAuthorizationCodeServices::size)
+                .register(registry);
+    }
+
+    /**
+     * 以下字段由Shard自身的锁保护
+     */
+    private static final class Shard {
+
+        private final Map<String, Entry> codes = new HashMap<>();
+
+        private final List<String>[] wheel;
+
+        @SuppressWarnings("unchecked")
+        private Shard(int wheelSize) {
+            this.wheel = new List[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                this.wheel[i] = new ArrayList<>();
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final OAuth2Authentication authentication;
+
+        private final long expiresAt;
+
+        private Entry(OAuth2Authentication authentication, long expiresAt) {
+            this.authentication = authentication;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
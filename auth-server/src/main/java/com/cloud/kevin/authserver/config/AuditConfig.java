@@ -0,0 +1,58 @@
+package com.cloud.kevin.authserver.config;
+
+import com.cloud.kevin.authserver.audit.AsyncAuditWriter;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * 登录、token签发、刷新和撤销的审计记录配置
+ *
+ * @author Kevin
+ */
+@Configuration
+@EnableConfigurationProperties(AuditConfig.AuditSetting.class)
+public class AuditConfig {
+
+    /**
+     * 审计事件先进入内存缓冲区，由后台线程批量写入oauth_audit_event表
+     *
+     * @param dataSource
+     * @param setting
+     * @return
+     */
+    @Bean
+    public AsyncAuditWriter asyncAuditWriter(DataSource dataSource, AuditSetting setting) {
+        return new AsyncAuditWriter(dataSource, setting.getCapacity(), setting.getBatchSize(),
+                setting.getFlushInterval(), setting.getOverflowPolicy(), setting.getBlockTimeout());
+    }
+
+    @ConfigurationProperties(prefix = "auth-server.audit")
+    @Data
+    public static class AuditSetting {
+        /**
+         * 缓冲区容量，向上取整为2的幂
+         */
+        private int capacity = 8192;
+        /**
+         * 每批写入的最大条数
+         */
+        private int batchSize = 200;
+        /**
+         * 缓冲区为空时写入线程的等待间隔(毫秒)
+         */
+        private long flushInterval = 200;
+        /**
+         * 缓冲区已满时的处理方式：DROP(丢弃)、BLOCK(等待blockTimeout后丢弃)
+         */
+        private AsyncAuditWriter.OverflowPolicy overflowPolicy = AsyncAuditWriter.OverflowPolicy.DROP;
+        /**
+         * BLOCK策略下的最长等待时间(毫秒)
+         */
+        private long blockTimeout = 50;
+    }
+}
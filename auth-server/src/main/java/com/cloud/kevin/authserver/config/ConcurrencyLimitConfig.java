@@ -0,0 +1,93 @@
+package com.cloud.kevin.authserver.config;
+
+import com.cloud.kevin.authserver.limit.AdaptiveConcurrencyLimiter;
+import com.cloud.kevin.authserver.limit.ClientConcurrencyLimitFilter;
+import com.cloud.kevin.authserver.limit.ConcurrencyLimitFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * token端点的过载保护配置
+ *
+ * @author Kevin
+ */
+@Configuration
+@Slf4j
+@ConditionalOnProperty(prefix = "auth-server.concurrency-limit", name = "enabled", matchIfMissing = true)
+@EnableConfigurationProperties(ConcurrencyLimitConfig.ConcurrencyLimitSetting.class)
+public class ConcurrencyLimitConfig {
+
+    /**
+     * 在Spring Security过滤器链之前对/oauth/token、/oauth/authorize进行全局的自适应并发限制
+     *
+     * @param setting
+     * @param meterRegistry
+     * @return
+     */
+    @Bean
+    public FilterRegistrationBean concurrencyLimitFilter(ConcurrencyLimitSetting setting, MeterRegistry meterRegistry) {
+        log.info("Initiating concurrency limit filter ...");
+
+        AdaptiveConcurrencyLimiter globalLimiter = new AdaptiveConcurrencyLimiter(setting.getInitialLimit(),
+                setting.getMinLimit(), setting.getMaxLimit(), setting.getTolerance());
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(globalLimiter, meterRegistry);
+
+        FilterRegistrationBean filterRegistrationBean = new FilterRegistrationBean(filter);
+        filterRegistrationBean.addUrlPatterns("/oauth/token", "/oauth/authorize");
+        filterRegistrationBean.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER - 1);
+
+        return filterRegistrationBean;
+    }
+
+    /**
+     * 在Spring Security过滤器链之后按已认证的client对/oauth/token进行并发限制
+     *
+     * @param setting
+     * @param meterRegistry
+     * @return
+     */
+    @Bean
+    public FilterRegistrationBean clientConcurrencyLimitFilter(ConcurrencyLimitSetting setting,
+                                                               MeterRegistry meterRegistry) {
+        ClientConcurrencyLimitFilter filter = new ClientConcurrencyLimitFilter(
+                () -> new AdaptiveConcurrencyLimiter(setting.getClientInitialLimit(), setting.getClientMinLimit(),
+                        setting.getClientMaxLimit(), setting.getTolerance()),
+                meterRegistry);
+
+        FilterRegistrationBean filterRegistrationBean = new FilterRegistrationBean(filter);
+        filterRegistrationBean.addUrlPatterns("/oauth/token");
+        filterRegistrationBean.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER + 1);
+
+        return filterRegistrationBean;
+    }
+
+    @ConfigurationProperties(prefix = "auth-server.concurrency-limit")
+    @Data
+    public static class ConcurrencyLimitSetting {
+        private boolean enabled = true;
+        /**
+         * 全局并发上限的初始值、最小值和最大值
+         */
+        private int initialLimit = 20;
+        private int minLimit = 4;
+        private int maxLimit = 200;
+        /**
+         * 单个client并发上限的初始值、最小值和最大值，只对认证通过的/oauth/token请求生效
+         */
+        private int clientInitialLimit = 10;
+        private int clientMinLimit = 1;
+        private int clientMaxLimit = 50;
+        /**
+         * 允许延迟超过基线的倍数，超过后开始缩小并发上限
+         */
+        private double tolerance = 1.5;
+    }
+}
@@ -2,9 +2,14 @@ package com.cloud.kevin.authserver.config;
 
 import com.alibaba.druid.pool.DruidDataSource;
 import com.alibaba.druid.support.http.StatViewServlet;
-import com.alibaba.druid.support.http.WebStatFilter;
+import com.cloud.kevin.authserver.datasource.AdaptivePoolSizer;
+import com.cloud.kevin.authserver.datasource.DruidMetricsFilter;
+import com.cloud.kevin.authserver.datasource.DruidPoolMetrics;
+import com.cloud.kevin.authserver.stat.SampledRequestStatsFilter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
@@ -13,8 +18,10 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 
-import javax.sql.DataSource;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * 数据源配置
@@ -23,18 +30,20 @@ import java.sql.SQLException;
  */
 @Configuration
 @Slf4j
-@EnableConfigurationProperties(DataSourceConfig.DataSourceSetting.class)
+@EnableConfigurationProperties({DataSourceConfig.DataSourceSetting.class, DataSourceConfig.AdaptivePoolSetting.class,
+        DataSourceConfig.RequestStatsSetting.class})
 public class DataSourceConfig {
 
     /**
      * 配置数据库连接池
      *
      * @param dataSourceSetting
+     * @param druidMetricsFilter
      * @return
      */
     @Bean
     @Primary
-    public DataSource dataSource(DataSourceSetting dataSourceSetting) {
+    public DruidDataSource dataSource(DataSourceSetting dataSourceSetting, DruidMetricsFilter druidMetricsFilter) {
         log.info("Initiating DataSource ...");
         DruidDataSource datasource = new DruidDataSource();
 
@@ -64,10 +73,51 @@ public class DataSourceConfig {
         }
 
         datasource.setConnectionProperties(dataSourceSetting.getConnectionProperties());
+        datasource.getProxyFilters().add(druidMetricsFilter);
 
         return datasource;
     }
 
+    /**
+     * 记录获取连接的等待时间和SQL的执行时间
+     *
+     * @param meterRegistry
+     * @return
+     */
+    @Bean
+    public DruidMetricsFilter druidMetricsFilter(MeterRegistry meterRegistry) {
+        return new DruidMetricsFilter(meterRegistry);
+    }
+
+    /**
+     * 连接池状态的Micrometer指标
+     *
+     * @param dataSource
+     * @return
+     */
+    @Bean
+    public DruidPoolMetrics druidPoolMetrics(DruidDataSource dataSource) {
+        return new DruidPoolMetrics(dataSource);
+    }
+
+    /**
+     * 按等待时间和SQL执行时间自动调整maxActive，默认关闭
+     *
+     * @param dataSource
+     * @param druidMetricsFilter
+     * @param adaptivePoolSetting
+     * @return
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "spring.datasource.adaptive", name = "enabled", havingValue = "true")
+    public AdaptivePoolSizer adaptivePoolSizer(DruidDataSource dataSource, DruidMetricsFilter druidMetricsFilter,
+                                               AdaptivePoolSetting adaptivePoolSetting) {
+        return new AdaptivePoolSizer(dataSource, druidMetricsFilter,
+                adaptivePoolSetting.getMinActive(), adaptivePoolSetting.getMaxActive(),
+                adaptivePoolSetting.getInterval(), adaptivePoolSetting.getTargetWait(),
+                adaptivePoolSetting.getLatencyTolerance());
+    }
+
     @Bean
     public ServletRegistrationBean druidServlet() {
         log.info("Initiating Druid Servlet Configurations ...");
@@ -90,11 +140,25 @@ public class DataSourceConfig {
         return servletRegistrationBean;
     }
 
+    /**
+     * 抽样的请求统计，替代对每个请求都加锁记录URI和session统计的WebStatFilter
+     *
+     * @param meterRegistry
+     * @param requestStatsSetting
+     * @return
+     */
     @Bean
-    public FilterRegistrationBean filterRegistrationBean() {
-        FilterRegistrationBean filterRegistrationBean = new FilterRegistrationBean(new WebStatFilter());
+    @ConditionalOnProperty(prefix = "auth-server.request-stats", name = "enabled", matchIfMissing = true)
+    public FilterRegistrationBean<SampledRequestStatsFilter> filterRegistrationBean(
+            MeterRegistry meterRegistry, RequestStatsSetting requestStatsSetting) {
+        int stripes = requestStatsSetting.getStripes() > 0
+                ? requestStatsSetting.getStripes() : Runtime.getRuntime().availableProcessors();
+
+        FilterRegistrationBean<SampledRequestStatsFilter> filterRegistrationBean = new FilterRegistrationBean<>(
+                new SampledRequestStatsFilter(meterRegistry, requestStatsSetting.getSampleRate(),
+                        requestStatsSetting.getWindow(), requestStatsSetting.getMaxRoutes(), stripes,
+                        requestStatsSetting.getExclusions()));
         filterRegistrationBean.addUrlPatterns("/*");
-        filterRegistrationBean.addInitParameter("exclusions", "*.js,*.gif,*.jpg,*.png,*.css,*.ico,/druid/*");
 
         return filterRegistrationBean;
     }
@@ -121,4 +185,63 @@ public class DataSourceConfig {
         private String filters;
         private String connectionProperties;
     }
+
+    @ConfigurationProperties(prefix = "spring.datasource.adaptive")
+    @Data
+    public static class AdaptivePoolSetting {
+        /**
+         * 是否自动调整maxActive
+         */
+        private boolean enabled = false;
+        /**
+         * maxActive的下限
+         */
+        private int minActive = 10;
+        /**
+         * maxActive的上限
+         */
+        private int maxActive = 100;
+        /**
+         * 调整间隔(秒)，不小于1
+         */
+        private long interval = 30;
+        /**
+         * 获取连接的目标平均等待时间(毫秒)
+         */
+        private double targetWait = 5;
+        /**
+         * SQL平均执行时间超过基线的该倍数时认为数据库已经饱和
+         */
+        private double latencyTolerance = 2.0;
+    }
+
+    @ConfigurationProperties(prefix = "auth-server.request-stats")
+    @Data
+    public static class RequestStatsSetting {
+        /**
+         * 是否统计请求
+         */
+        private boolean enabled = true;
+        /**
+         * 抽样比例，0到1之间
+         */
+        private double sampleRate = 0.1;
+        /**
+         * 百分位数的统计窗口(秒)
+         */
+        private long window = 60;
+        /**
+         * 最多统计的路由数，超出后计入OTHER
+         */
+        private int maxRoutes = 200;
+        /**
+         * 直方图的分段数，小于等于0时使用CPU核数
+         */
+        private int stripes = 0;
+        /**
+         * 不统计的路径(Ant风格)
+         */
+        private List<String> exclusions = new ArrayList<>(Arrays.asList(
+                "/**/*.js", "/**/*.css", "/**/*.png", "/**/*.jpg", "/**/*.gif", "/**/*.ico", "/druid/**"));
+    }
 }
@@ -0,0 +1,61 @@
+package com.cloud.kevin.authserver.config;
+
+import com.cloud.kevin.authserver.client.CachingClientDetailsService;
+import com.cloud.kevin.authserver.crypto.ClientSecretCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.oauth2.provider.client.ClientDetailsUserDetailsService;
+
+/**
+ * token内省端点的安全配置
+ * 调用方以client身份通过HTTP Basic认证(与/oauth/token相同的client_id和client_secret)，
+ * 不创建session，优先于{@link WebSecurityConfiguration}中的表单登录配置。
+ *
+ * @author Kevin
+ */
+@Configuration
+@Order(1)
+public class IntrospectionSecurityConfiguration extends WebSecurityConfigurerAdapter {
+
+    @Autowired
+    private CachingClientDetailsService cachingClientDetailsService;
+
+    @Autowired
+    private ClientSecretCache clientSecretCache;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Override
+    protected void configure(AuthenticationManagerBuilder auth) throws Exception {
+        auth.userDetailsService(new ClientDetailsUserDetailsService(cachingClientDetailsService))
+                // 与/oauth/token共用client_secret校验结果的缓存
+                .passwordEncoder(clientSecretCache.wrap(passwordEncoder));
+    }
+
+    @Override
+    protected void configure(HttpSecurity http) throws Exception {
+        // @formatter:off
+        http
+            .requestMatchers()
+                .antMatchers("/oauth/introspect", "/oauth/introspect/**")
+                .and()
+            .authorizeRequests()
+                .anyRequest().authenticated()
+                .and()
+            .httpBasic()
+                .and()
+            .sessionManagement()
+                .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
+                .and()
+            .csrf()
+                .disable();
+        // @formatter:on
+    }
+}
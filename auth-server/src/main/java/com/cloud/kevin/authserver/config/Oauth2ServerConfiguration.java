@@ -1,31 +1,59 @@
 package com.cloud.kevin.authserver.config;
 
+import com.cloud.kevin.authserver.audit.AsyncAuditWriter;
+import com.cloud.kevin.authserver.audit.AuditingAuthenticationManager;
+import com.cloud.kevin.authserver.audit.AuditingTokenEnhancer;
+import com.cloud.kevin.authserver.client.CachingClientDetailsService;
+import com.cloud.kevin.authserver.client.ClientDetailsCacheEndpoint;
+import com.cloud.kevin.authserver.code.ExpiringAuthorizationCodeServices;
+import com.cloud.kevin.authserver.code.JdbcExpiringAuthorizationCodeServices;
+import com.cloud.kevin.authserver.code.StripedInMemoryAuthorizationCodeServices;
+import com.cloud.kevin.authserver.crypto.ClientSecretCache;
+import com.cloud.kevin.authserver.jwt.JwsAlgorithm;
+import com.cloud.kevin.authserver.jwt.JwtKeyRing;
+import com.cloud.kevin.authserver.jwt.KeyRingJwtAccessTokenConverter;
+import com.cloud.kevin.authserver.jwt.SigningKey;
+import com.cloud.kevin.authserver.limit.OverloadMarkingExceptionTranslator;
+import com.cloud.kevin.authserver.revocation.TokenRevocationService;
+import com.cloud.kevin.authserver.token.ClientCredentialsReusingTokenServices;
+import com.cloud.kevin.authserver.token.TokenIntrospectionService;
+import com.cloud.kevin.authserver.user.CachingUserDetailsService;
+import com.cloud.kevin.authserver.user.JdbcUserDetailsService;
+import com.cloud.kevin.authserver.user.UserCacheEndpoint;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.ProviderManager;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.User;
-import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UserDetailsByNameServiceWrapper;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
 import org.springframework.security.oauth2.config.annotation.configurers.ClientDetailsServiceConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configuration.AuthorizationServerConfigurerAdapter;
 import org.springframework.security.oauth2.config.annotation.web.configuration.EnableAuthorizationServer;
 import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerEndpointsConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerSecurityConfigurer;
+import org.springframework.security.oauth2.provider.client.JdbcClientDetailsService;
 import org.springframework.security.oauth2.provider.token.TokenEnhancer;
 import org.springframework.security.oauth2.provider.token.TokenEnhancerChain;
 import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationProvider;
 import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
 import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
-import org.springframework.security.oauth2.provider.token.store.KeyStoreKeyFactory;
-import org.springframework.util.Assert;
 
 import javax.sql.DataSource;
+import java.security.GeneralSecurityException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,35 +73,94 @@ import java.util.Map;
  */
 @Configuration
 @EnableAuthorizationServer
+@EnableConfigurationProperties({Oauth2ServerConfiguration.ClientCacheSetting.class,
+        Oauth2ServerConfiguration.ClientSecretCacheSetting.class,
+        Oauth2ServerConfiguration.JwtSetting.class,
+        Oauth2ServerConfiguration.TokenReuseSetting.class,
+        Oauth2ServerConfiguration.UserCacheSetting.class,
+        Oauth2ServerConfiguration.RevocationSetting.class,
+        Oauth2ServerConfiguration.IntrospectionSetting.class,
+        Oauth2ServerConfiguration.AuthorizationCodeSetting.class})
 public class Oauth2ServerConfiguration extends AuthorizationServerConfigurerAdapter {
 
     @Autowired
     private DataSource dataSource;
 
+    @Autowired
+    private ClientCacheSetting clientCacheSetting;
+
+    @Autowired
+    private ClientSecretCacheSetting clientSecretCacheSetting;
+
+    @Autowired
+    private JwtSetting jwtSetting;
+
+    @Autowired
+    private TokenReuseSetting tokenReuseSetting;
+
+    @Autowired
+    private UserCacheSetting userCacheSetting;
+
+    @Autowired
+    private RevocationSetting revocationSetting;
+
+    @Autowired
+    private IntrospectionSetting introspectionSetting;
+
+    @Autowired
+    private AuthorizationCodeSetting authorizationCodeSetting;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Autowired
     private TokenEnhancer tokenEnhancer;
 
+    @Autowired
+    private AsyncAuditWriter asyncAuditWriter;
+
     @Autowired
     private AuthenticationManager authenticationManager;
 
+    /**
+     * JWT签名密钥环，证书库中的RSA密钥作为默认密钥，按配置的算法从证书库选择签名密钥，按配置的间隔轮换新密钥
+     *
+     * @return
+     * @throws GeneralSecurityException
+     */
     @Bean
-    public JwtAccessTokenConverter jwtAccessTokenConverter() {
-        JwtAccessTokenConverter converter = new JwtAccessTokenConverter();
-
+    public JwtKeyRing jwtKeyRing() throws GeneralSecurityException {
         // authserver.jks : 证书库文件的访问路径
         // storepwd : 证书库的访问密码
-        KeyStoreKeyFactory keyStoreKeyFactory = new KeyStoreKeyFactory(
-                new ClassPathResource("authserver.jks"), "storepwd".toCharArray());
-
         // authServer : 证书的名称（在证书库中的唯一标识）
         // keypwd : 证书的访问密码
-        converter.setKeyPair(keyStoreKeyFactory.getKeyPair("authServer", "keypwd".toCharArray()));
+        // authServerEc : ES256签名使用的P-256密钥
+        Resource keyStore = new ClassPathResource("authserver.jks");
+        SigningKey defaultKey = SigningKey.fromKeyStore(keyStore, "storepwd", "authServer", "keypwd");
+        SigningKey keyStoreKey = JwsAlgorithm.ES256 == jwtSetting.getAlgorithm()
+                ? SigningKey.fromKeyStore(keyStore, "storepwd", jwtSetting.getEcKeyAlias(), "keypwd") : defaultKey;
 
-        return converter;
+        return new JwtKeyRing(defaultKey, keyStoreKey, jwtSetting.getRotationInterval(), jwtSetting.getKeyRetention());
     }
 
     @Bean
-    public TokenEnhancer tokenEnhancer(JwtAccessTokenConverter jwtAccessTokenConverter) {
+    public JwtAccessTokenConverter jwtAccessTokenConverter() throws GeneralSecurityException {
+        return new KeyRingJwtAccessTokenConverter(jwtKeyRing());
+    }
+
+    /**
+     * 自定义claims、JWT签名和审计记录，依赖通过参数注入，本类自身注入了TokenEnhancer，创建时字段可能还没有赋值
+     *
+     * @param jwtAccessTokenConverter
+     * @param asyncAuditWriter
+     * @return
+     */
+    @Bean
+    public TokenEnhancer tokenEnhancer(JwtAccessTokenConverter jwtAccessTokenConverter,
+                                       AsyncAuditWriter asyncAuditWriter) {
         TokenEnhancerChain tokenEnhancerChain = new TokenEnhancerChain();
         List<TokenEnhancer> tokenEnhancerList = new ArrayList<>();
 
@@ -95,6 +182,8 @@ public class Oauth2ServerConfiguration extends AuthorizationServerConfigurerAdap
         });
 
         tokenEnhancerList.add(jwtAccessTokenConverter);
+        // 记录签发和刷新的token，需要在生成jti之后
+        tokenEnhancerList.add(new AuditingTokenEnhancer(asyncAuditWriter));
         tokenEnhancerChain.setTokenEnhancers(tokenEnhancerList);
 
         return tokenEnhancerChain;
@@ -106,36 +195,104 @@ public class Oauth2ServerConfiguration extends AuthorizationServerConfigurerAdap
      * @return
      */
     @Bean
-    public TokenStore jwtTokenStore() {
+    public TokenStore jwtTokenStore() throws GeneralSecurityException {
         return new JwtTokenStore(jwtAccessTokenConverter());
     }
 
+    /**
+     * 带本地缓存的client信息查询服务，实际数据仍然来自oauth_client_details表
+     *
+     * @return
+     */
+    @Bean
+    public CachingClientDetailsService cachingClientDetailsService() {
+        return new CachingClientDetailsService(new JdbcClientDetailsService(dataSource),
+                clientCacheSetting.getMaximumSize(),
+                clientCacheSetting.getExpireAfterWrite(),
+                clientCacheSetting.getRefreshAfterWrite(),
+                clientCacheSetting.getNegativeTtl());
+    }
+
+    @Bean
+    public ClientDetailsCacheEndpoint clientDetailsCacheEndpoint() {
+        return new ClientDetailsCacheEndpoint(cachingClientDetailsService());
+    }
+
+    /**
+     * client_secret校验结果的短期缓存
+     *
+     * @return
+     */
+    @Bean
+    public ClientSecretCache clientSecretCache() {
+        return new ClientSecretCache(clientSecretCacheSetting.getMaximumSize(), clientSecretCacheSetting.getTtl());
+    }
+
+    /**
+     * 从数据库加载用户信息，并在本地缓存
+     *
+     * @return
+     */
+    @Bean
+    public CachingUserDetailsService userDetailsService() {
+        return new CachingUserDetailsService(new JdbcUserDetailsService(dataSource),
+                userCacheSetting.getMaximumSize(),
+                userCacheSetting.getTtl(),
+                userCacheSetting.getNegativeTtl());
+    }
+
+    @Bean
+    public UserCacheEndpoint userCacheEndpoint() {
+        return new UserCacheEndpoint(userDetailsService());
+    }
+
+    /**
+     * 已撤销token的记录，以布隆过滤器加增量列表的形式下发给资源服务器
+     *
+     * @return
+     */
+    @Bean
+    public TokenRevocationService tokenRevocationService() {
+        return new TokenRevocationService(dataSource,
+                revocationSetting.getSyncInterval(),
+                revocationSetting.getRebuildInterval(),
+                revocationSetting.getMaxDelta(),
+                revocationSetting.getFalsePositiveRate());
+    }
+
+    /**
+     * token内省，验签结果缓存到token过期
+     *
+     * @return
+     * @throws GeneralSecurityException
+     */
+    @Bean
+    public TokenIntrospectionService tokenIntrospectionService() throws GeneralSecurityException {
+        return new TokenIntrospectionService(jwtTokenStore(), tokenRevocationService(),
+                introspectionSetting.getMaximumSize(),
+                introspectionSetting.getMaximumTtl(),
+                introspectionSetting.getNegativeTtl(),
+                meterRegistry);
+    }
+
+    /**
+     * 授权码模式的授权码存储，多节点部署时使用JDBC存储
+     *
+     * @return
+     */
     @Bean
-    public UserDetailsService userDetailsService() throws Exception {
-        return username -> {
-            List<GrantedAuthority> grantedAuthorities = new ArrayList<>();
-            // 角色： 以ROLE_做为前缀
-            grantedAuthorities.add(new StringGrantedAuthority("ROLE_ADMIN"));
-            grantedAuthorities.add(new StringGrantedAuthority("ROLE_USER"));
-            // 权限用冒号进行分隔，表示层级关系
-            grantedAuthorities.add(new StringGrantedAuthority("USER:DEL"));
-
-            return new org.springframework.security.core.userdetails.User(
-                    // 用户名
-                    "admin",
-                    // 密码
-                    "$2a$10$CtVeDT1V7cFu9gby4bEu.uuPnKxhqI9H7ScRRJM/EzacEKdgxTS7S",
-                    // 是否可用
-                    true,
-                    // 是否过期
-                    true,
-                    // 证书不过期为true
-                    true,
-                    // 账户未锁定为true
-                    true,
-                    // 权限列表
-                    grantedAuthorities);
-        };
+    public ExpiringAuthorizationCodeServices authorizationCodeServices() {
+        if (AuthorizationCodeSetting.Store.JDBC == authorizationCodeSetting.getStore()) {
+            return new JdbcExpiringAuthorizationCodeServices(dataSource,
+                    authorizationCodeSetting.getTtl(),
+                    authorizationCodeSetting.getCleanupInterval());
+        }
+
+        int shards = authorizationCodeSetting.getShards() > 0
+                ? authorizationCodeSetting.getShards() : Runtime.getRuntime().availableProcessors() * 4;
+
+        return new StripedInMemoryAuthorizationCodeServices(authorizationCodeSetting.getTtl(), shards,
+                authorizationCodeSetting.getTickDuration());
     }
 
     /**
@@ -146,7 +303,9 @@ public class Oauth2ServerConfiguration extends AuthorizationServerConfigurerAdap
      */
     @Override
     public void configure(AuthorizationServerSecurityConfigurer security) throws Exception {
-        security.allowFormAuthenticationForClients();
+        security.allowFormAuthenticationForClients()
+                // client_secret使用BCrypt校验，校验成功的结果短期缓存
+                .passwordEncoder(clientSecretCache().wrap(passwordEncoder));
     }
 
     /**
@@ -157,7 +316,7 @@ public class Oauth2ServerConfiguration extends AuthorizationServerConfigurerAdap
      */
     @Override
     public void configure(ClientDetailsServiceConfigurer clients) throws Exception {
-        clients.jdbc(dataSource);
+        clients.withClientDetails(cachingClientDetailsService());
     }
 
     /**
@@ -172,62 +331,204 @@ public class Oauth2ServerConfiguration extends AuthorizationServerConfigurerAdap
                 .tokenStore(jwtTokenStore())
                 .userDetailsService(userDetailsService())
                 // 用于Oauth2的密码模式，authenticationManager用于对传入的用户信息进行认证
-                .authenticationManager(authenticationManager)
+                .authenticationManager(new AuditingAuthenticationManager(authenticationManager, asyncAuditWriter))
                 .tokenEnhancer(tokenEnhancer)
+                .authorizationCodeServices(authorizationCodeServices())
+                // 超时和拒绝转换为错误响应之前记录为过载信号
+                .exceptionTranslator(new OverloadMarkingExceptionTranslator())
                 .allowedTokenEndpointRequestMethods(HttpMethod.GET, HttpMethod.POST);
+
+        // client_credentials模式复用仍然有效的token
+        if (tokenReuseSetting.isEnabled()) {
+            endpoints.tokenServices(clientCredentialsReusingTokenServices());
+        }
+    }
+
+    /**
+     * 与endpoints默认创建的DefaultTokenServices配置一致，只是额外复用client_credentials模式下仍然有效的token
+     *
+     * @return
+     * @throws Exception
+     */
+    private ClientCredentialsReusingTokenServices clientCredentialsReusingTokenServices() throws Exception {
+        ClientCredentialsReusingTokenServices tokenServices = new ClientCredentialsReusingTokenServices(
+                tokenReuseSetting.getMaximumSize(), tokenReuseSetting.getMinRemainingRatio(),
+                tokenRevocationService(), meterRegistry);
+        // client信息变化后不再复用按旧信息签发的token
+        cachingClientDetailsService().addEvictionListener(tokenServices);
+
+        tokenServices.setTokenStore(jwtTokenStore());
+        tokenServices.setSupportRefreshToken(true);
+        tokenServices.setClientDetailsService(cachingClientDetailsService());
+        tokenServices.setTokenEnhancer(tokenEnhancer);
+
+        // refresh_token模式下重新加载用户信息
+        PreAuthenticatedAuthenticationProvider provider = new PreAuthenticatedAuthenticationProvider();
+        provider.setPreAuthenticatedUserDetailsService(new UserDetailsByNameServiceWrapper<>(userDetailsService()));
+        tokenServices.setAuthenticationManager(new ProviderManager(Collections.singletonList(provider)));
+
+        tokenServices.afterPropertiesSet();
+
+        return tokenServices;
     }
 
-    private static class StringGrantedAuthority implements GrantedAuthority {
+    @ConfigurationProperties(prefix = "auth-server.client-cache")
+    @Data
+    public static class ClientCacheSetting {
+        /**
+         * 缓存的最大条目数
+         */
+        private long maximumSize = 1000;
+        /**
+         * 条目写入后的过期时间(秒)，数据库不可用时旧信息最多使用这么久
+         */
+        private long expireAfterWrite = 600;
+        /**
+         * 条目写入后开始后台刷新的时间(秒)，也是直接在数据库中删除或修改的client按旧信息认证的最长时间
+         */
+        private long refreshAfterWrite = 60;
+        /**
+         * 不存在的client的缓存时间(秒)
+         */
+        private long negativeTtl = 10;
+    }
 
-        private String authorityCode;
+    @ConfigurationProperties(prefix = "auth-server.client-secret-cache")
+    @Data
+    public static class ClientSecretCacheSetting {
+        /**
+         * 缓存的最大条目数
+         */
+        private long maximumSize = 1000;
+        /**
+         * 校验结果的缓存时间(秒)
+         */
+        private long ttl = 300;
+    }
 
-        public StringGrantedAuthority(String authorityCode) {
-            Assert.hasText(authorityCode, "A granted authority textual representation is required");
-            this.authorityCode = authorityCode;
-        }
+    @ConfigurationProperties(prefix = "auth-server.token-reuse")
+    @Data
+    public static class TokenReuseSetting {
+        /**
+         * client_credentials模式是否复用仍然有效的token
+         */
+        private boolean enabled = false;
+        /**
+         * 缓存的最大条目数
+         */
+        private long maximumSize = 10000;
+        /**
+         * 剩余有效期占总有效期的比例大于该值时复用token
+         */
+        private double minRemainingRatio = 0.5;
+    }
 
-        @Override
-        public String getAuthority() {
-            return authorityCode;
-        }
+    @ConfigurationProperties(prefix = "auth-server.user-cache")
+    @Data
+    public static class UserCacheSetting {
+        /**
+         * 缓存的最大条目数
+         */
+        private long maximumSize = 10000;
+        /**
+         * 用户信息的缓存时间(秒)
+         */
+        private long ttl = 300;
+        /**
+         * 不存在的用户名的缓存时间(秒)
+         */
+        private long negativeTtl = 30;
     }
 
-    /*@Bean
-    public UserDetailsService userDetailsService(IUserService userService) {
-        return username -> {
-            if (StringUtils.isEmpty(username)) {
-                throw new UsernameNotFoundException("UserName is empty!");
-            }
+    @ConfigurationProperties(prefix = "auth-server.revocation")
+    @Data
+    public static class RevocationSetting {
+        /**
+         * 从oauth_revoked_token表同步的间隔(秒)
+         */
+        private long syncInterval = 5;
+        /**
+         * 重新生成布隆过滤器基线的间隔(秒)
+         */
+        private long rebuildInterval = 600;
+        /**
+         * 基线编号的步长：版本号每跨过maxDelta的倍数重新生成基线，增量最多约maxDelta条
+         */
+        private int maxDelta = 10000;
+        /**
+         * 布隆过滤器的误报率，误报时资源服务器需要向auth-server确认
+         */
+        private double falsePositiveRate = 0.001;
+    }
 
-            User user = userService.getByName(username);
+    @ConfigurationProperties(prefix = "auth-server.introspection")
+    @Data
+    public static class IntrospectionSetting {
+        /**
+         * 验签结果缓存的最大条目数
+         */
+        private long maximumSize = 100000;
+        /**
+         * 有效token的最长缓存时间(秒)，未到该时间的token缓存到过期为止
+         */
+        private long maximumTtl = 3600;
+        /**
+         * 无效token的缓存时间(秒)
+         */
+        private long negativeTtl = 60;
+        /**
+         * 批量内省一次最多包含的token数
+         */
+        private int maxBatchSize = 100;
+    }
 
-            // 用户名不存在
-            if (user == null) {
-                throw new UsernameNotFoundException("UserName " + username + " not found!");
-            }
+    @ConfigurationProperties(prefix = "auth-server.authorization-code")
+    @Data
+    public static class AuthorizationCodeSetting {
+        /**
+         * 授权码存储：MEMORY(单节点)、JDBC(oauth_code表，多节点共享)
+         */
+        private Store store = Store.MEMORY;
+        /**
+         * 授权码的有效期(秒)
+         */
+        private long ttl = 300;
+        /**
+         * 内存存储的分段数，小于等于0时使用CPU核数的4倍
+         */
+        private int shards = 0;
+        /**
+         * 内存存储过期时间轮每个槽的时长(毫秒)
+         */
+        private long tickDuration = 1000;
+        /**
+         * JDBC存储删除过期授权码的间隔(秒)
+         */
+        private long cleanupInterval = 60;
+
+        public enum Store {
+            MEMORY, JDBC
+        }
+    }
 
-            List<GrantedAuthority> grantedAuthorities = new ArrayList<>();
-            // 角色： 以ROLE_做为前缀
-            grantedAuthorities.add(new StringGrantedAuthority("ROLE_ADMIN"));
-            grantedAuthorities.add(new StringGrantedAuthority("ROLE_USER"));
-            // 权限用冒号进行分隔，表示层级关系
-            grantedAuthorities.add(new StringGrantedAuthority("USER:DEL"));
-
-            return new org.springframework.security.core.userdetails.User(
-                    // 用户名
-                    user.getName(),
-                    // 密码
-                    user.getPassword(),
-                    // 是否可用
-                    true,
-                    // 是否过期
-                    true,
-                    // 证书不过期为true
-                    true,
-                    // 账户未锁定为true
-                    true,
-                    // 权限列表
-                    grantedAuthorities);
-        };
-    }*/
+    @ConfigurationProperties(prefix = "auth-server.jwt")
+    @Data
+    public static class JwtSetting {
+        /**
+         * 签名算法：RS256、ES256
+         */
+        private JwsAlgorithm algorithm = JwsAlgorithm.RS256;
+        /**
+         * ES256签名使用的证书库中P-256密钥的名称
+         */
+        private String ecKeyAlias = "authServerEc";
+        /**
+         * 密钥轮换间隔(秒)，小于等于0时不轮换
+         */
+        private long rotationInterval = 0;
+        /**
+         * 轮换下来的密钥继续用于验签的时间(秒)，应不小于refresh token的有效期
+         */
+        private long keyRetention = 2592000;
+    }
 }
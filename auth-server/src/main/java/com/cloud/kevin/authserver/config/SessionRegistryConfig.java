@@ -0,0 +1,97 @@
+package com.cloud.kevin.authserver.config;
+
+import com.cloud.kevin.authserver.session.AbstractSessionRegistry;
+import com.cloud.kevin.authserver.session.RedisSessionRegistry;
+import com.cloud.kevin.authserver.session.StripedSessionRegistry;
+import lombok.Data;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import java.time.Duration;
+
+/**
+ * 同一用户并发登录控制使用的session注册表配置
+ *
+ * @author Kevin
+ */
+@Configuration
+@EnableConfigurationProperties(SessionRegistryConfig.SessionRegistrySetting.class)
+public class SessionRegistryConfig {
+
+    /**
+     * 单节点使用内存注册表，多节点部署时使用Redis注册表，所有节点共享同一用户的session上限
+     * Redis注册表按server.servlet.session.timeout判断宕机节点上残留的session是否仍然有效
+     *
+     * @param setting
+     * @param serverProperties
+     * @param connectionFactory
+     * @return
+     */
+    @Bean
+    public AbstractSessionRegistry sessionRegistry(SessionRegistrySetting setting, ServerProperties serverProperties,
+                                                   ObjectProvider<RedisConnectionFactory> connectionFactory) {
+        if (SessionRegistrySetting.Store.REDIS == setting.getStore()) {
+            Duration sessionTimeout = serverProperties.getServlet().getSession().getTimeout();
+            return new RedisSessionRegistry(connectionFactory.getObject(), setting.getMaximumSessions(),
+                    setting.getKeyPrefix(), setting.getSessionTtl(),
+                    null == sessionTimeout ? setting.getSessionTtl() : sessionTimeout.getSeconds(),
+                    setting.getLocalCacheTtl(), setting.getLocalCacheSize(), setting.getFlushInterval(),
+                    setting.getBatchSize());
+        }
+
+        int stripes = setting.getStripes() > 0
+                ? setting.getStripes() : Runtime.getRuntime().availableProcessors() * 4;
+
+        return new StripedSessionRegistry(setting.getMaximumSessions(), stripes);
+    }
+
+    @ConfigurationProperties(prefix = "auth-server.session-registry")
+    @Data
+    public static class SessionRegistrySetting {
+        /**
+         * session注册表：MEMORY(单节点)、REDIS(多节点共享，使用spring.redis的连接配置)
+         */
+        private Store store = Store.MEMORY;
+        /**
+         * 每个用户的最大session数，小于等于0时不限制
+         */
+        private int maximumSessions = 1;
+        /**
+         * 内存注册表的分段数，小于等于0时使用CPU核数的4倍
+         */
+        private int stripes = 0;
+        /**
+         * Redis key的前缀
+         */
+        private String keyPrefix = "auth:session:";
+        /**
+         * session在Redis中的保留时间(秒)，应与session超时时间一致
+         */
+        private long sessionTtl = 1800;
+        /**
+         * Redis注册表本地缓存的有效期(毫秒)
+         */
+        private long localCacheTtl = 1000;
+        /**
+         * Redis注册表本地缓存的最大条数
+         */
+        private long localCacheSize = 100000;
+        /**
+         * 最后访问时间和session销毁批量写入Redis的间隔(毫秒)
+         */
+        private long flushInterval = 200;
+        /**
+         * 每次批量写入最多包含的session数
+         */
+        private int batchSize = 500;
+
+        public enum Store {
+            MEMORY, REDIS
+        }
+    }
+}
@@ -1,13 +1,27 @@
 package com.cloud.kevin.authserver.config;
 
+import com.cloud.kevin.authserver.audit.AsyncAuditWriter;
+import com.cloud.kevin.authserver.audit.AuditingAuthenticationHandler;
+import com.cloud.kevin.authserver.crypto.OffloadingPasswordEncoder;
+import com.cloud.kevin.authserver.crypto.PasswordHashingExecutor;
+import com.cloud.kevin.authserver.session.AbstractSessionRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.builders.WebSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.authentication.SavedRequestAwareAuthenticationSuccessHandler;
+import org.springframework.security.web.authentication.SimpleUrlAuthenticationFailureHandler;
 import org.springframework.security.web.session.HttpSessionEventPublisher;
 
 /**
@@ -17,10 +31,30 @@ import org.springframework.security.web.session.HttpSessionEventPublisher;
  */
 @Configuration
 @EnableWebSecurity
+@EnableConfigurationProperties(WebSecurityConfiguration.PasswordHashingSetting.class)
 public class WebSecurityConfiguration extends WebSecurityConfigurerAdapter {
 
+    @Autowired
+    private PasswordHashingSetting passwordHashingSetting;
+
+    @Autowired
+    private AsyncAuditWriter asyncAuditWriter;
+
+    @Autowired
+    private SessionRegistryConfig.SessionRegistrySetting sessionRegistrySetting;
+
+    @Autowired
+    private AbstractSessionRegistry sessionRegistry;
+
     @Override
     protected void configure(HttpSecurity http) throws Exception {
+        // 登录成功和失败先记录审计事件，再按原来的方式跳转
+        SavedRequestAwareAuthenticationSuccessHandler successHandler =
+                new SavedRequestAwareAuthenticationSuccessHandler();
+        successHandler.setDefaultTargetUrl("/helloadmin");
+        AuditingAuthenticationHandler auditingHandler = new AuditingAuthenticationHandler(asyncAuditWriter, "uname",
+                successHandler, new SimpleUrlAuthenticationFailureHandler("/loginFailed.html"));
+
         // @formatter:off
         http
             /*
@@ -32,6 +66,9 @@ public class WebSecurityConfiguration extends WebSecurityConfigurerAdapter {
                 .and()
             // 鉴权规则定义
 			.authorizeRequests()
+                // 清除缓存等actuator写操作只允许管理员调用
+                .antMatchers(HttpMethod.POST, "/actuator/**").hasRole("ADMIN")
+                .antMatchers(HttpMethod.DELETE, "/actuator/**").hasRole("ADMIN")
                 .anyRequest().authenticated()
                 .and()
             // 表单登陆
@@ -42,16 +79,13 @@ public class WebSecurityConfiguration extends WebSecurityConfigurerAdapter {
                 .loginProcessingUrl("/loginAction")
                 // 登陆失败返回的页面
                 .failureUrl("/loginFailed.html")
-                .failureHandler((httpServletRequest, httpServletResponse, e) -> {
-                    System.out.printf("登陆失败！");
-                    System.out.println(e);
-                })
+                .failureHandler(auditingHandler)
                 // 自定义用户名参数名称, 未设置时默认为username
                 .usernameParameter("uname")
                 // 自定义密码参数名称, 未设置时默认为password
                 .passwordParameter("pwd")
-                // 验证成功后默认跳转的页面, 当alwaysUse为true时表示不管之前访问的是什么URL都统一跳转到该默认页面
-                .defaultSuccessUrl("/helloadmin", false)
+                // 验证成功后跳转到登录前访问的页面, 没有时跳转到/helloadmin
+                .successHandler(auditingHandler)
                 .and()
             // 注销登陆
             .logout()
@@ -71,8 +105,11 @@ public class WebSecurityConfiguration extends WebSecurityConfigurerAdapter {
                 .and()
             // session相关配置
             .sessionManagement()
-                // 同一个用户只能有一个session, 也就是说一个帐号只允许登陆一次，不允许多终端登陆
-                .maximumSessions(1)
+                // 同一个用户最多maximum-sessions个session, 默认为1, 也就是说一个帐号只允许登陆一次，不允许多终端登陆
+                .maximumSessions(sessionRegistrySetting.getMaximumSessions() > 0
+                        ? sessionRegistrySetting.getMaximumSessions() : -1)
+                    // 多节点部署时使用Redis注册表，所有节点共享session上限
+                    .sessionRegistry(sessionRegistry)
                     // 为true时不允许登陆并返回到登陆失败页面，为false时可以登陆，之前登陆的session将失效并跳转到expiredUrl设置的页面
                     .maxSessionsPreventsLogin(true)
                     // 当用户的session个数大于maximumSessions的限制时当前session被设置为无效，访问时跳转到expiredUrl设置的页面
@@ -95,7 +132,12 @@ public class WebSecurityConfiguration extends WebSecurityConfigurerAdapter {
         web.ignoring().antMatchers("/js/**",
                 "/css/**",
                 "/images/**",
-                "/**/favicon.ico");
+                "/**/favicon.ico",
+                // JWK Set公开发布，不需要经过安全过滤器
+                "/.well-known/jwks.json",
+                // 撤销列表供资源服务器下载
+                "/oauth/revocations",
+                "/oauth/revocations/*");
     }
 
     @Bean
@@ -105,13 +147,29 @@ public class WebSecurityConfiguration extends WebSecurityConfigurerAdapter {
     }
 
     /**
-     * 设置用户密码的加密方式为BCrypt加密
+     * 专用于密码哈希的有界线程池，限制同时进行的BCrypt计算数量
      *
+     * @param meterRegistry
      * @return
      */
     @Bean
-    public BCryptPasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder(10);
+    public PasswordHashingExecutor passwordHashingExecutor(MeterRegistry meterRegistry) {
+        int threads = passwordHashingSetting.getThreads() > 0
+                ? passwordHashingSetting.getThreads() : Runtime.getRuntime().availableProcessors();
+
+        return new PasswordHashingExecutor(threads, passwordHashingSetting.getQueueCapacity(),
+                passwordHashingSetting.getMaxWait(), meterRegistry);
+    }
+
+    /**
+     * 设置用户密码的加密方式为BCrypt加密，BCrypt计算在passwordHashingExecutor中执行
+     *
+     * @param passwordHashingExecutor
+     * @return
+     */
+    @Bean
+    public PasswordEncoder passwordEncoder(PasswordHashingExecutor passwordHashingExecutor) {
+        return new OffloadingPasswordEncoder(new BCryptPasswordEncoder(10), passwordHashingExecutor);
     }
 
     /**
@@ -123,4 +181,21 @@ public class WebSecurityConfiguration extends WebSecurityConfigurerAdapter {
     public HttpSessionEventPublisher httpSessionEventPublisher() {
         return new HttpSessionEventPublisher();
     }
+
+    @ConfigurationProperties(prefix = "auth-server.password-hashing")
+    @Data
+    public static class PasswordHashingSetting {
+        /**
+         * 执行哈希的线程数，小于等于0时使用CPU核数
+         */
+        private int threads = 0;
+        /**
+         * 排队的最大任务数，超出后立即拒绝
+         */
+        private int queueCapacity = 200;
+        /**
+         * 调用方等待结果的最长时间(毫秒)，超时后拒绝
+         */
+        private long maxWait = 2000;
+    }
 }
@@ -0,0 +1,47 @@
+package com.cloud.kevin.authserver.controller;
+
+import com.cloud.kevin.authserver.config.Oauth2ServerConfiguration.IntrospectionSetting;
+import com.cloud.kevin.authserver.token.TokenIntrospectionService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RFC 7662 token内省
+ * /oauth/introspect        表单参数token，返回单个结果
+ * /oauth/introspect/batch  JSON数组形式的多个token，按顺序返回结果数组，供网关等调用方合并多个请求的内省
+ *
+ * @author Kevin
+ */
+@RestController
+public class IntrospectionEndpoints {
+
+    private final TokenIntrospectionService tokenIntrospectionService;
+
+    private final IntrospectionSetting introspectionSetting;
+
+    public IntrospectionEndpoints(TokenIntrospectionService tokenIntrospectionService,
+                                  IntrospectionSetting introspectionSetting) {
+        this.tokenIntrospectionService = tokenIntrospectionService;
+        this.introspectionSetting = introspectionSetting;
+    }
+
+    @PostMapping("/oauth/introspect")
+    public Map<String, Object> introspect(@RequestParam("token") String token) {
+        return tokenIntrospectionService.introspect(token);
+    }
+
+    @PostMapping("/oauth/introspect/batch")
+    public ResponseEntity<List<Map<String, Object>>> introspect(@RequestBody List<String> tokens) {
+        if (tokens.size() > introspectionSetting.getMaxBatchSize()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ResponseEntity.ok(tokenIntrospectionService.introspect(tokens));
+    }
+}
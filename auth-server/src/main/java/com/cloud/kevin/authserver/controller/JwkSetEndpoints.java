@@ -0,0 +1,40 @@
+package com.cloud.kevin.authserver.controller;
+
+import com.cloud.kevin.authserver.jwt.JwtKeyRing;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 发布JWT验签公钥(JWK Set)，资源服务器按kid获取并缓存公钥，轮换密钥时不需要重新部署
+ *
+ * @author Kevin
+ */
+@RestController
+public class JwkSetEndpoints {
+
+    private final JwtKeyRing jwtKeyRing;
+
+    public JwkSetEndpoints(JwtKeyRing jwtKeyRing) {
+        this.jwtKeyRing = jwtKeyRing;
+    }
+
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<Map<String, Object>> jwkSet(WebRequest webRequest) {
+        String eTag = "\"" + jwtKeyRing.getActiveKey().getKid() + "-" + jwtKeyRing.getVersion() + "\"";
+
+        if (webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(5, TimeUnit.MINUTES).cachePublic())
+                .eTag(eTag)
+                .body(jwtKeyRing.getJwkSet());
+    }
+}
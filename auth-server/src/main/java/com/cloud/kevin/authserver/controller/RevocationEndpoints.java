@@ -0,0 +1,93 @@
+package com.cloud.kevin.authserver.controller;
+
+import com.cloud.kevin.authserver.audit.AsyncAuditWriter;
+import com.cloud.kevin.authserver.audit.AuditEvent;
+import com.cloud.kevin.authserver.revocation.TokenRevocationService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * token撤销
+ * 撤销需要登录，只能撤销自己的token，ROLE_ADMIN可以撤销任何token；撤销列表和单个jti的确认供资源服务器使用，公开访问。
+ *
+ * @author Kevin
+ */
+@RestController
+public class RevocationEndpoints {
+
+    private static final String ADMIN = "ROLE_ADMIN";
+
+    private final TokenRevocationService tokenRevocationService;
+
+    private final TokenStore tokenStore;
+
+    private final AsyncAuditWriter asyncAuditWriter;
+
+    public RevocationEndpoints(TokenRevocationService tokenRevocationService, TokenStore tokenStore,
+                               AsyncAuditWriter asyncAuditWriter) {
+        this.tokenRevocationService = tokenRevocationService;
+        this.tokenStore = tokenStore;
+        this.asyncAuditWriter = asyncAuditWriter;
+    }
+
+    @PostMapping("/oauth/revoke")
+    public ResponseEntity<Void> revoke(@RequestParam("token") String token) {
+        OAuth2AccessToken accessToken;
+        OAuth2Authentication owner;
+        try {
+            accessToken = tokenStore.readAccessToken(token);
+            owner = tokenStore.readAuthentication(accessToken);
+        } catch (InvalidTokenException e) {
+            // 无效的token无需撤销
+            return ResponseEntity.ok().build();
+        }
+
+        Authentication caller = SecurityContextHolder.getContext().getAuthentication();
+        if (!caller.getName().equals(owner.getName())
+                && !AuthorityUtils.authorityListToSet(caller.getAuthorities()).contains(ADMIN)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        Object jti = accessToken.getAdditionalInformation().get("jti");
+        if (null == jti || null == accessToken.getExpiration() || accessToken.isExpired()) {
+            return ResponseEntity.ok().build();
+        }
+        tokenRevocationService.revoke(jti.toString(), accessToken.getExpiration().getTime());
+        asyncAuditWriter.publish(new AuditEvent(AuditEvent.Type.TOKEN_REVOKED,
+                owner.isClientOnly() ? null : owner.getName(), owner.getOAuth2Request().getClientId(),
+                "jti=" + jti + ", revoked_by=" + caller.getName()));
+
+        return ResponseEntity.ok().build();
+    }
+
+    /**
+     * @param base  调用方持有的基线版本，与当前基线不一致时返回完整的布隆过滤器
+     * @param since 调用方已有的版本
+     * @return
+     */
+    @GetMapping("/oauth/revocations")
+    public Map<String, Object> revocations(@RequestParam(value = "base", required = false) Long base,
+                                           @RequestParam(value = "since", required = false) Long since) {
+        return tokenRevocationService.getRevocations(base, since);
+    }
+
+    @GetMapping("/oauth/revocations/{jti}")
+    public Map<String, Object> check(@PathVariable("jti") String jti) {
+        return Collections.singletonMap("revoked", tokenRevocationService.isRevoked(jti));
+    }
+}
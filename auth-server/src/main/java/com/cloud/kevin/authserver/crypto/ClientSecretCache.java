@@ -0,0 +1,111 @@
+package com.cloud.kevin.authserver.crypto;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * client_secret校验结果的短期缓存
+ * 机器客户端会反复使用相同的client_id和client_secret换取token，每次都做完整的BCrypt校验代价很高。
+ * 校验成功后以数据库中的密文(每个client唯一，修改secret后随之变化)为key，缓存明文secret的HMAC-SHA256摘要，
+ * HMAC密钥在进程启动时随机生成，缓存中不保存明文或可离线破解的摘要。
+ * 摘要比较使用常量时间的MessageDigest.isEqual；摘要不一致时仍然执行完整的BCrypt校验，
+ * 因此错误的secret始终要付出BCrypt的代价，不能借助缓存进行暴力破解。
+ *
+ * @author Kevin
+ */
+public class ClientSecretCache implements MeterBinder {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final Cache<String, byte[]> cache;
+
+    private final ThreadLocal<Mac> mac;
+
+    /**
+     * @param maximumSize 缓存的最大条目数
+     * @param ttl         校验结果的缓存时间(秒)
+     */
+    public ClientSecretCache(long maximumSize, long ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        SecretKeySpec keySpec = new SecretKeySpec(key, HMAC_ALGORITHM);
+
+        this.mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac instance = Mac.getInstance(HMAC_ALGORITHM);
+                instance.init(keySpec);
+                return instance;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(HMAC_ALGORITHM + " is not supported", e);
+            }
+        });
+    }
+
+    /**
+     * 包装用于校验client_secret的PasswordEncoder
+     *
+     * @param delegate
+     * @return
+     */
+    public PasswordEncoder wrap(PasswordEncoder delegate) {
+        return new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                return delegate.encode(rawPassword);
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                return ClientSecretCache.this.matches(rawPassword, encodedPassword, delegate);
+            }
+        };
+    }
+
+    private boolean matches(CharSequence rawPassword, String encodedPassword, PasswordEncoder delegate) {
+        if (null == rawPassword || null == encodedPassword || encodedPassword.isEmpty()) {
+            return delegate.matches(rawPassword, encodedPassword);
+        }
+
+        byte[] digest = digest(rawPassword);
+        byte[] cached = cache.getIfPresent(encodedPassword);
+
+        if (null != cached && MessageDigest.isEqual(cached, digest)) {
+            return true;
+        }
+
+        boolean matched = delegate.matches(rawPassword, encodedPassword);
+        if (matched) {
+            cache.put(encodedPassword, digest);
+        }
+
+        return matched;
+    }
+
+    private byte[] digest(CharSequence rawPassword) {
+        return mac.get().doFinal(rawPassword.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new CaffeineCacheMetrics(cache, "clientSecret", Tags.empty()).bindTo(registry);
+    }
+}
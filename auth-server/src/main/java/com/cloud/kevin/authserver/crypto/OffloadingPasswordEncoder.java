@@ -0,0 +1,30 @@
+package com.cloud.kevin.authserver.crypto;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * 在{@link PasswordHashingExecutor}中执行实际编码和校验的PasswordEncoder
+ *
+ * @author Kevin
+ */
+public class OffloadingPasswordEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder delegate;
+
+    private final PasswordHashingExecutor executor;
+
+    public OffloadingPasswordEncoder(PasswordEncoder delegate, PasswordHashingExecutor executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return executor.execute(() -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return executor.execute(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+}
@@ -0,0 +1,122 @@
+package com.cloud.kevin.authserver.crypto;
+
+import com.cloud.kevin.authserver.limit.ConcurrencyLimitFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.security.authentication.AuthenticationServiceException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 专用于密码哈希(BCrypt)的有界线程池
+ * BCrypt是纯CPU计算，同时执行的数量超过CPU核数只会让所有请求一起变慢；
+ * 这里把并发数限制在threads个，多出的请求在有界队列中排队，队列已满或排队超过maxWait时立即拒绝，而不是占满所有Tomcat线程。
+ * 拒绝会被转换为401响应，所以同时把请求标记为过载，供并发限制缩小上限。
+ *
+ * @author Kevin
+ */
+public class PasswordHashingExecutor implements DisposableBean {
+
+    private final ThreadPoolExecutor executor;
+
+    private final long maxWait;
+
+    private final Timer queueTimer;
+
+    private final Timer executionTimer;
+
+    private final Counter rejectedCounter;
+
+    /**
+     * @param threads       执行哈希的线程数
+     * @param queueCapacity 排队的最大任务数
+     * @param maxWait       调用方等待结果的最长时间(毫秒)
+     * @param meterRegistry
+     */
+    public PasswordHashingExecutor(int threads, int queueCapacity, long maxWait, MeterRegistry meterRegistry) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue, runnable -> {
+            Thread thread = new Thread(runnable, "password-hashing-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.maxWait = maxWait;
+
+        this.queueTimer = Timer.builder("auth.password.hashing.queue")
+                .description("Time password hashing tasks spend waiting in the queue")
+                .register(meterRegistry);
+        this.executionTimer = Timer.builder("auth.password.hashing.execution")
+                .description("Time spent hashing or matching passwords")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("auth.password.hashing.rejected")
+                .description("Password hashing tasks rejected because the queue was full or the wait timed out")
+                .register(meterRegistry);
+        meterRegistry.gauge("auth.password.hashing.queue.size", queue, BlockingQueue::size);
+        meterRegistry.gauge("auth.password.hashing.active", executor, ThreadPoolExecutor::getActiveCount);
+    }
+
+    /**
+     * 在哈希线程池中执行任务，并等待执行结果
+     *
+     * @param task
+     * @param <T>
+     * @return
+     * @throws PasswordHashingRejectedException 队列已满或等待超时
+     */
+    public <T> T execute(Callable<T> task) {
+        long submittedAt = System.nanoTime();
+        Future<T> future;
+
+        try {
+            future = executor.submit(() -> {
+                long startedAt = System.nanoTime();
+                queueTimer.record(startedAt - submittedAt, TimeUnit.NANOSECONDS);
+                try {
+                    return task.call();
+                } finally {
+                    executionTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            ConcurrencyLimitFilter.markDropped();
+            throw new PasswordHashingRejectedException("Password hashing queue is full");
+        }
+
+        try {
+            return future.get(maxWait, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejectedCounter.increment();
+            ConcurrencyLimitFilter.markDropped();
+            throw new PasswordHashingRejectedException("Password hashing timed out after " + maxWait + "ms");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException("Interrupted while waiting for password hashing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new AuthenticationServiceException("Password hashing failed", e.getCause());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,15 @@
+package com.cloud.kevin.authserver.crypto;
+
+import org.springframework.security.authentication.AuthenticationServiceException;
+
+/**
+ * 密码哈希线程池已满或排队超时，请求被拒绝
+ *
+ * @author Kevin
+ */
+public class PasswordHashingRejectedException extends AuthenticationServiceException {
+
+    public PasswordHashingRejectedException(String msg) {
+        super(msg);
+    }
+}
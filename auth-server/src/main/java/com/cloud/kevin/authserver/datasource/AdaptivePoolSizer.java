@@ -0,0 +1,205 @@
+package com.cloud.kevin.authserver.datasource;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按获取连接的等待时间和SQL执行时间，在[minActive, maxActive]范围内调整连接池的maxActive
+ * 每秒采样一次借出的连接数和等待线程数，每interval秒根据这段时间的数据调整一次：
+ * 1. SQL平均执行时间超过基线的latencyTolerance倍时，认为数据库已经饱和，更多连接只会在数据库端排队，缩小连接池
+ * 2. 否则获取连接的平均等待时间超过targetWait，或出现了等待线程时，扩大连接池
+ * 3. 既没有等待，借出连接数的峰值又不到maxActive的一半时，缩小连接池
+ * 每次调整当前值的1/5(至少1个)。基线取最近BASELINE_WINDOW个周期SQL平均执行时间的25分位数，
+ * 单个偶然偏低或偏高的周期不会改变基线，持续的变化在窗口滚动后才反映到基线上。
+ *
+ * @author Kevin
+ */
+@Slf4j
+public class AdaptivePoolSizer implements InitializingBean, DisposableBean {
+
+    /**
+     * 计算基线使用的周期数
+     */
+    private static final int BASELINE_WINDOW = 20;
+
+    private static final double BASELINE_PERCENTILE = 0.25;
+
+    /**
+     * 基线至少包含的周期数，不足时不判断数据库是否饱和
+     */
+    private static final int MIN_BASELINE_SAMPLES = 3;
+
+    private final DruidDataSource dataSource;
+
+    private final DruidMetricsFilter metricsFilter;
+
+    private final int minActive;
+
+    private final int maxActive;
+
+    private final long interval;
+
+    private final double targetWait;
+
+    private final double latencyTolerance;
+
+    private final int configuredMinIdle;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * 以下字段只在调度线程中访问
+     */
+    private DruidMetricsFilter.Snapshot lastSnapshot;
+
+    private final double[] latencyWindow = new double[BASELINE_WINDOW];
+
+    private int latencySamples;
+
+    private int peakActive;
+
+    private int peakWaiting;
+
+    private long ticks;
+
+    /**
+     * @param dataSource       被调整的连接池
+     * @param metricsFilter    提供等待时间和SQL执行时间的过滤器，需已加入连接池的过滤器中
+     * @param minActive        maxActive的下限
+     * @param maxActive        maxActive的上限
+     * @param interval         调整间隔(秒)，不小于1
+     * @param targetWait       获取连接的目标平均等待时间(毫秒)
+     * @param latencyTolerance SQL执行时间超过基线的倍数
+     */
+    public AdaptivePoolSizer(DruidDataSource dataSource, DruidMetricsFilter metricsFilter, int minActive,
+                             int maxActive, long interval, double targetWait, double latencyTolerance) {
+        Assert.isTrue(interval >= 1, "interval must be at least 1 second");
+        Assert.isTrue(minActive >= 1 && minActive <= maxActive, "minActive must be between 1 and maxActive");
+        this.dataSource = dataSource;
+        this.metricsFilter = metricsFilter;
+        this.minActive = minActive;
+        this.maxActive = maxActive;
+        this.interval = interval;
+        this.targetWait = targetWait;
+        this.latencyTolerance = latencyTolerance;
+        this.configuredMinIdle = dataSource.getMinIdle();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        lastSnapshot = metricsFilter.snapshot();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "druid-pool-sizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                tick();
+            } catch (Exception e) {
+                log.error("Druid pool sizing failed: ", e);
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    private void tick() {
+        peakActive = Math.max(peakActive, dataSource.getActiveCount());
+        peakWaiting = Math.max(peakWaiting, dataSource.getWaitThreadCount());
+
+        if (++ticks % interval == 0) {
+            adjust();
+            peakActive = 0;
+            peakWaiting = 0;
+        }
+    }
+
+    private void adjust() {
+        DruidMetricsFilter.Snapshot snapshot = metricsFilter.snapshot();
+        double meanWait = snapshot.meanAcquireMillis(lastSnapshot);
+        double latency = snapshot.meanExecuteMillis(lastSnapshot);
+        lastSnapshot = snapshot;
+
+        int current = dataSource.getMaxActive();
+        int target = nextMaxActive(current, meanWait, latency, peakActive, peakWaiting);
+
+        if (target != current) {
+            // minIdle不能超过maxActive，缩小时先调整minIdle，扩大时后调整
+            int minIdle = Math.min(configuredMinIdle, target);
+            if (target < current) {
+                dataSource.setMinIdle(minIdle);
+                dataSource.setMaxActive(target);
+            } else {
+                dataSource.setMaxActive(target);
+                dataSource.setMinIdle(minIdle);
+            }
+            log.info("Druid maxActive {} -> {} (mean wait {}ms, peak waiting {}, peak active {}, "
+                            + "sql latency {}ms, baseline {}ms)", current, target, String.format("%.2f", meanWait),
+                    peakWaiting, peakActive, String.format("%.2f", latency), String.format("%.2f", baselineLatency()));
+        }
+    }
+
+    /**
+     * 根据一个调整周期的数据计算新的maxActive，并把这个周期的SQL执行时间加入基线窗口
+     *
+     * @param current     当前的maxActive
+     * @param meanWait    获取连接的平均等待时间(毫秒)
+     * @param latency     SQL平均执行时间(毫秒)，周期内没有执行SQL时为-1
+     * @param peakActive  借出连接数的峰值
+     * @param peakWaiting 等待线程数的峰值
+     * @return
+     */
+    int nextMaxActive(int current, double meanWait, double latency, int peakActive, int peakWaiting) {
+        boolean databaseSaturated = false;
+        if (latency >= 0) {
+            // 与之前的周期比较，当前周期不参与基线的计算
+            databaseSaturated = latencySamples >= MIN_BASELINE_SAMPLES
+                    && latency > baselineLatency() * latencyTolerance;
+            latencyWindow[latencySamples % BASELINE_WINDOW] = latency;
+            latencySamples++;
+        }
+
+        int step = Math.max(1, current / 5);
+        int target = current;
+
+        if (databaseSaturated) {
+            target = current - step;
+        } else if (meanWait > targetWait || peakWaiting > 0) {
+            target = current + step;
+        } else if (peakActive < current / 2) {
+            target = Math.max(peakActive * 2, current - step);
+        }
+
+        return Math.max(minActive, Math.min(maxActive, target));
+    }
+
+    /**
+     * 基线窗口中SQL执行时间的25分位数，窗口为空时返回0
+     */
+    double baselineLatency() {
+        int size = Math.min(latencySamples, BASELINE_WINDOW);
+        if (size == 0) {
+            return 0;
+        }
+
+        double[] sorted = Arrays.copyOf(latencyWindow, size);
+        Arrays.sort(sorted);
+
+        return sorted[(int) ((size - 1) * BASELINE_PERCENTILE)];
+    }
+
+    @Override
+    public void destroy() {
+        if (null != scheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+}
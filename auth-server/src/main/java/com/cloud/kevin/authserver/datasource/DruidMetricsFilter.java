@@ -0,0 +1,168 @@
+package com.cloud.kevin.authserver.datasource;
+
+import com.alibaba.druid.filter.FilterChain;
+import com.alibaba.druid.filter.FilterEventAdapter;
+import com.alibaba.druid.pool.DruidDataSource;
+import com.alibaba.druid.pool.DruidPooledConnection;
+import com.alibaba.druid.proxy.jdbc.ResultSetProxy;
+import com.alibaba.druid.proxy.jdbc.StatementProxy;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 记录获取连接的等待时间和SQL的执行时间的Druid过滤器
+ * 时间同时记录到Micrometer和累计计数中，累计计数供{@link AdaptivePoolSizer}按时间窗口计算平均值
+ *
+ * @author Kevin
+ */
+public class DruidMetricsFilter extends FilterEventAdapter {
+
+    /**
+     * 语句在调用线程上同步执行，用ThreadLocal记录开始时间
+     */
+    private final ThreadLocal<long[]> executeStart = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final Timer acquireTimer;
+
+    private final Timer executeTimer;
+
+    private final LongAdder acquireCount = new LongAdder();
+
+    private final LongAdder acquireNanos = new LongAdder();
+
+    private final LongAdder executeCount = new LongAdder();
+
+    private final LongAdder executeNanos = new LongAdder();
+
+    public DruidMetricsFilter(MeterRegistry meterRegistry) {
+        this.acquireTimer = Timer.builder("druid.connection.acquire")
+                .description("Time spent waiting for a connection from the pool")
+                .register(meterRegistry);
+        this.executeTimer = Timer.builder("druid.statement.execute")
+                .description("Time spent executing SQL statements")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public DruidPooledConnection dataSource_getConnection(FilterChain chain, DruidDataSource dataSource,
+                                                          long maxWaitMillis) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.dataSource_getConnection(chain, dataSource, maxWaitMillis);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            acquireTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            acquireCount.increment();
+            acquireNanos.add(elapsed);
+        }
+    }
+
+    @Override
+    protected void statementExecuteBefore(StatementProxy statement, String sql) {
+        begin();
+    }
+
+    @Override
+    protected void statementExecuteAfter(StatementProxy statement, String sql, boolean result) {
+        end();
+    }
+
+    @Override
+    protected void statementExecuteQueryBefore(StatementProxy statement, String sql) {
+        begin();
+    }
+
+    @Override
+    protected void statementExecuteQueryAfter(StatementProxy statement, String sql, ResultSetProxy resultSet) {
+        end();
+    }
+
+    @Override
+    protected void statementExecuteUpdateBefore(StatementProxy statement, String sql) {
+        begin();
+    }
+
+    @Override
+    protected void statementExecuteUpdateAfter(StatementProxy statement, String sql, int updateCount) {
+        end();
+    }
+
+    @Override
+    protected void statementExecuteBatchBefore(StatementProxy statement) {
+        begin();
+    }
+
+    @Override
+    protected void statementExecuteBatchAfter(StatementProxy statement, int[] result) {
+        end();
+    }
+
+    @Override
+    protected void statement_executeErrorAfter(StatementProxy statement, String sql, Throwable error) {
+        end();
+    }
+
+    private void begin() {
+        executeStart.get()[0] = System.nanoTime();
+    }
+
+    private void end() {
+        long[] start = executeStart.get();
+        if (start[0] == 0) {
+            return;
+        }
+
+        long elapsed = System.nanoTime() - start[0];
+        start[0] = 0;
+        executeTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        executeCount.increment();
+        executeNanos.add(elapsed);
+    }
+
+    /**
+     * 启动以来的累计值
+     *
+     * @return
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(acquireCount.sum(), acquireNanos.sum(), executeCount.sum(), executeNanos.sum());
+    }
+
+    public static final class Snapshot {
+
+        private final long acquireCount;
+
+        private final long acquireNanos;
+
+        private final long executeCount;
+
+        private final long executeNanos;
+
+        private Snapshot(long acquireCount, long acquireNanos, long executeCount, long executeNanos) {
+            this.acquireCount = acquireCount;
+            this.acquireNanos = acquireNanos;
+            this.executeCount = executeCount;
+            this.executeNanos = executeNanos;
+        }
+
+        /**
+         * 与之前的快照相比，平均每次获取连接的等待时间(毫秒)，期间没有获取连接时返回0
+         */
+        public double meanAcquireMillis(Snapshot previous) {
+            long count = acquireCount - previous.acquireCount;
+            return count == 0 ? 0 : (acquireNanos - previous.acquireNanos) / (double) count / 1e6;
+        }
+
+        /**
+         * 与之前的快照相比，平均每条SQL的执行时间(毫秒)，期间没有执行SQL时返回-1
+         */
+        public double meanExecuteMillis(Snapshot previous) {
+            long count = executeCount - previous.executeCount;
+            return count == 0 ? -1 : (executeNanos - previous.executeNanos) / (double) count / 1e6;
+        }
+    }
+}
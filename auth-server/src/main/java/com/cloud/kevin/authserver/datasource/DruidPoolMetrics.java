@@ -0,0 +1,55 @@
+package com.cloud.kevin.authserver.datasource;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 将Druid连接池的状态导出为Micrometer指标，不再只能通过/druid/*页面查看
+ *
+ * @author Kevin
+ */
+public class DruidPoolMetrics implements MeterBinder {
+
+    private final DruidDataSource dataSource;
+
+    public DruidPoolMetrics(DruidDataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("druid.pool.active", dataSource, DruidDataSource::getActiveCount)
+                .description("Connections currently borrowed from the pool")
+                .register(registry);
+        Gauge.builder("druid.pool.idle", dataSource, DruidDataSource::getPoolingCount)
+                .description("Idle connections in the pool")
+                .register(registry);
+        Gauge.builder("druid.pool.max.active", dataSource, DruidDataSource::getMaxActive)
+                .description("Current maxActive of the pool")
+                .register(registry);
+        Gauge.builder("druid.pool.waiting.threads", dataSource, DruidDataSource::getWaitThreadCount)
+                .description("Threads currently waiting for a connection")
+                .register(registry);
+        FunctionTimer.builder("druid.pool.wait", dataSource,
+                DruidDataSource::getNotEmptyWaitCount, DruidDataSource::getNotEmptyWaitMillis, TimeUnit.MILLISECONDS)
+                .description("Waits for a connection because the pool was empty")
+                .register(registry);
+        FunctionCounter.builder("druid.pool.connect.errors", dataSource, DruidDataSource::getConnectErrorCount)
+                .description("Failed attempts to create a physical connection")
+                .register(registry);
+        FunctionCounter.builder("druid.pool.pscache", dataSource, DruidDataSource::getCachedPreparedStatementHitCount)
+                .tag("result", "hit")
+                .description("PreparedStatement cache lookups")
+                .register(registry);
+        FunctionCounter.builder("druid.pool.pscache", dataSource, DruidDataSource::getCachedPreparedStatementMissCount)
+                .tag("result", "miss")
+                .description("PreparedStatement cache lookups")
+                .register(registry);
+    }
+}
@@ -0,0 +1,143 @@
+package com.cloud.kevin.authserver.jwt;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+
+/**
+ * 支持的JWT签名算法
+ * RS256: RSA 2048 + SHA-256
+ * ES256: ECDSA P-256 + SHA-256，签名速度远快于RSA且token更短
+ * 这里是规范副本，resource-server和service-gateway的token.JwsAlgorithm是其中验签部分(verify、concatToDer)的拷贝，修改时需要同步
+ *
+ * @author Kevin
+ */
+public enum JwsAlgorithm {
+
+    RS256("SHA256withRSA", "RSA", 0),
+
+    ES256("SHA256withECDSA", "EC", 32);
+
+    private final String jcaName;
+
+    private final String keyType;
+
+    /**
+     * ECDSA签名中r、s的字节长度，JWS要求以定长的 r||s 表示签名，而JCA输出的是DER编码
+     */
+    private final int ecCoordinateLength;
+
+    JwsAlgorithm(String jcaName, String keyType, int ecCoordinateLength) {
+        this.jcaName = jcaName;
+        this.keyType = keyType;
+        this.ecCoordinateLength = ecCoordinateLength;
+    }
+
+    public String getKeyType() {
+        return keyType;
+    }
+
+    public KeyPair generateKeyPair() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(keyType);
+
+        if (this == ES256) {
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+        } else {
+            generator.initialize(2048);
+        }
+
+        return generator.generateKeyPair();
+    }
+
+    public byte[] sign(PrivateKey privateKey, byte[] content) throws GeneralSecurityException {
+        Signature signature = Signature.getInstance(jcaName);
+        signature.initSign(privateKey);
+        signature.update(content);
+        byte[] signed = signature.sign();
+
+        return ecCoordinateLength > 0 ? derToConcat(signed, ecCoordinateLength) : signed;
+    }
+
+    public boolean verify(PublicKey publicKey, byte[] content, byte[] signed) throws GeneralSecurityException {
+        if (ecCoordinateLength > 0) {
+            if (signed.length != ecCoordinateLength * 2) {
+                return false;
+            }
+            signed = concatToDer(signed, ecCoordinateLength);
+        }
+
+        Signature signature = Signature.getInstance(jcaName);
+        signature.initVerify(publicKey);
+        signature.update(content);
+
+        return signature.verify(signed);
+    }
+
+    /**
+     * DER编码的 SEQUENCE { INTEGER r, INTEGER s } 转换为定长的 r||s
+     */
+    private static byte[] derToConcat(byte[] der, int length) {
+        // 跳过SEQUENCE的tag和长度(P-256签名长度小于128，只占一个字节)
+        int offset = 2;
+        if ((der[1] & 0x80) != 0) {
+            offset += der[1] & 0x7f;
+        }
+
+        int rLength = der[offset + 1];
+        BigInteger r = new BigInteger(1, Arrays.copyOfRange(der, offset + 2, offset + 2 + rLength));
+        offset += 2 + rLength;
+
+        int sLength = der[offset + 1];
+        BigInteger s = new BigInteger(1, Arrays.copyOfRange(der, offset + 2, offset + 2 + sLength));
+
+        byte[] concat = new byte[length * 2];
+        writeUnsigned(r, concat, 0, length);
+        writeUnsigned(s, concat, length, length);
+
+        return concat;
+    }
+
+    /**
+     * 定长的 r||s 转换为DER编码的 SEQUENCE { INTEGER r, INTEGER s }
+     */
+    private static byte[] concatToDer(byte[] concat, int length) {
+        byte[] r = new BigInteger(1, Arrays.copyOfRange(concat, 0, length)).toByteArray();
+        byte[] s = new BigInteger(1, Arrays.copyOfRange(concat, length, length * 2)).toByteArray();
+
+        byte[] der = new byte[6 + r.length + s.length];
+        der[0] = 0x30;
+        der[1] = (byte) (4 + r.length + s.length);
+        der[2] = 0x02;
+        der[3] = (byte) r.length;
+        System.arraycopy(r, 0, der, 4, r.length);
+        der[4 + r.length] = 0x02;
+        der[5 + r.length] = (byte) s.length;
+        System.arraycopy(s, 0, der, 6 + r.length, s.length);
+
+        return der;
+    }
+
+    static byte[] toUnsigned(BigInteger value, int length) {
+        byte[] bytes = new byte[length];
+        writeUnsigned(value, bytes, 0, length);
+
+        return bytes;
+    }
+
+    static byte[] toUnsigned(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+
+        return bytes[0] == 0 && bytes.length > 1 ? Arrays.copyOfRange(bytes, 1, bytes.length) : bytes;
+    }
+
+    private static void writeUnsigned(BigInteger value, byte[] target, int offset, int length) {
+        byte[] bytes = toUnsigned(value);
+        System.arraycopy(bytes, 0, target, offset + length - bytes.length, bytes.length);
+    }
+}
@@ -0,0 +1,175 @@
+package com.cloud.kevin.authserver.jwt;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JWT签名密钥环
+ * 最新的密钥用于签名，轮换下来的密钥在keyRetention秒内仍用于验签并通过JWKS发布，之后被移除。
+ * 证书库中的密钥始终保留：默认密钥用于验证不带kid的旧token，签名密钥在不轮换时用于签名，
+ * 两者都从证书库加载，所有节点相同，签名算法只改变使用哪个证书库密钥。
+ * 注意：轮换生成的密钥只存在于当前节点的内存中，多节点部署时需关闭轮换。
+ *
+ * @author Kevin
+ */
+@Slf4j
+public class JwtKeyRing implements InitializingBean, DisposableBean {
+
+    private final JwsAlgorithm algorithm;
+
+    private final SigningKey defaultKey;
+
+    private final SigningKey keyStoreKey;
+
+    private final long rotationInterval;
+
+    private final long keyRetention;
+
+    /**
+     * 按创建时间倒序排列，第一个为当前签名使用的密钥
+     */
+    private volatile List<SigningKey> keys;
+
+    private volatile Map<String, Object> jwkSet;
+
+    private volatile long version;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param defaultKey       证书库中的默认密钥
+     * @param keyStoreKey      证书库中用于签名的密钥，它的算法即签名算法，轮换生成的密钥使用相同算法；可以与默认密钥相同
+     * @param rotationInterval 密钥轮换间隔(秒)，小于等于0时不轮换
+     * @param keyRetention     轮换下来的密钥继续用于验签的时间(秒)，应不小于token的最长有效期
+     */
+    public JwtKeyRing(SigningKey defaultKey, SigningKey keyStoreKey, long rotationInterval, long keyRetention) {
+        this.algorithm = keyStoreKey.getAlgorithm();
+        this.defaultKey = defaultKey;
+        this.keyStoreKey = keyStoreKey;
+        this.rotationInterval = rotationInterval;
+        this.keyRetention = keyRetention;
+
+        publish(defaultKey == keyStoreKey
+                ? Collections.singletonList(defaultKey) : Arrays.asList(keyStoreKey, defaultKey));
+    }
+
+    public SigningKey getActiveKey() {
+        return keys.get(0);
+    }
+
+    /**
+     * 按kid查找密钥，kid为空时返回默认密钥
+     *
+     * @param kid
+     * @return 已移除或不存在时返回null
+     */
+    public SigningKey getKey(String kid) {
+        if (null == kid) {
+            return defaultKey;
+        }
+
+        for (SigningKey key : keys) {
+            if (key.getKid().equals(kid)) {
+                return key;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * RFC 7517 格式的JWK Set，每次密钥变化时重新生成
+     *
+     * @return
+     */
+    public Map<String, Object> getJwkSet() {
+        return jwkSet;
+    }
+
+    /**
+     * JWK Set的版本号，可用作ETag
+     *
+     * @return
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 生成新密钥用于签名，并移除超过保留时间的旧密钥
+     *
+     * @throws GeneralSecurityException
+     */
+    public synchronized void rotate() throws GeneralSecurityException {
+        SigningKey newKey = SigningKey.generate(algorithm);
+        long now = System.currentTimeMillis();
+
+        List<SigningKey> rotated = new ArrayList<>();
+        rotated.add(newKey);
+
+        // 每个旧密钥从它的后继密钥创建时开始计算保留时间
+        SigningKey successor = newKey;
+        for (SigningKey key : keys) {
+            if (key == defaultKey || key == keyStoreKey || now - successor.getCreatedAt() <= TimeUnit.SECONDS.toMillis(keyRetention)) {
+                rotated.add(key);
+            }
+            successor = key;
+        }
+
+        publish(rotated);
+        log.info("JWT signing key rotated, active kid: {}, algorithm: {}", newKey.getKid(), algorithm);
+    }
+
+    private void publish(List<SigningKey> newKeys) {
+        List<Map<String, Object>> jwks = new ArrayList<>();
+        for (SigningKey key : newKeys) {
+            jwks.add(key.toJwk());
+        }
+
+        Map<String, Object> newJwkSet = new LinkedHashMap<>();
+        newJwkSet.put("keys", Collections.unmodifiableList(jwks));
+
+        this.keys = Collections.unmodifiableList(newKeys);
+        this.jwkSet = Collections.unmodifiableMap(newJwkSet);
+        this.version++;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (rotationInterval <= 0) {
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jwt-key-rotation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                rotate();
+            } catch (Exception e) {
+                log.error("JWT signing key rotation failed: ", e);
+            }
+        }, rotationInterval, rotationInterval, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (null != scheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+}
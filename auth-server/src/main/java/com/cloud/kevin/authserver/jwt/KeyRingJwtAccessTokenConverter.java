@@ -0,0 +1,108 @@
+package com.cloud.kevin.authserver.jwt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 使用{@link JwtKeyRing}进行签名和验签的JwtAccessTokenConverter
+ * 签名时在JWT头中写入当前密钥的kid，验签时按kid查找对应的密钥，不带kid的token使用默认密钥验签
+ *
+ * @author Kevin
+ */
+public class KeyRingJwtAccessTokenConverter extends JwtAccessTokenConverter {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final JwtKeyRing keyRing;
+
+    public KeyRingJwtAccessTokenConverter(JwtKeyRing keyRing) {
+        this.keyRing = keyRing;
+    }
+
+    @Override
+    protected String encode(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+        SigningKey key = keyRing.getActiveKey();
+
+        try {
+            Map<String, Object> header = new LinkedHashMap<>();
+            header.put("alg", key.getAlgorithm().name());
+            header.put("typ", "JWT");
+            header.put("kid", key.getKid());
+
+            String signingInput = ENCODER.encodeToString(objectMapper.writeValueAsBytes(header)) + "."
+                    + ENCODER.encodeToString(objectMapper.writeValueAsBytes(
+                    getAccessTokenConverter().convertAccessToken(accessToken, authentication)));
+            byte[] signature = key.getAlgorithm().sign(key.getKeyPair().getPrivate(),
+                    signingInput.getBytes(StandardCharsets.US_ASCII));
+
+            return signingInput + "." + ENCODER.encodeToString(signature);
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot convert access token to JSON", e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Map<String, Object> decode(String token) {
+        try {
+            int headerEnd = token.indexOf('.');
+            int payloadEnd = token.indexOf('.', headerEnd + 1);
+            if (headerEnd < 0 || payloadEnd < 0 || token.indexOf('.', payloadEnd + 1) >= 0) {
+                throw new InvalidTokenException("JWT must have 3 parts");
+            }
+
+            Map<String, Object> header = objectMapper.readValue(DECODER.decode(token.substring(0, headerEnd)), Map.class);
+            SigningKey key = keyRing.getKey((String) header.get("kid"));
+            if (null == key) {
+                throw new InvalidTokenException("Unknown signing key: " + header.get("kid"));
+            }
+            if (!key.getAlgorithm().name().equals(header.get("alg"))) {
+                throw new InvalidTokenException("Signing algorithm mismatch: " + header.get("alg"));
+            }
+
+            byte[] signingInput = token.substring(0, payloadEnd).getBytes(StandardCharsets.US_ASCII);
+            byte[] signature = DECODER.decode(token.substring(payloadEnd + 1));
+            if (!key.getAlgorithm().verify(key.getKeyPair().getPublic(), signingInput, signature)) {
+                throw new InvalidTokenException("Invalid token signature");
+            }
+
+            Map<String, Object> claims = objectMapper.readValue(
+                    DECODER.decode(token.substring(headerEnd + 1, payloadEnd)), Map.class);
+            if (claims.get(EXP) instanceof Integer) {
+                claims.put(EXP, ((Integer) claims.get(EXP)).longValue());
+            }
+
+            return claims;
+        } catch (Exception e) {
+            throw new InvalidTokenException("Cannot convert access token to JSON", e);
+        }
+    }
+
+    /**
+     * /oauth/token_key 返回当前签名密钥的公钥
+     *
+     * @return
+     */
+    @Override
+    public Map<String, String> getKey() {
+        SigningKey key = keyRing.getActiveKey();
+        Map<String, String> result = new HashMap<>();
+        result.put("alg", key.getAlgorithm().name());
+        result.put("value", key.getPublicKeyPem());
+
+        return result;
+    }
+}
@@ -0,0 +1,146 @@
+package com.cloud.kevin.authserver.jwt;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 一个JWT签名密钥，以kid作为唯一标识
+ *
+ * @author Kevin
+ */
+public class SigningKey {
+
+    private final String kid;
+
+    private final JwsAlgorithm algorithm;
+
+    private final KeyPair keyPair;
+
+    private final long createdAt;
+
+    public SigningKey(String kid, JwsAlgorithm algorithm, KeyPair keyPair, long createdAt) {
+        this.kid = kid;
+        this.algorithm = algorithm;
+        this.keyPair = keyPair;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * 按指定算法生成一个新的密钥
+     *
+     * @param algorithm
+     * @return
+     * @throws GeneralSecurityException
+     */
+    public static SigningKey generate(JwsAlgorithm algorithm) throws GeneralSecurityException {
+        return new SigningKey(UUID.randomUUID().toString(), algorithm, algorithm.generateKeyPair(),
+                System.currentTimeMillis());
+    }
+
+    /**
+     * 从证书库中加载密钥，以证书名称作为kid，按密钥类型确定算法：RSA密钥为RS256，P-256的EC密钥为ES256
+     * (KeyStoreKeyFactory只支持RSA密钥)
+     *
+     * @param keyStore  证书库文件
+     * @param storePass 证书库的访问密码
+     * @param alias     证书的名称
+     * @param keyPass   证书的访问密码
+     * @return
+     */
+    public static SigningKey fromKeyStore(Resource keyStore, String storePass, String alias, String keyPass) {
+        try (InputStream in = keyStore.getInputStream()) {
+            KeyStore store = KeyStore.getInstance("jks");
+            store.load(in, storePass.toCharArray());
+
+            PrivateKey privateKey = (PrivateKey) store.getKey(alias, keyPass.toCharArray());
+            Certificate certificate = store.getCertificate(alias);
+            if (null == privateKey || null == certificate) {
+                throw new IllegalStateException("No key " + alias + " in " + keyStore);
+            }
+
+            PublicKey publicKey = certificate.getPublicKey();
+            JwsAlgorithm algorithm;
+            if (publicKey instanceof ECPublicKey) {
+                if (((ECPublicKey) publicKey).getParams().getCurve().getField().getFieldSize() != 256) {
+                    throw new IllegalStateException("EC key " + alias + " is not a P-256 key");
+                }
+                algorithm = JwsAlgorithm.ES256;
+            } else {
+                algorithm = JwsAlgorithm.RS256;
+            }
+
+            return new SigningKey(alias, algorithm, new KeyPair(publicKey, privateKey), System.currentTimeMillis());
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot load keys from store: " + keyStore, e);
+        }
+    }
+
+    public String getKid() {
+        return kid;
+    }
+
+    public JwsAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public KeyPair getKeyPair() {
+        return keyPair;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * PEM格式的公钥
+     *
+     * @return
+     */
+    public String getPublicKeyPem() {
+        return "-----BEGIN PUBLIC KEY-----\n"
+                + Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded())
+                + "\n-----END PUBLIC KEY-----";
+    }
+
+    /**
+     * RFC 7517 格式的公钥
+     *
+     * @return
+     */
+    public Map<String, Object> toJwk() {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        Map<String, Object> jwk = new LinkedHashMap<>();
+
+        jwk.put("kty", algorithm.getKeyType());
+        jwk.put("kid", kid);
+        jwk.put("use", "sig");
+        jwk.put("alg", algorithm.name());
+
+        if (keyPair.getPublic() instanceof ECPublicKey) {
+            ECPublicKey publicKey = (ECPublicKey) keyPair.getPublic();
+            jwk.put("crv", "P-256");
+            jwk.put("x", encoder.encodeToString(JwsAlgorithm.toUnsigned(publicKey.getW().getAffineX(), 32)));
+            jwk.put("y", encoder.encodeToString(JwsAlgorithm.toUnsigned(publicKey.getW().getAffineY(), 32)));
+        } else {
+            RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+            jwk.put("n", encoder.encodeToString(JwsAlgorithm.toUnsigned(publicKey.getModulus())));
+            jwk.put("e", encoder.encodeToString(JwsAlgorithm.toUnsigned(publicKey.getPublicExponent())));
+        }
+
+        return jwk;
+    }
+}
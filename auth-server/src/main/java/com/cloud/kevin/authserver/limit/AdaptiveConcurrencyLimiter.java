@@ -0,0 +1,131 @@
+package com.cloud.kevin.authserver.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于延迟梯度的自适应并发限制
+ * 以长期平均延迟作为基线，与最新的延迟样本相比较：延迟升高时按比例缩小并发上限，延迟正常且并发接近上限时逐步放大。
+ * newLimit = limit * clamp(tolerance * longRtt / shortRtt, 0.5, 1.0) + sqrt(limit)
+ * 请求失败或超时被视为过载信号，并发上限直接减半。
+ *
+ * @author Kevin
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    /**
+     * 长期平均延迟的样本窗口
+     */
+    private static final int LONG_WINDOW = 600;
+
+    /**
+     * 新计算出的上限所占的权重，用于平滑上限的变化
+     */
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double tolerance;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    private volatile double limit;
+
+    private double longRtt;
+
+    private long samples;
+
+    /**
+     * @param initialLimit 初始的并发上限
+     * @param minLimit     并发上限的最小值
+     * @param maxLimit     并发上限的最大值
+     * @param tolerance    允许最新延迟超过基线的倍数，超过后开始缩小上限
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * 尝试获取一个并发名额
+     *
+     * @return 获取成功返回true，此时必须调用{@link #onSuccess(long)}、{@link #onDropped()}或{@link #onIgnore()}之一归还
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 请求成功完成
+     *
+     * @param rttNanos 请求耗时(纳秒)
+     */
+    public void onSuccess(long rttNanos) {
+        int currentInflight = inflight.getAndDecrement();
+        update(rttNanos, currentInflight);
+    }
+
+    /**
+     * 请求失败或超时，视为过载
+     */
+    public void onDropped() {
+        inflight.decrementAndGet();
+
+        synchronized (this) {
+            limit = Math.max(minLimit, limit / 2);
+        }
+    }
+
+    /**
+     * 请求结果与负载无关(例如参数错误)，只归还名额
+     */
+    public void onIgnore() {
+        inflight.decrementAndGet();
+    }
+
+    private synchronized void update(long rttNanos, int currentInflight) {
+        double shortRtt = rttNanos;
+
+        if (samples++ == 0) {
+            longRtt = shortRtt;
+            return;
+        }
+
+        longRtt += (shortRtt - longRtt) / Math.min(samples, LONG_WINDOW);
+
+        // 长期延迟明显高于最新延迟时说明负载已经下降，加快基线的恢复
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+
+        // 并发远未达到上限时延迟不能说明上限是否合适，不调整
+        if (currentInflight < limit / 2) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / shortRtt));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+}
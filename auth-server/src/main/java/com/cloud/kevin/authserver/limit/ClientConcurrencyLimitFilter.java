@@ -0,0 +1,80 @@
+package com.cloud.kevin.authserver.limit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * /oauth/token上单个client的自适应并发限制，超过上限时返回429
+ * 在Spring Security过滤器之后执行，按已认证的client_id区分，未认证的请求中携带的client_id可以任意伪造，
+ * 用它作为key会让攻击者耗尽其他client的名额，所以认证之前只有{@link ConcurrencyLimitFilter}的全局限制。
+ *
+ * @author Kevin
+ */
+public class ClientConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private final Cache<String, AdaptiveConcurrencyLimiter> clientLimiters;
+
+    private final Supplier<AdaptiveConcurrencyLimiter> clientLimiterFactory;
+
+    private final Counter clientRejectedCounter;
+
+    /**
+     * @param clientLimiterFactory 为每个client_id创建独立的并发限制
+     * @param meterRegistry
+     */
+    public ClientConcurrencyLimitFilter(Supplier<AdaptiveConcurrencyLimiter> clientLimiterFactory,
+                                        MeterRegistry meterRegistry) {
+        this.clientLimiterFactory = clientLimiterFactory;
+        // 长时间没有请求的client不再保留并发状态
+        this.clientLimiters = Caffeine.newBuilder()
+                .maximumSize(10000)
+                .expireAfterAccess(10, TimeUnit.MINUTES)
+                .build();
+
+        Gauge.builder("auth.limiter.clients", clientLimiters, Cache::estimatedSize)
+                .register(meterRegistry);
+        this.clientRejectedCounter = Counter.builder("auth.limiter.rejected")
+                .tag("scope", "client")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (null == authentication || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        // token端点上认证通过的principal就是client
+        AdaptiveConcurrencyLimiter clientLimiter = clientLimiters.get(authentication.getName(),
+                key -> clientLimiterFactory.get());
+
+        if (!clientLimiter.tryAcquire()) {
+            clientRejectedCounter.increment();
+            ConcurrencyLimitFilter.reject(response, HttpStatus.TOO_MANY_REQUESTS,
+                    "Too many concurrent requests for this client");
+            return;
+        }
+
+        ConcurrencyLimitFilter.doFilterWithLimit(clientLimiter, request, response, filterChain);
+    }
+}
@@ -0,0 +1,141 @@
+package com.cloud.kevin.authserver.limit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * /oauth/token、/oauth/authorize的全局自适应并发限制
+ * 在Spring Security过滤器之前执行，超过全局并发上限时返回503，被拒绝的请求不会进入BCrypt校验和数据库查询，
+ * 从而在突发流量下保持尾延迟有界。此时client还没有认证，单个client的并发限制见{@link ClientConcurrencyLimitFilter}。
+ * <p>
+ * 只有超时和拒绝被视为过载并缩小上限：请求被标记为{@link #DROPPED_ATTRIBUTE}、链路中抛出超时或拒绝异常，或者返回503、504；
+ * 其他错误(包括500)与负载无关，只归还名额。
+ *
+ * @author Kevin
+ */
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    /**
+     * 请求因超时或拒绝而失败时设置的请求属性，值为Boolean.TRUE
+     */
+    public static final String DROPPED_ATTRIBUTE = ConcurrencyLimitFilter.class.getName() + ".DROPPED";
+
+    private final AdaptiveConcurrencyLimiter globalLimiter;
+
+    private final Counter globalRejectedCounter;
+
+    /**
+     * @param globalLimiter 所有请求共享的并发限制
+     * @param meterRegistry
+     */
+    public ConcurrencyLimitFilter(AdaptiveConcurrencyLimiter globalLimiter, MeterRegistry meterRegistry) {
+        this.globalLimiter = globalLimiter;
+
+        Gauge.builder("auth.limiter.limit", globalLimiter, AdaptiveConcurrencyLimiter::getLimit)
+                .tag("scope", "global")
+                .register(meterRegistry);
+        Gauge.builder("auth.limiter.inflight", globalLimiter, AdaptiveConcurrencyLimiter::getInflight)
+                .tag("scope", "global")
+                .register(meterRegistry);
+        this.globalRejectedCounter = Counter.builder("auth.limiter.rejected")
+                .tag("scope", "global")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (!globalLimiter.tryAcquire()) {
+            globalRejectedCounter.increment();
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, "Server is overloaded, please retry later");
+            return;
+        }
+
+        doFilterWithLimit(globalLimiter, request, response, filterChain);
+    }
+
+    /**
+     * 把当前请求标记为因超时或拒绝而失败，用于在异常被转换为响应之前记录过载信号；不在请求线程中时忽略
+     */
+    public static void markDropped() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (null != attributes) {
+            attributes.setAttribute(DROPPED_ATTRIBUTE, Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    /**
+     * 异常或它的cause是否为超时或拒绝
+     *
+     * @param e
+     * @return
+     */
+    public static boolean isOverload(Throwable e) {
+        for (Throwable cause = e; null != cause; cause = cause.getCause()) {
+            if (cause instanceof RejectedExecutionException || cause instanceof TimeoutException
+                    || cause instanceof SocketTimeoutException || cause instanceof SQLTimeoutException
+                    || cause instanceof QueryTimeoutException) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * 已获取limiter的名额，执行后续过滤器并按结果归还
+     */
+    static void doFilterWithLimit(AdaptiveConcurrencyLimiter limiter, HttpServletRequest request,
+                                  HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long startTime = System.nanoTime();
+        boolean failed = true;
+
+        try {
+            filterChain.doFilter(request, response);
+            failed = false;
+        } catch (IOException | ServletException | RuntimeException e) {
+            if (isOverload(e)) {
+                request.setAttribute(DROPPED_ATTRIBUTE, Boolean.TRUE);
+            }
+            throw e;
+        } finally {
+            int status = response.getStatus();
+            if (Boolean.TRUE.equals(request.getAttribute(DROPPED_ATTRIBUTE))
+                    || status == HttpStatus.SERVICE_UNAVAILABLE.value()
+                    || status == HttpStatus.GATEWAY_TIMEOUT.value()) {
+                limiter.onDropped();
+            } else if (failed || status == HttpStatus.TOO_MANY_REQUESTS.value()
+                    || status >= HttpStatus.INTERNAL_SERVER_ERROR.value()) {
+                limiter.onIgnore();
+            } else {
+                limiter.onSuccess(System.nanoTime() - startTime);
+            }
+        }
+    }
+
+    static void reject(HttpServletResponse response, HttpStatus status, String description) throws IOException {
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        response.getWriter().write("{\"error\":\"temporarily_unavailable\",\"error_description\":\"" + description + "\"}");
+    }
+}
@@ -0,0 +1,25 @@
+package com.cloud.kevin.authserver.limit;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.security.oauth2.provider.error.DefaultWebResponseExceptionTranslator;
+import org.springframework.security.oauth2.provider.error.WebResponseExceptionTranslator;
+
+/**
+ * token端点把异常转换为错误响应之前，把超时和拒绝记录为过载信号，供{@link ConcurrencyLimitFilter}缩小并发上限
+ *
+ * @author Kevin
+ */
+public class OverloadMarkingExceptionTranslator implements WebResponseExceptionTranslator<OAuth2Exception> {
+
+    private final WebResponseExceptionTranslator<OAuth2Exception> delegate = new DefaultWebResponseExceptionTranslator();
+
+    @Override
+    public ResponseEntity<OAuth2Exception> translate(Exception e) throws Exception {
+        if (ConcurrencyLimitFilter.isOverload(e)) {
+            ConcurrencyLimitFilter.markDropped();
+        }
+
+        return delegate.translate(e);
+    }
+}
@@ -0,0 +1,95 @@
+package com.cloud.kevin.authserver.revocation;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * 已撤销jti的布隆过滤器，随撤销列表一起下发给资源服务器
+ * 使用FNV-1a哈希加双重哈希生成k个位置，资源服务器上的实现必须与这里保持一致。
+ * 不存在漏报；误报率由位数和哈希次数决定，资源服务器遇到命中时再向auth-server确认。
+ *
+ * @author Kevin
+ */
+public final class BloomFilter {
+
+    private final long[] bits;
+
+    private final int hashes;
+
+    private BloomFilter(long[] bits, int hashes) {
+        this.bits = bits;
+        this.hashes = hashes;
+    }
+
+    /**
+     * @param expectedEntries   预计的条目数
+     * @param falsePositiveRate 期望的误报率
+     * @return
+     */
+    public static BloomFilter create(int expectedEntries, double falsePositiveRate) {
+        int entries = Math.max(1, expectedEntries);
+        long bitCount = (long) Math.ceil(-entries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (bitCount + 63) >>> 6);
+        int hashes = (int) Math.max(1, Math.round((double) words * 64 / entries * Math.log(2)));
+
+        return new BloomFilter(new long[words], hashes);
+    }
+
+    public void put(String value) {
+        long h1 = mix(fnv1a(value));
+        long h2 = mix(h1 ^ 0x9e3779b97f4a7c15L);
+        long bitCount = (long) bits.length << 6;
+        for (int i = 0; i < hashes; i++) {
+            long index = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            bits[(int) (index >>> 6)] |= 1L << index;
+        }
+    }
+
+    public boolean mightContain(String value) {
+        long h1 = mix(fnv1a(value));
+        long h2 = mix(h1 ^ 0x9e3779b97f4a7c15L);
+        long bitCount = (long) bits.length << 6;
+        for (int i = 0; i < hashes; i++) {
+            long index = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return 位图按大端序编码后的Base64
+     */
+    public String encodeBits() {
+        ByteBuffer buffer = ByteBuffer.allocate(bits.length * 8);
+        buffer.asLongBuffer().put(bits);
+
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    public int getHashes() {
+        return hashes;
+    }
+
+    private static long fnv1a(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash;
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+}
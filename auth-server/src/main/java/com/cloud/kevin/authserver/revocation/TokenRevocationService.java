@@ -0,0 +1,339 @@
+package com.cloud.kevin.authserver.revocation;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 撤销的token(按jti)及其下发
+ * 撤销记录保存在oauth_revoked_token表中，自增id即版本号，各auth-server节点定时从表中同步，版本号在节点之间一致。
+ * 下发的撤销列表由两部分组成：
+ * 1. 基线：以布隆过滤器的形式下发，包含生成时所有未过期的jti。基线的编号由数据决定：版本号向下取整为maxDelta的倍数，
+ * 同步到相同数据的节点编号相同，资源服务器在负载均衡后面轮流访问不同节点时不会反复下载布隆过滤器。
+ * 版本号跨过maxDelta的倍数时重新生成，另外每rebuildInterval用相同的编号重新生成一次以去掉过期的记录
+ * 2. 增量：编号或调用方版本之后的jti明文列表，回看SYNC_OVERLAP条
+ * 资源服务器持有相同base时只下载自己版本之后的增量。过期的记录在重新生成基线时从内存和表中删除。
+ *
+ * @author Kevin
+ */
+@Slf4j
+public class TokenRevocationService implements InitializingBean, DisposableBean, MeterBinder {
+
+    private static final String INSERT_SQL = "insert into oauth_revoked_token(jti, expires_at) values (?, ?)";
+
+    private static final String SELECT_SINCE_SQL = "select id, jti, expires_at from oauth_revoked_token "
+            + "where id > ? order by id limit ?";
+
+    private static final String DELETE_EXPIRED_SQL = "delete from oauth_revoked_token where expires_at < ? limit ?";
+
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * 自增id不保证按提交顺序可见，每次同步时回看最近的若干条；下发增量时同样回看，
+     * 迟到的记录即使id已被调用方的版本或基线编号越过，也会在下一次增量中送达
+     */
+    private static final long SYNC_OVERLAP = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final long syncInterval;
+
+    private final long rebuildInterval;
+
+    private final int maxDelta;
+
+    private final double falsePositiveRate;
+
+    /**
+     * 以下字段由this的锁保护
+     */
+    private final TreeMap<Long, Revocation> byId = new TreeMap<>();
+
+    /**
+     * 在this的锁内修改，isRevoked不加锁读取
+     */
+    private final Map<String, Revocation> byJti = new ConcurrentHashMap<>();
+
+    private long version;
+
+    private long lastRebuild;
+
+    private volatile Baseline baseline = new Baseline(0, BloomFilter.create(1, 0.5));
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param dataSource
+     * @param syncInterval      从表中同步的间隔(秒)
+     * @param rebuildInterval   重新生成基线的间隔(秒)
+     * @param maxDelta          基线编号的步长，版本号跨过它的倍数时重新生成基线
+     * @param falsePositiveRate 布隆过滤器的误报率
+     */
+    public TokenRevocationService(DataSource dataSource, long syncInterval, long rebuildInterval, int maxDelta,
+                                  double falsePositiveRate) {
+        Assert.isTrue(maxDelta > 0, "maxDelta must be positive");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.syncInterval = syncInterval;
+        this.rebuildInterval = TimeUnit.SECONDS.toMillis(rebuildInterval);
+        this.maxDelta = maxDelta;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        sync();
+        rebuild();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "token-revocation-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (Exception e) {
+                log.error("Token revocation sync failed: ", e);
+            }
+        }, syncInterval, syncInterval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 从表中同步，需要时重新生成基线并删除表中过期的记录
+     */
+    void refresh() {
+        sync();
+        if (needsRebuild()) {
+            rebuild();
+            deleteExpired();
+        }
+    }
+
+    /**
+     * 撤销一个token，本节点立即生效，其他节点在下次同步后生效
+     *
+     * @param jti
+     * @param expiresAt token的过期时间(毫秒)，之后不再需要记录
+     */
+    public void revoke(String jti, long expiresAt) {
+        try {
+            jdbcTemplate.update(INSERT_SQL, jti, new Timestamp(expiresAt));
+        } catch (DuplicateKeyException e) {
+            log.debug("Token {} is already revoked", jti);
+        }
+        sync();
+    }
+
+    /**
+     * 资源服务器的布隆过滤器命中时用于确认，每次内省也会调用，不加锁
+     *
+     * @param jti
+     * @return
+     */
+    public boolean isRevoked(String jti) {
+        Revocation revocation = byJti.get(jti);
+        return null != revocation && revocation.expiresAt > System.currentTimeMillis();
+    }
+
+    /**
+     * 撤销列表，base与当前基线一致且since不早于base时只返回增量
+     * 增量从since(或基线编号)之前SYNC_OVERLAP条开始，调用方会重复收到少量已有的jti
+     *
+     * @param base  调用方持有的基线版本
+     * @param since 调用方已有的版本
+     * @return
+     */
+    public Map<String, Object> getRevocations(Long base, Long since) {
+        Baseline current = baseline;
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("base", current.version);
+
+        long from = current.version;
+        if (null != base && base == current.version && null != since && since >= current.version) {
+            from = since;
+        } else {
+            Map<String, Object> bloom = new LinkedHashMap<>();
+            bloom.put("bits", current.encodedBits);
+            bloom.put("hashes", current.filter.getHashes());
+            result.put("bloom", bloom);
+        }
+
+        List<String> revoked = new ArrayList<>();
+        synchronized (this) {
+            result.put("version", Math.max(version, from));
+            for (Revocation revocation : byId.tailMap(from - SYNC_OVERLAP, false).values()) {
+                revoked.add(revocation.jti);
+            }
+        }
+        result.put("revoked", revoked);
+
+        return result;
+    }
+
+    private void sync() {
+        long from;
+        synchronized (this) {
+            from = Math.max(0, version - SYNC_OVERLAP);
+        }
+
+        List<Revocation> loaded;
+        do {
+            loaded = jdbcTemplate.query(SELECT_SINCE_SQL, (rs, rowNum) -> new Revocation(
+                    rs.getLong(1), rs.getString(2), rs.getTimestamp(3).getTime()), from, BATCH_SIZE);
+            if (loaded.isEmpty()) {
+                return;
+            }
+            from = loaded.get(loaded.size() - 1).id;
+
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                for (Revocation revocation : loaded) {
+                    // 已过期的记录可能刚从内存中去掉而表中尚未删除
+                    if (revocation.expiresAt <= now || byId.containsKey(revocation.id)) {
+                        continue;
+                    }
+                    if (revocation.id < version) {
+                        // 迟到的记录可能已被调用方的版本越过，靠下发增量时的回看送达
+                        log.info("Late revocation {} below version {}", revocation.id, version);
+                    }
+                    byId.put(revocation.id, revocation);
+                    byJti.put(revocation.jti, revocation);
+                    version = Math.max(version, revocation.id);
+                }
+            }
+        } while (loaded.size() == BATCH_SIZE);
+    }
+
+    private synchronized boolean needsRebuild() {
+        return baseVersion(version) != baseline.version
+                || System.currentTimeMillis() - lastRebuild >= rebuildInterval;
+    }
+
+    /**
+     * @param version
+     * @return 版本号对应的基线编号
+     */
+    private long baseVersion(long version) {
+        return version / maxDelta * maxDelta;
+    }
+
+    /**
+     * 去掉过期的记录，用当前所有记录生成新的基线
+     * 只在锁内复制jti，布隆过滤器在锁外生成，不阻塞同步和增量下发
+     */
+    private void rebuild() {
+        long now = System.currentTimeMillis();
+        List<String> jtis;
+        long currentVersion;
+        synchronized (this) {
+            Iterator<Revocation> iterator = byId.values().iterator();
+            while (iterator.hasNext()) {
+                Revocation revocation = iterator.next();
+                if (revocation.expiresAt <= now) {
+                    iterator.remove();
+                    byJti.remove(revocation.jti);
+                }
+            }
+
+            jtis = new ArrayList<>(byId.size());
+            for (Revocation revocation : byId.values()) {
+                jtis.add(revocation.jti);
+            }
+            currentVersion = version;
+        }
+
+        BloomFilter filter = BloomFilter.create(jtis.size(), falsePositiveRate);
+        for (String jti : jtis) {
+            filter.put(jti);
+        }
+        baseline = new Baseline(baseVersion(currentVersion), filter);
+        synchronized (this) {
+            lastRebuild = now;
+        }
+
+        log.info("Token revocation baseline {} rebuilt at version {}, {} entries", baseline.version, currentVersion,
+                jtis.size());
+    }
+
+    /**
+     * 分批删除表中过期的记录，避免一次删除过多行长时间持有锁
+     */
+    private void deleteExpired() {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        while (jdbcTemplate.update(DELETE_EXPIRED_SQL, now, BATCH_SIZE) == BATCH_SIZE) {
+            log.debug("Deleted {} expired revocations", BATCH_SIZE);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (null != scheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("token.revocation.entries", this, TokenRevocationService::size)
+                .register(registry);
+        Gauge.builder("token.revocation.version", this, TokenRevocationService::currentVersion)
+                .register(registry);
+    }
+
+    private synchronized int size() {
+        return byId.size();
+    }
+
+    private synchronized long currentVersion() {
+        return version;
+    }
+
+    private static final class Revocation {
+
+        private final long id;
+
+        private final String jti;
+
+        private final long expiresAt;
+
+        private Revocation(long id, String jti, long expiresAt) {
+            this.id = id;
+            this.jti = jti;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Baseline {
+
+        private final long version;
+
+        private final BloomFilter filter;
+
+        private final String encodedBits;
+
+        private Baseline(long version, BloomFilter filter) {
+            this.version = version;
+            this.filter = filter;
+            this.encodedBits = filter.encodeBits();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.cloud.kevin.authserver.session;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.ApplicationListener;
+import org.springframework.security.core.session.SessionDestroyedEvent;
+import org.springframework.security.core.session.SessionInformation;
+import org.springframework.security.core.session.SessionRegistry;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.web.authentication.session.SessionAuthenticationException;
+import org.springframework.util.Assert;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * session注册表的公共部分：按用户名索引session、注册时检查每个用户的session上限、处理session销毁事件
+ * ConcurrentSessionControlAuthenticationStrategy先查询session数再注册，两步之间没有锁，同一用户同时登录时可能都通过检查；
+ * 这里在注册时原子地再检查一次，超出上限时抛出SessionAuthenticationException，按登录失败处理。
+ * 用户名相同的principal视为同一用户，不要求principal实现equals和hashCode。
+ *
+ * @author Kevin
+ */
+public abstract class AbstractSessionRegistry implements SessionRegistry,
+        ApplicationListener<SessionDestroyedEvent>, MeterBinder {
+
+    /**
+     * 每个用户的最大session数，小于等于0时不限制
+     */
+    protected final int maximumSessions;
+
+    private final LongAdder registered = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    protected AbstractSessionRegistry(int maximumSessions) {
+        this.maximumSessions = maximumSessions;
+    }
+
+    @Override
+    public void registerNewSession(String sessionId, Object principal) {
+        Assert.hasText(sessionId, "SessionId required as per interface contract");
+        Assert.notNull(principal, "Principal required as per interface contract");
+
+        if (!register(sessionId, principal, principalName(principal), System.currentTimeMillis())) {
+            rejected.increment();
+            throw new SessionAuthenticationException("Maximum sessions of " + maximumSessions
+                    + " for this principal exceeded");
+        }
+
+        registered.increment();
+    }
+
+    @Override
+    public List<SessionInformation> getAllSessions(Object principal, boolean includeExpiredSessions) {
+        return getAllSessions(principalName(principal), includeExpiredSessions);
+    }
+
+    /**
+     * 注册session，同一用户未过期的session数(不含sessionId本身)已达到maximumSessions时不注册
+     *
+     * @param sessionId
+     * @param principal
+     * @param name        用户名
+     * @param lastRequest 毫秒
+     * @return 超出上限时返回false
+     */
+    protected abstract boolean register(String sessionId, Object principal, String name, long lastRequest);
+
+    /**
+     * @param name                   用户名
+     * @param includeExpiredSessions
+     * @return
+     */
+    protected abstract List<SessionInformation> getAllSessions(String name, boolean includeExpiredSessions);
+
+    /**
+     * session超时或注销时由HttpSessionEventPublisher发布
+     *
+     * @param event
+     */
+    @Override
+    public void onApplicationEvent(SessionDestroyedEvent event) {
+        removeSessionInformation(event.getId());
+    }
+
+    /**
+     * @param principal
+     * @return 用户名
+     */
+    public static String principalName(Object principal) {
+        if (principal instanceof UserDetails) {
+            return ((UserDetails) principal).getUsername();
+        }
+        if (principal instanceof Principal) {
+            return ((Principal) principal).getName();
+        }
+
+        return principal.toString();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("auth.sessions.registrations", registered, LongAdder::sum)
+                .tag("result", "registered")
+                .register(registry);
+        FunctionCounter.builder("auth.sessions.registrations", rejected, LongAdder::sum)
+                .tag("result", "rejected")
+                .description("Logins rejected because the principal reached the maximum sessions")
+                .register(registry);
+    }
+}
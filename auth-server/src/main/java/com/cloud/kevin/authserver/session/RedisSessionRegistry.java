@@ -0,0 +1,516 @@
+package com.cloud.kevin.authserver.session;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.security.core.session.SessionDestroyedEvent;
+import org.springframework.security.core.session.SessionInformation;
+import org.springframework.security.web.authentication.session.SessionAuthenticationException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 保存在Redis中的session注册表，多个auth-server节点共享同一用户的session上限
+ * 每个session是一个hash([prefix]session:[id]，字段principal、lastRequest、expired)，
+ * 每个用户是一个sessionId集合([prefix]principal:[用户名])，按用户查询只读取该用户的集合。
+ * 注册用Lua脚本原子地完成清理失效成员、检查上限和写入，多个节点同时登录同一用户时最多只有maximumSessions个成功。
+ * 请求路径上的getSessionInformation经过短期的本地缓存，refreshLastRequest在本地合并，
+ * 由后台线程每flushInterval毫秒用一次脚本调用批量写入，不再每个请求访问一次Redis。
+ * session销毁事件(注销、超时)立即写入Redis，用户注销后马上重新登录不会因为旧session还在而被拒绝；
+ * 写入失败时才放入等待队列由后台线程重试。
+ * 注册时最后访问时间早于sessionTimeout的session不计入上限：节点宕机没有发布销毁事件时，
+ * 残留的session不会一直占用名额；session和用户集合按sessionTtl过期，残留的数据最终也会被清理。
+ * 脚本访问的key不全在KEYS中声明，适用于单机和哨兵模式的Redis，不适用于Redis Cluster。
+ * 从Redis读出的SessionInformation中的principal是用户名。
+ *
+ * @author Kevin
+ */
+@Slf4j
+public class RedisSessionRegistry extends AbstractSessionRegistry implements InitializingBean, DisposableBean {
+
+    /**
+     * KEYS: 用户集合、session；
+     * ARGV: sessionId、用户名、lastRequest(当前时间)、maximumSessions、ttl(毫秒)、session前缀、用户前缀、
+     * sessionTimeout(毫秒)
+     * 返回0表示超出上限
+     */
+    private static final RedisScript<Long> REGISTER_SCRIPT = new DefaultRedisScript<>(
+            "local previous = redis.call('HGET', KEYS[2], 'principal')\n"
+                    + "if previous and previous ~= ARGV[2] then\n"
+                    + "  redis.call('SREM', ARGV[7] .. previous, ARGV[1])\n"
+                    + "end\n"
+                    + "local active = 0\n"
+                    + "for _, id in ipairs(redis.call('SMEMBERS', KEYS[1])) do\n"
+                    + "  if id ~= ARGV[1] then\n"
+                    + "    local values = redis.call('HMGET', ARGV[6] .. id, 'expired', 'lastRequest')\n"
+                    + "    if not values[1] then\n"
+                    + "      redis.call('SREM', KEYS[1], id)\n"
+                    + "    elseif values[1] == '0'\n"
+                    + "        and tonumber(ARGV[3]) - (tonumber(values[2]) or 0) < tonumber(ARGV[8]) then\n"
+                    + "      active = active + 1\n"
+                    + "    end\n"
+                    + "  end\n"
+                    + "end\n"
+                    + "if tonumber(ARGV[4]) > 0 and active >= tonumber(ARGV[4]) then\n"
+                    + "  return 0\n"
+                    + "end\n"
+                    + "redis.call('HMSET', KEYS[2], 'principal', ARGV[2], 'lastRequest', ARGV[3], 'expired', '0')\n"
+                    + "redis.call('PEXPIRE', KEYS[2], ARGV[5])\n"
+                    + "redis.call('SADD', KEYS[1], ARGV[1])\n"
+                    + "redis.call('PEXPIRE', KEYS[1], ARGV[5])\n"
+                    + "return 1", Long.class);
+
+    /**
+     * KEYS: 用户集合；ARGV: session前缀
+     * 返回[sessionId, lastRequest, expired, ...]，同时删除集合中已经不存在的session
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SESSIONS_SCRIPT = new DefaultRedisScript<>(
+            "local result = {}\n"
+                    + "for _, id in ipairs(redis.call('SMEMBERS', KEYS[1])) do\n"
+                    + "  local values = redis.call('HMGET', ARGV[1] .. id, 'lastRequest', 'expired')\n"
+                    + "  if values[1] then\n"
+                    + "    table.insert(result, id)\n"
+                    + "    table.insert(result, values[1])\n"
+                    + "    table.insert(result, values[2])\n"
+                    + "  else\n"
+                    + "    redis.call('SREM', KEYS[1], id)\n"
+                    + "  end\n"
+                    + "end\n"
+                    + "return result", List.class);
+
+    /**
+     * KEYS: session；标记为过期，session不存在时不创建
+     */
+    private static final RedisScript<Long> EXPIRE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then\n"
+                    + "  redis.call('HSET', KEYS[1], 'expired', '1')\n"
+                    + "  return 1\n"
+                    + "end\n"
+                    + "return 0", Long.class);
+
+    /**
+     * ARGV: session前缀、用户前缀、ttl(毫秒)、sessionId、lastRequest、sessionId、lastRequest...
+     */
+    private static final RedisScript<Long> REFRESH_SCRIPT = new DefaultRedisScript<>(
+            "local refreshed = 0\n"
+                    + "for i = 4, #ARGV, 2 do\n"
+                    + "  local key = ARGV[1] .. ARGV[i]\n"
+                    + "  local principal = redis.call('HGET', key, 'principal')\n"
+                    + "  if principal then\n"
+                    + "    redis.call('HSET', key, 'lastRequest', ARGV[i + 1])\n"
+                    + "    redis.call('PEXPIRE', key, ARGV[3])\n"
+                    + "    redis.call('PEXPIRE', ARGV[2] .. principal, ARGV[3])\n"
+                    + "    refreshed = refreshed + 1\n"
+                    + "  end\n"
+                    + "end\n"
+                    + "return refreshed", Long.class);
+
+    /**
+     * ARGV: session前缀、用户前缀、sessionId...
+     */
+    private static final RedisScript<Long> REMOVE_SCRIPT = new DefaultRedisScript<>(
+            "local removed = 0\n"
+                    + "for i = 3, #ARGV do\n"
+                    + "  local key = ARGV[1] .. ARGV[i]\n"
+                    + "  local principal = redis.call('HGET', key, 'principal')\n"
+                    + "  if principal then\n"
+                    + "    redis.call('DEL', key)\n"
+                    + "    redis.call('SREM', ARGV[2] .. principal, ARGV[i])\n"
+                    + "    removed = removed + 1\n"
+                    + "  end\n"
+                    + "end\n"
+                    + "return removed", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final String sessionPrefix;
+
+    private final String principalPrefix;
+
+    private final long sessionTtl;
+
+    private final long sessionTimeout;
+
+    private final long flushInterval;
+
+    private final int batchSize;
+
+    /**
+     * 本节点读取过的session，value为空表示Redis中不存在
+     */
+    private final Cache<String, Optional<SessionInformation>> localCache;
+
+    /**
+     * 等待写入的最后访问时间，同一session多次访问只保留最后一次
+     */
+    private final ConcurrentHashMap<String, Long> pendingRefreshes = new ConcurrentHashMap<>();
+
+    /**
+     * 等待删除的session，写入前getSessionInformation已经返回null
+     */
+    private final Set<String> pendingRemovals = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder refreshed = new LongAdder();
+
+    private final LongAdder removed = new LongAdder();
+
+    private Counter errors;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param connectionFactory
+     * @param maximumSessions   每个用户的最大session数，小于等于0时不限制
+     * @param keyPrefix         Redis key的前缀
+     * @param sessionTtl        session在Redis中的保留时间(秒)，每次写入最后访问时间时延长，应与session超时时间一致
+     * @param sessionTimeout    servlet的session超时时间(秒)，最后访问时间早于它的session注册时不计入上限
+     * @param localCacheTtl     本地缓存的有效期(毫秒)，其他节点让session过期后最多经过这段时间本节点才能看到
+     * @param localCacheSize    本地缓存的最大条数
+     * @param flushInterval     批量写入的间隔(毫秒)
+     * @param batchSize         每次脚本调用最多包含的session数
+     */
+    public RedisSessionRegistry(RedisConnectionFactory connectionFactory, int maximumSessions, String keyPrefix,
+                                long sessionTtl, long sessionTimeout, long localCacheTtl, long localCacheSize,
+                                long flushInterval, int batchSize) {
+        super(maximumSessions);
+        this.stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        this.sessionPrefix = keyPrefix + "session:";
+        this.principalPrefix = keyPrefix + "principal:";
+        this.sessionTtl = TimeUnit.SECONDS.toMillis(sessionTtl);
+        this.sessionTimeout = TimeUnit.SECONDS.toMillis(sessionTimeout);
+        this.flushInterval = flushInterval;
+        this.batchSize = batchSize;
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(localCacheSize)
+                .expireAfterWrite(localCacheTtl, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-registry-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Redis不可用时拒绝登录，而不是在无法检查上限的情况下放行
+     */
+    @Override
+    protected boolean register(String sessionId, Object principal, String name, long lastRequest) {
+        Long result;
+        try {
+            result = stringRedisTemplate.execute(REGISTER_SCRIPT,
+                    Arrays.asList(principalPrefix + name, sessionPrefix + sessionId),
+                    sessionId, name, String.valueOf(lastRequest), String.valueOf(maximumSessions),
+                    String.valueOf(sessionTtl), sessionPrefix, principalPrefix, String.valueOf(sessionTimeout));
+        } catch (RuntimeException e) {
+            error("Failed to register session", e);
+            throw new SessionAuthenticationException("Session registry unavailable");
+        }
+
+        if (null == result || result == 0) {
+            return false;
+        }
+
+        pendingRemovals.remove(sessionId);
+        localCache.put(sessionId, Optional.of(
+                new RedisSessionInformation(principal, sessionId, new Date(lastRequest), false, this)));
+        return true;
+    }
+
+    /**
+     * Redis不可用时返回空列表，不阻止登录
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    protected List<SessionInformation> getAllSessions(String name, boolean includeExpiredSessions) {
+        List<String> values;
+        try {
+            values = stringRedisTemplate.execute(SESSIONS_SCRIPT,
+                    Collections.singletonList(principalPrefix + name), sessionPrefix);
+        } catch (RuntimeException e) {
+            error("Failed to read sessions of principal", e);
+            return new ArrayList<>();
+        }
+        if (null == values) {
+            return new ArrayList<>();
+        }
+
+        long now = System.currentTimeMillis();
+        List<SessionInformation> result = new ArrayList<>(values.size() / 3);
+        for (int i = 0; i + 2 < values.size(); i += 3) {
+            String sessionId = values.get(i);
+            long lastRequest = Long.parseLong(values.get(i + 1));
+            boolean expired = isExpired(values.get(i + 2), lastRequest, now);
+            if (pendingRemovals.contains(sessionId) || (expired && !includeExpiredSessions)) {
+                continue;
+            }
+            result.add(new RedisSessionInformation(name, sessionId, new Date(lastRequest), expired, this));
+        }
+
+        return result;
+    }
+
+    @Override
+    public List<Object> getAllPrincipals() {
+        List<Object> result = new ArrayList<>();
+        stringRedisTemplate.execute((RedisCallback<Void>) connection -> {
+            ScanOptions options = ScanOptions.scanOptions().match(principalPrefix + "*").count(1000).build();
+            try (Cursor<byte[]> cursor = connection.scan(options)) {
+                while (cursor.hasNext()) {
+                    result.add(new String(cursor.next(), StandardCharsets.UTF_8).substring(principalPrefix.length()));
+                }
+            } catch (IOException e) {
+                log.warn("Failed to close scan cursor: {}", e.getMessage());
+            }
+            return null;
+        });
+
+        return result;
+    }
+
+    /**
+     * Redis不可用时返回null，请求按未注册的session处理
+     */
+    @Override
+    public SessionInformation getSessionInformation(String sessionId) {
+        if (pendingRemovals.contains(sessionId)) {
+            return null;
+        }
+
+        try {
+            return localCache.get(sessionId, this::load).orElse(null);
+        } catch (RuntimeException e) {
+            error("Failed to read session", e);
+            return null;
+        }
+    }
+
+    private Optional<SessionInformation> load(String sessionId) {
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(sessionPrefix + sessionId,
+                Arrays.asList("principal", "lastRequest", "expired"));
+        if (null == values || null == values.get(0) || null == values.get(1)) {
+            return Optional.empty();
+        }
+
+        long lastRequest = Long.parseLong((String) values.get(1));
+        return Optional.of(new RedisSessionInformation(values.get(0), sessionId, new Date(lastRequest),
+                isExpired(values.get(2), lastRequest, System.currentTimeMillis()), this));
+    }
+
+    /**
+     * 被标记为过期，或者超过sessionTimeout没有访问(所在节点宕机，没有发布销毁事件)
+     */
+    private boolean isExpired(Object expired, long lastRequest, long now) {
+        return "1".equals(expired) || now - lastRequest >= sessionTimeout;
+    }
+
+    @Override
+    public void refreshLastRequest(String sessionId) {
+        if (pendingRemovals.contains(sessionId)) {
+            return;
+        }
+
+        pendingRefreshes.put(sessionId, System.currentTimeMillis());
+        Optional<SessionInformation> cached = localCache.getIfPresent(sessionId);
+        if (null != cached && cached.isPresent()) {
+            cached.get().refreshLastRequest();
+        }
+    }
+
+    /**
+     * 注销或超时时立即从Redis中删除，失败时由后台线程重试
+     *
+     * @param event
+     */
+    @Override
+    public void onApplicationEvent(SessionDestroyedEvent event) {
+        String sessionId = event.getId();
+        pendingRefreshes.remove(sessionId);
+        try {
+            stringRedisTemplate.execute(REMOVE_SCRIPT, Collections.emptyList(), sessionPrefix, principalPrefix,
+                    sessionId);
+            removed.increment();
+        } catch (RuntimeException e) {
+            error("Failed to remove session, retrying in background", e);
+            pendingRemovals.add(sessionId);
+        }
+        // 删除后再清除本地缓存，避免删除前并发读取的结果留在缓存中
+        localCache.invalidate(sessionId);
+    }
+
+    @Override
+    public void removeSessionInformation(String sessionId) {
+        pendingRemovals.add(sessionId);
+        pendingRefreshes.remove(sessionId);
+        localCache.invalidate(sessionId);
+    }
+
+    /**
+     * 立即写入，其他节点在本地缓存过期后看到
+     *
+     * @param sessionId
+     */
+    void expire(String sessionId) {
+        try {
+            stringRedisTemplate.execute(EXPIRE_SCRIPT, Collections.singletonList(sessionPrefix + sessionId));
+        } catch (RuntimeException e) {
+            error("Failed to expire session", e);
+        }
+    }
+
+    /**
+     * 把等待中的删除和最后访问时间分批写入Redis，删除失败时保留到下次重试，最后访问时间失败时丢弃
+     */
+    void flush() {
+        try {
+            flushRemovals();
+            flushRefreshes();
+        } catch (RuntimeException e) {
+            error("Failed to flush session events", e);
+        }
+    }
+
+    private void flushRemovals() {
+        while (!pendingRemovals.isEmpty()) {
+            List<String> batch = new ArrayList<>(Math.min(batchSize, pendingRemovals.size()));
+            Iterator<String> iterator = pendingRemovals.iterator();
+            while (iterator.hasNext() && batch.size() < batchSize) {
+                batch.add(iterator.next());
+            }
+
+            List<String> args = new ArrayList<>(batch.size() + 2);
+            args.add(sessionPrefix);
+            args.add(principalPrefix);
+            args.addAll(batch);
+            stringRedisTemplate.execute(REMOVE_SCRIPT, Collections.emptyList(), args.toArray());
+            // 写入完成后才移出等待集合，期间的查询仍然看到session已删除
+            pendingRemovals.removeAll(batch);
+            removed.add(batch.size());
+        }
+    }
+
+    private void flushRefreshes() {
+        Iterator<Map.Entry<String, Long>> iterator = pendingRefreshes.entrySet().iterator();
+        while (iterator.hasNext()) {
+            List<String> args = new ArrayList<>(batchSize * 2 + 3);
+            args.add(sessionPrefix);
+            args.add(principalPrefix);
+            args.add(String.valueOf(sessionTtl));
+            int count = 0;
+            while (iterator.hasNext() && count < batchSize) {
+                Map.Entry<String, Long> entry = iterator.next();
+                // 只有取出后没有再次访问时才移除，否则留到下次写入更新的时间
+                if (pendingRefreshes.remove(entry.getKey(), entry.getValue())) {
+                    args.add(entry.getKey());
+                    args.add(String.valueOf(entry.getValue()));
+                    count++;
+                }
+            }
+            if (count > 0) {
+                stringRedisTemplate.execute(REFRESH_SCRIPT, Collections.emptyList(), args.toArray());
+                refreshed.add(count);
+            }
+        }
+    }
+
+    private void error(String message, RuntimeException e) {
+        if (null != errors) {
+            errors.increment();
+        }
+        log.warn("{}: {}", message, e.getMessage());
+    }
+
+    /**
+     * 停止前写入等待中的事件
+     */
+    @Override
+    public void destroy() {
+        if (null != scheduler) {
+            scheduler.shutdownNow();
+            try {
+                scheduler.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        super.bindTo(registry);
+        FunctionCounter.builder("auth.sessions.events", refreshed, LongAdder::sum)
+                .tag("type", "refresh")
+                .register(registry);
+        FunctionCounter.builder("auth.sessions.events", removed, LongAdder::sum)
+                .tag("type", "remove")
+                .register(registry);
+        Gauge.builder("auth.sessions.events.pending", pendingRefreshes, Map::size)
+                .tag("type", "refresh")
+                .register(registry);
+        Gauge.builder("auth.sessions.events.pending", pendingRemovals, Set::size)
+                .tag("type", "remove")
+                .register(registry);
+        errors = Counter.builder("auth.sessions.registry.errors")
+                .description("Failed Redis operations of the session registry")
+                .register(registry);
+    }
+
+    /**
+     * expireNow同时写入Redis，让其他节点上的同一session也失效
+     */
+    private static final class RedisSessionInformation extends SessionInformation {
+
+        private final transient RedisSessionRegistry registry;
+
+        private RedisSessionInformation(Object principal, String sessionId, Date lastRequest, boolean expired,
+                                        RedisSessionRegistry registry) {
+            super(principal, sessionId, lastRequest);
+            this.registry = registry;
+            if (expired) {
+                super.expireNow();
+            }
+        }
+
+        @Override
+        public void expireNow() {
+            super.expireNow();
+            registry.expire(getSessionId());
+            registry.localCache.invalidate(getSessionId());
+        }
+    }
+}
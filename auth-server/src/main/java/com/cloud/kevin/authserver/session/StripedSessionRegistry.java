@@ -0,0 +1,200 @@
+package com.cloud.kevin.authserver.session;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.core.session.SessionInformation;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按用户名分段加锁的内存session注册表，只适用于单节点部署
+ * sessionId到SessionInformation的映射放在ConcurrentHashMap中，请求路径上的查询和refreshLastRequest不加锁；
+ * 用户名到sessionId集合的映射按哈希分到多个分段，注册和删除只锁用户所在的分段，
+ * 按用户查询session的开销只与该用户自己的session数有关，与在线用户总数无关。
+ *
+ * @author Kevin
+ */
+public class StripedSessionRegistry extends AbstractSessionRegistry {
+
+    private final ConcurrentHashMap<String, SessionInformation> sessions = new ConcurrentHashMap<>();
+
+    private final Stripe[] stripes;
+
+    private final AtomicInteger principals = new AtomicInteger();
+
+    /**
+     * @param maximumSessions 每个用户的最大session数，小于等于0时不限制
+     * @param stripes         分段数，向上取整为2的幂
+     */
+    public StripedSessionRegistry(int maximumSessions, int stripes) {
+        super(maximumSessions);
+
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    @Override
+    protected boolean register(String sessionId, Object principal, String name, long lastRequest) {
+        // 同一个session之前以其他用户注册过时先删除，与SessionRegistryImpl一致
+        SessionInformation previous = sessions.get(sessionId);
+        if (null != previous && !name.equals(principalName(previous.getPrincipal()))) {
+            removeSessionInformation(sessionId);
+        }
+
+        Stripe stripe = stripe(name);
+        synchronized (stripe) {
+            PrincipalSessions entry = stripe.principals.get(name);
+            if (maximumSessions > 0 && null != entry && !entry.sessionIds.contains(sessionId)
+                    && activeSessions(entry) >= maximumSessions) {
+                return false;
+            }
+
+            if (null == entry) {
+                entry = new PrincipalSessions();
+                stripe.principals.put(name, entry);
+                principals.incrementAndGet();
+            }
+            entry.principal = principal;
+            entry.sessionIds.add(sessionId);
+            sessions.put(sessionId, new SessionInformation(principal, sessionId, new Date(lastRequest)));
+        }
+
+        return true;
+    }
+
+    @Override
+    protected List<SessionInformation> getAllSessions(String name, boolean includeExpiredSessions) {
+        List<String> sessionIds;
+        Stripe stripe = stripe(name);
+        synchronized (stripe) {
+            PrincipalSessions entry = stripe.principals.get(name);
+            if (null == entry) {
+                return new ArrayList<>();
+            }
+            sessionIds = new ArrayList<>(entry.sessionIds);
+        }
+
+        List<SessionInformation> result = new ArrayList<>(sessionIds.size());
+        for (String sessionId : sessionIds) {
+            SessionInformation information = sessions.get(sessionId);
+            if (null != information && (includeExpiredSessions || !information.isExpired())) {
+                result.add(information);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public List<Object> getAllPrincipals() {
+        List<Object> result = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (PrincipalSessions entry : stripe.principals.values()) {
+                    result.add(entry.principal);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public SessionInformation getSessionInformation(String sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    @Override
+    public void refreshLastRequest(String sessionId) {
+        SessionInformation information = sessions.get(sessionId);
+        if (null != information) {
+            information.refreshLastRequest();
+        }
+    }
+
+    @Override
+    public void removeSessionInformation(String sessionId) {
+        SessionInformation information = sessions.get(sessionId);
+        if (null == information) {
+            return;
+        }
+
+        String name = principalName(information.getPrincipal());
+        Stripe stripe = stripe(name);
+        synchronized (stripe) {
+            // 在分段锁内删除，与同一用户的注册不会交错
+            if (!sessions.remove(sessionId, information)) {
+                return;
+            }
+            PrincipalSessions entry = stripe.principals.get(name);
+            if (null != entry) {
+                entry.sessionIds.remove(sessionId);
+                if (entry.sessionIds.isEmpty()) {
+                    stripe.principals.remove(name);
+                    principals.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * 调用方持有entry所在分段的锁
+     */
+    private int activeSessions(PrincipalSessions entry) {
+        int count = 0;
+        for (String sessionId : entry.sessionIds) {
+            SessionInformation information = sessions.get(sessionId);
+            if (null != information && !information.isExpired()) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private Stripe stripe(String name) {
+        int hash = name.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        super.bindTo(registry);
+        Gauge.builder("auth.sessions.active", sessions, Map::size)
+                .register(registry);
+        Gauge.builder("auth.sessions.principals", principals, AtomicInteger::get)
+                .register(registry);
+    }
+
+    /**
+     * principals由Stripe自身的锁保护
+     */
+    private static final class Stripe {
+
+        private final Map<String, PrincipalSessions> principals = new HashMap<>();
+    }
+
+    private static final class PrincipalSessions {
+
+        /**
+         * 最近一次注册时的principal
+         */
+        private Object principal;
+
+        private final Set<String> sessionIds = new LinkedHashSet<>(2);
+    }
+}
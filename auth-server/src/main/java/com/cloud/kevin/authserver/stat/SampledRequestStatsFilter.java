@@ -0,0 +1,201 @@
+package com.cloud.kevin.authserver.stat;
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 抽样的请求统计，替代Druid的WebStatFilter
+ * 按sampleRate抽样请求，未被抽中的请求不做任何记录；被抽中的请求按(请求方法, 路由模板)计入无锁的分段直方图，
+ * 路由模板取Spring MVC匹配到的模式(如/oauth/token)而不是原始URI，未匹配到的请求计入UNMAPPED，
+ * 路由数量超过maxRoutes后新的路由计入OTHER，内存占用有上限。
+ * 每个路由导出：
+ * http.server.requests.sampled            抽样请求的次数和总耗时
+ * http.server.requests.sampled.percentile 最近一个完整统计窗口内的耗时百分位数(p50、p90、p99)
+ * http.server.requests.sampled.max        最近一个完整统计窗口内的最大耗时
+ *
+ * @author Kevin
+ */
+public class SampledRequestStatsFilter extends OncePerRequestFilter {
+
+    private static final String UNMAPPED = "UNMAPPED";
+
+    private static final String OTHER = "OTHER";
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+
+    private final MeterRegistry meterRegistry;
+
+    private final double sampleRate;
+
+    private final long window;
+
+    private final int maxRoutes;
+
+    private final int stripes;
+
+    private final List<String> exclusions;
+
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+
+    private final ConcurrentMap<String, RouteStats> routes = new ConcurrentHashMap<>();
+
+    /**
+     * @param meterRegistry
+     * @param sampleRate    抽样比例，0到1之间
+     * @param window        百分位数的统计窗口(秒)
+     * @param maxRoutes     最多统计的路由数
+     * @param stripes       直方图的分段数，一般取CPU核数
+     * @param exclusions    不统计的路径(Ant风格)
+     */
+    public SampledRequestStatsFilter(MeterRegistry meterRegistry, double sampleRate, long window, int maxRoutes,
+                                     int stripes, List<String> exclusions) {
+        this.meterRegistry = meterRegistry;
+        this.sampleRate = sampleRate;
+        this.window = TimeUnit.SECONDS.toNanos(window);
+        this.maxRoutes = maxRoutes;
+        this.stripes = stripes;
+        this.exclusions = exclusions;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return true;
+        }
+
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (String exclusion : exclusions) {
+            if (pathMatcher.match(exclusion, path)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            long now = System.nanoTime();
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            route(request.getMethod(), null == pattern ? UNMAPPED : pattern.toString()).record(now - start, now);
+        }
+    }
+
+    private RouteStats route(String method, String uri) {
+        String key = method + " " + uri;
+        RouteStats stats = routes.get(key);
+        if (null != stats) {
+            return stats;
+        }
+
+        if (routes.size() >= maxRoutes) {
+            return routes.computeIfAbsent(OTHER, k -> new RouteStats(Tags.of("method", OTHER, "uri", OTHER)));
+        }
+
+        return routes.computeIfAbsent(key, k -> new RouteStats(Tags.of("method", method, "uri", uri)));
+    }
+
+    /**
+     * 一个路由的统计，直方图按窗口轮换，百分位数取上一个完整窗口的数据
+     */
+    private final class RouteStats {
+
+        private final AtomicReference<Window> current;
+
+        private volatile StripedHistogram.Snapshot lastWindow = StripedHistogram.Snapshot.EMPTY;
+
+        /**
+         * 抽样请求的累计次数和总耗时
+         */
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        private RouteStats(Tags tags) {
+            this.current = new AtomicReference<>(new Window(System.nanoTime()));
+
+            FunctionTimer.builder("http.server.requests.sampled", this,
+                    RouteStats::count, RouteStats::totalNanos, TimeUnit.NANOSECONDS)
+                    .tags(tags)
+                    .description("Sampled requests; divide by the sample rate to estimate the total")
+                    .register(meterRegistry);
+            for (double percentile : PERCENTILES) {
+                Gauge.builder("http.server.requests.sampled.percentile", this,
+                        stats -> stats.window().percentileNanos(percentile) / 1e9)
+                        .tags(tags)
+                        .tag("phi", String.valueOf(percentile))
+                        .baseUnit("seconds")
+                        .register(meterRegistry);
+            }
+            Gauge.builder("http.server.requests.sampled.max", this, stats -> stats.window().getMaxNanos() / 1e9)
+                    .tags(tags)
+                    .baseUnit("seconds")
+                    .register(meterRegistry);
+        }
+
+        private void record(long nanos, long now) {
+            rotateIfExpired(now);
+            current.get().histogram.record(nanos);
+            count.increment();
+            totalNanos.add(nanos);
+        }
+
+        private StripedHistogram.Snapshot window() {
+            rotateIfExpired(System.nanoTime());
+            return lastWindow;
+        }
+
+        private long count() {
+            return count.sum();
+        }
+
+        private double totalNanos() {
+            return totalNanos.sum();
+        }
+
+        private void rotateIfExpired(long now) {
+            Window expired = current.get();
+            if (now - expired.start < window || !current.compareAndSet(expired, new Window(now))) {
+                return;
+            }
+
+            // 轮换后仍在写入旧窗口的少量请求不计入百分位数
+            lastWindow = expired.histogram.snapshot();
+        }
+    }
+
+    private final class Window {
+
+        private final long start;
+
+        private final StripedHistogram histogram = new StripedHistogram(stripes);
+
+        private Window(long start) {
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.cloud.kevin.authserver.stat;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁的分段直方图
+ * 每个线程按线程ID写入其中一段，减少多核下对同一缓存行的竞争，读取时合并所有分段。
+ * 桶按微秒划分：16微秒以下每微秒一个桶，之后每个2的幂区间分为8个桶，相对误差不超过12.5%。
+ *
+ * @author Kevin
+ */
+public class StripedHistogram {
+
+    private static final int LINEAR_BUCKETS = 16;
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * 最大记录约2^40微秒，超出的值计入最后一个桶
+     */
+    private static final int MAX_EXPONENT = 40;
+
+    static final int BUCKETS = LINEAR_BUCKETS + (MAX_EXPONENT - 4 + 1) * SUB_BUCKETS;
+
+    /**
+     * 每段的布局：[count, totalNanos, maxNanos, bucket0, bucket1, ...]，各段之间留出一个缓存行的间隔
+     */
+    private static final int HEADER = 3;
+
+    private static final int PADDING = 8;
+
+    private static final int STRIDE = HEADER + BUCKETS + PADDING;
+
+    private final AtomicLongArray cells;
+
+    private final int mask;
+
+    /**
+     * @param stripes 分段数，向上取整为2的幂
+     */
+    public StripedHistogram(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.mask = stripes <= 1 ? 0 : size - 1;
+        this.cells = new AtomicLongArray((mask + 1) * STRIDE);
+    }
+
+    public void record(long nanos) {
+        int base = (int) (Thread.currentThread().getId() & mask) * STRIDE;
+
+        cells.incrementAndGet(base);
+        cells.addAndGet(base + 1, nanos);
+        long max;
+        while (nanos > (max = cells.get(base + 2)) && !cells.compareAndSet(base + 2, max, nanos)) {
+            // 重试
+        }
+        cells.incrementAndGet(base + HEADER + bucketIndex(nanos / 1000));
+    }
+
+    public Snapshot snapshot() {
+        long count = 0;
+        long total = 0;
+        long max = 0;
+        long[] buckets = new long[BUCKETS];
+
+        for (int base = 0; base < cells.length(); base += STRIDE) {
+            count += cells.get(base);
+            total += cells.get(base + 1);
+            max = Math.max(max, cells.get(base + 2));
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] += cells.get(base + HEADER + i);
+            }
+        }
+
+        return new Snapshot(count, total, max, buckets);
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) Math.max(0, micros);
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * 桶的上界(微秒)
+     */
+    static long bucketUpperBound(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index + 1;
+        }
+
+        int exponent = 4 + (index - LINEAR_BUCKETS) / SUB_BUCKETS;
+        int sub = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+
+        return (long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * 某一时刻合并后的直方图
+     */
+    public static final class Snapshot {
+
+        public static final Snapshot EMPTY = new Snapshot(0, 0, 0, new long[BUCKETS]);
+
+        private final long count;
+
+        private final long totalNanos;
+
+        private final long maxNanos;
+
+        private final long[] buckets;
+
+        private Snapshot(long count, long totalNanos, long maxNanos, long[] buckets) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.buckets = buckets;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * @param percentile 0到1之间
+         * @return 百分位数所在桶的上界(纳秒)，没有数据时返回0
+         */
+        public long percentileNanos(double percentile) {
+            long total = 0;
+            for (long bucket : buckets) {
+                total += bucket;
+            }
+            if (total == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(percentile * total);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && buckets[i] > 0) {
+                    return Math.min(bucketUpperBound(i) * 1000, maxNanos);
+                }
+            }
+
+            return maxNanos;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.cloud.kevin.authserver.token;
+
+import com.cloud.kevin.authserver.client.CachingClientDetailsService;
+import com.cloud.kevin.authserver.revocation.TokenRevocationService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对client_credentials模式复用仍然有效的token
+ * JwtTokenStore不保存token，DefaultTokenServices每次都会重新生成并签名一个新的JWT。
+ * 这里按(client_id, scope, resource_ids, authorities)缓存已签发的token，剩余有效期占比大于minRemainingRatio时直接返回；
+ * 同一个key同时只有一个线程生成token(在缓存的map锁之外签名)，并发的相同请求等待并复用它的结果。
+ * 已撤销的token不再复用(包括其他节点撤销、同步到本节点的)；client信息变化时清除该client的缓存。
+ *
+ * @author Kevin
+ */
+public class ClientCredentialsReusingTokenServices extends DefaultTokenServices
+        implements CachingClientDetailsService.EvictionListener {
+
+    private static final String CLIENT_CREDENTIALS = "client_credentials";
+
+    private final Cache<TokenKey, IssuedToken> cache;
+
+    /**
+     * 正在签名的token，同一个key只有一个线程签名
+     */
+    private final ConcurrentMap<TokenKey, CompletableFuture<IssuedToken>> inflight = new ConcurrentHashMap<>();
+
+    /**
+     * 清除缓存的次数，签名期间发生清除时不缓存结果，避免client信息变化前签发的token被继续复用
+     */
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final double minRemainingRatio;
+
+    private final TokenRevocationService tokenRevocationService;
+
+    private final Counter reusedCounter;
+
+    private final Counter issuedCounter;
+
+    /**
+     * @param maximumSize       缓存的最大条目数
+     * @param minRemainingRatio      剩余有效期占总有效期的比例大于该值时复用token，取值范围(0, 1)
+     * @param tokenRevocationService 复用前检查token是否已被撤销
+     * @param meterRegistry
+     */
+    public ClientCredentialsReusingTokenServices(long maximumSize, double minRemainingRatio,
+                                                 TokenRevocationService tokenRevocationService,
+                                                 MeterRegistry meterRegistry) {
+        this.minRemainingRatio = minRemainingRatio;
+        this.tokenRevocationService = tokenRevocationService;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new ReusableExpiry(minRemainingRatio))
+                .build();
+
+        this.reusedCounter = Counter.builder("auth.token.client_credentials")
+                .tag("result", "reused")
+                .register(meterRegistry);
+        this.issuedCounter = Counter.builder("auth.token.client_credentials")
+                .tag("result", "issued")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public OAuth2AccessToken createAccessToken(OAuth2Authentication authentication) throws AuthenticationException {
+        OAuth2Request request = authentication.getOAuth2Request();
+
+        if (!authentication.isClientOnly() || !CLIENT_CREDENTIALS.equals(request.getGrantType())) {
+            return super.createAccessToken(authentication);
+        }
+
+        TokenKey key = new TokenKey(request);
+        IssuedToken issuedToken = cache.getIfPresent(key);
+        if (null != issuedToken && isReusable(issuedToken)) {
+            reusedCounter.increment();
+            return issuedToken.accessToken;
+        }
+
+        CompletableFuture<IssuedToken> future = new CompletableFuture<>();
+        CompletableFuture<IssuedToken> loading = inflight.putIfAbsent(key, future);
+        if (null != loading) {
+            // 其他线程正在为同一个key签名，等待并复用它的结果
+            reusedCounter.increment();
+            return join(loading).accessToken;
+        }
+
+        try {
+            issuedToken = cache.getIfPresent(key);
+            if (null == issuedToken || !isReusable(issuedToken)) {
+                // 签名和撤销检查都不在缓存的map锁内执行
+                long evictionsBefore = evictions.get();
+                issuedCounter.increment();
+                issuedToken = new IssuedToken(super.createAccessToken(authentication), System.currentTimeMillis());
+                if (evictions.get() == evictionsBefore) {
+                    cache.put(key, issuedToken);
+                }
+            } else {
+                reusedCounter.increment();
+            }
+            future.complete(issuedToken);
+            return issuedToken.accessToken;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key, future);
+        }
+    }
+
+    private static IssuedToken join(CompletableFuture<IssuedToken> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private boolean isReusable(IssuedToken issuedToken) {
+        if (!issuedToken.isReusable(minRemainingRatio)) {
+            return false;
+        }
+
+        Object jti = issuedToken.accessToken.getAdditionalInformation().get("jti");
+        return null == jti || !tokenRevocationService.isRevoked(jti.toString());
+    }
+
+    /**
+     * 清除指定client已签发token的缓存，client信息变化时调用
+     *
+     * @param clientId
+     */
+    @Override
+    public void evict(String clientId) {
+        evictions.incrementAndGet();
+        cache.asMap().keySet().removeIf(key -> key.clientId.equals(clientId));
+    }
+
+    @Override
+    public void evictAll() {
+        evictions.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    private static class IssuedToken {
+
+        private final OAuth2AccessToken accessToken;
+
+        private final long issuedAt;
+
+        IssuedToken(OAuth2AccessToken accessToken, long issuedAt) {
+            this.accessToken = accessToken;
+            this.issuedAt = issuedAt;
+        }
+
+        /**
+         * 剩余有效期与总有效期的比值大于minRemainingRatio时可以复用
+         */
+        boolean isReusable(double minRemainingRatio) {
+            Date expiration = accessToken.getExpiration();
+            if (null == expiration) {
+                return false;
+            }
+
+            long now = System.currentTimeMillis();
+            return expiration.getTime() - now > (expiration.getTime() - issuedAt) * minRemainingRatio;
+        }
+
+        /**
+         * 不再可以复用的时刻距签发的时间
+         */
+        long reusableMillis(double minRemainingRatio) {
+            Date expiration = accessToken.getExpiration();
+
+            return null == expiration ? 0 : (long) ((expiration.getTime() - issuedAt) * (1 - minRemainingRatio));
+        }
+    }
+
+    private static class ReusableExpiry implements Expiry<TokenKey, IssuedToken> {
+
+        private final double minRemainingRatio;
+
+        ReusableExpiry(double minRemainingRatio) {
+            this.minRemainingRatio = minRemainingRatio;
+        }
+
+        @Override
+        public long expireAfterCreate(TokenKey key, IssuedToken value, long currentTime) {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, value.reusableMillis(minRemainingRatio)));
+        }
+
+        @Override
+        public long expireAfterUpdate(TokenKey key, IssuedToken value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(TokenKey key, IssuedToken value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    private static class TokenKey {
+
+        private final String clientId;
+
+        private final TreeSet<String> scope;
+
+        private final TreeSet<String> resourceIds;
+
+        private final TreeSet<String> authorities;
+
+        TokenKey(OAuth2Request request) {
+            this.clientId = request.getClientId();
+            this.scope = new TreeSet<>(request.getScope());
+            this.resourceIds = new TreeSet<>(request.getResourceIds());
+            this.authorities = new TreeSet<>();
+
+            Collection<? extends GrantedAuthority> grantedAuthorities = request.getAuthorities();
+            for (GrantedAuthority authority : grantedAuthorities) {
+                authorities.add(authority.getAuthority());
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TokenKey)) {
+                return false;
+            }
+            TokenKey that = (TokenKey) o;
+            return clientId.equals(that.clientId)
+                    && scope.equals(that.scope)
+                    && resourceIds.equals(that.resourceIds)
+                    && authorities.equals(that.authorities);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(clientId, scope, resourceIds, authorities);
+        }
+    }
+}
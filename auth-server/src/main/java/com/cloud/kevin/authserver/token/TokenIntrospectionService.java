@@ -0,0 +1,247 @@
+package com.cloud.kevin.authserver.token;
+
+import com.cloud.kevin.authserver.revocation.TokenRevocationService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RFC 7662的token内省，支持一次内省多个token
+ * 验签和解析的结果以token的SHA-256摘要为key缓存到token过期，同一个token只做一次验签；
+ * 无效的token(验签失败、格式错误)按negativeTtl缓存，重复提交的无效token不会反复验签。
+ * 是否过期、是否已被撤销在每次内省时检查，不受缓存影响。
+ *
+ * @author Kevin
+ */
+public class TokenIntrospectionService {
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    });
+
+    private static final Map<String, Object> INACTIVE = Collections.singletonMap("active", false);
+
+    private final TokenStore tokenStore;
+
+    private final TokenRevocationService tokenRevocationService;
+
+    private final Cache<String, Introspection> cache;
+
+    private final Timer singleTimer;
+
+    private final Timer batchTimer;
+
+    private final DistributionSummary batchSize;
+
+    private final Counter activeCounter;
+
+    private final Counter inactiveCounter;
+
+    /**
+     * @param tokenStore             用于验签和解析token
+     * @param tokenRevocationService 检查token是否已被撤销
+     * @param maximumSize            缓存的最大条目数
+     * @param maximumTtl             有效token的最长缓存时间(秒)
+     * @param negativeTtl            无效token的缓存时间(秒)
+     * @param meterRegistry
+     */
+    public TokenIntrospectionService(TokenStore tokenStore, TokenRevocationService tokenRevocationService,
+                                     long maximumSize, long maximumTtl, long negativeTtl,
+                                     MeterRegistry meterRegistry) {
+        this.tokenStore = tokenStore;
+        this.tokenRevocationService = tokenRevocationService;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new IntrospectionExpiry(TimeUnit.SECONDS.toNanos(maximumTtl),
+                        TimeUnit.SECONDS.toNanos(negativeTtl)))
+                .recordStats()
+                .build();
+
+        new CaffeineCacheMetrics(cache, "introspection", Tags.empty()).bindTo(meterRegistry);
+        this.singleTimer = Timer.builder("auth.token.introspect")
+                .tag("mode", "single")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("auth.token.introspect")
+                .tag("mode", "batch")
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("auth.token.introspect.batch.size")
+                .register(meterRegistry);
+        this.activeCounter = Counter.builder("auth.token.introspect.tokens")
+                .tag("result", "active")
+                .register(meterRegistry);
+        this.inactiveCounter = Counter.builder("auth.token.introspect.tokens")
+                .tag("result", "inactive")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param tokenValue
+     * @return 内省结果，token无效时只有active=false
+     */
+    public Map<String, Object> introspect(String tokenValue) {
+        long start = System.nanoTime();
+        try {
+            return lookup(tokenValue);
+        } finally {
+            singleTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * @param tokenValues
+     * @return 与tokenValues顺序一致的内省结果
+     */
+    public List<Map<String, Object>> introspect(List<String> tokenValues) {
+        long start = System.nanoTime();
+        try {
+            List<Map<String, Object>> results = new ArrayList<>(tokenValues.size());
+            for (String tokenValue : tokenValues) {
+                results.add(lookup(tokenValue));
+            }
+            return results;
+        } finally {
+            batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            batchSize.record(tokenValues.size());
+        }
+    }
+
+    private Map<String, Object> lookup(String tokenValue) {
+        Introspection introspection = null == tokenValue || tokenValue.isEmpty()
+                ? Introspection.INVALID : cache.get(digest(tokenValue), key -> verify(tokenValue));
+
+        if (!introspection.isActive() || tokenRevocationService.isRevoked(introspection.jti)) {
+            inactiveCounter.increment();
+            return INACTIVE;
+        }
+
+        activeCounter.increment();
+        return introspection.claims;
+    }
+
+    private Introspection verify(String tokenValue) {
+        try {
+            OAuth2AccessToken accessToken = tokenStore.readAccessToken(tokenValue);
+            if (null == accessToken || null == accessToken.getExpiration()) {
+                return Introspection.INVALID;
+            }
+            return new Introspection(accessToken, tokenStore.readAuthentication(accessToken));
+        } catch (InvalidTokenException | IllegalArgumentException e) {
+            return Introspection.INVALID;
+        }
+    }
+
+    private static String digest(String tokenValue) {
+        MessageDigest messageDigest = SHA256.get();
+        messageDigest.reset();
+
+        return Base64.getEncoder().encodeToString(messageDigest.digest(tokenValue.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static class Introspection {
+
+        private static final Introspection INVALID = new Introspection();
+
+        private final String jti;
+
+        private final long expiresAt;
+
+        private final Map<String, Object> claims;
+
+        private Introspection() {
+            this.jti = null;
+            this.expiresAt = 0;
+            this.claims = INACTIVE;
+        }
+
+        Introspection(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+            OAuth2Request request = authentication.getOAuth2Request();
+            Object jti = accessToken.getAdditionalInformation().get("jti");
+
+            this.jti = null == jti ? null : jti.toString();
+            this.expiresAt = accessToken.getExpiration().getTime();
+
+            Map<String, Object> claims = new LinkedHashMap<>();
+            claims.put("active", true);
+            claims.put("scope", String.join(" ", accessToken.getScope()));
+            claims.put("client_id", request.getClientId());
+            if (!authentication.isClientOnly()) {
+                claims.put("username", authentication.getName());
+            }
+            claims.put("token_type", accessToken.getTokenType());
+            claims.put("exp", TimeUnit.MILLISECONDS.toSeconds(expiresAt));
+            claims.put("aud", request.getResourceIds());
+            claims.put("jti", this.jti);
+            claims.put("authorities", AuthorityUtils.authorityListToSet(authentication.getAuthorities()));
+            this.claims = Collections.unmodifiableMap(claims);
+        }
+
+        /**
+         * 缓存到token过期，但过期前后的一次内省仍需按当前时间判断
+         */
+        boolean isActive() {
+            return expiresAt > System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 有效token缓存到exp，最长不超过maximumTtl；无效token缓存negativeTtl
+     */
+    private static class IntrospectionExpiry implements Expiry<String, Introspection> {
+
+        private final long maximumTtlNanos;
+
+        private final long negativeTtlNanos;
+
+        IntrospectionExpiry(long maximumTtlNanos, long negativeTtlNanos) {
+            this.maximumTtlNanos = maximumTtlNanos;
+            this.negativeTtlNanos = negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(String key, Introspection value, long currentTime) {
+            if (Introspection.INVALID == value) {
+                return negativeTtlNanos;
+            }
+
+            long remaining = TimeUnit.MILLISECONDS.toNanos(value.expiresAt - System.currentTimeMillis());
+            return Math.max(0, Math.min(remaining, maximumTtlNanos));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Introspection value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String key, Introspection value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
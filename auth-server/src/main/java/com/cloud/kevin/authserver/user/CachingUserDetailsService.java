@@ -0,0 +1,145 @@
+package com.cloud.kevin.authserver.user;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 带本地缓存的UserDetailsService
+ * 密码模式登陆和refresh_token模式刷新都会加载用户，缓存后在ttl秒内不再查询数据库；
+ * 不存在的用户名缓存negativeTtl秒，避免反复用不存在的用户名请求时每次都查询数据库。
+ * 同一用户名同时只有一个线程查询数据库，查询出错时不缓存。
+ * 用户的密码或权限在数据库中变化后需要调用{@link #evict(String)}。
+ *
+ * @author Kevin
+ */
+@Slf4j
+public class CachingUserDetailsService implements UserDetailsService, MeterBinder {
+
+    private final UserDetailsService delegate;
+
+    private final Cache<String, CachedUser> cache;
+
+    /**
+     * @param delegate    实际加载用户信息的UserDetailsService
+     * @param maximumSize 缓存的最大条目数
+     * @param ttl         用户信息的缓存时间(秒)
+     * @param negativeTtl 不存在的用户名的缓存时间(秒)
+     */
+    public CachingUserDetailsService(UserDetailsService delegate, long maximumSize, long ttl, long negativeTtl) {
+        this.delegate = delegate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new CachedUserExpiry(TimeUnit.SECONDS.toNanos(ttl), TimeUnit.SECONDS.toNanos(negativeTtl)))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 每次返回新的User对象，认证成功后ProviderManager会擦除返回对象中的密码，不能直接返回缓存中的对象
+     *
+     * @param username
+     * @return
+     * @throws UsernameNotFoundException
+     */
+    @Override
+    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        UserDetails user = cache.get(username, this::load).user;
+        if (null == user) {
+            throw new UsernameNotFoundException("UserName " + username + " not found!");
+        }
+
+        return new User(user.getUsername(), user.getPassword(), user.isEnabled(), user.isAccountNonExpired(),
+                user.isCredentialsNonExpired(), user.isAccountNonLocked(), user.getAuthorities());
+    }
+
+    private CachedUser load(String username) {
+        try {
+            return new CachedUser(delegate.loadUserByUsername(username));
+        } catch (UsernameNotFoundException e) {
+            return new CachedUser(null);
+        }
+    }
+
+    /**
+     * 清除指定用户的缓存，下次访问时重新从数据库加载
+     *
+     * @param username
+     */
+    public void evict(String username) {
+        log.info("Evicting cached user details: {}", username);
+        cache.invalidate(username);
+    }
+
+    /**
+     * 清除所有用户的缓存
+     */
+    public void evictAll() {
+        log.info("Evicting all cached user details");
+        cache.invalidateAll();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new CaffeineCacheMetrics(cache, "userDetails", Tags.empty()).bindTo(registry);
+    }
+
+    /**
+     * user为null表示用户名不存在
+     */
+    private static final class CachedUser {
+
+        private final UserDetails user;
+
+        private CachedUser(UserDetails user) {
+            this.user = user;
+        }
+    }
+
+    private static final class CachedUserExpiry implements Expiry<String, CachedUser> {
+
+        private final long ttl;
+
+        private final long negativeTtl;
+
+        private CachedUserExpiry(long ttl, long negativeTtl) {
+            this.ttl = ttl;
+            this.negativeTtl = negativeTtl;
+        }
+
+        @Override
+        public long expireAfterCreate(String key, CachedUser value, long currentTime) {
+            return null == value.user ? negativeTtl : ttl;
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, CachedUser value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, CachedUser value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.cloud.kevin.authserver.user;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 从users、user_authorities表加载用户信息
+ * 用户和权限通过一次left join查询得到，不会按权限逐条查询
+ *
+ * @author Kevin
+ */
+public class JdbcUserDetailsService implements UserDetailsService {
+
+    private static final String USER_WITH_AUTHORITIES_SQL = "select u.password, a.authority from users u "
+            + "left join user_authorities a on a.user_id = u.id where u.username = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcUserDetailsService(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        if (StringUtils.isEmpty(username)) {
+            throw new UsernameNotFoundException("UserName is empty!");
+        }
+
+        List<String> passwords = new ArrayList<>(1);
+        List<GrantedAuthority> grantedAuthorities = new ArrayList<>();
+        jdbcTemplate.query(USER_WITH_AUTHORITIES_SQL, rs -> {
+            if (passwords.isEmpty()) {
+                passwords.add(rs.getString(1));
+            }
+            // 角色以ROLE_做为前缀，权限用冒号进行分隔，表示层级关系
+            String authority = rs.getString(2);
+            if (null != authority) {
+                grantedAuthorities.add(new SimpleGrantedAuthority(authority));
+            }
+        }, username);
+
+        // 用户名不存在
+        if (passwords.isEmpty()) {
+            throw new UsernameNotFoundException("UserName " + username + " not found!");
+        }
+
+        return new User(username, passwords.get(0), true, true, true, true, grantedAuthorities);
+    }
+}
@@ -0,0 +1,55 @@
+package com.cloud.kevin.authserver.user;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 用户缓存的管理端点
+ * GET    /actuator/usercache            查看缓存统计
+ * DELETE /actuator/usercache            清除所有用户的缓存
+ * DELETE /actuator/usercache/{username} 数据库中的用户信息变化后清除对应的缓存
+ * DELETE操作只允许ROLE_ADMIN调用，见WebSecurityConfiguration
+ *
+ * @author Kevin
+ */
+@Endpoint(id = "usercache")
+public class UserCacheEndpoint {
+
+    private final CachingUserDetailsService userDetailsService;
+
+    public UserCacheEndpoint(CachingUserDetailsService userDetailsService) {
+        this.userDetailsService = userDetailsService;
+    }
+
+    @ReadOperation
+    public Map<String, Object> stats() {
+        CacheStats stats = userDetailsService.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+
+        result.put("size", userDetailsService.size());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        result.put("loadFailureCount", stats.loadFailureCount());
+        result.put("averageLoadPenalty", stats.averageLoadPenalty());
+
+        return result;
+    }
+
+    @DeleteOperation
+    public void evictAll() {
+        userDetailsService.evictAll();
+    }
+
+    @DeleteOperation
+    public void evict(@Selector String username) {
+        userDetailsService.evict(username);
+    }
+}
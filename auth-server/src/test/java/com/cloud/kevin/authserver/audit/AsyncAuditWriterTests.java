@@ -0,0 +1,123 @@
+package com.cloud.kevin.authserver.audit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * 缓冲区已满时DROP和BLOCK策略的行为，以及批量写入的顺序
+ */
+public class AsyncAuditWriterTests {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private DriverManagerDataSource dataSource;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private AsyncAuditWriter writer;
+
+	@Before
+	public void setUp() {
+		dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("create table oauth_audit_event (id bigint not null auto_increment primary key, "
+				+ "event_type varchar(32) not null, principal varchar(256), client_id varchar(256), "
+				+ "remote_address varchar(64), detail varchar(1024), created_at timestamp(3) not null)");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (null != writer) {
+			writer.destroy();
+		}
+		jdbcTemplate.execute("shutdown");
+	}
+
+	@Test
+	public void dropPolicyCountsEventsThatDoNotFit() throws Exception {
+		writer = writer(AsyncAuditWriter.OverflowPolicy.DROP, 0);
+
+		// 写入线程还没有启动，缓冲区满后立即丢弃
+		for (int i = 0; i < 6; i++) {
+			writer.publish(event(i));
+		}
+		assertEquals(2, count("dropped"), 0);
+		assertEquals(4, meterRegistry.get("auth.audit.queue.depth").gauge().value(), 0);
+
+		writer.afterPropertiesSet();
+		writer.destroy();
+		assertEquals(4, count("written"), 0);
+		assertEquals(4, rows());
+	}
+
+	@Test
+	public void blockPolicyDropsAfterTimeout() {
+		writer = writer(AsyncAuditWriter.OverflowPolicy.BLOCK, 50);
+		for (int i = 0; i < 4; i++) {
+			writer.publish(event(i));
+		}
+
+		long start = System.nanoTime();
+		writer.publish(event(4));
+		long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		assertEquals(1, count("dropped"), 0);
+		assertFalse("Should wait for the block timeout, waited " + waited + "ms", waited < 40);
+	}
+
+	@Test
+	public void blockPolicyWaitsForWriterToMakeRoom() throws Exception {
+		writer = writer(AsyncAuditWriter.OverflowPolicy.BLOCK, TimeUnit.SECONDS.toMillis(10));
+		for (int i = 0; i < 4; i++) {
+			writer.publish(event(i));
+		}
+
+		CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> writer.publish(event(4)));
+		Thread.sleep(100);
+		assertFalse(blocked.isDone());
+
+		writer.afterPropertiesSet();
+		blocked.get(5, TimeUnit.SECONDS);
+		writer.destroy();
+
+		assertEquals(0, count("dropped"), 0);
+		assertEquals(5, count("written"), 0);
+		// 按发布顺序写入
+		List<String> details = jdbcTemplate.queryForList(
+				"select detail from oauth_audit_event order by id", String.class);
+		for (int i = 0; i < 5; i++) {
+			assertEquals("event-" + i, details.get(i));
+		}
+	}
+
+	private AsyncAuditWriter writer(AsyncAuditWriter.OverflowPolicy overflowPolicy, long blockTimeout) {
+		AsyncAuditWriter writer = new AsyncAuditWriter(dataSource, 4, 2, 10, overflowPolicy, blockTimeout);
+		writer.bindTo(meterRegistry);
+		return writer;
+	}
+
+	private double count(String result) {
+		return meterRegistry.get("auth.audit.events").tag("result", result).functionCounter().count();
+	}
+
+	private int rows() {
+		return jdbcTemplate.queryForObject("select count(*) from oauth_audit_event", Integer.class);
+	}
+
+	private static AuditEvent event(int i) {
+		return new AuditEvent(AuditEvent.Type.LOGIN_FAILURE, "zhangsan", "client_1", "event-" + i);
+	}
+}
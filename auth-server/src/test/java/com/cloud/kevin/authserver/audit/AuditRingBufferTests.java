@@ -0,0 +1,109 @@
+package com.cloud.kevin.authserver.audit;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 环形缓冲区的容量、取出顺序和多生产者并发写入
+ */
+public class AuditRingBufferTests {
+
+	@Test
+	public void capacityIsRoundedUpToPowerOfTwo() {
+		assertEquals(8, new AuditRingBuffer<Integer>(5).capacity());
+		assertEquals(8, new AuditRingBuffer<Integer>(8).capacity());
+	}
+
+	@Test
+	public void offerFailsWhenFullAndSucceedsAfterDrain() {
+		AuditRingBuffer<Integer> buffer = new AuditRingBuffer<>(4);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(buffer.offer(i));
+		}
+		assertFalse(buffer.offer(4));
+		assertEquals(4, buffer.size());
+
+		List<Integer> drained = new ArrayList<>();
+		assertEquals(1, buffer.drainTo(drained, 1));
+		assertTrue(buffer.offer(4));
+		assertFalse(buffer.offer(5));
+	}
+
+	@Test
+	public void drainKeepsInsertionOrderAcrossWrapAround() {
+		AuditRingBuffer<Integer> buffer = new AuditRingBuffer<>(4);
+		List<Integer> drained = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			assertTrue(buffer.offer(i));
+			if (i % 3 == 2) {
+				buffer.drainTo(drained, 3);
+			}
+		}
+		while (buffer.drainTo(drained, 2) > 0) {
+			// 取完剩余的元素
+		}
+
+		assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), drained);
+		assertEquals(0, buffer.size());
+	}
+
+	@Test
+	public void concurrentProducersLoseNothingAndKeepPerProducerOrder() throws Exception {
+		int producers = 8;
+		int perProducer = 20000;
+		AuditRingBuffer<long[]> buffer = new AuditRingBuffer<>(1024);
+		ExecutorService executor = Executors.newFixedThreadPool(producers);
+		CountDownLatch start = new CountDownLatch(1);
+		for (int p = 0; p < producers; p++) {
+			int producer = p;
+			executor.execute(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				for (long i = 0; i < perProducer; i++) {
+					// 缓冲区满时自旋等消费者腾出空间
+					while (!buffer.offer(new long[]{producer, i})) {
+						Thread.yield();
+					}
+				}
+			});
+		}
+		start.countDown();
+
+		long[] next = new long[producers];
+		List<long[]> drained = new ArrayList<>();
+		int total = 0;
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+		while (total < producers * perProducer && System.currentTimeMillis() < deadline) {
+			drained.clear();
+			if (buffer.drainTo(drained, 256) == 0) {
+				Thread.yield();
+				continue;
+			}
+			for (long[] element : drained) {
+				int producer = (int) element[0];
+				assertEquals(next[producer]++, element[1]);
+			}
+			total += drained.size();
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+		assertEquals(producers * perProducer, total);
+		assertEquals(0, buffer.size());
+	}
+}
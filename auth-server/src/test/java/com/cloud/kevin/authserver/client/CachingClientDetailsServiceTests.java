@@ -0,0 +1,179 @@
+package com.cloud.kevin.authserver.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.NoSuchClientException;
+import org.springframework.security.oauth2.provider.client.BaseClientDetails;
+import org.springframework.security.oauth2.provider.client.JdbcClientDetailsService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * client缓存的命中、不存在的client、数据库中删除的client和缓存清除
+ */
+public class CachingClientDetailsServiceTests {
+
+	private final AtomicInteger queries = new AtomicInteger();
+
+	private volatile RuntimeException failure;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private CachingClientDetailsService clientDetailsService;
+
+	@Before
+	public void setUp() {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("create table oauth_client_details (client_id varchar(128) not null primary key, "
+				+ "resource_ids varchar(256), client_secret varchar(256), scope varchar(256), "
+				+ "authorized_grant_types varchar(256), web_server_redirect_uri varchar(256), "
+				+ "authorities varchar(256), access_token_validity int, refresh_token_validity int, "
+				+ "additional_information varchar(4096), autoapprove varchar(256))");
+		insert("client_1", "secret-1");
+
+		JdbcClientDetailsService delegate = new JdbcClientDetailsService(dataSource) {
+			@Override
+			public ClientDetails loadClientByClientId(String clientId) {
+				queries.incrementAndGet();
+				if (null != failure) {
+					throw failure;
+				}
+				return super.loadClientByClientId(clientId);
+			}
+		};
+		clientDetailsService = new CachingClientDetailsService(delegate, 100, 60, 1, 1);
+	}
+
+	@After
+	public void tearDown() {
+		jdbcTemplate.execute("shutdown");
+	}
+
+	@Test
+	public void cachedClientIsNotQueriedAgain() {
+		assertEquals("secret-1", clientDetailsService.loadClientByClientId("client_1").getClientSecret());
+		assertEquals("secret-1", clientDetailsService.loadClientByClientId("client_1").getClientSecret());
+
+		assertEquals(1, queries.get());
+		assertEquals(1, clientDetailsService.stats().hitCount());
+		assertEquals(1, clientDetailsService.stats().missCount());
+	}
+
+	@Test
+	public void unknownClientIsCachedForNegativeTtl() throws Exception {
+		assertNotFound("client_2");
+		assertNotFound("client_2");
+		assertEquals(1, queries.get());
+
+		// 直接写入数据库的client在negativeTtl秒后可以使用
+		insert("client_2", "secret-2");
+		Thread.sleep(1200);
+		assertEquals("secret-2", clientDetailsService.loadClientByClientId("client_2").getClientSecret());
+		assertEquals(2, queries.get());
+	}
+
+	@Test
+	public void addedClientReplacesNegativeEntry() {
+		assertNotFound("client_2");
+
+		BaseClientDetails client = new BaseClientDetails("client_2", "resourceServer1", "select",
+				"client_credentials", "client");
+		client.setClientSecret("secret-2");
+		clientDetailsService.addClientDetails(client);
+
+		assertEquals("secret-2", clientDetailsService.loadClientByClientId("client_2").getClientSecret());
+	}
+
+	@Test
+	public void clientDeletedInDatabaseStopsAuthenticatingAfterRefresh() throws Exception {
+		clientDetailsService.loadClientByClientId("client_1");
+		jdbcTemplate.update("delete from oauth_client_details where client_id = ?", "client_1");
+
+		// refreshAfterWrite为1秒，之后的第一次访问触发后台刷新，刷新完成后不再认证
+		Thread.sleep(1100);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (true) {
+			try {
+				clientDetailsService.loadClientByClientId("client_1");
+			} catch (NoSuchClientException e) {
+				break;
+			}
+			if (System.currentTimeMillis() > deadline) {
+				fail("Deleted client should not be loaded after refresh");
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	public void queryFailureIsNotCached() {
+		failure = new IllegalStateException("Database is unavailable");
+		try {
+			clientDetailsService.loadClientByClientId("client_1");
+			fail("Failure of the delegate should be propagated");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		failure = null;
+		assertEquals("client_1", clientDetailsService.loadClientByClientId("client_1").getClientId());
+		assertEquals(2, queries.get());
+	}
+
+	@Test
+	public void evictReloadsClientAndNotifiesListeners() {
+		List<String> evicted = new ArrayList<>();
+		clientDetailsService.addEvictionListener(new CachingClientDetailsService.EvictionListener() {
+			@Override
+			public void evict(String clientId) {
+				evicted.add(clientId);
+			}
+
+			@Override
+			public void evictAll() {
+				evicted.add("*");
+			}
+		});
+		clientDetailsService.loadClientByClientId("client_1");
+		jdbcTemplate.update("update oauth_client_details set client_secret = ? where client_id = ?", "secret-3",
+				"client_1");
+
+		assertEquals("secret-1", clientDetailsService.loadClientByClientId("client_1").getClientSecret());
+		clientDetailsService.evict("client_1");
+		assertEquals("secret-3", clientDetailsService.loadClientByClientId("client_1").getClientSecret());
+
+		assertEquals(2, queries.get());
+
+		clientDetailsService.evictAll();
+		assertEquals(0, clientDetailsService.size());
+		assertEquals(Arrays.asList("client_1", "*"), evicted);
+	}
+
+	private void insert(String clientId, String secret) {
+		jdbcTemplate.update("insert into oauth_client_details (client_id, resource_ids, client_secret, scope, "
+						+ "authorized_grant_types, authorities) values (?, 'resourceServer1', ?, 'select', "
+						+ "'client_credentials', 'client')", clientId, secret);
+	}
+
+	private void assertNotFound(String clientId) {
+		try {
+			clientDetailsService.loadClientByClientId(clientId);
+			fail("Unknown client should not be found");
+		} catch (NoSuchClientException e) {
+			// expected
+		}
+	}
+}
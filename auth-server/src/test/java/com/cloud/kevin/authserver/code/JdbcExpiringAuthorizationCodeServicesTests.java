@@ -0,0 +1,82 @@
+package com.cloud.kevin.authserver.code;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+import java.util.UUID;
+
+import static com.cloud.kevin.authserver.code.StripedInMemoryAuthorizationCodeServicesTests.authentication;
+import static com.cloud.kevin.authserver.code.StripedInMemoryAuthorizationCodeServicesTests.redeemConcurrently;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * 在H2上模拟多个auth-server节点共用oauth_code表兑换同一授权码
+ */
+public class JdbcExpiringAuthorizationCodeServicesTests {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private DriverManagerDataSource dataSource;
+
+	private JdbcTemplate jdbcTemplate;
+
+	@Before
+	public void setUp() {
+		dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("create table oauth_code (code varchar(64) not null primary key, "
+				+ "authentication blob not null, expires_at timestamp not null)");
+	}
+
+	@After
+	public void tearDown() {
+		jdbcTemplate.execute("shutdown");
+	}
+
+	@Test
+	public void concurrentRedeemAcrossNodesSucceedsOnlyOnce() throws Exception {
+		JdbcExpiringAuthorizationCodeServices issuer = new JdbcExpiringAuthorizationCodeServices(dataSource, 60, 60);
+		String code = issuer.createAuthorizationCode(authentication());
+
+		// 兑换与签发使用不同的实例，只通过同一张表和delete的影响行数保证只兑换一次
+		JdbcExpiringAuthorizationCodeServices redeemer = new JdbcExpiringAuthorizationCodeServices(dataSource, 60, 60);
+		redeemer.bindTo(meterRegistry);
+		assertEquals(1, redeemConcurrently(redeemer, code, 16));
+		assertEquals(1, meterRegistry.get("oauth.authorization.codes").tag("result", "consumed")
+				.functionCounter().count(), 0);
+		assertEquals(0, jdbcTemplate.queryForObject("select count(*) from oauth_code", Integer.class).intValue());
+	}
+
+	@Test
+	public void redeemedAuthenticationIsRestored() {
+		JdbcExpiringAuthorizationCodeServices codeServices = new JdbcExpiringAuthorizationCodeServices(dataSource, 60, 60);
+		String code = codeServices.createAuthorizationCode(authentication());
+
+		OAuth2Authentication restored = codeServices.consumeAuthorizationCode(code);
+		assertEquals("zhangsan", restored.getName());
+		assertEquals("client_1", restored.getOAuth2Request().getClientId());
+	}
+
+	@Test
+	public void expiredCodeIsRejected() throws Exception {
+		JdbcExpiringAuthorizationCodeServices codeServices = new JdbcExpiringAuthorizationCodeServices(dataSource, 1, 60);
+		String code = codeServices.createAuthorizationCode(authentication());
+		Thread.sleep(1100);
+
+		try {
+			codeServices.consumeAuthorizationCode(code);
+			fail("Expired code should be rejected");
+		} catch (InvalidGrantException e) {
+			// expected
+		}
+		assertEquals(0, jdbcTemplate.queryForObject("select count(*) from oauth_code", Integer.class).intValue());
+	}
+}
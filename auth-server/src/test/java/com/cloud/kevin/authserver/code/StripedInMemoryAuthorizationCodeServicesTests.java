@@ -0,0 +1,143 @@
+package com.cloud.kevin.authserver.code;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+/**
+ * 并发兑换同一授权码和时间轮过期
+ */
+public class StripedInMemoryAuthorizationCodeServicesTests {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private StripedInMemoryAuthorizationCodeServices codeServices;
+
+	@Before
+	public void setUp() {
+		codeServices = new StripedInMemoryAuthorizationCodeServices(1, 4, 100);
+		codeServices.bindTo(meterRegistry);
+		codeServices.afterPropertiesSet();
+	}
+
+	@After
+	public void tearDown() {
+		codeServices.destroy();
+	}
+
+	@Test
+	public void concurrentRedeemSucceedsOnlyOnce() throws Exception {
+		String code = codeServices.createAuthorizationCode(authentication());
+
+		assertEquals(1, redeemConcurrently(codeServices, code, 16));
+		assertEquals(1, count("consumed"), 0);
+		assertEquals(15, count("rejected"), 0);
+	}
+
+	@Test
+	public void timingWheelExpiresUnredeemedCodes() throws Exception {
+		List<String> codes = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			codes.add(codeServices.createAuthorizationCode(authentication()));
+		}
+		assertNotNull(codeServices.consumeAuthorizationCode(codes.get(0)));
+		assertEquals(99, meterRegistry.get("oauth.authorization.codes.pending").gauge().value(), 0);
+
+		// ttl 1秒，时间轮转过对应的槽后全部被清理
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+		while (count("expired") < 99 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertEquals(99, count("expired"), 0);
+		assertEquals(0, meterRegistry.get("oauth.authorization.codes.pending").gauge().value(), 0);
+
+		try {
+			codeServices.consumeAuthorizationCode(codes.get(1));
+			fail("Expired code should be rejected");
+		} catch (InvalidGrantException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void expiredCodeIsRejectedBeforeCleanup() throws Exception {
+		StripedInMemoryAuthorizationCodeServices idle = new StripedInMemoryAuthorizationCodeServices(1, 4, 60000);
+		String code = idle.createAuthorizationCode(authentication());
+		Thread.sleep(1100);
+
+		try {
+			idle.consumeAuthorizationCode(code);
+			fail("Expired code should be rejected even if the wheel has not reached it");
+		} catch (InvalidGrantException e) {
+			// expected
+		}
+	}
+
+	private double count(String result) {
+		return meterRegistry.get("oauth.authorization.codes").tag("result", result).functionCounter().count();
+	}
+
+	/**
+	 * 多个线程同时兑换同一个授权码，返回成功的次数
+	 */
+	static int redeemConcurrently(ExpiringAuthorizationCodeServices codeServices, String code, int threads)
+			throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		try {
+			List<Future<Boolean>> results = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				results.add(executor.submit((Callable<Boolean>) () -> {
+					start.await();
+					try {
+						return null != codeServices.consumeAuthorizationCode(code);
+					} catch (InvalidGrantException e) {
+						return false;
+					}
+				}));
+			}
+			start.countDown();
+
+			int succeeded = 0;
+			for (Future<Boolean> result : results) {
+				if (result.get()) {
+					succeeded++;
+				}
+			}
+			return succeeded;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	static OAuth2Authentication authentication() {
+		OAuth2Request request = new OAuth2Request(Collections.singletonMap("response_type", "code"), "client_1",
+				AuthorityUtils.createAuthorityList("client"), true, Collections.singleton("select"),
+				Collections.singleton("resourceServer1"), "http://localhost/callback", Collections.singleton("code"),
+				null);
+		UsernamePasswordAuthenticationToken user = new UsernamePasswordAuthenticationToken("zhangsan", null,
+				AuthorityUtils.createAuthorityList("ROLE_USER"));
+
+		return new OAuth2Authentication(request, user);
+	}
+}
@@ -0,0 +1,111 @@
+package com.cloud.kevin.authserver.config;
+
+import com.cloud.kevin.authserver.audit.AsyncAuditWriter;
+import com.cloud.kevin.authserver.jwt.JwtKeyRing;
+import com.cloud.kevin.authserver.jwt.KeyRingJwtAccessTokenConverter;
+import com.cloud.kevin.authserver.jwt.SigningKey;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 通过配置类创建的TokenEnhancerChain签发token，并记录审计事件
+ */
+public class TokenEnhancerChainTests {
+
+	private DriverManagerDataSource dataSource;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private AsyncAuditWriter auditWriter;
+
+	private DefaultTokenServices tokenServices;
+
+	@Before
+	public void setUp() throws Exception {
+		dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("create table oauth_audit_event (id bigint not null auto_increment primary key, "
+				+ "event_type varchar(32) not null, principal varchar(256), client_id varchar(256), "
+				+ "remote_address varchar(64), detail varchar(1024), created_at timestamp(3) not null)");
+		auditWriter = new AsyncAuditWriter(dataSource, 64, 16, 10, AsyncAuditWriter.OverflowPolicy.DROP, 0);
+		auditWriter.afterPropertiesSet();
+
+		ClassPathResource keyStore = new ClassPathResource("authserver.jks");
+		SigningKey defaultKey = SigningKey.fromKeyStore(keyStore, "storepwd", "authServer", "keypwd");
+		JwtAccessTokenConverter converter = new KeyRingJwtAccessTokenConverter(
+				new JwtKeyRing(defaultKey, defaultKey, 0, 60));
+		converter.afterPropertiesSet();
+
+		tokenServices = new DefaultTokenServices();
+		tokenServices.setTokenStore(new JwtTokenStore(converter));
+		tokenServices.setTokenEnhancer(new Oauth2ServerConfiguration().tokenEnhancer(converter, auditWriter));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		auditWriter.destroy();
+		jdbcTemplate.execute("shutdown");
+	}
+
+	@Test
+	public void passwordGrantIsSignedAndAudited() throws Exception {
+		OAuth2AccessToken accessToken = tokenServices.createAccessToken(authentication());
+
+		assertEquals("zhangsan", accessToken.getAdditionalInformation().get("username"));
+		Object jti = accessToken.getAdditionalInformation().get("jti");
+		assertNotNull(jti);
+
+		auditWriter.destroy();
+		Map<String, Object> event = jdbcTemplate.queryForMap("select * from oauth_audit_event");
+		assertEquals("TOKEN_ISSUED", event.get("event_type"));
+		assertEquals("zhangsan", event.get("principal"));
+		assertEquals("client_1", event.get("client_id"));
+		assertEquals("grant_type=password, jti=" + jti, event.get("detail"));
+	}
+
+	@Test
+	public void clientCredentialsGrantIsAuditedWithoutPrincipal() throws Exception {
+		OAuth2AccessToken accessToken = tokenServices.createAccessToken(
+				new OAuth2Authentication(request("client_credentials"), null));
+
+		assertEquals("client_1", accessToken.getAdditionalInformation().get("clientId"));
+		auditWriter.destroy();
+		Map<String, Object> event = jdbcTemplate.queryForMap("select * from oauth_audit_event");
+		assertEquals("TOKEN_ISSUED", event.get("event_type"));
+		assertNull(event.get("principal"));
+	}
+
+	private static OAuth2Authentication authentication() {
+		User user = new User("zhangsan", "", AuthorityUtils.createAuthorityList("ROLE_USER"));
+		return new OAuth2Authentication(request("password"),
+				new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+	}
+
+	private static OAuth2Request request(String grantType) {
+		return new OAuth2Request(Collections.singletonMap("grant_type", grantType), "client_1",
+				AuthorityUtils.createAuthorityList("client"), true, Collections.singleton("select"),
+				Collections.singleton("resourceServer1"), null, null, null);
+	}
+}
@@ -0,0 +1,201 @@
+package com.cloud.kevin.authserver.controller;
+
+import com.cloud.kevin.authserver.client.CachingClientDetailsService;
+import com.cloud.kevin.authserver.config.IntrospectionSecurityConfiguration;
+import com.cloud.kevin.authserver.config.Oauth2ServerConfiguration.IntrospectionSetting;
+import com.cloud.kevin.authserver.crypto.ClientSecretCache;
+import com.cloud.kevin.authserver.jwt.JwtKeyRing;
+import com.cloud.kevin.authserver.jwt.KeyRingJwtAccessTokenConverter;
+import com.cloud.kevin.authserver.jwt.SigningKey;
+import com.cloud.kevin.authserver.revocation.TokenRevocationService;
+import com.cloud.kevin.authserver.token.TokenIntrospectionService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.client.JdbcClientDetailsService;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+import javax.servlet.Filter;
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 内省端点需要client的HTTP Basic认证，按RFC 7662返回结果
+ */
+@RunWith(SpringRunner.class)
+@WebAppConfiguration
+@ContextConfiguration(classes = IntrospectionEndpointsTests.Config.class)
+public class IntrospectionEndpointsTests {
+
+	@Autowired
+	private WebApplicationContext context;
+
+	@Autowired
+	private JwtAccessTokenConverter converter;
+
+	private MockMvc mockMvc;
+
+	@Before
+	public void setUp() {
+		mockMvc = MockMvcBuilders.webAppContextSetup(context)
+				.addFilters(context.getBean("springSecurityFilterChain", Filter.class))
+				.build();
+	}
+
+	@Test
+	public void clientAuthenticationIsRequired() throws Exception {
+		String token = issue();
+
+		mockMvc.perform(post("/oauth/introspect").param("token", token))
+				.andExpect(status().isUnauthorized());
+		mockMvc.perform(post("/oauth/introspect").param("token", token)
+				.header(HttpHeaders.AUTHORIZATION, basic("client_1", "wrong")))
+				.andExpect(status().isUnauthorized());
+		mockMvc.perform(post("/oauth/introspect/batch").contentType(MediaType.APPLICATION_JSON)
+				.content("[\"" + token + "\"]"))
+				.andExpect(status().isUnauthorized());
+	}
+
+	@Test
+	public void activeTokenReturnsClaims() throws Exception {
+		mockMvc.perform(post("/oauth/introspect").param("token", issue())
+				.header(HttpHeaders.AUTHORIZATION, basic("client_1", "secret")))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.active").value(true))
+				.andExpect(jsonPath("$.client_id").value("client_1"))
+				.andExpect(jsonPath("$.scope").value("select"));
+	}
+
+	@Test
+	public void invalidTokenReturnsOnlyInactive() throws Exception {
+		mockMvc.perform(post("/oauth/introspect").param("token", "not-a-jwt")
+				.header(HttpHeaders.AUTHORIZATION, basic("client_1", "secret")))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.active").value(false))
+				.andExpect(jsonPath("$.client_id").doesNotExist());
+	}
+
+	@Test
+	public void batchKeepsOrderAndIsLimited() throws Exception {
+		mockMvc.perform(post("/oauth/introspect/batch").contentType(MediaType.APPLICATION_JSON)
+				.content("[\"invalid\", \"" + issue() + "\"]")
+				.header(HttpHeaders.AUTHORIZATION, basic("client_1", "secret")))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].active").value(false))
+				.andExpect(jsonPath("$[1].active").value(true));
+
+		mockMvc.perform(post("/oauth/introspect/batch").contentType(MediaType.APPLICATION_JSON)
+				.content("[\"a\", \"b\", \"c\"]")
+				.header(HttpHeaders.AUTHORIZATION, basic("client_1", "secret")))
+				.andExpect(status().isBadRequest());
+	}
+
+	private String issue() {
+		OAuth2Request request = new OAuth2Request(Collections.singletonMap("grant_type", "client_credentials"),
+				"client_1", AuthorityUtils.createAuthorityList("client"), true, Collections.singleton("select"),
+				Collections.singleton("resourceServer1"), null, null, null);
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+		token.setExpiration(new Date(System.currentTimeMillis() + 3600000));
+		token.setScope(Collections.singleton("select"));
+		return converter.enhance(token, new OAuth2Authentication(request, null)).getValue();
+	}
+
+	private static String basic(String clientId, String secret) {
+		return "Basic " + Base64.getEncoder()
+				.encodeToString((clientId + ":" + secret).getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Configuration
+	@EnableWebMvc
+	@EnableWebSecurity
+	@Import(IntrospectionSecurityConfiguration.class)
+	static class Config {
+
+		@Bean
+		public DataSource dataSource() {
+			DriverManagerDataSource dataSource = new DriverManagerDataSource(
+					"jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+			JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+			jdbcTemplate.execute("create table oauth_revoked_token (id bigint not null auto_increment primary key, "
+					+ "jti varchar(64) not null unique, expires_at timestamp not null, "
+					+ "revoked_at timestamp default current_timestamp not null)");
+			jdbcTemplate.execute("create table oauth_client_details (client_id varchar(128) not null primary key, "
+					+ "resource_ids varchar(256), client_secret varchar(256), scope varchar(256), "
+					+ "authorized_grant_types varchar(256), web_server_redirect_uri varchar(256), "
+					+ "authorities varchar(256), access_token_validity int, refresh_token_validity int, "
+					+ "additional_information varchar(4096), autoapprove varchar(256))");
+			jdbcTemplate.update("insert into oauth_client_details (client_id, resource_ids, client_secret, scope, "
+					+ "authorized_grant_types, authorities) values ('client_1', 'resourceServer1', ?, 'select', "
+					+ "'client_credentials', 'client')", passwordEncoder().encode("secret"));
+			return dataSource;
+		}
+
+		@Bean
+		public PasswordEncoder passwordEncoder() {
+			return new BCryptPasswordEncoder(4);
+		}
+
+		@Bean
+		public CachingClientDetailsService cachingClientDetailsService() {
+			return new CachingClientDetailsService(new JdbcClientDetailsService(dataSource()), 100, 600, 60, 10);
+		}
+
+		@Bean
+		public ClientSecretCache clientSecretCache() {
+			return new ClientSecretCache(100, 60);
+		}
+
+		@Bean
+		public TokenRevocationService tokenRevocationService() {
+			return new TokenRevocationService(dataSource(), 3600, 3600, 10, 0.01);
+		}
+
+		@Bean
+		public JwtAccessTokenConverter jwtAccessTokenConverter() throws Exception {
+			SigningKey defaultKey = SigningKey.fromKeyStore(new ClassPathResource("authserver.jks"), "storepwd",
+					"authServer", "keypwd");
+			return new KeyRingJwtAccessTokenConverter(new JwtKeyRing(defaultKey, defaultKey, 0, 60));
+		}
+
+		@Bean
+		public IntrospectionEndpoints introspectionEndpoints() throws Exception {
+			IntrospectionSetting introspectionSetting = new IntrospectionSetting();
+			introspectionSetting.setMaxBatchSize(2);
+			return new IntrospectionEndpoints(new TokenIntrospectionService(new JwtTokenStore(jwtAccessTokenConverter()),
+					tokenRevocationService(), 100, 3600, 60, new SimpleMeterRegistry()), introspectionSetting);
+		}
+	}
+}
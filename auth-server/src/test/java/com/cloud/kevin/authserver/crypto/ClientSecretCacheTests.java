@@ -0,0 +1,85 @@
+package com.cloud.kevin.authserver.crypto;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 只有校验成功的secret会被缓存，错误的secret每次都执行完整校验
+ */
+public class ClientSecretCacheTests {
+
+	private final AtomicInteger delegateMatches = new AtomicInteger();
+
+	private PasswordEncoder encoder;
+
+	@Before
+	public void setUp() {
+		PasswordEncoder delegate = new PasswordEncoder() {
+			@Override
+			public String encode(CharSequence rawPassword) {
+				return "{test}" + rawPassword;
+			}
+
+			@Override
+			public boolean matches(CharSequence rawPassword, String encodedPassword) {
+				delegateMatches.incrementAndGet();
+				return encode(rawPassword).equals(encodedPassword);
+			}
+		};
+		encoder = new ClientSecretCache(100, 60).wrap(delegate);
+	}
+
+	@Test
+	public void matchedSecretIsServedFromCache() {
+		String encoded = encoder.encode("secret");
+
+		assertTrue(encoder.matches("secret", encoded));
+		assertTrue(encoder.matches("secret", encoded));
+		assertTrue(encoder.matches("secret", encoded));
+
+		assertEquals(1, delegateMatches.get());
+	}
+
+	@Test
+	public void wrongSecretAlwaysPaysTheFullCheck() {
+		String encoded = encoder.encode("secret");
+		assertTrue(encoder.matches("secret", encoded));
+
+		assertFalse(encoder.matches("guess-1", encoded));
+		assertFalse(encoder.matches("guess-2", encoded));
+
+		assertEquals(3, delegateMatches.get());
+		// 失败的校验不会替换已缓存的结果
+		assertTrue(encoder.matches("secret", encoded));
+		assertEquals(3, delegateMatches.get());
+	}
+
+	@Test
+	public void failedMatchIsNotCached() {
+		String encoded = encoder.encode("secret");
+
+		assertFalse(encoder.matches("wrong", encoded));
+		assertFalse(encoder.matches("wrong", encoded));
+
+		assertEquals(2, delegateMatches.get());
+	}
+
+	@Test
+	public void changedSecretIsCheckedAgain() {
+		assertTrue(encoder.matches("secret", encoder.encode("secret")));
+
+		// 修改secret后数据库中的密文随之变化，旧的缓存不再命中
+		String changed = encoder.encode("new-secret");
+		assertFalse(encoder.matches("secret", changed));
+		assertTrue(encoder.matches("new-secret", changed));
+
+		assertEquals(3, delegateMatches.get());
+	}
+}
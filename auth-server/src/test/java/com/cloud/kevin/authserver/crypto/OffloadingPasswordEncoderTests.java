@@ -0,0 +1,122 @@
+package com.cloud.kevin.authserver.crypto;
+
+import com.cloud.kevin.authserver.limit.ConcurrencyLimitFilter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 密码哈希在专用线程池中执行，队列已满或等待超时时拒绝并标记过载
+ */
+public class OffloadingPasswordEncoderTests {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private PasswordHashingExecutor executor;
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		RequestContextHolder.resetRequestAttributes();
+		if (null != executor) {
+			executor.destroy();
+		}
+	}
+
+	@Test
+	public void hashingRunsOnDedicatedThreads() {
+		executor = new PasswordHashingExecutor(2, 10, 5000, meterRegistry);
+		PasswordEncoder encoder = new OffloadingPasswordEncoder(new PasswordEncoder() {
+			@Override
+			public String encode(CharSequence rawPassword) {
+				return Thread.currentThread().getName() + ":" + rawPassword;
+			}
+
+			@Override
+			public boolean matches(CharSequence rawPassword, String encodedPassword) {
+				return encodedPassword.endsWith(":" + rawPassword);
+			}
+		}, executor);
+
+		String encoded = encoder.encode("123456");
+		assertTrue(encoded, encoded.startsWith("password-hashing-"));
+		assertTrue(encoder.matches("123456", encoded));
+		assertEquals(2, meterRegistry.get("auth.password.hashing.execution").timer().count());
+	}
+
+	@Test
+	public void fullQueueIsRejectedImmediately() throws Exception {
+		executor = new PasswordHashingExecutor(1, 1, 5000, meterRegistry);
+		// 一个任务占用唯一的线程，一个任务在队列中
+		CompletableFuture.runAsync(() -> executor.execute(this::awaitRelease));
+		awaitGauge("auth.password.hashing.active", 1);
+		CompletableFuture.runAsync(() -> executor.execute(this::awaitRelease));
+		awaitGauge("auth.password.hashing.queue.size", 1);
+
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/oauth/token");
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+		try {
+			executor.execute(() -> true);
+			fail("Task should be rejected when the queue is full");
+		} catch (PasswordHashingRejectedException e) {
+			// expected
+		}
+
+		assertEquals(1, meterRegistry.get("auth.password.hashing.rejected").counter().count(), 0);
+		assertEquals(Boolean.TRUE, request.getAttribute(ConcurrencyLimitFilter.DROPPED_ATTRIBUTE));
+	}
+
+	@Test
+	public void waitLongerThanMaxWaitIsRejected() {
+		executor = new PasswordHashingExecutor(1, 10, 50, meterRegistry);
+
+		try {
+			executor.execute(this::awaitRelease);
+			fail("Task should be rejected after maxWait");
+		} catch (PasswordHashingRejectedException e) {
+			assertTrue(e.getMessage().contains("50ms"));
+		}
+		assertEquals(1, meterRegistry.get("auth.password.hashing.rejected").counter().count(), 0);
+	}
+
+	@Test
+	public void delegateExceptionIsPropagated() {
+		executor = new PasswordHashingExecutor(1, 10, 5000, meterRegistry);
+
+		try {
+			executor.execute(() -> {
+				throw new IllegalArgumentException("Encoded password does not look like BCrypt");
+			});
+			fail("Exception of the delegate should be propagated");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertEquals(0, meterRegistry.get("auth.password.hashing.rejected").counter().count(), 0);
+	}
+
+	private boolean awaitRelease() throws InterruptedException {
+		return release.await(10, TimeUnit.SECONDS);
+	}
+
+	private void awaitGauge(String name, double value) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+		while (meterRegistry.get(name).gauge().value() != value && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(value, meterRegistry.get(name).gauge().value(), 0);
+	}
+}
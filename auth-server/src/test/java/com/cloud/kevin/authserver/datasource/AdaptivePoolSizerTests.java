@@ -0,0 +1,92 @@
+package com.cloud.kevin.authserver.datasource;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * maxActive的调整规则，不启动调度线程
+ */
+public class AdaptivePoolSizerTests {
+
+	private static final int CURRENT = 50;
+
+	private AdaptivePoolSizer sizer;
+
+	@Before
+	public void setUp() {
+		sizer = sizer(30);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void intervalMustBeAtLeastOneSecond() {
+		sizer(0);
+	}
+
+	@Test
+	public void singleFastIntervalDoesNotResetTheBaseline() {
+		for (int i = 0; i < 5; i++) {
+			assertEquals(CURRENT, busy(10));
+		}
+		// 一个偶然很快的周期之后，正常范围内的延迟不应被当作数据库饱和
+		assertEquals(CURRENT, busy(1));
+		assertEquals(CURRENT, busy(15));
+		assertEquals(10, sizer.baselineLatency(), 0);
+	}
+
+	@Test
+	public void sustainedLatencyRiseShrinksThenBecomesTheNewBaseline() {
+		for (int i = 0; i < 5; i++) {
+			busy(10);
+		}
+		assertEquals(CURRENT - CURRENT / 5, busy(30));
+
+		// 持续升高的延迟在窗口滚动后成为新的基线
+		for (int i = 0; i < 20; i++) {
+			busy(30);
+		}
+		assertEquals(30, sizer.baselineLatency(), 0);
+		assertEquals(CURRENT, busy(30));
+	}
+
+	@Test
+	public void baselineNeedsSeveralIntervals() {
+		busy(10);
+		assertEquals(CURRENT, busy(100));
+	}
+
+	@Test
+	public void waitingThreadsGrowThePool() {
+		assertEquals(CURRENT + CURRENT / 5, sizer.nextMaxActive(CURRENT, 0, 10, CURRENT, 3));
+		assertEquals(CURRENT + CURRENT / 5, sizer.nextMaxActive(CURRENT, 20, 10, CURRENT, 0));
+		// 不超过上限
+		assertEquals(100, sizer.nextMaxActive(95, 20, 10, 95, 0));
+	}
+
+	@Test
+	public void idlePoolShrinksTowardsTwiceThePeak() {
+		assertEquals(CURRENT - CURRENT / 5, sizer.nextMaxActive(CURRENT, 0, 10, 2, 0));
+		assertEquals(24, sizer.nextMaxActive(26, 0, 10, 12, 0));
+		// 不低于下限
+		assertEquals(10, sizer.nextMaxActive(11, 0, -1, 0, 0));
+	}
+
+	/**
+	 * 连接池繁忙但没有等待的周期
+	 */
+	private int busy(double latency) {
+		return sizer.nextMaxActive(CURRENT, 0, latency, CURRENT, 0);
+	}
+
+	private static AdaptivePoolSizer sizer(long interval) {
+		DruidDataSource dataSource = new DruidDataSource();
+		dataSource.setMaxActive(CURRENT);
+		dataSource.setMinIdle(5);
+
+		return new AdaptivePoolSizer(dataSource, new DruidMetricsFilter(new SimpleMeterRegistry()), 10, 100,
+				interval, 5, 2.0);
+	}
+}
@@ -0,0 +1,72 @@
+package com.cloud.kevin.authserver.jwt;
+
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 签名密钥从证书库加载，各节点相同
+ */
+public class JwtKeyRingTests {
+
+	private static final Resource KEY_STORE = new ClassPathResource("authserver.jks");
+
+	@Test
+	public void es256SigningKeyIsLoadedFromKeyStore() throws Exception {
+		SigningKey defaultKey = SigningKey.fromKeyStore(KEY_STORE, "storepwd", "authServer", "keypwd");
+		SigningKey ecKey = SigningKey.fromKeyStore(KEY_STORE, "storepwd", "authServerEc", "keypwd");
+		assertEquals(JwsAlgorithm.RS256, defaultKey.getAlgorithm());
+		assertEquals(JwsAlgorithm.ES256, ecKey.getAlgorithm());
+
+		JwtKeyRing keyRing = new JwtKeyRing(defaultKey, ecKey, 0, 60);
+		assertSame(ecKey, keyRing.getActiveKey());
+		assertSame(defaultKey, keyRing.getKey(null));
+		assertEquals(2, keys(keyRing).size());
+		assertEquals("authServerEc", keys(keyRing).get(0).get("kid"));
+		assertEquals("P-256", keys(keyRing).get(0).get("crv"));
+
+		// 另一个节点加载出相同的密钥，签名可以互相验证
+		SigningKey otherNode = SigningKey.fromKeyStore(KEY_STORE, "storepwd", "authServerEc", "keypwd");
+		assertArrayEquals(ecKey.getKeyPair().getPublic().getEncoded(), otherNode.getKeyPair().getPublic().getEncoded());
+		byte[] content = "header.payload".getBytes(StandardCharsets.UTF_8);
+		byte[] signed = JwsAlgorithm.ES256.sign(otherNode.getKeyPair().getPrivate(), content);
+		assertTrue(JwsAlgorithm.ES256.verify(keyRing.getKey("authServerEc").getKeyPair().getPublic(), content, signed));
+	}
+
+	@Test
+	public void rotationKeepsKeyStoreKeys() throws Exception {
+		SigningKey defaultKey = SigningKey.fromKeyStore(KEY_STORE, "storepwd", "authServer", "keypwd");
+		SigningKey ecKey = SigningKey.fromKeyStore(KEY_STORE, "storepwd", "authServerEc", "keypwd");
+		JwtKeyRing keyRing = new JwtKeyRing(defaultKey, ecKey, 0, 0);
+
+		keyRing.rotate();
+		String first = keyRing.getActiveKey().getKid();
+		Thread.sleep(5);
+		keyRing.rotate();
+		Thread.sleep(5);
+		keyRing.rotate();
+
+		SigningKey active = keyRing.getActiveKey();
+		assertEquals(JwsAlgorithm.ES256, active.getAlgorithm());
+		// 保留时间为0，第一次轮换生成的密钥已被移除，证书库中的密钥始终保留
+		assertNull(keyRing.getKey(first));
+		assertSame(ecKey, keyRing.getKey("authServerEc"));
+		assertSame(defaultKey, keyRing.getKey("authServer"));
+		assertNull(keyRing.getKey("unknown"));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Map<String, Object>> keys(JwtKeyRing keyRing) {
+		return (List<Map<String, Object>>) keyRing.getJwkSet().get("keys");
+	}
+}
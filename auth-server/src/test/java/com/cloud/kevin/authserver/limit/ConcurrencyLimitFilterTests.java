@@ -0,0 +1,128 @@
+package com.cloud.kevin.authserver.limit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * 过载信号的判断和按已认证client的并发限制
+ */
+public class ConcurrencyLimitFilterTests {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@After
+	public void tearDown() {
+		SecurityContextHolder.clearContext();
+		RequestContextHolder.resetRequestAttributes();
+	}
+
+	@Test
+	public void serverErrorDoesNotShrinkTheLimit() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(16, 1, 100, 1.5);
+		ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(limiter, meterRegistry);
+
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(new MockHttpServletRequest("POST", "/oauth/token"), response,
+				new MockFilterChain(servlet(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, false)));
+
+		assertEquals(500, response.getStatus());
+		assertEquals(16, limiter.getLimit());
+		assertEquals(0, limiter.getInflight());
+	}
+
+	@Test
+	public void markedRejectionHalvesTheLimit() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(16, 1, 100, 1.5);
+		ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(limiter, meterRegistry);
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/oauth/token");
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+		// 密码哈希被拒绝后以401返回，只能通过请求属性识别
+		filter.doFilter(request, new MockHttpServletResponse(),
+				new MockFilterChain(servlet(HttpServletResponse.SC_UNAUTHORIZED, true)));
+
+		assertEquals(8, limiter.getLimit());
+		assertEquals(0, limiter.getInflight());
+	}
+
+	@Test
+	public void rejectionThrownThroughTheChainHalvesTheLimit() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(16, 1, 100, 1.5);
+		ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(limiter, meterRegistry);
+
+		try {
+			filter.doFilter(new MockHttpServletRequest("POST", "/oauth/token"), new MockHttpServletResponse(),
+					(request, response) -> {
+						throw new IllegalStateException(new RejectedExecutionException("queue is full"));
+					});
+			fail("Exception should be propagated");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		assertEquals(8, limiter.getLimit());
+		assertEquals(0, limiter.getInflight());
+	}
+
+	@Test
+	public void unauthenticatedClientIdDoesNotConsumeClientLimit() throws Exception {
+		ClientConcurrencyLimitFilter filter = new ClientConcurrencyLimitFilter(
+				() -> new AdaptiveConcurrencyLimiter(1, 1, 1, 1.5), meterRegistry);
+
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/oauth/token");
+		request.setParameter("client_id", "client_1");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, new MockFilterChain(servlet(HttpServletResponse.SC_OK, false)));
+
+		assertEquals(200, response.getStatus());
+		assertEquals(0, meterRegistry.get("auth.limiter.clients").gauge().value(), 0);
+	}
+
+	@Test
+	public void authenticatedClientIsLimited() throws Exception {
+		ClientConcurrencyLimitFilter filter = new ClientConcurrencyLimitFilter(
+				() -> new AdaptiveConcurrencyLimiter(1, 1, 1, 1.5), meterRegistry);
+		SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("client_1",
+				null, AuthorityUtils.createAuthorityList("client")));
+
+		MockHttpServletResponse inner = new MockHttpServletResponse();
+		MockHttpServletResponse outer = new MockHttpServletResponse();
+		// 第一个请求占用唯一的名额时，同一个client的第二个请求被拒绝
+		filter.doFilter(new MockHttpServletRequest("POST", "/oauth/token"), outer,
+				(request, response) -> filter.doFilter(new MockHttpServletRequest("POST", "/oauth/token"), inner,
+						new MockFilterChain(servlet(HttpServletResponse.SC_OK, false))));
+
+		assertEquals(200, outer.getStatus());
+		assertEquals(429, inner.getStatus());
+		assertEquals(1, meterRegistry.get("auth.limiter.rejected").tag("scope", "client").counter().count(), 0);
+	}
+
+	private static HttpServlet servlet(int status, boolean markDropped) {
+		return new HttpServlet() {
+			@Override
+			protected void service(HttpServletRequest request, HttpServletResponse response) {
+				if (markDropped) {
+					ConcurrencyLimitFilter.markDropped();
+				}
+				response.setStatus(status);
+			}
+		};
+	}
+}
@@ -0,0 +1,129 @@
+package com.cloud.kevin.authserver.revocation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 在H2上模拟两个auth-server节点共用oauth_revoked_token表
+ */
+public class TokenRevocationServiceTests {
+
+	private static final int MAX_DELTA = 10;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private DriverManagerDataSource dataSource;
+
+	private TokenRevocationService serviceA;
+
+	private TokenRevocationService serviceB;
+
+	@Before
+	public void setUp() {
+		dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("create table oauth_revoked_token (id bigint not null auto_increment primary key, "
+				+ "jti varchar(64) not null unique, expires_at timestamp not null, "
+				+ "revoked_at timestamp default current_timestamp not null)");
+	}
+
+	@After
+	public void tearDown() {
+		if (null != serviceA) {
+			serviceA.destroy();
+		}
+		if (null != serviceB) {
+			serviceB.destroy();
+		}
+		jdbcTemplate.execute("shutdown");
+	}
+
+	@Test
+	public void lateRevocationReachesUpToDateClients() {
+		insert(1, "jti-1");
+		insert(2, "jti-2");
+		// id 3的事务尚未提交
+		insert(4, "jti-4");
+		serviceA = service();
+
+		Map<String, Object> full = serviceA.getRevocations(null, null);
+		assertNotNull(full.get("bloom"));
+		long base = ((Number) full.get("base")).longValue();
+		long version = ((Number) full.get("version")).longValue();
+		assertEquals(4, version);
+		assertNull(serviceA.getRevocations(base, version).get("bloom"));
+
+		insert(3, "jti-late");
+		serviceA.refresh();
+
+		Map<String, Object> delta = serviceA.getRevocations(base, version);
+		assertNull(delta.get("bloom"));
+		assertTrue(revoked(delta).contains("jti-late"));
+		assertTrue(serviceA.isRevoked("jti-late"));
+	}
+
+	@Test
+	public void baseIsDerivedFromDataAndSharedAcrossNodes() throws Exception {
+		for (int id = 1; id <= 25; id++) {
+			insert(id, "jti-" + id);
+		}
+		serviceA = service();
+		// 另一个节点在不同的时间生成基线
+		Thread.sleep(20);
+		serviceB = service();
+
+		Map<String, Object> full = serviceA.getRevocations(null, null);
+		long base = ((Number) full.get("base")).longValue();
+		long version = ((Number) full.get("version")).longValue();
+		assertEquals(20, base);
+		assertEquals(25, version);
+
+		Map<String, Object> fromB = serviceB.getRevocations(base, version);
+		assertEquals(base, ((Number) fromB.get("base")).longValue());
+		assertNull(fromB.get("bloom"));
+
+		// 版本号跨过maxDelta的倍数后重新生成基线，两个节点的编号仍然一致
+		for (int id = 26; id <= 31; id++) {
+			insert(id, "jti-" + id);
+		}
+		serviceA.refresh();
+		serviceB.refresh();
+		Map<String, Object> rebuilt = serviceA.getRevocations(base, version);
+		assertEquals(30L, ((Number) rebuilt.get("base")).longValue());
+		assertNotNull(rebuilt.get("bloom"));
+		assertNull(serviceB.getRevocations(30L, 31L).get("bloom"));
+		assertFalse(serviceB.isRevoked("jti-unknown"));
+	}
+
+	private TokenRevocationService service() {
+		TokenRevocationService service = new TokenRevocationService(dataSource, 3600, 3600, MAX_DELTA, 0.01);
+		service.afterPropertiesSet();
+		return service;
+	}
+
+	private void insert(long id, String jti) {
+		jdbcTemplate.update("insert into oauth_revoked_token(id, jti, expires_at) values (?, ?, ?)", id, jti,
+				new Timestamp(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<String> revoked(Map<String, Object> revocations) {
+		return (List<String>) revocations.get("revoked");
+	}
+}
@@ -0,0 +1,233 @@
+package com.cloud.kevin.authserver.session;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.session.SessionDestroyedEvent;
+import org.springframework.security.core.session.SessionInformation;
+import org.springframework.security.web.authentication.session.SessionAuthenticationException;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 在嵌入式Redis上模拟两个auth-server节点共用同一个session注册表
+ */
+public class RedisSessionRegistryTests {
+
+	private static final String PREFIX = "auth:session:";
+
+	private static final long SESSION_TIMEOUT = 600;
+
+	private RedisServer redisServer;
+
+	private LettuceConnectionFactory connectionFactory;
+
+	private RedisSessionRegistry registryA;
+
+	private RedisSessionRegistry registryB;
+
+	private SimpleMeterRegistry meterRegistryA;
+
+	@Before
+	public void setUp() throws Exception {
+		int port = freePort();
+		redisServer = new RedisServer(port);
+		redisServer.start();
+
+		connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+		connectionFactory.afterPropertiesSet();
+
+		meterRegistryA = new SimpleMeterRegistry();
+		registryA = registry(1);
+		registryA.bindTo(meterRegistryA);
+		registryB = registry(1);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		registryA.destroy();
+		registryB.destroy();
+		connectionFactory.destroy();
+		redisServer.stop();
+	}
+
+	@Test
+	public void maximumSessionsIsSharedAcrossInstances() {
+		registryA.registerNewSession("session-1", "kevin");
+
+		try {
+			registryB.registerNewSession("session-2", "kevin");
+			fail("Second session of the same principal should be rejected");
+		} catch (SessionAuthenticationException e) {
+			// expected
+		}
+
+		registryB.registerNewSession("session-3", "admin");
+		List<SessionInformation> sessions = registryB.getAllSessions("kevin", false);
+		assertEquals(1, sessions.size());
+		assertEquals("session-1", sessions.get(0).getSessionId());
+		assertNotNull(registryB.getSessionInformation("session-1"));
+		assertNull(registryB.getSessionInformation("session-2"));
+		assertEquals(1, meterRegistryA.get("auth.sessions.registrations").tags("result", "registered")
+				.functionCounter().count(), 0);
+	}
+
+	@Test
+	public void concurrentLoginsAdmitOnlyMaximumSessions() throws Exception {
+		RedisSessionRegistry first = registry(2);
+		RedisSessionRegistry second = registry(2);
+		int logins = 32;
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		CountDownLatch start = new CountDownLatch(1);
+		try {
+			List<Future<Boolean>> results = new ArrayList<>();
+			for (int i = 0; i < logins; i++) {
+				RedisSessionRegistry target = i % 2 == 0 ? first : second;
+				String sessionId = "concurrent-" + i;
+				results.add(executor.submit((Callable<Boolean>) () -> {
+					start.await();
+					try {
+						target.registerNewSession(sessionId, "kevin");
+						return true;
+					} catch (SessionAuthenticationException e) {
+						return false;
+					}
+				}));
+			}
+			start.countDown();
+
+			int admitted = 0;
+			for (Future<Boolean> result : results) {
+				if (result.get()) {
+					admitted++;
+				}
+			}
+			assertEquals(2, admitted);
+			assertEquals(2, second.getAllSessions("kevin", false).size());
+		} finally {
+			executor.shutdownNow();
+			first.destroy();
+			second.destroy();
+		}
+	}
+
+	@Test
+	public void batchedRemovalFreesTheSlot() {
+		registryA.registerNewSession("session-1", "kevin");
+		registryA.refreshLastRequest("session-1");
+		registryA.removeSessionInformation("session-1");
+
+		// 删除写入Redis之前本节点已经看不到这个session
+		assertNull(registryA.getSessionInformation("session-1"));
+		assertEquals(1, registryB.getAllSessions("kevin", false).size());
+
+		registryA.flush();
+		assertTrue(registryB.getAllSessions("kevin", false).isEmpty());
+		registryB.registerNewSession("session-2", "kevin");
+		assertEquals(1, meterRegistryA.get("auth.sessions.events").tags("type", "remove")
+				.functionCounter().count(), 0);
+		assertEquals(0, meterRegistryA.get("auth.sessions.events").tags("type", "refresh")
+				.functionCounter().count(), 0);
+	}
+
+	@Test
+	public void destroyedSessionFreesTheSlotImmediately() {
+		registryA.registerNewSession("session-1", "kevin");
+		registryA.refreshLastRequest("session-1");
+		registryA.onApplicationEvent(destroyed("session-1"));
+
+		// 不等待批量写入，其他节点马上可以重新登录
+		assertTrue(registryB.getAllSessions("kevin", false).isEmpty());
+		registryB.registerNewSession("session-2", "kevin");
+		assertNull(registryA.getSessionInformation("session-1"));
+		assertEquals(1, meterRegistryA.get("auth.sessions.events").tags("type", "remove")
+				.functionCounter().count(), 0);
+	}
+
+	@Test
+	public void idleSessionOfCrashedInstanceDoesNotCount() {
+		registryA.registerNewSession("session-1", "kevin");
+		StringRedisTemplate template = new StringRedisTemplate(connectionFactory);
+		// 模拟所在节点宕机：没有发布销毁事件，超过session超时时间没有访问
+		long idleSince = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(SESSION_TIMEOUT) - 1000;
+		template.opsForHash().put(PREFIX + "session:session-1", "lastRequest", String.valueOf(idleSince));
+
+		assertTrue(registryB.getAllSessions("kevin", false).isEmpty());
+		assertTrue(registryB.getAllSessions("kevin", true).get(0).isExpired());
+		registryB.registerNewSession("session-2", "kevin");
+	}
+
+	@Test
+	public void expiredSessionIsVisibleToOtherInstancesAndDoesNotCount() {
+		registryA.registerNewSession("session-1", "kevin");
+		SessionInformation information = registryB.getAllSessions("kevin", false).get(0);
+		information.expireNow();
+
+		assertTrue(registryB.getAllSessions("kevin", false).isEmpty());
+		assertTrue(registryA.getAllSessions("kevin", true).get(0).isExpired());
+		registryA.registerNewSession("session-2", "kevin");
+	}
+
+	@Test
+	public void staleMembersAreCleanedUp() {
+		registryA.registerNewSession("session-1", "kevin");
+		StringRedisTemplate template = new StringRedisTemplate(connectionFactory);
+		// 模拟节点宕机后session已经过期而用户集合仍然存在
+		template.delete(PREFIX + "session:session-1");
+
+		registryB.registerNewSession("session-2", "kevin");
+		assertEquals(1, template.opsForSet().size(PREFIX + "principal:kevin").longValue());
+		assertFalse(template.opsForSet().isMember(PREFIX + "principal:kevin", "session-1"));
+	}
+
+	private RedisSessionRegistry registry(int maximumSessions) {
+		// 批量写入由测试调用flush触发
+		RedisSessionRegistry registry = new RedisSessionRegistry(connectionFactory, maximumSessions, PREFIX,
+				1800, SESSION_TIMEOUT, 1000, 1000, 60000, 500);
+		registry.afterPropertiesSet();
+		return registry;
+	}
+
+	private static SessionDestroyedEvent destroyed(String sessionId) {
+		return new SessionDestroyedEvent(sessionId) {
+			@Override
+			public List<SecurityContext> getSecurityContexts() {
+				return Collections.emptyList();
+			}
+
+			@Override
+			public String getId() {
+				return sessionId;
+			}
+		};
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package com.cloud.kevin.authserver.stat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 按路由模板统计、统计窗口轮换和路由数上限
+ */
+public class SampledRequestStatsFilterTests {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@Test
+	public void requestsAreGroupedByRoutePattern() throws Exception {
+		SampledRequestStatsFilter filter = filter(1, 10);
+
+		request(filter, "GET", "/users/1", "/users/{id}", 0);
+		request(filter, "GET", "/users/2", "/users/{id}", 0);
+		request(filter, "POST", "/oauth/token", "/oauth/token", 0);
+		request(filter, "GET", "/missing", null, 0);
+		request(filter, "GET", "/actuator/health", "/actuator/health", 0);
+
+		assertEquals(2, count("GET", "/users/{id}"), 0);
+		assertEquals(1, count("POST", "/oauth/token"), 0);
+		assertEquals(1, count("GET", "UNMAPPED"), 0);
+		assertNull(meterRegistry.find("http.server.requests.sampled").tags("uri", "/actuator/health")
+				.functionTimer());
+	}
+
+	@Test
+	public void percentilesComeFromLastCompleteWindow() throws Exception {
+		SampledRequestStatsFilter filter = filter(1, 10);
+
+		for (int i = 0; i < 3; i++) {
+			request(filter, "POST", "/oauth/token", "/oauth/token", 20);
+		}
+		// 第一个窗口还没有结束
+		assertEquals(0, percentile("0.5"), 0);
+		assertEquals(3, count("POST", "/oauth/token"), 0);
+
+		Thread.sleep(1100);
+		double p50 = percentile("0.5");
+		assertTrue("p50 " + p50, p50 >= 0.02 && p50 < 1);
+		assertTrue(max() >= 0.02);
+
+		// 之后的窗口没有请求，百分位数回到0，累计次数不变
+		Thread.sleep(1100);
+		assertEquals(0, percentile("0.99"), 0);
+		assertEquals(0, max(), 0);
+		assertEquals(3, count("POST", "/oauth/token"), 0);
+	}
+
+	@Test
+	public void routesBeyondMaxRoutesAreCountedAsOther() throws Exception {
+		SampledRequestStatsFilter filter = filter(1, 2);
+
+		request(filter, "GET", "/a", "/a", 0);
+		request(filter, "GET", "/b", "/b", 0);
+		request(filter, "GET", "/c", "/c", 0);
+		request(filter, "POST", "/d", "/d", 0);
+		request(filter, "GET", "/a", "/a", 0);
+
+		assertEquals(2, count("GET", "/a"), 0);
+		assertEquals(1, count("GET", "/b"), 0);
+		assertEquals(2, count("OTHER", "OTHER"), 0);
+		assertNull(meterRegistry.find("http.server.requests.sampled").tags("uri", "/c").functionTimer());
+		assertNull(meterRegistry.find("http.server.requests.sampled").tags("uri", "/d").functionTimer());
+	}
+
+	@Test
+	public void zeroSampleRateRecordsNothing() throws Exception {
+		SampledRequestStatsFilter filter = new SampledRequestStatsFilter(meterRegistry, 0, 1, 10, 2,
+				Collections.emptyList());
+
+		request(filter, "GET", "/a", "/a", 0);
+
+		assertTrue(meterRegistry.getMeters().isEmpty());
+	}
+
+	private SampledRequestStatsFilter filter(long window, int maxRoutes) {
+		return new SampledRequestStatsFilter(meterRegistry, 1, window, maxRoutes, 2,
+				Collections.singletonList("/actuator/**"));
+	}
+
+	private static void request(SampledRequestStatsFilter filter, String method, String uri, String pattern,
+								long sleepMillis) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+		filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+			if (null != pattern) {
+				req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, pattern);
+			}
+			if (sleepMillis > 0) {
+				try {
+					Thread.sleep(sleepMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+	}
+
+	private double count(String method, String uri) {
+		return meterRegistry.get("http.server.requests.sampled").tags("method", method, "uri", uri)
+				.functionTimer().count();
+	}
+
+	private double percentile(String phi) {
+		return meterRegistry.get("http.server.requests.sampled.percentile").tags("uri", "/oauth/token", "phi", phi)
+				.gauge().value();
+	}
+
+	private double max() {
+		return meterRegistry.get("http.server.requests.sampled.max").tags("uri", "/oauth/token").gauge().value();
+	}
+}
@@ -0,0 +1,128 @@
+package com.cloud.kevin.authserver.stat;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 桶的划分和百分位数的计算，用已知分布的数据验证
+ */
+public class StripedHistogramTests {
+
+	@Test
+	public void smallValuesHaveOneBucketPerMicrosecond() {
+		for (int micros = 0; micros < 16; micros++) {
+			assertEquals(micros, StripedHistogram.bucketIndex(micros));
+			assertEquals(micros + 1, StripedHistogram.bucketUpperBound(micros));
+		}
+		assertEquals(0, StripedHistogram.bucketIndex(-5));
+	}
+
+	@Test
+	public void bucketsCoverEveryValueWithinRelativeError() {
+		int previous = -1;
+		for (long micros = 0; micros < (1L << 22); micros += 1 + micros / 64) {
+			int index = StripedHistogram.bucketIndex(micros);
+			long upper = StripedHistogram.bucketUpperBound(index);
+
+			assertTrue("index must not decrease at " + micros, index >= previous);
+			assertTrue(micros + " must be below the upper bound " + upper, micros < upper);
+			assertTrue(micros + " must not belong to the previous bucket",
+					index == 0 || StripedHistogram.bucketUpperBound(index - 1) <= micros);
+			if (micros >= 16) {
+				assertTrue("relative error at " + micros, upper - micros <= micros / 8.0);
+			}
+			previous = index;
+		}
+	}
+
+	@Test
+	public void hugeValuesGoToLastBucket() {
+		assertEquals(StripedHistogram.BUCKETS - 1, StripedHistogram.bucketIndex(1L << 41));
+		assertEquals(StripedHistogram.BUCKETS - 1, StripedHistogram.bucketIndex(Long.MAX_VALUE));
+		assertEquals(StripedHistogram.BUCKETS - 1, StripedHistogram.bucketIndex((1L << 41) - 1));
+	}
+
+	@Test
+	public void percentilesOfUniformDistribution() {
+		StripedHistogram histogram = new StripedHistogram(4);
+		// 1到1000微秒各一次
+		for (int micros = 1; micros <= 1000; micros++) {
+			histogram.record(micros * 1000L);
+		}
+
+		StripedHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(1000, snapshot.getCount());
+		assertEquals(500500L * 1000, snapshot.getTotalNanos());
+		assertEquals(1000000, snapshot.getMaxNanos());
+
+		// 第500个值在[480, 512)微秒的桶中，第900个在[896, 960)，第990个在[960, 1024)，不超过最大值
+		assertEquals(512000, snapshot.percentileNanos(0.5));
+		assertEquals(960000, snapshot.percentileNanos(0.9));
+		assertEquals(1000000, snapshot.percentileNanos(0.99));
+		// 最小值1微秒所在的桶
+		assertEquals(2000, snapshot.percentileNanos(0));
+		for (double percentile : new double[]{0.1, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99}) {
+			long exact = (long) Math.ceil(percentile * 1000) * 1000;
+			long estimate = snapshot.percentileNanos(percentile);
+			assertTrue(percentile + ": " + estimate, estimate >= exact && estimate <= exact * 1.125);
+		}
+	}
+
+	@Test
+	public void percentilesOfBimodalDistribution() {
+		StripedHistogram histogram = new StripedHistogram(1);
+		// 95个请求约10微秒，5个慢请求约50毫秒
+		for (int i = 0; i < 95; i++) {
+			histogram.record(10000);
+		}
+		for (int i = 0; i < 5; i++) {
+			histogram.record(50000000);
+		}
+
+		StripedHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(11000, snapshot.percentileNanos(0.5));
+		assertEquals(11000, snapshot.percentileNanos(0.95));
+		assertEquals(50000000, snapshot.percentileNanos(0.96));
+		assertEquals(50000000, snapshot.percentileNanos(0.99));
+	}
+
+	@Test
+	public void emptyHistogramReportsZero() {
+		StripedHistogram.Snapshot snapshot = new StripedHistogram(8).snapshot();
+
+		assertEquals(0, snapshot.getCount());
+		assertEquals(0, snapshot.percentileNanos(0.99));
+		assertEquals(0, StripedHistogram.Snapshot.EMPTY.percentileNanos(0.5));
+	}
+
+	@Test
+	public void stripesAreMergedAcrossThreads() throws Exception {
+		StripedHistogram histogram = new StripedHistogram(3);
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 1; t <= 8; t++) {
+			long nanos = t * 1000L;
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < 10000; i++) {
+					histogram.record(nanos);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		StripedHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(80000, snapshot.getCount());
+		assertEquals(10000L * 36 * 1000, snapshot.getTotalNanos());
+		assertEquals(8000, snapshot.getMaxNanos());
+		assertEquals(4000, snapshot.percentileNanos(0.375));
+		assertEquals(5000, snapshot.percentileNanos(0.5));
+	}
+}
@@ -0,0 +1,186 @@
+package com.cloud.kevin.authserver.token;
+
+import com.cloud.kevin.authserver.jwt.JwtKeyRing;
+import com.cloud.kevin.authserver.jwt.KeyRingJwtAccessTokenConverter;
+import com.cloud.kevin.authserver.jwt.SigningKey;
+import com.cloud.kevin.authserver.revocation.TokenRevocationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * client_credentials模式的token复用、并发签名与撤销检查
+ */
+public class ClientCredentialsReusingTokenServicesTests {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private final AtomicInteger signings = new AtomicInteger();
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private volatile boolean blockSigning;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private TokenRevocationService revocationService;
+
+	private ClientCredentialsReusingTokenServices tokenServices;
+
+	@Before
+	public void setUp() throws Exception {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("create table oauth_revoked_token (id bigint not null auto_increment primary key, "
+				+ "jti varchar(64) not null unique, expires_at timestamp not null, "
+				+ "revoked_at timestamp default current_timestamp not null)");
+		revocationService = new TokenRevocationService(dataSource, 3600, 3600, 10, 0.01);
+		revocationService.afterPropertiesSet();
+
+		SigningKey defaultKey = SigningKey.fromKeyStore(new ClassPathResource("authserver.jks"), "storepwd",
+				"authServer", "keypwd");
+		JwtAccessTokenConverter converter = new KeyRingJwtAccessTokenConverter(
+				new JwtKeyRing(defaultKey, defaultKey, 0, 60));
+		converter.afterPropertiesSet();
+
+		tokenServices = new ClientCredentialsReusingTokenServices(100, 0.5, revocationService, meterRegistry);
+		tokenServices.setTokenStore(new JwtTokenStore(converter));
+		tokenServices.setTokenEnhancer((accessToken, authentication) -> {
+			signings.incrementAndGet();
+			if (blockSigning) {
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return converter.enhance(accessToken, authentication);
+		});
+	}
+
+	@After
+	public void tearDown() {
+		revocationService.destroy();
+		jdbcTemplate.execute("shutdown");
+	}
+
+	@Test
+	public void reusesTokenForSameClientAndScope() {
+		OAuth2AccessToken first = tokenServices.createAccessToken(authentication("client_1"));
+		OAuth2AccessToken second = tokenServices.createAccessToken(authentication("client_1"));
+		OAuth2AccessToken other = tokenServices.createAccessToken(authentication("client_2"));
+
+		assertSame(first, second);
+		assertNotEquals(first.getValue(), other.getValue());
+		assertEquals(2, signings.get());
+		assertEquals(1, count("reused"), 0);
+		assertEquals(2, count("issued"), 0);
+	}
+
+	@Test
+	public void concurrentRequestsSignOnce() throws Exception {
+		blockSigning = true;
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<OAuth2AccessToken>> futures = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				futures.add(executor.submit(() -> tokenServices.createAccessToken(authentication("client_1"))));
+			}
+
+			long deadline = System.currentTimeMillis() + 5000;
+			while (signings.get() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			// 等待其他线程进入等待状态后再放行签名
+			Thread.sleep(200);
+			release.countDown();
+
+			String value = futures.get(0).get(5, TimeUnit.SECONDS).getValue();
+			for (Future<OAuth2AccessToken> future : futures) {
+				assertEquals(value, future.get(5, TimeUnit.SECONDS).getValue());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(1, signings.get());
+		assertEquals(1, count("issued"), 0);
+		assertEquals(threads - 1, count("reused"), 0);
+	}
+
+	@Test
+	public void reissuesOnceRemainingRatioIsReached() throws Exception {
+		tokenServices.setAccessTokenValiditySeconds(2);
+
+		OAuth2AccessToken first = tokenServices.createAccessToken(authentication("client_1"));
+		assertSame(first, tokenServices.createAccessToken(authentication("client_1")));
+
+		// 有效期2秒，剩余不足一半后不再复用
+		Thread.sleep(1100);
+		OAuth2AccessToken second = tokenServices.createAccessToken(authentication("client_1"));
+
+		assertNotEquals(first.getValue(), second.getValue());
+		assertTrue(second.getExpiration().after(first.getExpiration()));
+		assertEquals(2, signings.get());
+	}
+
+	@Test
+	public void revokedTokenIsNotReused() {
+		OAuth2AccessToken first = tokenServices.createAccessToken(authentication("client_1"));
+		revocationService.revoke(first.getAdditionalInformation().get("jti").toString(),
+				first.getExpiration().getTime());
+
+		OAuth2AccessToken second = tokenServices.createAccessToken(authentication("client_1"));
+
+		assertNotEquals(first.getValue(), second.getValue());
+		assertSame(second, tokenServices.createAccessToken(authentication("client_1")));
+		assertEquals(2, signings.get());
+	}
+
+	@Test
+	public void evictedClientGetsNewToken() {
+		OAuth2AccessToken first = tokenServices.createAccessToken(authentication("client_1"));
+		tokenServices.evict("client_1");
+
+		assertNotEquals(first.getValue(), tokenServices.createAccessToken(authentication("client_1")).getValue());
+	}
+
+	private double count(String result) {
+		return meterRegistry.get("auth.token.client_credentials").tag("result", result).counter().count();
+	}
+
+	private static OAuth2Authentication authentication(String clientId) {
+		OAuth2Request request = new OAuth2Request(Collections.singletonMap("grant_type", "client_credentials"),
+				clientId, AuthorityUtils.createAuthorityList("client"), true, Collections.singleton("select"),
+				Collections.singleton("resourceServer1"), null, null, null);
+		return new OAuth2Authentication(request, null);
+	}
+}
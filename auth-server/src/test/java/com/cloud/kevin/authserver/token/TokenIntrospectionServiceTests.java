@@ -0,0 +1,167 @@
+package com.cloud.kevin.authserver.token;
+
+import com.cloud.kevin.authserver.jwt.JwtKeyRing;
+import com.cloud.kevin.authserver.jwt.KeyRingJwtAccessTokenConverter;
+import com.cloud.kevin.authserver.jwt.SigningKey;
+import com.cloud.kevin.authserver.revocation.TokenRevocationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RFC 7662的响应：有效token返回声明，过期、撤销、格式错误和验签失败的token只返回active=false
+ */
+public class TokenIntrospectionServiceTests {
+
+	private static final Map<String, Object> INACTIVE = Collections.singletonMap("active", false);
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private JdbcTemplate jdbcTemplate;
+
+	private TokenRevocationService revocationService;
+
+	private JwtAccessTokenConverter converter;
+
+	private TokenIntrospectionService introspectionService;
+
+	@Before
+	public void setUp() throws Exception {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("create table oauth_revoked_token (id bigint not null auto_increment primary key, "
+				+ "jti varchar(64) not null unique, expires_at timestamp not null, "
+				+ "revoked_at timestamp default current_timestamp not null)");
+		revocationService = new TokenRevocationService(dataSource, 3600, 3600, 10, 0.01);
+		revocationService.afterPropertiesSet();
+
+		SigningKey defaultKey = SigningKey.fromKeyStore(new ClassPathResource("authserver.jks"), "storepwd",
+				"authServer", "keypwd");
+		converter = new KeyRingJwtAccessTokenConverter(new JwtKeyRing(defaultKey, defaultKey, 0, 60));
+		converter.afterPropertiesSet();
+
+		introspectionService = new TokenIntrospectionService(new JwtTokenStore(converter), revocationService,
+				100, 3600, 60, meterRegistry);
+	}
+
+	@After
+	public void tearDown() {
+		revocationService.destroy();
+		jdbcTemplate.execute("shutdown");
+	}
+
+	@Test
+	public void activeClientTokenReturnsClaims() {
+		OAuth2AccessToken token = issue(clientAuthentication(), 3600);
+
+		Map<String, Object> result = introspectionService.introspect(token.getValue());
+
+		assertEquals(true, result.get("active"));
+		assertEquals("client_1", result.get("client_id"));
+		assertEquals("select", result.get("scope"));
+		assertEquals("bearer", result.get("token_type").toString().toLowerCase());
+		assertEquals(token.getAdditionalInformation().get("jti"), result.get("jti"));
+		assertEquals(token.getExpiration().getTime() / 1000, result.get("exp"));
+		assertEquals(Collections.singleton("resourceServer1"), result.get("aud"));
+		assertFalse(result.containsKey("username"));
+	}
+
+	@Test
+	public void activeUserTokenContainsUsername() {
+		OAuth2Authentication authentication = new OAuth2Authentication(clientAuthentication().getOAuth2Request(),
+				new UsernamePasswordAuthenticationToken("zhangsan", null,
+						AuthorityUtils.createAuthorityList("ROLE_USER")));
+
+		Map<String, Object> result = introspectionService.introspect(issue(authentication, 3600).getValue());
+
+		assertEquals(true, result.get("active"));
+		assertEquals("zhangsan", result.get("username"));
+		assertEquals(Collections.singleton("ROLE_USER"), result.get("authorities"));
+	}
+
+	@Test
+	public void expiredTokenIsInactive() throws Exception {
+		assertEquals(INACTIVE, introspectionService.introspect(issue(clientAuthentication(), -10).getValue()));
+
+		// 缓存中的token到期后同样无效
+		String value = issue(clientAuthentication(), 1).getValue();
+		assertEquals(true, introspectionService.introspect(value).get("active"));
+		Thread.sleep(1100);
+		assertEquals(INACTIVE, introspectionService.introspect(value));
+	}
+
+	@Test
+	public void revokedTokenIsInactiveEvenWhenCached() {
+		OAuth2AccessToken token = issue(clientAuthentication(), 3600);
+		assertEquals(true, introspectionService.introspect(token.getValue()).get("active"));
+
+		revocationService.revoke(token.getAdditionalInformation().get("jti").toString(),
+				token.getExpiration().getTime());
+
+		assertEquals(INACTIVE, introspectionService.introspect(token.getValue()));
+	}
+
+	@Test
+	public void malformedTokensAreInactive() {
+		String value = issue(clientAuthentication(), 3600).getValue();
+		String tampered = value.substring(0, value.length() - 4)
+				+ (value.endsWith("AAAA") ? "BBBB" : "AAAA");
+
+		for (String token : Arrays.asList(null, "", "not-a-jwt", "a.b.c", tampered)) {
+			assertEquals(String.valueOf(token), INACTIVE, introspectionService.introspect(token));
+		}
+	}
+
+	@Test
+	public void batchResultsKeepOrder() {
+		String first = issue(clientAuthentication(), 3600).getValue();
+		String second = issue(clientAuthentication(), 3600).getValue();
+
+		List<Map<String, Object>> results = introspectionService.introspect(Arrays.asList(first, "invalid", second));
+
+		assertEquals(3, results.size());
+		assertTrue((Boolean) results.get(0).get("active"));
+		assertEquals(INACTIVE, results.get(1));
+		assertTrue((Boolean) results.get(2).get("active"));
+		assertEquals(2, meterRegistry.get("auth.token.introspect.tokens").tag("result", "active").counter().count(),
+				0);
+	}
+
+	private OAuth2AccessToken issue(OAuth2Authentication authentication, int validitySeconds) {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+		token.setExpiration(new Date(System.currentTimeMillis() + validitySeconds * 1000L));
+		token.setScope(Collections.singleton("select"));
+		return converter.enhance(token, authentication);
+	}
+
+	private static OAuth2Authentication clientAuthentication() {
+		OAuth2Request request = new OAuth2Request(Collections.singletonMap("grant_type", "client_credentials"),
+				"client_1", AuthorityUtils.createAuthorityList("client"), true, Collections.singleton("select"),
+				Collections.singleton("resourceServer1"), null, null, null);
+		return new OAuth2Authentication(request, null);
+	}
+}
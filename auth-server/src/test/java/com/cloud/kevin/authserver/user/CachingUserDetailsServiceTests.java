@@ -0,0 +1,146 @@
+package com.cloud.kevin.authserver.user;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+/**
+ * 用户缓存的复制读取、不存在用户名的缓存以及查询出错时不缓存
+ */
+public class CachingUserDetailsServiceTests {
+
+	private final ConcurrentHashMap<String, String> passwords = new ConcurrentHashMap<>();
+
+	private final AtomicInteger queries = new AtomicInteger();
+
+	private volatile RuntimeException failure;
+
+	private volatile CountDownLatch slowQuery;
+
+	private CachingUserDetailsService userDetailsService;
+
+	@Before
+	public void setUp() {
+		passwords.put("zhangsan", "{bcrypt}hash-1");
+		userDetailsService = new CachingUserDetailsService(username -> {
+			queries.incrementAndGet();
+			awaitSlowQuery();
+			if (null != failure) {
+				throw failure;
+			}
+			String password = passwords.get(username);
+			if (null == password) {
+				throw new UsernameNotFoundException("UserName " + username + " not found!");
+			}
+			return new User(username, password, AuthorityUtils.createAuthorityList("ROLE_USER"));
+		}, 100, 60, 1);
+	}
+
+	@Test
+	public void cachedUserIsCopiedOnRead() {
+		UserDetails first = userDetailsService.loadUserByUsername("zhangsan");
+		UserDetails second = userDetailsService.loadUserByUsername("zhangsan");
+		assertNotSame(first, second);
+
+		// 认证成功后ProviderManager擦除返回对象的密码，不能影响缓存中的用户
+		((User) first).eraseCredentials();
+		assertEquals("{bcrypt}hash-1", userDetailsService.loadUserByUsername("zhangsan").getPassword());
+		assertEquals(1, queries.get());
+	}
+
+	@Test
+	public void unknownUserIsCachedForNegativeTtl() throws Exception {
+		assertNotFound("wangwu");
+		assertNotFound("wangwu");
+		assertEquals(1, queries.get());
+
+		// 不存在的用户名只缓存negativeTtl秒，之后新建的用户可以登录
+		passwords.put("wangwu", "{bcrypt}hash-2");
+		Thread.sleep(1200);
+		assertEquals("{bcrypt}hash-2", userDetailsService.loadUserByUsername("wangwu").getPassword());
+		assertEquals(2, queries.get());
+	}
+
+	@Test
+	public void queryFailureIsNotCached() {
+		failure = new IllegalStateException("Database is unavailable");
+		try {
+			userDetailsService.loadUserByUsername("zhangsan");
+			fail("Failure of the delegate should be propagated");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		failure = null;
+		assertEquals("zhangsan", userDetailsService.loadUserByUsername("zhangsan").getUsername());
+		assertEquals(2, queries.get());
+	}
+
+	@Test
+	public void evictedUserIsReloaded() {
+		userDetailsService.loadUserByUsername("zhangsan");
+		passwords.put("zhangsan", "{bcrypt}hash-3");
+
+		userDetailsService.evict("zhangsan");
+		assertEquals("{bcrypt}hash-3", userDetailsService.loadUserByUsername("zhangsan").getPassword());
+		assertEquals(2, queries.get());
+	}
+
+	@Test
+	public void concurrentLoadsQueryOnce() throws Exception {
+		slowQuery = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<UserDetails>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(() -> userDetailsService.loadUserByUsername("zhangsan")));
+			}
+			Thread.sleep(100);
+			slowQuery.countDown();
+
+			for (Future<UserDetails> result : results) {
+				assertEquals("zhangsan", result.get(5, TimeUnit.SECONDS).getUsername());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(1, queries.get());
+	}
+
+	private void assertNotFound(String username) {
+		try {
+			userDetailsService.loadUserByUsername(username);
+			fail("Unknown user should not be found");
+		} catch (UsernameNotFoundException e) {
+			// expected
+		}
+	}
+
+	private void awaitSlowQuery() {
+		CountDownLatch latch = slowQuery;
+		if (null != latch) {
+			try {
+				latch.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
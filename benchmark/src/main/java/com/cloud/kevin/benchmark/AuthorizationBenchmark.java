@@ -0,0 +1,109 @@
+package com.cloud.kevin.benchmark;
+
+import com.cloud.kevin.resourceserver.permission.PermissionCheck;
+import com.cloud.kevin.resourceserver.permission.PermissionRegistry;
+import com.cloud.kevin.resourceserver.permission.PermissionSet;
+import org.aopalliance.intercept.MethodInvocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.expression.Expression;
+import org.springframework.security.access.expression.ExpressionUtils;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionHandler;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.expression.OAuth2MethodSecurityExpressionHandler;
+import org.springframework.security.util.SimpleMethodInvocation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 接口权限检查：@PreAuthorize的SpEL表达式与resource-server预编译的位图检查
+ * spel*为每次调用时创建求值上下文并求值，与方法安全拦截器的行为一致；
+ * bitset*为每次请求的检查开销，resolve为每个token解析时生成位图的一次性开销。
+ *
+ * @author Kevin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthorizationBenchmark {
+
+    private OAuth2Authentication authentication;
+
+    private MethodSecurityExpressionHandler expressionHandler;
+
+    private MethodInvocation methodInvocation;
+
+    private Expression scopeExpression;
+
+    private Expression scopeAndAuthorityExpression;
+
+    private PermissionRegistry permissionRegistry;
+
+    private PermissionCheck scopeCheck;
+
+    private PermissionCheck scopeAndAuthorityCheck;
+
+    private PermissionSet permissions;
+
+    @Setup
+    public void setup() throws Exception {
+        authentication = TokenFixtures.authentication("password");
+
+        expressionHandler = new OAuth2MethodSecurityExpressionHandler();
+        methodInvocation = new SimpleMethodInvocation(this, AuthorizationBenchmark.class.getMethod("spelScope"));
+        scopeExpression = expressionHandler.getExpressionParser()
+                .parseExpression("#oauth2.hasScope('select')");
+        scopeAndAuthorityExpression = expressionHandler.getExpressionParser()
+                .parseExpression("#oauth2.hasScope('select') and hasAuthority('ROLE_ADMIN') and hasAuthority('USER:DEL')");
+
+        permissionRegistry = new PermissionRegistry();
+        scopeCheck = permissionRegistry.compile(Collections.singletonList("select"), Collections.emptyList());
+        scopeAndAuthorityCheck = permissionRegistry.compile(Collections.singletonList("select"),
+                Arrays.asList("ROLE_ADMIN", "USER:DEL"));
+        permissionRegistry.compile(Collections.singletonList("update"), Arrays.asList("USER:ADD", "ORDER:DEL"));
+        permissionRegistry.freeze();
+
+        permissions = resolve();
+    }
+
+    @Benchmark
+    public boolean spelScope() {
+        return ExpressionUtils.evaluateAsBoolean(scopeExpression,
+                expressionHandler.createEvaluationContext(authentication, methodInvocation));
+    }
+
+    @Benchmark
+    public boolean spelScopeAndAuthority() {
+        return ExpressionUtils.evaluateAsBoolean(scopeAndAuthorityExpression,
+                expressionHandler.createEvaluationContext(authentication, methodInvocation));
+    }
+
+    @Benchmark
+    public boolean bitsetScope() {
+        return scopeCheck.test(permissions);
+    }
+
+    @Benchmark
+    public boolean bitsetScopeAndAuthority() {
+        return scopeAndAuthorityCheck.test(permissions);
+    }
+
+    @Benchmark
+    public PermissionSet resolve() {
+        return permissionRegistry.resolve(authentication.getOAuth2Request().getScope(),
+                authentication.getAuthorities());
+    }
+}
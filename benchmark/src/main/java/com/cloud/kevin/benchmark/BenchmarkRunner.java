@@ -0,0 +1,34 @@
+package com.cloud.kevin.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * benchmark入口，支持所有JMH命令行参数
+ * 未指定-rf/-rff时结果以JSON格式输出到jmh-result.json，便于在升级依赖或调整密钥长度前后进行对比
+ * 使用方式：java -jar target/benchmarks.jar [JMH参数]
+ *
+ * @author Kevin
+ */
+public class BenchmarkRunner {
+
+    private static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        OptionsBuilder optionsBuilder = new OptionsBuilder();
+        optionsBuilder.parent(commandLineOptions);
+
+        if (!commandLineOptions.getResultFormat().hasValue()) {
+            optionsBuilder.resultFormat(ResultFormatType.JSON);
+        }
+
+        if (!commandLineOptions.getResult().hasValue()) {
+            optionsBuilder.result(DEFAULT_RESULT_FILE);
+        }
+
+        new Runner(optionsBuilder.build()).run();
+    }
+}
@@ -0,0 +1,58 @@
+package com.cloud.kevin.benchmark;
+
+import com.cloud.kevin.authserver.crypto.ClientSecretCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * auth-server密码校验：WebSecurityConfiguration中使用的BCryptPasswordEncoder(10)，以及client_secret缓存命中时的开销
+ *
+ * @author Kevin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordEncoderBenchmark {
+
+    private static final String RAW_PASSWORD = "123456";
+
+    private PasswordEncoder passwordEncoder;
+
+    private PasswordEncoder clientSecretEncoder;
+
+    private String encodedPassword;
+
+    @Setup
+    public void setup() {
+        passwordEncoder = new BCryptPasswordEncoder(10);
+        encodedPassword = passwordEncoder.encode(RAW_PASSWORD);
+
+        clientSecretEncoder = new ClientSecretCache(1000, 300).wrap(passwordEncoder);
+        clientSecretEncoder.matches(RAW_PASSWORD, encodedPassword);
+    }
+
+    @Benchmark
+    public boolean bcrypt() {
+        return passwordEncoder.matches(RAW_PASSWORD, encodedPassword);
+    }
+
+    @Benchmark
+    public boolean clientSecretCacheHit() {
+        return clientSecretEncoder.matches(RAW_PASSWORD, encodedPassword);
+    }
+}
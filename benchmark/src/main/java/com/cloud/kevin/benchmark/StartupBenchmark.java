@@ -0,0 +1,280 @@
+package com.cloud.kevin.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务启动时间的测量
+ * 每个服务分别以普通方式和启动优化方式(fast-startup profile + AppCDS归档)启动若干次，
+ * 记录从创建进程到第一个成功(2xx)请求的时间，以及此时进程的峰值RSS(/proc/[pid]/status中的VmHWM，仅Linux)。
+ * 两种方式使用相同的classpath，只有profile和是否使用归档不同。
+ * <p>
+ * 需要先在各服务模块执行mvn package -Pappcds，生成target下的appcds jar、classpath.txt和app.jsa，
+ * 并用生成归档的同一个JDK运行。服务依赖的数据库、Redis等需要可用，否则启动失败。
+ * 使用方式：java -cp target/benchmarks.jar com.cloud.kevin.benchmark.StartupBenchmark
+ * [-root 项目根目录] [-runs 每种方式的启动次数] [-timeout 单次启动的超时(秒)] [服务名...]
+ *
+ * @author Kevin
+ */
+public class StartupBenchmark {
+
+    private static final List<Service> SERVICES = Arrays.asList(
+            new Service("auth-server", "com.cloud.kevin.authserver.AuthServerApplication",
+                    "/.well-known/jwks.json"),
+            new Service("resource-server", "com.cloud.kevin.resourceserver.ResourceServerApplication",
+                    "/actuator/health"),
+            new Service("registry-center", "com.cloud.kevin.registercenter.RegisterCenterApplication",
+                    "/eureka/apps"),
+            new Service("microservice-template", "com.cloud.kevin.microservice.MicroServiceApplication",
+                    "/actuator/health"));
+
+    private static final long POLL_INTERVAL = 20;
+
+    public static void main(String[] args) throws Exception {
+        Path root = Paths.get("..");
+        int runs = 5;
+        long timeout = 120;
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-root":
+                    root = Paths.get(args[++i]);
+                    break;
+                case "-runs":
+                    runs = Integer.parseInt(args[++i]);
+                    break;
+                case "-timeout":
+                    timeout = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    names.add(args[i]);
+            }
+        }
+
+        List<String> rows = new ArrayList<>();
+        for (Service service : SERVICES) {
+            if (!names.isEmpty() && !names.contains(service.module)) {
+                continue;
+            }
+            for (boolean optimized : new boolean[]{false, true}) {
+                List<Sample> samples = new ArrayList<>();
+                for (int run = 1; run <= runs; run++) {
+                    Sample sample = launch(service, root, optimized, run, TimeUnit.SECONDS.toMillis(timeout));
+                    System.out.printf("%s %s #%d: %s%n", service.module, mode(optimized), run, sample);
+                    if (null != sample.failure) {
+                        break;
+                    }
+                    samples.add(sample);
+                }
+                rows.add(summary(service, optimized, samples));
+            }
+        }
+
+        System.out.println();
+        System.out.printf("%-22s %-10s %5s %12s %12s %12s %14s%n",
+                "Service", "Mode", "Runs", "Median(ms)", "Min(ms)", "Max(ms)", "PeakRSS(MB)");
+        rows.forEach(System.out::println);
+    }
+
+    /**
+     * 启动一次服务，成功响应后结束进程
+     */
+    private static Sample launch(Service service, Path root, boolean optimized, int run, long timeout)
+            throws Exception {
+        Path target = root.resolve(service.module).resolve("target").toAbsolutePath();
+        Path archive = target.resolve("app.jsa");
+        if (optimized && !Files.isRegularFile(archive)) {
+            return Sample.failed("missing " + archive + ", run mvn package -Pappcds first");
+        }
+
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (optimized) {
+            command.add("-Xshare:auto");
+            command.add("-XX:SharedArchiveFile=" + archive);
+        }
+        command.add("-cp");
+        command.add(classpath(target));
+        command.add(service.mainClass);
+        command.add("--server.port=" + port);
+        if (optimized) {
+            command.add("--spring.profiles.include=fast-startup");
+        }
+
+        File log = target.resolve("startup-" + mode(optimized) + "-" + run + ".log").toFile();
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log);
+        URL url = new URL("http://127.0.0.1:" + port + service.probePath);
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        try {
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (System.nanoTime() < deadline) {
+                if (!process.isAlive()) {
+                    return Sample.failed("exited with " + process.exitValue() + ", see " + log);
+                }
+                if (succeeds(url)) {
+                    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    return new Sample(elapsed, peakRss(process));
+                }
+                Thread.sleep(POLL_INTERVAL);
+            }
+            return Sample.failed("no successful response within " + timeout + "ms, see " + log);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private static boolean succeeds(URL url) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(200);
+            connection.setReadTimeout(5000);
+            try {
+                int status = connection.getResponseCode();
+                return status >= 200 && status < 300;
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException e) {
+            // 端口尚未监听
+            return false;
+        }
+    }
+
+    /**
+     * 与appcds profile生成归档时相同的classpath：不含依赖的appcds jar + target/classpath.txt
+     */
+    private static String classpath(Path target) throws IOException {
+        Path jar = null;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(target, "*-appcds.jar")) {
+            for (Path path : stream) {
+                jar = path;
+            }
+        }
+        Path dependencies = target.resolve("classpath.txt");
+        if (null == jar || !Files.isRegularFile(dependencies)) {
+            throw new IllegalStateException("No appcds build in " + target + ", run mvn package -Pappcds first");
+        }
+
+        return jar + File.pathSeparator + new String(Files.readAllBytes(dependencies), StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * @return 峰值RSS(KB)，无法获取时返回-1
+     */
+    private static long peakRss(Process process) {
+        try {
+            // Process.pid()在JDK 9才加入，运行AppCDS需要更高版本的JDK，这里按反射调用以保持Java 8编译
+            long pid = (Long) Process.class.getMethod("pid").invoke(process);
+            for (String line : Files.readAllLines(Paths.get("/proc", String.valueOf(pid), "status"))) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (ReflectiveOperationException | IOException | RuntimeException e) {
+            // 非Linux或者JDK 8
+        }
+
+        return -1;
+    }
+
+    private static String summary(Service service, boolean optimized, List<Sample> samples) {
+        if (samples.isEmpty()) {
+            return String.format("%-22s %-10s %5d %12s %12s %12s %14s",
+                    service.module, mode(optimized), 0, "-", "-", "-", "-");
+        }
+
+        List<Long> times = new ArrayList<>();
+        List<Long> rss = new ArrayList<>();
+        for (Sample sample : samples) {
+            times.add(sample.timeToFirstRequest);
+            rss.add(sample.peakRss);
+        }
+        Collections.sort(times);
+        Collections.sort(rss);
+        long medianRss = rss.get(rss.size() / 2);
+
+        return String.format("%-22s %-10s %5d %12d %12d %12d %14s",
+                service.module, mode(optimized), samples.size(), times.get(times.size() / 2), times.get(0),
+                times.get(times.size() - 1), medianRss < 0 ? "-" : String.format("%.1f", medianRss / 1024.0));
+    }
+
+    private static String mode(boolean optimized) {
+        return optimized ? "optimized" : "baseline";
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static final class Service {
+
+        private final String module;
+
+        private final String mainClass;
+
+        /**
+         * 不需要认证的地址，第一次返回2xx即认为服务可用
+         */
+        private final String probePath;
+
+        private Service(String module, String mainClass, String probePath) {
+            this.module = module;
+            this.mainClass = mainClass;
+            this.probePath = probePath;
+        }
+    }
+
+    private static final class Sample {
+
+        private final long timeToFirstRequest;
+
+        private final long peakRss;
+
+        private final String failure;
+
+        private Sample(long timeToFirstRequest, long peakRss) {
+            this(timeToFirstRequest, peakRss, null);
+        }
+
+        private Sample(long timeToFirstRequest, long peakRss, String failure) {
+            this.timeToFirstRequest = timeToFirstRequest;
+            this.peakRss = peakRss;
+            this.failure = failure;
+        }
+
+        private static Sample failed(String failure) {
+            return new Sample(-1, -1, failure);
+        }
+
+        @Override
+        public String toString() {
+            if (null != failure) {
+                return "failed, " + failure;
+            }
+            return timeToFirstRequest + "ms, peak RSS " + (peakRss < 0 ? "n/a" : peakRss + "KB");
+        }
+    }
+}
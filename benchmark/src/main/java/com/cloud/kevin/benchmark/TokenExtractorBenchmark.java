@@ -0,0 +1,64 @@
+package com.cloud.kevin.benchmark;
+
+import com.cloud.kevin.resourceserver.config.ResourceServerConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.provider.authentication.TokenExtractor;
+
+import javax.servlet.http.Cookie;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * resource-server的cookieTokenExtractor，分别从Authorization头和cookie中提取token
+ *
+ * @author Kevin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenExtractorBenchmark {
+
+    private TokenExtractor tokenExtractor;
+
+    private MockHttpServletRequest headerRequest;
+
+    private MockHttpServletRequest cookieRequest;
+
+    @Setup
+    public void setup() throws Exception {
+        tokenExtractor = new ResourceServerConfiguration().cookieTokenExtractor();
+
+        String tokenValue = TokenFixtures.tokenEnhancer(TokenFixtures.signingConverter(TokenFixtures.keyRing("RS256")))
+                .enhance(TokenFixtures.newAccessToken(), TokenFixtures.authentication("client_credentials"))
+                .getValue();
+
+        headerRequest = new MockHttpServletRequest("GET", "/resource/order/1");
+        headerRequest.addHeader("Authorization", "Bearer " + tokenValue);
+
+        cookieRequest = new MockHttpServletRequest("GET", "/resource/order/1");
+        cookieRequest.setCookies(new Cookie("JSESSIONID", "0"), new Cookie("access_token", tokenValue));
+    }
+
+    @Benchmark
+    public Authentication header() {
+        return tokenExtractor.extract(headerRequest);
+    }
+
+    @Benchmark
+    public Authentication cookie() {
+        return tokenExtractor.extract(cookieRequest);
+    }
+}
@@ -0,0 +1,141 @@
+package com.cloud.kevin.benchmark;
+
+import com.cloud.kevin.authserver.audit.AsyncAuditWriter;
+import com.cloud.kevin.authserver.config.Oauth2ServerConfiguration;
+import com.cloud.kevin.authserver.jwt.JwsAlgorithm;
+import com.cloud.kevin.authserver.jwt.JwtKeyRing;
+import com.cloud.kevin.authserver.jwt.KeyRingJwtAccessTokenConverter;
+import com.cloud.kevin.authserver.jwt.SigningKey;
+import com.cloud.kevin.resourceserver.token.JwkSetJwtAccessTokenConverter;
+import com.cloud.kevin.resourceserver.token.JwkSetKeyResolver;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.TokenEnhancer;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * benchmark共用的测试数据
+ * token相关的对象直接通过auth-server的配置类创建，保证被测代码与线上一致
+ *
+ * @author Kevin
+ */
+final class TokenFixtures {
+
+    static final String CLIENT_ID = "client_1";
+
+    static final String RESOURCE_ID = "resourceServer1";
+
+    static final Set<String> SCOPES = Collections.singleton("select");
+
+    private static final List<GrantedAuthority> USER_AUTHORITIES =
+            AuthorityUtils.createAuthorityList("ROLE_ADMIN", "ROLE_USER", "USER:DEL");
+
+    private static final List<GrantedAuthority> CLIENT_AUTHORITIES = AuthorityUtils.createAuthorityList("client");
+
+    private TokenFixtures() {
+    }
+
+    /**
+     * auth-server使用的密钥环，证书库中的RSA密钥为默认密钥，ES256时使用证书库中的P-256密钥签名
+     *
+     * @param algorithm RS256、ES256
+     * @return
+     */
+    static JwtKeyRing keyRing(String algorithm) {
+        ClassPathResource keyStore = new ClassPathResource("authserver.jks");
+        SigningKey defaultKey = SigningKey.fromKeyStore(keyStore, "storepwd", "authServer", "keypwd");
+        SigningKey keyStoreKey = JwsAlgorithm.ES256 == JwsAlgorithm.valueOf(algorithm)
+                ? SigningKey.fromKeyStore(keyStore, "storepwd", "authServerEc", "keypwd") : defaultKey;
+
+        return new JwtKeyRing(defaultKey, keyStoreKey, 0, TimeUnit.DAYS.toSeconds(30));
+    }
+
+    /**
+     * auth-server用于签名的转换器
+     *
+     * @param keyRing
+     * @return
+     * @throws Exception
+     */
+    static JwtAccessTokenConverter signingConverter(JwtKeyRing keyRing) throws Exception {
+        JwtAccessTokenConverter converter = new KeyRingJwtAccessTokenConverter(keyRing);
+        converter.afterPropertiesSet();
+
+        return converter;
+    }
+
+    /**
+     * auth-server的TokenEnhancerChain(自定义claims + JWT签名 + 审计记录)
+     *
+     * @param signingConverter
+     * @return
+     */
+    static TokenEnhancer tokenEnhancer(JwtAccessTokenConverter signingConverter) {
+        return new Oauth2ServerConfiguration().tokenEnhancer(signingConverter, noopAuditWriter());
+    }
+
+    /**
+     * 不启动写入线程的审计记录，事件放入缓冲区，满了之后按DROP策略丢弃，不访问数据库
+     *
+     * @return
+     */
+    static AsyncAuditWriter noopAuditWriter() {
+        return new AsyncAuditWriter(new DriverManagerDataSource(), 1, 1, 1000,
+                AsyncAuditWriter.OverflowPolicy.DROP, 0);
+    }
+
+    /**
+     * 与resource-server一致，按kid从JWK Set中获取公钥进行验签的转换器
+     *
+     * @param keyRing
+     * @return
+     * @throws Exception
+     */
+    static JwtAccessTokenConverter verifyingConverter(JwtKeyRing keyRing) throws Exception {
+        JwtAccessTokenConverter converter = new JwkSetJwtAccessTokenConverter(
+                new JwkSetKeyResolver(keyRing::getJwkSet, TimeUnit.HOURS.toSeconds(1), 10));
+        converter.setVerifierKey(keyRing.getKey(null).getPublicKeyPem());
+        converter.afterPropertiesSet();
+
+        return converter;
+    }
+
+    static OAuth2Authentication authentication(String grantType) {
+        if ("password".equals(grantType)) {
+            User user = new User("admin", "", USER_AUTHORITIES);
+            return new OAuth2Authentication(request(USER_AUTHORITIES),
+                    new UsernamePasswordAuthenticationToken(user, null, USER_AUTHORITIES));
+        }
+
+        return new OAuth2Authentication(request(CLIENT_AUTHORITIES), null);
+    }
+
+    static OAuth2AccessToken newAccessToken() {
+        DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+        accessToken.setExpiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(12)));
+        accessToken.setScope(SCOPES);
+
+        return accessToken;
+    }
+
+    private static OAuth2Request request(List<GrantedAuthority> authorities) {
+        return new OAuth2Request(Collections.emptyMap(), CLIENT_ID, authorities, true, SCOPES,
+                new HashSet<>(Collections.singletonList(RESOURCE_ID)), null, null, null);
+    }
+}
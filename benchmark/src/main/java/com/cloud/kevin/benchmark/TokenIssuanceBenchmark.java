@@ -0,0 +1,53 @@
+package com.cloud.kevin.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.TokenEnhancer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * token签发：auth-server的TokenEnhancerChain(自定义claims + JwtAccessTokenConverter签名)
+ *
+ * @author Kevin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenIssuanceBenchmark {
+
+    @Param({"RS256", "ES256"})
+    private String algorithm;
+
+    @Param({"client_credentials", "password"})
+    private String grantType;
+
+    private TokenEnhancer tokenEnhancer;
+
+    private OAuth2Authentication authentication;
+
+    @Setup
+    public void setup() throws Exception {
+        tokenEnhancer = TokenFixtures.tokenEnhancer(TokenFixtures.signingConverter(TokenFixtures.keyRing(algorithm)));
+        authentication = TokenFixtures.authentication(grantType);
+    }
+
+    @Benchmark
+    public OAuth2AccessToken enhance() {
+        return tokenEnhancer.enhance(TokenFixtures.newAccessToken(), authentication);
+    }
+}
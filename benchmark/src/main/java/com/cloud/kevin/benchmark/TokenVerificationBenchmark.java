@@ -0,0 +1,74 @@
+package com.cloud.kevin.benchmark;
+
+import com.cloud.kevin.authserver.jwt.JwtKeyRing;
+import com.cloud.kevin.resourceserver.token.CachingJwtTokenStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * token验证：与resource-server一致，通过DefaultTokenServices.loadAuthentication完成按kid验签和解析
+ * cachingJwtTokenStore为缓存命中时的开销
+ *
+ * @author Kevin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenVerificationBenchmark {
+
+    @Param({"RS256", "ES256"})
+    private String algorithm;
+
+    @Param({"client_credentials", "password"})
+    private String grantType;
+
+    private String tokenValue;
+
+    private DefaultTokenServices jwtTokenServices;
+
+    private DefaultTokenServices cachingTokenServices;
+
+    @Setup
+    public void setup() throws Exception {
+        JwtKeyRing keyRing = TokenFixtures.keyRing(algorithm);
+        tokenValue = TokenFixtures.tokenEnhancer(TokenFixtures.signingConverter(keyRing))
+                .enhance(TokenFixtures.newAccessToken(), TokenFixtures.authentication(grantType))
+                .getValue();
+
+        JwtAccessTokenConverter verifyingConverter = TokenFixtures.verifyingConverter(keyRing);
+
+        jwtTokenServices = new DefaultTokenServices();
+        jwtTokenServices.setTokenStore(new JwtTokenStore(verifyingConverter));
+
+        cachingTokenServices = new DefaultTokenServices();
+        cachingTokenServices.setTokenStore(new CachingJwtTokenStore(verifyingConverter, 10000, 3600));
+    }
+
+    @Benchmark
+    public OAuth2Authentication jwtTokenStore() {
+        return jwtTokenServices.loadAuthentication(tokenValue);
+    }
+
+    @Benchmark
+    public OAuth2Authentication cachingJwtTokenStore() {
+        return cachingTokenServices.loadAuthentication(tokenValue);
+    }
+}
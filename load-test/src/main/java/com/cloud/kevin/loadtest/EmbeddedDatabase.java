@@ -0,0 +1,66 @@
+package com.cloud.kevin.loadtest;
+
+import lombok.Getter;
+import org.h2.tools.RunScript;
+import org.h2.tools.Server;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+
+/**
+ * 代替MySQL的H2内存数据库，以TCP方式提供给auth-server进程，启动时建表并写入测试用的client和用户
+ *
+ * @author Kevin
+ */
+public class EmbeddedDatabase implements AutoCloseable {
+
+    private static final String SCRIPT = "/oauth2-h2.sql";
+
+    public static final String USERNAME = "sa";
+
+    public static final String PASSWORD = "";
+
+    private final Server server;
+
+    /**
+     * auth-server使用的JDBC URL
+     */
+    @Getter
+    private final String url;
+
+    private EmbeddedDatabase(Server server) {
+        this.server = server;
+        // DB_CLOSE_DELAY=-1：所有连接关闭后内存数据库仍然保留，直到TCP服务停止
+        this.url = "jdbc:h2:tcp://127.0.0.1:" + server.getPort() + "/mem:oauth2;MODE=MySQL;DB_CLOSE_DELAY=-1";
+    }
+
+    public static EmbeddedDatabase start(int port) throws Exception {
+        Server server = Server.createTcpServer("-tcpPort", String.valueOf(port), "-tcpDaemon").start();
+        EmbeddedDatabase database = new EmbeddedDatabase(server);
+        try {
+            database.initialize();
+        } catch (Exception e) {
+            database.close();
+            throw e;
+        }
+
+        return database;
+    }
+
+    private void initialize() throws Exception {
+        try (Connection connection = DriverManager.getConnection(url, USERNAME, PASSWORD);
+             InputStream script = EmbeddedDatabase.class.getResourceAsStream(SCRIPT);
+             Reader reader = new InputStreamReader(script, StandardCharsets.UTF_8)) {
+            RunScript.execute(connection, reader);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop();
+    }
+}
@@ -0,0 +1,241 @@
+package com.cloud.kevin.loadtest;
+
+import lombok.Data;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 负载测试的参数，命令行中以--name=value的形式指定
+ *
+ * @author Kevin
+ */
+@Data
+public class LoadTestOptions {
+
+    /**
+     * 请求的到达速率(次/秒)，与服务端的处理速度无关(开放模型)
+     */
+    private double rate = 200;
+
+    /**
+     * 到达间隔的分布
+     */
+    private Arrival arrival = Arrival.POISSON;
+
+    /**
+     * 预热时间(秒)，期间的请求不计入结果
+     */
+    private long warmup = 10;
+
+    /**
+     * 计入结果的测试时间(秒)
+     */
+    private long duration = 60;
+
+    /**
+     * 到达时间结束后等待未完成请求的最长时间(秒)
+     */
+    private long drainTimeout = 30;
+
+    /**
+     * 同时进行的最大请求数(工作线程数和连接数)，超出的请求排队，排队时间计入响应时间
+     */
+    private int concurrency = 256;
+
+    /**
+     * 各请求类型的权重
+     */
+    private Map<Operation, Integer> mix = defaultMix();
+
+    /**
+     * 预先以password模式获取的token数，ORDER和REFRESH从中随机选取
+     */
+    private int tokens = 50;
+
+    /**
+     * 输出进度的间隔(秒)
+     */
+    private long reportInterval = 5;
+
+    /**
+     * 已经运行的auth-server地址，指定时不再启动auth-server和嵌入式数据库
+     */
+    private String authServerUrl;
+
+    /**
+     * 已经运行的resource-server地址，指定时不再启动resource-server
+     */
+    private String resourceServerUrl;
+
+    private Path authServerJar = Paths.get("../auth-server/target/auth-server-0.0.1-SNAPSHOT-exec.jar");
+
+    private Path resourceServerJar = Paths.get("../resource-server/target/resource-server-0.0.1-SNAPSHOT-exec.jar");
+
+    /**
+     * 通过loader.path提供给auth-server的H2驱动
+     */
+    private Path h2Jar = Paths.get("target/lib/h2.jar");
+
+    /**
+     * 等待服务启动的最长时间(秒)
+     */
+    private long startupTimeout = 120;
+
+    /**
+     * 结果和服务日志的输出目录
+     */
+    private Path reportDir = Paths.get("target/load-test");
+
+    private String clientId = "client_1";
+
+    private String clientSecret = "123456";
+
+    private String username = "admin";
+
+    private String password = "123456";
+
+    public static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            options.set(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        return options;
+    }
+
+    private void set(String name, String value) {
+        switch (name) {
+            case "rate":
+                rate = Double.parseDouble(value);
+                break;
+            case "arrival":
+                arrival = Arrival.valueOf(value.toUpperCase());
+                break;
+            case "warmup":
+                warmup = Long.parseLong(value);
+                break;
+            case "duration":
+                duration = Long.parseLong(value);
+                break;
+            case "drain-timeout":
+                drainTimeout = Long.parseLong(value);
+                break;
+            case "concurrency":
+                concurrency = Integer.parseInt(value);
+                break;
+            case "mix":
+                mix = parseMix(value);
+                break;
+            case "tokens":
+                tokens = Integer.parseInt(value);
+                break;
+            case "report-interval":
+                reportInterval = Long.parseLong(value);
+                break;
+            case "auth-server-url":
+                authServerUrl = value;
+                break;
+            case "resource-server-url":
+                resourceServerUrl = value;
+                break;
+            case "auth-server-jar":
+                authServerJar = Paths.get(value);
+                break;
+            case "resource-server-jar":
+                resourceServerJar = Paths.get(value);
+                break;
+            case "h2-jar":
+                h2Jar = Paths.get(value);
+                break;
+            case "startup-timeout":
+                startupTimeout = Long.parseLong(value);
+                break;
+            case "report-dir":
+                reportDir = Paths.get(value);
+                break;
+            case "client-id":
+                clientId = value;
+                break;
+            case "client-secret":
+                clientSecret = value;
+                break;
+            case "username":
+                username = value;
+                break;
+            case "password":
+                password = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option --" + name);
+        }
+    }
+
+    /**
+     * @param value 例如client_credentials=10,password=10,refresh=10,order=70
+     */
+    private static Map<Operation, Integer> parseMix(String value) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (String part : value.split(",")) {
+            String[] pair = part.trim().split("=");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected operation=weight but got " + part);
+            }
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight > 0) {
+                mix.put(Operation.of(pair[0].trim()), weight);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("--mix has no operation with a positive weight");
+        }
+
+        return mix;
+    }
+
+    private static Map<Operation, Integer> defaultMix() {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        mix.put(Operation.CLIENT_CREDENTIALS, 10);
+        mix.put(Operation.PASSWORD, 10);
+        mix.put(Operation.REFRESH, 10);
+        mix.put(Operation.ORDER, 70);
+
+        return mix;
+    }
+
+    public enum Arrival {
+
+        /**
+         * 固定间隔
+         */
+        CONSTANT {
+            @Override
+            long nextInterval(Random random, double meanNanos) {
+                return Math.round(meanNanos);
+            }
+        },
+        /**
+         * 泊松过程，间隔服从指数分布，更接近大量独立用户的请求
+         */
+        POISSON {
+            @Override
+            long nextInterval(Random random, double meanNanos) {
+                return Math.round(-Math.log(1 - random.nextDouble()) * meanNanos);
+            }
+        };
+
+        /**
+         * @param random
+         * @param meanNanos 平均间隔(纳秒)
+         * @return 到下一个请求的间隔(纳秒)
+         */
+        abstract long nextInterval(Random random, double meanNanos);
+    }
+}
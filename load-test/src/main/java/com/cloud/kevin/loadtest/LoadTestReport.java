@@ -0,0 +1,161 @@
+package com.cloud.kevin.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 测试结果：每种请求类型和全部请求的吞吐量、错误数和延迟百分位数(毫秒)
+ * 输出到控制台，并导出summary.json和每种请求类型的百分位分布[name].hgrm(可以用HdrHistogram的工具绘图)。
+ *
+ * @author Kevin
+ */
+public class LoadTestReport {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    /**
+     * 微秒转换为毫秒
+     */
+    private static final double MILLIS = 1000.0;
+
+    private static final String ALL = "all";
+
+    private final LoadTestOptions options;
+
+    private final Map<String, OperationStats> stats = new LinkedHashMap<>();
+
+    private final long arrivals;
+
+    private final long unfinished;
+
+    private final Histogram allResponseTime = new Histogram(3);
+
+    private final Histogram allServiceTime = new Histogram(3);
+
+    /**
+     * @param options
+     * @param stats
+     * @param arrivals   计入结果的请求数
+     * @param unfinished 等待drainTimeout后仍未完成的请求数，这些请求没有计入延迟
+     */
+    public LoadTestReport(LoadTestOptions options, Map<Operation, OperationStats> stats, long arrivals,
+                          long unfinished) {
+        this.options = options;
+        this.arrivals = arrivals;
+        this.unfinished = unfinished;
+        for (OperationStats operationStats : stats.values()) {
+            this.stats.put(operationStats.getName(), operationStats);
+            allResponseTime.add(operationStats.getResponseTime());
+            allServiceTime.add(operationStats.getServiceTime());
+        }
+    }
+
+    public void print(PrintStream out) {
+        out.println();
+        out.printf("Rate %.1f req/s (%s), %ds measured, %d arrivals, %d unfinished%n", options.getRate(),
+                options.getArrival().name().toLowerCase(), options.getDuration(), arrivals, unfinished);
+        out.printf("%-20s %10s %8s %10s", "Operation", "OK", "Errors", "OK/s");
+        for (double percentile : PERCENTILES) {
+            out.printf(" %10s", "p" + format(percentile));
+        }
+        out.printf(" %10s%n", "max");
+
+        for (OperationStats operationStats : stats.values()) {
+            printRow(out, operationStats.getName(), operationStats.getResponseTime(),
+                    operationStats.getErrorCount());
+            if (operationStats.getErrorCount() > 0) {
+                out.printf("%-20s %s%n", "", "errors by status " + operationStats.getErrors());
+            }
+        }
+        printRow(out, ALL, allResponseTime, totalErrors());
+        out.println("Latencies in ms from the intended send time (corrected for coordinated omission)");
+    }
+
+    private void printRow(PrintStream out, String name, Histogram responseTime, long errors) {
+        out.printf("%-20s %10d %8d %10.1f", name, responseTime.getTotalCount(), errors, throughput(responseTime));
+        for (double percentile : PERCENTILES) {
+            out.printf(" %10.2f", responseTime.getValueAtPercentile(percentile) / MILLIS);
+        }
+        out.printf(" %10.2f%n", responseTime.getMaxValue() / MILLIS);
+    }
+
+    /**
+     * @param directory
+     * @throws IOException
+     */
+    public void export(Path directory) throws IOException {
+        Files.createDirectories(directory);
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("rate", options.getRate());
+        summary.put("arrival", options.getArrival().name().toLowerCase());
+        summary.put("warmup", options.getWarmup());
+        summary.put("duration", options.getDuration());
+        summary.put("concurrency", options.getConcurrency());
+        summary.put("arrivals", arrivals);
+        summary.put("unfinished", unfinished);
+
+        Map<String, Object> operations = new LinkedHashMap<>();
+        for (OperationStats operationStats : stats.values()) {
+            operations.put(operationStats.getName(), summarize(operationStats.getResponseTime(),
+                    operationStats.getServiceTime(), operationStats.getErrors()));
+            writePercentiles(directory, operationStats.getName(), operationStats.getResponseTime());
+        }
+        operations.put(ALL, summarize(allResponseTime, allServiceTime, null));
+        writePercentiles(directory, ALL, allResponseTime);
+        summary.put("operations", operations);
+
+        new ObjectMapper().writerWithDefaultPrettyPrinter()
+                .writeValue(directory.resolve("summary.json").toFile(), summary);
+    }
+
+    private Map<String, Object> summarize(Histogram responseTime, Histogram serviceTime,
+                                          Map<Integer, Long> errors) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("ok", responseTime.getTotalCount());
+        result.put("throughput", throughput(responseTime));
+        if (null != errors) {
+            result.put("errors", errors);
+        }
+        result.put("responseTime", percentiles(responseTime));
+        result.put("serviceTime", percentiles(serviceTime));
+
+        return result;
+    }
+
+    private static Map<String, Object> percentiles(Histogram histogram) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("mean", histogram.getMean() / MILLIS);
+        for (double percentile : PERCENTILES) {
+            result.put("p" + format(percentile), histogram.getValueAtPercentile(percentile) / MILLIS);
+        }
+        result.put("max", histogram.getMaxValue() / MILLIS);
+
+        return result;
+    }
+
+    private static void writePercentiles(Path directory, String name, Histogram histogram) throws IOException {
+        try (PrintStream out = new PrintStream(directory.resolve(name + ".hgrm").toFile(), "UTF-8")) {
+            histogram.outputPercentileDistribution(out, MILLIS);
+        }
+    }
+
+    private double throughput(Histogram histogram) {
+        return histogram.getTotalCount() / (double) options.getDuration();
+    }
+
+    private long totalErrors() {
+        return stats.values().stream().mapToLong(OperationStats::getErrorCount).sum();
+    }
+
+    private static String format(double percentile) {
+        return percentile == (long) percentile ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+}
@@ -0,0 +1,104 @@
+package com.cloud.kevin.loadtest;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 端到端负载测试入口
+ * 默认在本进程中启动H2数据库(代替MySQL)，在独立的JVM中启动auth-server和resource-server，
+ * 以password模式预先获取token后按到达速率发送client_credentials、password、refresh_token和/resource/order/{id}的混合请求，
+ * 结果输出到控制台和report-dir。指定--auth-server-url、--resource-server-url时直接测试已经运行的服务。
+ * 被测服务的其他配置可以通过环境变量覆盖，例如AUTH_SERVER_CONCURRENCY_LIMIT_ENABLED=false。
+ * <p>
+ * 使用方式：先在auth-server、resource-server目录执行mvn package，再在本目录执行mvn package，
+ * java -jar target/load-test.jar [--rate=200] [--arrival=poisson|constant] [--warmup=10] [--duration=60]
+ * [--concurrency=256] [--mix=client_credentials=10,password=10,refresh=10,order=70] [--report-dir=target/load-test]
+ * 其他参数见{@link LoadTestOptions}。
+ *
+ * @author Kevin
+ */
+public class LoadTestRunner {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        Path reportDir = options.getReportDir();
+        Files.createDirectories(reportDir);
+
+        Deque<AutoCloseable> resources = new ArrayDeque<>();
+        try {
+            String authServerUrl = options.getAuthServerUrl();
+            if (null == authServerUrl) {
+                EmbeddedDatabase database = EmbeddedDatabase.start(freePort());
+                resources.push(database);
+
+                ServiceProcess authServer = ServiceProcess.start("auth-server", options.getAuthServerJar(),
+                        options.getH2Jar(), freePort(), Arrays.asList(
+                                "--spring.datasource.url=" + database.getUrl(),
+                                "--spring.datasource.driver-class-name=org.h2.Driver",
+                                "--spring.datasource.username=" + EmbeddedDatabase.USERNAME,
+                                "--spring.datasource.password=" + EmbeddedDatabase.PASSWORD,
+                                // 不使用wall过滤器，它按MySQL的语法解析SQL
+                                "--spring.datasource.filters=stat,slf4j"),
+                        reportDir);
+                resources.push(authServer);
+                authServer.awaitReady("/.well-known/jwks.json", options.getStartupTimeout());
+                authServerUrl = authServer.getBaseUrl();
+                System.out.println("auth-server started at " + authServerUrl);
+            }
+
+            String resourceServerUrl = options.getResourceServerUrl();
+            if (null == resourceServerUrl) {
+                ServiceProcess resourceServer = ServiceProcess.start("resource-server",
+                        options.getResourceServerJar(), null, freePort(), Arrays.asList(
+                                "--resource-server.jwk.set-uri=" + authServerUrl + "/.well-known/jwks.json",
+                                "--resource-server.revocation.list-uri=" + authServerUrl + "/oauth/revocations"),
+                        reportDir);
+                resources.push(resourceServer);
+                resourceServer.awaitReady("/actuator/health", options.getStartupTimeout());
+                resourceServerUrl = resourceServer.getBaseUrl();
+                System.out.println("resource-server started at " + resourceServerUrl);
+            }
+
+            run(options, authServerUrl, resourceServerUrl);
+        } finally {
+            while (!resources.isEmpty()) {
+                resources.pop().close();
+            }
+        }
+    }
+
+    private static void run(LoadTestOptions options, String authServerUrl, String resourceServerUrl)
+            throws Exception {
+        try (OAuth2Client client = new OAuth2Client(options, authServerUrl, resourceServerUrl)) {
+            client.prefetchTokens();
+
+            Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+            long startTime = System.currentTimeMillis();
+            for (Operation operation : options.getMix().keySet()) {
+                stats.put(operation, new OperationStats(operation.getKey(), options.getReportDir(), startTime));
+            }
+
+            try {
+                LoadTestReport report = new OpenModelLoadGenerator(options, client, stats).run();
+                report.print(System.out);
+                report.export(options.getReportDir());
+                System.out.println("Reports written to " + options.getReportDir().toAbsolutePath());
+            } finally {
+                stats.values().forEach(OperationStats::close);
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.cloud.kevin.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpHeaders;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 按{@link Operation}向auth-server和resource-server发送请求
+ * password模式获取的token保存在固定数量的槽位中，ORDER和REFRESH随机选取槽位使用，
+ * PASSWORD和REFRESH的结果写回槽位，测试时间超过token有效期时token也能持续更新。
+ *
+ * @author Kevin
+ */
+public class OAuth2Client implements Closeable {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * 订单id的取值范围
+     */
+    private static final int ORDER_IDS = 1000000;
+
+    private final CloseableHttpClient httpClient;
+
+    private final String tokenUri;
+
+    private final String orderUri;
+
+    private final String clientAuthorization;
+
+    private final String username;
+
+    private final String password;
+
+    private final AtomicReferenceArray<String> accessTokens;
+
+    private final AtomicReferenceArray<String> refreshTokens;
+
+    public OAuth2Client(LoadTestOptions options, String authServerUrl, String resourceServerUrl) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(options.getConcurrency() * 2);
+        connectionManager.setDefaultMaxPerRoute(options.getConcurrency());
+
+        // 不自动重试，失败的请求如实计入错误
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(5000)
+                        .setSocketTimeout(30000)
+                        .build())
+                .disableAutomaticRetries()
+                .disableCookieManagement()
+                .build();
+
+        this.tokenUri = authServerUrl + "/oauth/token";
+        this.orderUri = resourceServerUrl + "/resource/order/";
+        this.clientAuthorization = "Basic " + Base64.getEncoder().encodeToString(
+                (options.getClientId() + ":" + options.getClientSecret()).getBytes(StandardCharsets.UTF_8));
+        this.username = options.getUsername();
+        this.password = options.getPassword();
+        this.accessTokens = new AtomicReferenceArray<>(options.getTokens());
+        this.refreshTokens = new AtomicReferenceArray<>(options.getTokens());
+    }
+
+    /**
+     * 压测开始前填满所有token槽位
+     *
+     * @throws IOException
+     */
+    public void prefetchTokens() throws IOException {
+        for (int slot = 0; slot < accessTokens.length(); slot++) {
+            int status = passwordGrant(slot);
+            if (!isSuccess(status)) {
+                throw new IllegalStateException("Password grant for " + username + " failed with HTTP " + status);
+            }
+        }
+    }
+
+    /**
+     * @param operation
+     * @return HTTP状态码
+     * @throws IOException
+     */
+    public int execute(Operation operation) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int slot = random.nextInt(accessTokens.length());
+        switch (operation) {
+            case CLIENT_CREDENTIALS:
+                return token(-1, Arrays.asList(new BasicNameValuePair("grant_type", "client_credentials")));
+            case PASSWORD:
+                return passwordGrant(slot);
+            case REFRESH:
+                return token(slot, Arrays.asList(new BasicNameValuePair("grant_type", "refresh_token"),
+                        new BasicNameValuePair("refresh_token", refreshTokens.get(slot))));
+            case ORDER:
+                return order(accessTokens.get(slot), random.nextInt(ORDER_IDS));
+            default:
+                throw new IllegalArgumentException("Unsupported operation " + operation);
+        }
+    }
+
+    private int passwordGrant(int slot) throws IOException {
+        return token(slot, Arrays.asList(new BasicNameValuePair("grant_type", "password"),
+                new BasicNameValuePair("username", username),
+                new BasicNameValuePair("password", password)));
+    }
+
+    /**
+     * @param slot 成功时写入token的槽位，小于0时不保存
+     */
+    private int token(int slot, List<NameValuePair> form) throws IOException {
+        HttpPost request = new HttpPost(tokenUri);
+        request.setHeader(HttpHeaders.AUTHORIZATION, clientAuthorization);
+        request.setEntity(new UrlEncodedFormEntity(form, StandardCharsets.UTF_8));
+
+        return httpClient.execute(request, response -> {
+            int status = response.getStatusLine().getStatusCode();
+            if (slot < 0 || !isSuccess(status)) {
+                EntityUtils.consume(response.getEntity());
+                return status;
+            }
+
+            JsonNode body = OBJECT_MAPPER.readTree(EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8));
+            accessTokens.set(slot, body.path("access_token").asText());
+            if (body.hasNonNull("refresh_token")) {
+                refreshTokens.set(slot, body.get("refresh_token").asText());
+            }
+            return status;
+        });
+    }
+
+    private int order(String accessToken, int id) throws IOException {
+        HttpGet request = new HttpGet(orderUri + id);
+        request.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken);
+
+        return httpClient.execute(request, response -> {
+            EntityUtils.consume(response.getEntity());
+            return response.getStatusLine().getStatusCode();
+        });
+    }
+
+    public static boolean isSuccess(int status) {
+        return status >= 200 && status < 300;
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+}
@@ -0,0 +1,163 @@
+package com.cloud.kevin.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 开放模型的负载：请求按固定的到达速率产生，不等待前一个请求完成
+ * 调度线程按到达间隔计算每个请求的计划发出时间，到时把请求交给工作线程池，工作线程都在忙时请求排队，
+ * 延迟从计划发出时间算起(见{@link OperationStats})。调度线程落后时立即补发，计划时间不变。
+ * 预热期间的请求照常发出但不计入结果。
+ *
+ * @author Kevin
+ */
+public class OpenModelLoadGenerator {
+
+    private final LoadTestOptions options;
+
+    private final OAuth2Client client;
+
+    private final Map<Operation, OperationStats> stats;
+
+    private final Operation[] operations;
+
+    /**
+     * 与operations对应的累计权重
+     */
+    private final int[] cumulativeWeights;
+
+    /**
+     * 计入结果、尚未完成的请求数
+     */
+    private final AtomicLong outstanding = new AtomicLong();
+
+    public OpenModelLoadGenerator(LoadTestOptions options, OAuth2Client client, Map<Operation, OperationStats> stats) {
+        this.options = options;
+        this.client = client;
+        this.stats = stats;
+
+        List<Operation> operationList = new ArrayList<>(options.getMix().keySet());
+        this.operations = operationList.toArray(new Operation[0]);
+        this.cumulativeWeights = new int[operations.length];
+        int total = 0;
+        for (int i = 0; i < operations.length; i++) {
+            total += options.getMix().get(operations[i]);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    /**
+     * @return 测试结果
+     * @throws InterruptedException
+     */
+    public LoadTestReport run() throws InterruptedException {
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(options.getConcurrency(), options.getConcurrency(),
+                0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "load-worker-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        workers.prestartAllCoreThreads();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+
+        Random random = new Random();
+        double meanInterval = TimeUnit.SECONDS.toNanos(1) / options.getRate();
+        long start = System.nanoTime();
+        long measureStart = start + TimeUnit.SECONDS.toNanos(options.getWarmup());
+        long end = measureStart + TimeUnit.SECONDS.toNanos(options.getDuration());
+        long reportInterval = TimeUnit.SECONDS.toNanos(options.getReportInterval());
+        reporter.scheduleAtFixedRate(() -> printProgress(measureStart), measureStart - start + reportInterval,
+                reportInterval, TimeUnit.NANOSECONDS);
+        System.out.printf("Warming up for %ds at %.1f req/s%n", options.getWarmup(), options.getRate());
+
+        long arrivals = 0;
+        long intendedStart = start;
+        while (intendedStart < end) {
+            long delay = intendedStart - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+                continue;
+            }
+
+            Operation operation = nextOperation(random);
+            boolean measured = intendedStart >= measureStart;
+            if (measured) {
+                arrivals++;
+                outstanding.incrementAndGet();
+            }
+            long scheduled = intendedStart;
+            workers.execute(() -> perform(operation, scheduled, measured));
+            intendedStart += options.getArrival().nextInterval(random, meanInterval);
+        }
+
+        workers.shutdown();
+        if (!workers.awaitTermination(options.getDrainTimeout(), TimeUnit.SECONDS)) {
+            workers.shutdownNow();
+        }
+        reporter.shutdownNow();
+        reporter.awaitTermination(10, TimeUnit.SECONDS);
+        for (OperationStats operationStats : stats.values()) {
+            operationStats.sample();
+        }
+
+        return new LoadTestReport(options, stats, arrivals, outstanding.get());
+    }
+
+    private void perform(Operation operation, long intendedStart, boolean measured) {
+        long sent = System.nanoTime();
+        int status;
+        try {
+            status = client.execute(operation);
+        } catch (IOException | RuntimeException e) {
+            status = OperationStats.IO_ERROR;
+        }
+        long completed = System.nanoTime();
+
+        if (measured) {
+            OperationStats operationStats = stats.get(operation);
+            if (OAuth2Client.isSuccess(status)) {
+                operationStats.recordSuccess(intendedStart, sent, completed);
+            } else {
+                operationStats.recordError(status);
+            }
+            outstanding.decrementAndGet();
+        }
+    }
+
+    private Operation nextOperation(Random random) {
+        int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (value < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+
+        return operations[operations.length - 1];
+    }
+
+    private void printProgress(long measureStart) {
+        StringBuilder line = new StringBuilder(String.format("[%4ds]",
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - measureStart)));
+        for (OperationStats operationStats : stats.values()) {
+            Histogram interval = operationStats.sample();
+            line.append(String.format(" %s %d ok p99 %.1fms;", operationStats.getName(), interval.getTotalCount(),
+                    interval.getValueAtPercentile(99) / 1000.0));
+        }
+        line.append(" outstanding ").append(outstanding.get());
+        System.out.println(line);
+    }
+}
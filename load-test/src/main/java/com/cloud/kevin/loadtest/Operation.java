@@ -0,0 +1,48 @@
+package com.cloud.kevin.loadtest;
+
+import lombok.Getter;
+
+/**
+ * 负载中的请求类型
+ *
+ * @author Kevin
+ */
+@Getter
+public enum Operation {
+
+    /**
+     * client_credentials模式获取token
+     */
+    CLIENT_CREDENTIALS("client_credentials"),
+    /**
+     * password模式获取token，需要对用户密码做BCrypt校验
+     */
+    PASSWORD("password"),
+    /**
+     * refresh_token换取新的access token
+     */
+    REFRESH("refresh"),
+    /**
+     * 带access token访问resource-server的/resource/order/{id}
+     */
+    ORDER("order");
+
+    /**
+     * 命令行--mix中使用的名称
+     */
+    private final String key;
+
+    Operation(String key) {
+        this.key = key;
+    }
+
+    public static Operation of(String key) {
+        for (Operation operation : values()) {
+            if (operation.key.equalsIgnoreCase(key)) {
+                return operation;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown operation: " + key);
+    }
+}
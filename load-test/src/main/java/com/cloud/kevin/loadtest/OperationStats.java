@@ -0,0 +1,105 @@
+package com.cloud.kevin.loadtest;
+
+import lombok.Getter;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+import java.io.FileNotFoundException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一种请求类型的统计，延迟单位微秒
+ * responseTime从计划发出的时间算起，包含请求在客户端排队等待的时间：服务端变慢时后续请求不会因为客户端等待而被推迟发出，
+ * 也就不会漏记这段时间内本应发生的慢请求(coordinated omission)；serviceTime从实际发出算起，两者的差距即排队时间。
+ * 只记录成功(2xx)的请求，失败的请求按状态码计数，-1表示连接或读取失败。
+ *
+ * @author Kevin
+ */
+public class OperationStats {
+
+    /**
+     * 连接或读取失败时使用的状态码
+     */
+    public static final int IO_ERROR = -1;
+
+    @Getter
+    private final String name;
+
+    private final Recorder responseTimeRecorder = new Recorder(3);
+
+    private final Recorder serviceTimeRecorder = new Recorder(3);
+
+    @Getter
+    private final Histogram responseTime = new Histogram(3);
+
+    @Getter
+    private final Histogram serviceTime = new Histogram(3);
+
+    private final Map<Integer, LongAdder> errors = new ConcurrentHashMap<>();
+
+    private final HistogramLogWriter logWriter;
+
+    private Histogram lastInterval;
+
+    /**
+     * @param name
+     * @param reportDir 按间隔记录的responseTime写入[name].hlog，可以用HdrHistogram的工具绘图
+     * @param startTime 毫秒
+     * @throws FileNotFoundException
+     */
+    public OperationStats(String name, Path reportDir, long startTime) throws FileNotFoundException {
+        this.name = name;
+        this.logWriter = new HistogramLogWriter(reportDir.resolve(name + ".hlog").toFile());
+        this.logWriter.outputLogFormatVersion();
+        this.logWriter.outputStartTime(startTime);
+        this.logWriter.setBaseTime(startTime);
+        this.logWriter.outputLegend();
+    }
+
+    public void recordSuccess(long intendedStart, long sent, long completed) {
+        responseTimeRecorder.recordValue(TimeUnit.NANOSECONDS.toMicros(completed - intendedStart));
+        serviceTimeRecorder.recordValue(TimeUnit.NANOSECONDS.toMicros(completed - sent));
+    }
+
+    public void recordError(int status) {
+        errors.computeIfAbsent(status, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * 取出上次调用以来的记录并累加到总数中，只能由一个线程调用
+     *
+     * @return 本次间隔的responseTime
+     */
+    public Histogram sample() {
+        lastInterval = responseTimeRecorder.getIntervalHistogram(lastInterval);
+        responseTime.add(lastInterval);
+        serviceTime.add(serviceTimeRecorder.getIntervalHistogram());
+        logWriter.outputIntervalHistogram(lastInterval);
+
+        return lastInterval;
+    }
+
+    /**
+     * @return 状态码及次数，按状态码排序
+     */
+    public Map<Integer, Long> getErrors() {
+        Map<Integer, Long> result = new TreeMap<>();
+        errors.forEach((status, count) -> result.put(status, count.sum()));
+
+        return result;
+    }
+
+    public long getErrorCount() {
+        return errors.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    public void close() {
+        logWriter.close();
+    }
+}
@@ -0,0 +1,126 @@
+package com.cloud.kevin.loadtest;
+
+import lombok.Getter;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在独立的JVM中运行被测服务，输出写入日志文件
+ *
+ * @author Kevin
+ */
+public class ServiceProcess implements AutoCloseable {
+
+    private final String name;
+
+    private final Process process;
+
+    private final File log;
+
+    @Getter
+    private final String baseUrl;
+
+    private ServiceProcess(String name, Process process, File log, String baseUrl) {
+        this.name = name;
+        this.process = process;
+        this.log = log;
+        this.baseUrl = baseUrl;
+    }
+
+    /**
+     * @param name       服务名，用作日志文件名
+     * @param jar        Spring Boot可执行jar
+     * @param loaderPath 额外加入classpath的jar，为null时直接java -jar运行
+     * @param port
+     * @param arguments  传给应用的参数
+     * @param logDir
+     * @return
+     * @throws IOException
+     */
+    public static ServiceProcess start(String name, Path jar, Path loaderPath, int port, List<String> arguments,
+                                       Path logDir) throws IOException {
+        if (!Files.isRegularFile(jar)) {
+            throw new IllegalStateException(jar.toAbsolutePath() + " not found, run mvn package in the module first");
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (null == loaderPath) {
+            command.add("-jar");
+            command.add(jar.toAbsolutePath().toString());
+        } else {
+            // PropertiesLauncher按loader.path加载可执行jar之外的类
+            command.add("-Dloader.path=" + loaderPath.toAbsolutePath());
+            command.add("-cp");
+            command.add(jar.toAbsolutePath().toString());
+            command.add("org.springframework.boot.loader.PropertiesLauncher");
+        }
+        command.add("--server.port=" + port);
+        command.addAll(arguments);
+
+        Files.createDirectories(logDir);
+        File log = logDir.resolve(name + ".log").toFile();
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log)
+                .start();
+
+        return new ServiceProcess(name, process, log, "http://127.0.0.1:" + port);
+    }
+
+    /**
+     * 等待服务可以正常响应
+     *
+     * @param path    不需要认证的地址
+     * @param timeout 秒
+     * @throws InterruptedException
+     */
+    public void awaitReady(String path, long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout);
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException(name + " exited with " + process.exitValue() + ", see " + log);
+            }
+            if (succeeds(baseUrl + path)) {
+                return;
+            }
+            Thread.sleep(200);
+        }
+
+        throw new IllegalStateException(name + " did not start within " + timeout + "s, see " + log);
+    }
+
+    private static boolean succeeds(String url) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(500);
+            connection.setReadTimeout(5000);
+            try {
+                int status = connection.getResponseCode();
+                return status >= 200 && status < 300;
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException e) {
+            // 端口尚未监听
+            return false;
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+-- auth-server/db/oauth2.sql中auth-server用到的表，改写为H2的语法(MODE=MySQL)
+-- client_1、admin、lisi的密码都是123456
+
+CREATE TABLE oauth_client_details (
+  client_id varchar(128) NOT NULL,
+  resource_ids varchar(256) DEFAULT NULL,
+  client_secret varchar(256) DEFAULT NULL,
+  scope varchar(256) DEFAULT NULL,
+  authorized_grant_types varchar(256) DEFAULT NULL,
+  web_server_redirect_uri varchar(256) DEFAULT NULL,
+  authorities varchar(256) DEFAULT NULL,
+  access_token_validity int DEFAULT NULL,
+  refresh_token_validity int DEFAULT NULL,
+  additional_information varchar(4096) DEFAULT NULL,
+  autoapprove varchar(256) DEFAULT NULL,
+  PRIMARY KEY (client_id)
+);
+
+INSERT INTO oauth_client_details (client_id, resource_ids, client_secret, scope, authorized_grant_types,
+  web_server_redirect_uri, authorities, access_token_validity, refresh_token_validity, additional_information,
+  autoapprove) VALUES
+('client_1', 'resourceServer1', '$2a$10$CtVeDT1V7cFu9gby4bEu.uuPnKxhqI9H7ScRRJM/EzacEKdgxTS7S', 'select,query',
+  'client_credentials,password,authorization_code,refresh_token,implicit', NULL, 'client', 3600, 3600, NULL, 'select');
+
+CREATE TABLE oauth_code (
+  code varchar(64) NOT NULL,
+  authentication blob NOT NULL,
+  expires_at timestamp NOT NULL,
+  PRIMARY KEY (code)
+);
+CREATE INDEX idx_oauth_code_expires_at ON oauth_code (expires_at);
+
+CREATE TABLE users (
+  id bigint DEFAULT NULL,
+  username varchar(30) DEFAULT NULL,
+  password varchar(60) DEFAULT NULL
+);
+CREATE UNIQUE INDEX uk_users_username ON users (username);
+CREATE INDEX idx_users_id ON users (id);
+
+INSERT INTO users (id, username, password) VALUES
+(111, 'admin', '$2a$10$CtVeDT1V7cFu9gby4bEu.uuPnKxhqI9H7ScRRJM/EzacEKdgxTS7S'),
+(222, 'lisi', '$2a$10$CtVeDT1V7cFu9gby4bEu.uuPnKxhqI9H7ScRRJM/EzacEKdgxTS7S');
+
+CREATE TABLE user_authorities (
+  user_id bigint NOT NULL,
+  authority varchar(64) NOT NULL,
+  PRIMARY KEY (user_id, authority)
+);
+
+INSERT INTO user_authorities (user_id, authority) VALUES
+(111, 'ROLE_ADMIN'),
+(111, 'ROLE_USER'),
+(111, 'USER:DEL'),
+(222, 'ROLE_USER');
+
+CREATE TABLE oauth_audit_event (
+  id bigint NOT NULL AUTO_INCREMENT,
+  event_type varchar(32) NOT NULL,
+  principal varchar(256) DEFAULT NULL,
+  client_id varchar(256) DEFAULT NULL,
+  remote_address varchar(64) DEFAULT NULL,
+  detail varchar(1024) DEFAULT NULL,
+  created_at timestamp(3) NOT NULL,
+  PRIMARY KEY (id)
+);
+CREATE INDEX idx_oauth_audit_event_created_at ON oauth_audit_event (created_at);
+
+CREATE TABLE oauth_revoked_token (
+  id bigint NOT NULL AUTO_INCREMENT,
+  jti varchar(64) NOT NULL,
+  expires_at timestamp NOT NULL,
+  revoked_at timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (id)
+);
+CREATE UNIQUE INDEX uk_oauth_revoked_token_jti ON oauth_revoked_token (jti);
+CREATE INDEX idx_oauth_revoked_token_expires_at ON oauth_revoked_token (expires_at);
@@ -0,0 +1,161 @@
+package com.cloud.kevin.microservice.bootstrap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.PropertySource;
+import org.springframework.util.PatternMatchUtils;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 最近一次从Config Server取得的配置，展开为key-value后保存在本地文件中
+ * Config Server在服务端解密{cipher}的值后以明文返回，客户端无法区分，所以按key的模式排除敏感配置，
+ * 被排除的key只记录名字，不写入文件；仍以{cipher}开头(由客户端解密)的值原样保存。
+ * 目录和文件只有当前用户可以读写。
+ *
+ * @author Kevin
+ */
+@Data
+public class ConfigSnapshot {
+
+    private static final String VERSION_PROPERTY = "config.client.version";
+
+    private static final String CIPHER_PREFIX = "{cipher}";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final boolean POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+    /**
+     * Config Server返回的版本(例如git的commit id)，可能为空
+     */
+    private String version;
+
+    /**
+     * 取得配置的时间(毫秒)
+     */
+    private long fetchedAt;
+
+    private Map<String, Object> properties = new LinkedHashMap<>();
+
+    /**
+     * 因为敏感而没有保存到文件中的key，非空时快照不完整
+     */
+    private Set<String> excluded = new TreeSet<>();
+
+    /**
+     * 展开Config Server返回的属性源，同名的key以优先级高的为准
+     *
+     * @param propertySource
+     * @return 不是可枚举的属性源时返回null
+     */
+    public static ConfigSnapshot of(PropertySource<?> propertySource) {
+        return propertySource instanceof EnumerablePropertySource
+                ? flatten((EnumerablePropertySource<?>) propertySource) : null;
+    }
+
+    private static ConfigSnapshot flatten(EnumerablePropertySource<?> propertySource) {
+        ConfigSnapshot snapshot = new ConfigSnapshot();
+        for (String name : propertySource.getPropertyNames()) {
+            Object value = propertySource.getProperty(name);
+            if (null != value) {
+                snapshot.properties.put(name, value);
+            }
+        }
+        Object version = snapshot.properties.get(VERSION_PROPERTY);
+        snapshot.version = null == version ? null : version.toString();
+        snapshot.fetchedAt = System.currentTimeMillis();
+
+        return snapshot;
+    }
+
+    /**
+     * @param file
+     * @return 文件不存在时返回null
+     * @throws IOException
+     */
+    public static ConfigSnapshot load(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        return OBJECT_MAPPER.readValue(file.toFile(), ConfigSnapshot.class);
+    }
+
+    /**
+     * 去掉匹配excludes的key，以{cipher}开头的值仍然是密文，不排除
+     *
+     * @param excludes key的模式，支持*通配符，不区分大小写
+     * @return 可以写入文件的快照
+     */
+    public ConfigSnapshot withoutSensitive(Collection<String> excludes) {
+        ConfigSnapshot snapshot = new ConfigSnapshot();
+        snapshot.version = version;
+        snapshot.fetchedAt = fetchedAt;
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            if (isSensitive(entry.getKey(), entry.getValue(), excludes)) {
+                snapshot.excluded.add(entry.getKey());
+            } else {
+                snapshot.properties.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return snapshot;
+    }
+
+    private static boolean isSensitive(String key, Object value, Collection<String> excludes) {
+        if (value instanceof String && ((String) value).startsWith(CIPHER_PREFIX)) {
+            return false;
+        }
+        String name = key.toLowerCase(Locale.ROOT);
+        for (String pattern : excludes) {
+            if (PatternMatchUtils.simpleMatch(pattern.toLowerCase(Locale.ROOT), name)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * 先写临时文件再替换，进程在写入过程中退出也不会留下不完整的快照
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void save(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        if (!Files.isDirectory(directory)) {
+            Files.createDirectories(directory, permissions("rwx------"));
+        }
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp", permissions("rw-------"));
+        try {
+            OBJECT_MAPPER.writeValue(temp.toFile(), this);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static FileAttribute<?>[] permissions(String permissions) {
+        if (!POSIX) {
+            return new FileAttribute<?>[0];
+        }
+
+        return new FileAttribute<?>[]{
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString(permissions))};
+    }
+}
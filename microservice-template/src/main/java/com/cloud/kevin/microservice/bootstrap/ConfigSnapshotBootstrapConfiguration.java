@@ -0,0 +1,61 @@
+package com.cloud.kevin.microservice.bootstrap;
+
+import lombok.Data;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.config.client.ConfigClientProperties;
+import org.springframework.cloud.config.client.ConfigServicePropertySourceLocator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 在bootstrap上下文中用{@link SnapshotConfigServicePropertySourceLocator}代替默认的Config Server配置加载
+ * 通过META-INF/spring.factories加载，先于ConfigServiceBootstrapConfiguration处理，
+ * 默认的ConfigServicePropertySourceLocator因@ConditionalOnMissingBean不再创建。
+ * 不加@Configuration，避免被主应用的组件扫描重复加载到主上下文中。
+ * 快照会把配置写到本地磁盘，默认关闭，需要设置microservice.config-snapshot.enabled=true开启。
+ *
+ * @author Kevin
+ */
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnClass(ConfigServicePropertySourceLocator.class)
+@ConditionalOnProperty(prefix = "microservice.config-snapshot", name = "enabled")
+@EnableConfigurationProperties(ConfigSnapshotBootstrapConfiguration.ConfigSnapshotSetting.class)
+public class ConfigSnapshotBootstrapConfiguration {
+
+    @Bean
+    @ConditionalOnProperty(value = "spring.cloud.config.enabled", matchIfMissing = true)
+    public ConfigServicePropertySourceLocator configServicePropertySource(ConfigClientProperties properties,
+                                                                          ConfigSnapshotSetting setting) {
+        return new SnapshotConfigServicePropertySourceLocator(properties, Paths.get(setting.getDirectory()),
+                setting.getReconcileInterval(), setting.getExcludes());
+    }
+
+    @ConfigurationProperties(prefix = "microservice.config-snapshot")
+    @Data
+    public static class ConfigSnapshotSetting {
+        private boolean enabled = false;
+        /**
+         * 快照文件所在的目录
+         */
+        private String directory = "config-snapshot";
+        /**
+         * 启动后与Config Server同步的间隔(秒)，小于等于0时只在启动完成时同步一次
+         */
+        private long reconcileInterval = 300;
+        /**
+         * 不写入快照文件的key，支持*通配符，不区分大小写
+         * Config Server解密后的{cipher}值以明文返回，这些key应当列在这里
+         */
+        private List<String> excludes = new ArrayList<>(Arrays.asList(
+                "*password*", "*secret*", "*credentials*", "*private-key*", "*key-store*", "*token*"));
+    }
+}
@@ -0,0 +1,238 @@
+package com.cloud.kevin.microservice.bootstrap;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cloud.config.client.ConfigClientProperties;
+import org.springframework.cloud.config.client.ConfigServicePropertySourceLocator;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.PropertySource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 优先使用本地快照的Config Server配置加载
+ * 本地有完整的快照时直接以快照作为远程配置启动，不等待Config Server；应用启动完成后在后台向Config Server获取最新配置，
+ * 与快照比较，只把变化的key写入当前的属性源并发布{@link EnvironmentChangeEvent}，
+ * 由Spring Cloud重新绑定受影响的@ConfigurationProperties和日志级别，不重建整个上下文。之后按reconcileInterval定时重复。
+ * 本地没有快照(第一次启动)时与原来一样同步获取，获取成功后保存快照。
+ * 快照中有被排除的敏感key时也先同步获取，Config Server不可用时才以缺少这些key的快照启动。
+ *
+ * @author Kevin
+ */
+@Slf4j
+public class SnapshotConfigServicePropertySourceLocator extends ConfigServicePropertySourceLocator
+        implements ApplicationListener<ApplicationReadyEvent>, ApplicationContextAware, DisposableBean {
+
+    private static final String PROPERTY_SOURCE_NAME = "configSnapshot";
+
+    private final ConfigClientProperties configClientProperties;
+
+    private final Path directory;
+
+    private final long reconcileInterval;
+
+    private final List<String> excludes;
+
+    /**
+     * 交给Environment的属性源内容，后台同步时原地更新
+     */
+    private final Map<String, Object> properties = new ConcurrentHashMap<>();
+
+    private volatile String version;
+
+    /**
+     * 启动时已经同步获取过，第一次后台同步推迟一个间隔
+     */
+    private volatile boolean fetchedAtStartup;
+
+    private ApplicationContext bootstrapContext;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param configClientProperties
+     * @param directory              快照文件所在的目录
+     * @param reconcileInterval      启动后与Config Server定时同步的间隔(秒)，小于等于0时只在启动完成时同步一次
+     * @param excludes               不写入快照文件的key的模式
+     */
+    public SnapshotConfigServicePropertySourceLocator(ConfigClientProperties configClientProperties, Path directory,
+                                                      long reconcileInterval, List<String> excludes) {
+        super(configClientProperties);
+        this.configClientProperties = configClientProperties;
+        this.directory = directory;
+        this.reconcileInterval = reconcileInterval;
+        this.excludes = excludes;
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) {
+        this.bootstrapContext = applicationContext;
+    }
+
+    @Override
+    public PropertySource<?> locate(Environment environment) {
+        Path file = snapshotFile(environment);
+        ConfigSnapshot local = null;
+        try {
+            local = ConfigSnapshot.load(file);
+            if (null != local && local.getExcluded().isEmpty()) {
+                log.info("Starting with config snapshot {} (version {})", file, local.getVersion());
+                apply(local);
+                return new MapPropertySource(PROPERTY_SOURCE_NAME, properties);
+            }
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable config snapshot {}: {}", file, e.getMessage());
+        }
+
+        // 没有快照或快照不完整，同步获取
+        PropertySource<?> remote = null;
+        try {
+            remote = fetch(environment);
+        } catch (RuntimeException e) {
+            // fail-fast时抛出异常，有快照可用时不中断启动
+            if (null == local) {
+                throw e;
+            }
+        }
+
+        ConfigSnapshot snapshot = ConfigSnapshot.of(remote);
+        if (null == snapshot) {
+            if (null == local) {
+                return remote;
+            }
+            log.warn("Config server unavailable, starting with config snapshot {} without {}", file,
+                    local.getExcluded());
+            apply(local);
+            return new MapPropertySource(PROPERTY_SOURCE_NAME, properties);
+        }
+        apply(snapshot);
+        save(snapshot, file);
+        fetchedAtStartup = true;
+
+        return new MapPropertySource(PROPERTY_SOURCE_NAME, properties);
+    }
+
+    /**
+     * 向Config Server获取配置
+     *
+     * @param environment
+     * @return 不可用且没有配置fail-fast时返回null
+     */
+    PropertySource<?> fetch(Environment environment) {
+        return super.locate(environment);
+    }
+
+    /**
+     * 主应用启动完成后开始后台同步，bootstrap上下文自身的启动事件忽略
+     */
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        ConfigurableApplicationContext context = event.getApplicationContext();
+        if (context == bootstrapContext || null != scheduler) {
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "config-snapshot-reconcile");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Runnable task = () -> {
+            try {
+                reconcile(context);
+            } catch (RuntimeException e) {
+                log.warn("Failed to reconcile config with server: ", e);
+            }
+        };
+        if (reconcileInterval > 0) {
+            scheduler.scheduleWithFixedDelay(task, fetchedAtStartup ? reconcileInterval : 0, reconcileInterval,
+                    TimeUnit.SECONDS);
+        } else if (!fetchedAtStartup) {
+            scheduler.execute(task);
+        }
+    }
+
+    void reconcile(ConfigurableApplicationContext context) {
+        ConfigSnapshot snapshot = ConfigSnapshot.of(fetch(context.getEnvironment()));
+        if (null == snapshot) {
+            // Config Server不可用，继续使用当前配置
+            return;
+        }
+
+        String previousVersion = version;
+        Set<String> changed = apply(snapshot);
+        if (!changed.isEmpty() || !Objects.equals(previousVersion, snapshot.getVersion())) {
+            save(snapshot, snapshotFile(context.getEnvironment()));
+        }
+
+        if (!changed.isEmpty()) {
+            log.info("Config changed on server (version {}): {}", snapshot.getVersion(), changed);
+            context.publishEvent(new EnvironmentChangeEvent(context, changed));
+        }
+    }
+
+    /**
+     * @param snapshot
+     * @return 新增、修改和删除的key
+     */
+    private synchronized Set<String> apply(ConfigSnapshot snapshot) {
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, Object> entry : snapshot.getProperties().entrySet()) {
+            if (!entry.getValue().equals(properties.put(entry.getKey(), entry.getValue()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String key : properties.keySet()) {
+            if (!snapshot.getProperties().containsKey(key)) {
+                properties.remove(key);
+                changed.add(key);
+            }
+        }
+        version = snapshot.getVersion();
+
+        return changed;
+    }
+
+    private void save(ConfigSnapshot snapshot, Path file) {
+        try {
+            snapshot.withoutSensitive(excludes).save(file);
+        } catch (IOException e) {
+            log.warn("Failed to save config snapshot {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * 每个应用名、profile和label组合一个快照文件
+     */
+    private Path snapshotFile(Environment environment) {
+        ConfigClientProperties properties = configClientProperties.override(environment);
+        // label可能是带/的git分支名
+        String label = null == properties.getLabel() ? "default" : properties.getLabel().replace('/', '_');
+
+        return directory.resolve(properties.getName() + "-" + properties.getProfile() + "-" + label + ".json");
+    }
+
+    @Override
+    public void destroy() {
+        if (null != scheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package com.cloud.kevin.microservice.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cache.Cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * MyBatis二级缓存：本地Caffeine(L1) + Redis(L2)
+ * 在Mapper上声明{@code @CacheNamespace(implementation = TwoLevelCache.class)}或在XML中声明
+ * {@code <cache type="com.cloud.kevin.microservice.cache.TwoLevelCache"/>}即可使用，id为Mapper的namespace。
+ * <p>
+ * 查询时依次查L1、L2，L2命中时回填L1，都未命中时由MyBatis查询数据库并调用{@link #putObject(Object, Object)}写入两级缓存。
+ * 同一个key未命中时只有第一个线程去查L2和数据库，其他线程等它写入缓存后直接读取(与MyBatis的BlockingCache相同的约定，
+ * 由TransactionalCache在提交时put、回滚时remove释放)，等待超过lockTimeout后不再等待、直接查询数据库。
+ * <p>
+ * namespace内有写操作时MyBatis调用{@link #clear()}：递增Redis中该namespace的版本号，
+ * L2的key带有版本号，旧版本的数据不再被读到并随TTL过期，不需要扫描删除；
+ * 同时通过Redis pub/sub通知其他实例清空L1。每隔l1Ttl还会重新读取一次版本号，
+ * 通知丢失时L1中的旧数据和按旧版本号读写的L2数据最多保留约l1Ttl。
+ * 未命中时记录当时的版本号，从数据库查到的结果按这个版本号写入L2；如果在查询期间namespace被清空过，
+ * 结果可能是清空之前的数据，不再写入任何一级缓存，避免旧数据以新版本号写入Redis后在所有实例上保留l2Ttl。
+ *
+ * @author Kevin
+ */
+@Slf4j
+public class TwoLevelCache implements Cache {
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    });
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String id;
+
+    private final ConcurrentHashMap<Object, KeyLock> locks = new ConcurrentHashMap<>();
+
+    private volatile TwoLevelCacheManager manager;
+
+    private volatile com.github.benmanes.caffeine.cache.Cache<Object, Object> local;
+
+    /**
+     * 当前的L2版本号
+     */
+    private volatile long generation;
+
+    /**
+     * 上次从Redis读取版本号的时间(System.nanoTime)
+     */
+    private final AtomicLong generationCheckedAt = new AtomicLong();
+
+    /**
+     * 本实例L1被清空的次数，用于发现未命中到写入之间发生的清空
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private Counter l1Hits;
+
+    private Counter l1Misses;
+
+    private Counter l2Hits;
+
+    private Counter l2Misses;
+
+    /**
+     * 由MyBatis创建，使用{@link TwoLevelCacheManager}中的配置和Redis连接
+     *
+     * @param id Mapper的namespace
+     */
+    public TwoLevelCache(String id) {
+        this.id = id;
+    }
+
+    TwoLevelCache(String id, TwoLevelCacheManager manager) {
+        this.id = id;
+        this.manager = manager;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * 查询没有结果时TransactionalCache在提交时以null调用，只释放锁，与BlockingCache一致
+     * 没有持有{@link #getObject(Object)}的锁(等待超时)或者未命中之后namespace被清空过时不写入缓存
+     */
+    @Override
+    public void putObject(Object key, Object value) {
+        TwoLevelCacheManager current = manager();
+        try {
+            KeyLock lock = ownedLock(key);
+            if (null == value || null == lock) {
+                return;
+            }
+            checkGeneration(current);
+            if (lock.invalidations != invalidations.get()) {
+                log.debug("Cache {} was cleared while loading, skipping put", id);
+                return;
+            }
+
+            local.put(key, value);
+            current.write(l2Key(key, lock.generation), value);
+            // 写入L1的同时可能发生了清空
+            if (lock.invalidations != invalidations.get()) {
+                local.invalidate(key);
+            }
+        } finally {
+            releaseLock(key);
+        }
+    }
+
+    @Override
+    public Object getObject(Object key) {
+        TwoLevelCacheManager current = manager();
+        checkGeneration(current);
+        Object value = local.getIfPresent(key);
+        if (null != value) {
+            l1Hits.increment();
+            return value;
+        }
+        l1Misses.increment();
+
+        KeyLock lock = acquireLock(key, current.getLockTimeout());
+        if (null == lock) {
+            // 等待超时，当作未命中，不持有锁
+            return null;
+        }
+
+        // 等待期间其他线程可能已经写入
+        value = local.getIfPresent(key);
+        if (null == value) {
+            value = current.read(l2Key(key, lock.generation));
+            if (null == value) {
+                l2Misses.increment();
+                // 继续持有锁，由putObject或removeObject释放
+                return null;
+            }
+            l2Hits.increment();
+            if (lock.invalidations == invalidations.get()) {
+                local.put(key, value);
+            }
+        }
+
+        releaseLock(key);
+        return value;
+    }
+
+    /**
+     * MyBatis只在事务回滚或未写入缓存时调用，用于释放{@link #getObject(Object)}持有的锁
+     */
+    @Override
+    public Object removeObject(Object key) {
+        releaseLock(key);
+        return null;
+    }
+
+    @Override
+    public void clear() {
+        TwoLevelCacheManager current = manager();
+        long next = current.invalidate(id);
+        if (next < 0) {
+            // 版本号没有变化，也没有通知其他实例；下次访问时重新读取版本号
+            log.error("Failed to invalidate cache {} in Redis, other instances may serve stale entries "
+                    + "for up to {}s", id, current.getL1Ttl());
+            generationCheckedAt.set(System.nanoTime() - TimeUnit.SECONDS.toNanos(current.getL1Ttl()));
+        }
+        onInvalidated(next);
+    }
+
+    @Override
+    public int getSize() {
+        manager();
+        return (int) local.estimatedSize();
+    }
+
+    @Override
+    public ReadWriteLock getReadWriteLock() {
+        return null;
+    }
+
+    /**
+     * 其他实例清空了该namespace
+     *
+     * @param next 新的版本号
+     */
+    void onInvalidated(long next) {
+        if (next > generation) {
+            generation = next;
+        }
+        invalidations.incrementAndGet();
+        local.invalidateAll();
+    }
+
+    /**
+     * 距上次读取超过l1Ttl时重新读取版本号，版本号变大说明错过了失效通知，清空L1
+     * 同一时刻只有一个线程读取，其他线程继续使用当前版本号
+     */
+    private void checkGeneration(TwoLevelCacheManager current) {
+        long checkedAt = generationCheckedAt.get();
+        long now = System.nanoTime();
+        if (now - checkedAt < TimeUnit.SECONDS.toNanos(current.getL1Ttl())
+                || !generationCheckedAt.compareAndSet(checkedAt, now)) {
+            return;
+        }
+
+        long latest = current.generation(id);
+        if (latest > generation) {
+            log.info("Missed invalidation of cache {}, generation {} -> {}", id, generation, latest);
+            onInvalidated(latest);
+        }
+    }
+
+    /**
+     * MyBatis在Spring容器初始化TwoLevelCacheManager之前就可能创建缓存，第一次使用时再完成初始化
+     */
+    private TwoLevelCacheManager manager() {
+        TwoLevelCacheManager current = manager;
+        if (null != current && null != local) {
+            return current;
+        }
+
+        synchronized (this) {
+            if (null == manager) {
+                manager = TwoLevelCacheManager.getInstance();
+            }
+            if (null == local) {
+                init(manager);
+            }
+            return manager;
+        }
+    }
+
+    private void init(TwoLevelCacheManager current) {
+        generation = current.generation(id);
+        generationCheckedAt.set(System.nanoTime());
+
+        MeterRegistry registry = current.getMeterRegistry();
+        l1Hits = counter(registry, "l1", "hit");
+        l1Misses = counter(registry, "l1", "miss");
+        l2Hits = counter(registry, "l2", "hit");
+        l2Misses = counter(registry, "l2", "miss");
+        Gauge.builder("mybatis.cache.hit.ratio", this, TwoLevelCache::hitRatio)
+                .tag("cache", id)
+                .description("Share of lookups answered by either level")
+                .register(registry);
+
+        local = Caffeine.newBuilder()
+                .maximumSize(current.getL1MaximumSize())
+                .expireAfterWrite(current.getL1Ttl(), TimeUnit.SECONDS)
+                .build();
+        current.register(this);
+    }
+
+    private Counter counter(MeterRegistry registry, String level, String result) {
+        return Counter.builder("mybatis.cache.gets")
+                .tag("cache", id)
+                .tag("level", level)
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private double hitRatio() {
+        double total = l1Hits.count() + l1Misses.count();
+        return total == 0 ? 0 : (l1Hits.count() + l2Hits.count()) / total;
+    }
+
+    /**
+     * L2的key：前缀 + namespace + 版本号 + CacheKey的摘要，CacheKey的字符串形式包含语句id、分页和全部参数
+     */
+    private String l2Key(Object key, long generation) {
+        MessageDigest digest = SHA256.get();
+        digest.reset();
+        byte[] hash = digest.digest(key.toString().getBytes(StandardCharsets.UTF_8));
+
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX[(hash[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[hash[i] & 0xf];
+        }
+
+        return manager.getKeyPrefix() + id + ":" + generation + ":" + new String(hex);
+    }
+
+    /**
+     * @return 等待超时时返回null
+     */
+    private KeyLock acquireLock(Object key, long timeout) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (true) {
+            // 每次重新记录，等待期间可能发生了清空
+            KeyLock lock = new KeyLock(generation, invalidations.get());
+            KeyLock existing = locks.putIfAbsent(key, lock);
+            if (null == existing) {
+                return lock;
+            }
+            if (existing.owner == Thread.currentThread()) {
+                return existing;
+            }
+
+            long remaining = deadline - System.nanoTime();
+            try {
+                if (remaining <= 0 || !existing.latch.await(remaining, TimeUnit.NANOSECONDS)) {
+                    log.warn("Timed out waiting for cache key in {}, querying without lock", id);
+                    return null;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    private KeyLock ownedLock(Object key) {
+        KeyLock lock = locks.get(key);
+        return null != lock && lock.owner == Thread.currentThread() ? lock : null;
+    }
+
+    private void releaseLock(Object key) {
+        KeyLock lock = ownedLock(key);
+        if (null != lock && locks.remove(key, lock)) {
+            lock.latch.countDown();
+        }
+    }
+
+    private static final class KeyLock {
+
+        private final Thread owner = Thread.currentThread();
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        /**
+         * 获取锁时的L2版本号，查询结果按这个版本号写入
+         */
+        private final long generation;
+
+        /**
+         * 获取锁时L1被清空的次数
+         */
+        private final long invalidations;
+
+        private KeyLock(long generation, long invalidations) {
+            this.generation = generation;
+            this.invalidations = invalidations;
+        }
+    }
+}
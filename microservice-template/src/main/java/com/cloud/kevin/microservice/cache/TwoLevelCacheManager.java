@@ -0,0 +1,202 @@
+package com.cloud.kevin.microservice.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TwoLevelCache}共用的Redis连接、配置和跨实例的失效通知
+ * MyBatis通过反射创建缓存，无法注入依赖，缓存第一次使用时通过{@link #getInstance()}取得Spring容器中的实例。
+ * 失效通知的格式为"实例id namespace 版本号"，忽略自己发出的通知。
+ * Redis不可用时缓存按未命中处理，查询直接访问数据库。
+ *
+ * @author Kevin
+ */
+@Slf4j
+public class TwoLevelCacheManager implements InitializingBean, DisposableBean, MessageListener {
+
+    private static volatile TwoLevelCacheManager instance;
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisTemplate<String, Object> valueRedisTemplate;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    @Getter
+    private final MeterRegistry meterRegistry;
+
+    @Getter
+    private final long l1MaximumSize;
+
+    @Getter
+    private final long l1Ttl;
+
+    private final long l2Ttl;
+
+    @Getter
+    private final long lockTimeout;
+
+    @Getter
+    private final String keyPrefix;
+
+    private final String channel;
+
+    private final Map<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    private final Counter l2Errors;
+
+    /**
+     * @param connectionFactory
+     * @param meterRegistry
+     * @param l1MaximumSize     每个namespace的本地缓存最大条目数
+     * @param l1Ttl             本地缓存的过期时间(秒)，也是失效通知丢失时旧数据的最长保留时间
+     * @param l2Ttl             Redis中缓存的过期时间(秒)
+     * @param lockTimeout       未命中时等待其他线程加载同一个key的最长时间(毫秒)
+     * @param keyPrefix         Redis key的前缀
+     * @param channel           失效通知的channel
+     */
+    public TwoLevelCacheManager(RedisConnectionFactory connectionFactory, MeterRegistry meterRegistry,
+                                long l1MaximumSize, long l1Ttl, long l2Ttl, long lockTimeout, String keyPrefix,
+                                String channel) {
+        this.meterRegistry = meterRegistry;
+        this.l1MaximumSize = l1MaximumSize;
+        this.l1Ttl = l1Ttl;
+        this.l2Ttl = l2Ttl;
+        this.lockTimeout = lockTimeout;
+        this.keyPrefix = keyPrefix;
+        this.channel = channel;
+
+        this.stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        this.valueRedisTemplate = new RedisTemplate<>();
+        this.valueRedisTemplate.setConnectionFactory(connectionFactory);
+        this.valueRedisTemplate.setKeySerializer(new StringRedisSerializer());
+        this.valueRedisTemplate.setValueSerializer(new JdkSerializationRedisSerializer());
+        this.valueRedisTemplate.afterPropertiesSet();
+
+        this.listenerContainer = new RedisMessageListenerContainer();
+        this.listenerContainer.setConnectionFactory(connectionFactory);
+        this.listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+
+        this.l2Errors = Counter.builder("mybatis.cache.l2.errors")
+                .description("Redis reads and writes that failed and fell back to the database")
+                .register(meterRegistry);
+    }
+
+    static TwoLevelCacheManager getInstance() {
+        TwoLevelCacheManager current = instance;
+        if (null == current) {
+            throw new IllegalStateException("TwoLevelCacheManager is not initialized");
+        }
+
+        return current;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+        instance = this;
+    }
+
+    void register(TwoLevelCache cache) {
+        caches.put(cache.getId(), cache);
+    }
+
+    /**
+     * @param namespace
+     * @return namespace当前的版本号
+     */
+    long generation(String namespace) {
+        try {
+            String value = stringRedisTemplate.opsForValue().get(generationKey(namespace));
+            return null == value ? 0 : Long.parseLong(value);
+        } catch (RuntimeException e) {
+            l2Errors.increment();
+            log.warn("Failed to read cache generation of {}: {}", namespace, e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * 递增namespace的版本号并通知其他实例
+     *
+     * @param namespace
+     * @return 新的版本号，Redis不可用时返回-1
+     */
+    long invalidate(String namespace) {
+        try {
+            Long next = stringRedisTemplate.opsForValue().increment(generationKey(namespace), 1);
+            stringRedisTemplate.convertAndSend(channel, instanceId + " " + namespace + " " + next);
+            return next;
+        } catch (RuntimeException e) {
+            l2Errors.increment();
+            log.warn("Failed to invalidate cache {}: {}", namespace, e.getMessage());
+            return -1;
+        }
+    }
+
+    Object read(String key) {
+        try {
+            return valueRedisTemplate.opsForValue().get(key);
+        } catch (RuntimeException e) {
+            l2Errors.increment();
+            log.warn("Failed to read cache entry {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    void write(String key, Object value) {
+        try {
+            valueRedisTemplate.opsForValue().set(key, value, l2Ttl, TimeUnit.SECONDS);
+        } catch (RuntimeException e) {
+            l2Errors.increment();
+            log.warn("Failed to write cache entry {}: {}", key, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(" ");
+        if (parts.length != 3 || instanceId.equals(parts[0])) {
+            return;
+        }
+
+        TwoLevelCache cache = caches.get(parts[1]);
+        if (null != cache) {
+            cache.onInvalidated(Long.parseLong(parts[2]));
+        }
+    }
+
+    private String generationKey(String namespace) {
+        return keyPrefix + namespace + ":generation";
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (instance == this) {
+            instance = null;
+        }
+        listenerContainer.destroy();
+    }
+}
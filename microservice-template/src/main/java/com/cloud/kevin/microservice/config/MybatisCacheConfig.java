@@ -0,0 +1,60 @@
+package com.cloud.kevin.microservice.config;
+
+import com.cloud.kevin.microservice.cache.TwoLevelCacheManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+/**
+ * MyBatis二级缓存(本地 + Redis)配置，Mapper通过@CacheNamespace(implementation = TwoLevelCache.class)启用
+ *
+ * @author Kevin
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "microservice.mybatis-cache", name = "enabled", matchIfMissing = true)
+@EnableConfigurationProperties(MybatisCacheConfig.MybatisCacheSetting.class)
+public class MybatisCacheConfig {
+
+    @Bean
+    public TwoLevelCacheManager twoLevelCacheManager(RedisConnectionFactory redisConnectionFactory,
+                                                     MeterRegistry meterRegistry, MybatisCacheSetting setting) {
+        return new TwoLevelCacheManager(redisConnectionFactory, meterRegistry, setting.getL1MaximumSize(),
+                setting.getL1Ttl(), setting.getL2Ttl(), setting.getLockTimeout(), setting.getKeyPrefix(),
+                setting.getChannel());
+    }
+
+    @ConfigurationProperties(prefix = "microservice.mybatis-cache")
+    @Data
+    public static class MybatisCacheSetting {
+        private boolean enabled = true;
+        /**
+         * 每个namespace的本地缓存最大条目数
+         */
+        private long l1MaximumSize = 10000;
+        /**
+         * 本地缓存的过期时间(秒)，失效通知丢失时旧数据最多保留这么久
+         */
+        private long l1Ttl = 60;
+        /**
+         * Redis中缓存的过期时间(秒)
+         */
+        private long l2Ttl = 600;
+        /**
+         * 未命中时等待其他线程加载同一个key的最长时间(毫秒)
+         */
+        private long lockTimeout = 3000;
+        /**
+         * Redis key的前缀
+         */
+        private String keyPrefix = "mybatis:cache:";
+        /**
+         * 跨实例失效通知的channel
+         */
+        private String channel = "mybatis:cache:invalidate";
+    }
+}
@@ -0,0 +1,198 @@
+package com.cloud.kevin.microservice.bootstrap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.cloud.config.client.ConfigClientProperties;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 用可控的Config Server响应验证快照的启动回退、敏感key排除和后台同步
+ */
+public class SnapshotConfigServicePropertySourceLocatorTests {
+
+	private static final List<String> EXCLUDES = Arrays.asList("*password*", "*secret*");
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final StandardEnvironment environment = new StandardEnvironment();
+
+	private final AtomicInteger fetches = new AtomicInteger();
+
+	private final List<EnvironmentChangeEvent> events = new ArrayList<>();
+
+	/**
+	 * 为null时模拟Config Server不可用
+	 */
+	private volatile Map<String, Object> server;
+
+	private Path directory;
+
+	private StaticApplicationContext context;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = temporaryFolder.newFolder("config-snapshot").toPath();
+		context = new StaticApplicationContext();
+		context.addApplicationListener((ApplicationListener<EnvironmentChangeEvent>) events::add);
+		context.refresh();
+	}
+
+	@After
+	public void tearDown() {
+		context.close();
+	}
+
+	@Test
+	public void firstStartFetchesAndSavesSnapshotWithoutSensitiveKeys() throws IOException {
+		server = serverConfig("spring.datasource.password", "pwd", "app.clientSecret", "s3cret",
+				"app.encrypted-password", "{cipher}abcdef", "app.name", "demo");
+
+		PropertySource<?> source = locator().locate(environment);
+
+		assertEquals(1, fetches.get());
+		assertEquals("pwd", source.getProperty("spring.datasource.password"));
+
+		Path file = snapshotFile();
+		ConfigSnapshot saved = ConfigSnapshot.load(file);
+		assertEquals(new HashSet<>(Arrays.asList("spring.datasource.password", "app.clientSecret")),
+				saved.getExcluded());
+		assertEquals("demo", saved.getProperties().get("app.name"));
+		// 仍是密文的值原样保存
+		assertEquals("{cipher}abcdef", saved.getProperties().get("app.encrypted-password"));
+		assertFalse(new String(Files.readAllBytes(file), "UTF-8").contains("s3cret"));
+		if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+			assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+		}
+	}
+
+	@Test
+	public void completeSnapshotStartsWithoutServer() {
+		server = serverConfig("app.name", "demo");
+		locator().locate(environment);
+		server = null;
+
+		PropertySource<?> source = locator().locate(environment);
+
+		assertEquals(1, fetches.get());
+		assertEquals("demo", source.getProperty("app.name"));
+	}
+
+	@Test
+	public void incompleteSnapshotPrefersServer() {
+		server = serverConfig("app.name", "demo", "spring.datasource.password", "pwd");
+		locator().locate(environment);
+
+		server = serverConfig("app.name", "demo2", "spring.datasource.password", "pwd2");
+		PropertySource<?> source = locator().locate(environment);
+
+		assertEquals(2, fetches.get());
+		assertEquals("demo2", source.getProperty("app.name"));
+		assertEquals("pwd2", source.getProperty("spring.datasource.password"));
+	}
+
+	@Test
+	public void incompleteSnapshotIsFallbackWhenServerIsDown() {
+		server = serverConfig("app.name", "demo", "spring.datasource.password", "pwd");
+		locator().locate(environment);
+		server = null;
+
+		PropertySource<?> source = locator().locate(environment);
+
+		assertEquals(2, fetches.get());
+		assertEquals("demo", source.getProperty("app.name"));
+		assertNull(source.getProperty("spring.datasource.password"));
+	}
+
+	@Test
+	public void reconcilePublishesOnlyChangedKeys() throws IOException {
+		server = serverConfig("app.name", "demo", "app.timeout", "10", "app.removed", "x");
+		SnapshotConfigServicePropertySourceLocator locator = locator();
+		PropertySource<?> source = locator.locate(environment);
+
+		locator.reconcile(context);
+		assertTrue(events.isEmpty());
+
+		server = serverConfig("app.name", "demo", "app.timeout", "20", "app.added", "y");
+		locator.reconcile(context);
+
+		assertEquals(1, events.size());
+		assertEquals(new HashSet<>(Arrays.asList("app.timeout", "app.removed", "app.added")),
+				events.get(0).getKeys());
+		assertEquals("20", source.getProperty("app.timeout"));
+		assertEquals("y", source.getProperty("app.added"));
+		assertNull(source.getProperty("app.removed"));
+		assertEquals("20", ConfigSnapshot.load(snapshotFile()).getProperties().get("app.timeout"));
+	}
+
+	@Test
+	public void reconcileKeepsCurrentConfigWhenServerIsDown() {
+		server = serverConfig("app.name", "demo");
+		SnapshotConfigServicePropertySourceLocator locator = locator();
+		PropertySource<?> source = locator.locate(environment);
+		server = null;
+
+		locator.reconcile(context);
+
+		assertTrue(events.isEmpty());
+		assertEquals("demo", source.getProperty("app.name"));
+	}
+
+	private SnapshotConfigServicePropertySourceLocator locator() {
+		return new SnapshotConfigServicePropertySourceLocator(new ConfigClientProperties(environment), directory, 0,
+				EXCLUDES) {
+			@Override
+			PropertySource<?> fetch(Environment environment) {
+				fetches.incrementAndGet();
+				Map<String, Object> config = server;
+				return null == config ? null : new MapPropertySource("configService", new HashMap<>(config));
+			}
+		};
+	}
+
+	private Path snapshotFile() throws IOException {
+		try (Stream<Path> paths = Files.list(directory)) {
+			List<Path> files = paths.filter(path -> path.toString().endsWith(".json")).collect(Collectors.toList());
+			assertEquals(1, files.size());
+			return files.get(0);
+		}
+	}
+
+	private static Map<String, Object> serverConfig(String... keyValues) {
+		Map<String, Object> config = new HashMap<>();
+		for (int i = 0; i < keyValues.length; i += 2) {
+			config.put(keyValues[i], keyValues[i + 1]);
+		}
+		return Collections.unmodifiableMap(config);
+	}
+}
@@ -0,0 +1,258 @@
+package com.cloud.kevin.microservice.cache;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.ibatis.cache.CacheKey;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 在嵌入式Redis上模拟两个服务实例共用同一个namespace的缓存
+ */
+public class TwoLevelCacheTests {
+
+	private static final String NAMESPACE = "com.cloud.kevin.microservice.mapper.OrderMapper";
+
+	private static final String CHANNEL = "mybatis:cache:invalidate";
+
+	private RedisServer redisServer;
+
+	private RedisClient redisClient;
+
+	private LettuceConnectionFactory connectionFactory;
+
+	private TwoLevelCacheManager managerA;
+
+	private TwoLevelCacheManager managerB;
+
+	private SimpleMeterRegistry registryA;
+
+	private TwoLevelCache cacheA;
+
+	private TwoLevelCache cacheB;
+
+	@Before
+	public void setUp() throws Exception {
+		int port = freePort();
+		redisServer = new RedisServer(port);
+		redisServer.start();
+
+		connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+		connectionFactory.afterPropertiesSet();
+
+		registryA = new SimpleMeterRegistry();
+		managerA = manager(registryA);
+		managerB = manager(new SimpleMeterRegistry());
+		cacheA = new TwoLevelCache(NAMESPACE, managerA);
+		cacheB = new TwoLevelCache(NAMESPACE, managerB);
+		// 缓存在第一次使用时向manager注册，之后才能收到失效通知
+		cacheA.getSize();
+		cacheB.getSize();
+
+		redisClient = RedisClient.create("redis://127.0.0.1:" + port);
+		awaitSubscribers(2);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		managerA.destroy();
+		managerB.destroy();
+		connectionFactory.destroy();
+		redisClient.shutdown();
+		redisServer.stop();
+	}
+
+	@Test
+	public void readsThroughRedisFromAnotherInstance() {
+		CacheKey key = key(1);
+		List<String> value = Collections.singletonList("order-1");
+
+		assertNull(cacheA.getObject(key));
+		cacheA.putObject(key, value);
+
+		assertEquals(value, cacheB.getObject(key));
+		assertEquals(1, cacheB.getSize());
+		assertEquals(value, cacheA.getObject(key));
+
+		assertEquals(1, registryA.get("mybatis.cache.gets").tags("level", "l1", "result", "hit").counter().count(), 0);
+		assertEquals(1, registryA.get("mybatis.cache.gets").tags("level", "l2", "result", "miss").counter().count(), 0);
+		assertEquals(0.5, registryA.get("mybatis.cache.hit.ratio").gauge().value(), 0.001);
+	}
+
+	@Test
+	public void clearInvalidatesOtherInstances() throws Exception {
+		CacheKey key = key(2);
+		cacheA.getObject(key);
+		cacheA.putObject(key, Collections.singletonList("before"));
+		assertEquals(Collections.singletonList("before"), cacheB.getObject(key));
+
+		cacheA.clear();
+
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+		while (cacheB.getSize() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, cacheB.getSize());
+		// 旧版本的Redis数据不再被读到
+		assertNull(cacheB.getObject(key));
+		cacheB.removeObject(key);
+	}
+
+	@Test
+	public void loadStartedBeforeClearIsNotCached() throws Exception {
+		CacheKey other = key(7);
+		cacheA.getObject(other);
+		cacheA.putObject(other, Collections.singletonList("other"));
+
+		// A未命中并开始查询数据库
+		CacheKey key = key(8);
+		assertNull(cacheA.getObject(key));
+
+		// 查询期间B更新了数据并清空namespace
+		cacheB.clear();
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+		while (cacheA.getSize() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, cacheA.getSize());
+
+		// A提交时写入的是清空之前查到的数据，不能以新版本号进入Redis
+		cacheA.putObject(key, Collections.singletonList("stale"));
+		assertEquals(0, cacheA.getSize());
+		assertNull(cacheB.getObject(key));
+		cacheB.removeObject(key);
+		assertNull(cacheA.getObject(key));
+		cacheA.removeObject(key);
+	}
+
+	@Test
+	public void onlyOneLoaderPerKey() throws Exception {
+		CacheKey key = key(3);
+		List<String> value = Arrays.asList("order-3", "order-4");
+		int threads = 8;
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		List<Future<Object>> results = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			results.add(executor.submit(() -> {
+				start.await();
+				Object cached = cacheA.getObject(key);
+				if (null == cached) {
+					// 模拟MyBatis查询数据库后写入缓存
+					loads.incrementAndGet();
+					Thread.sleep(100);
+					cacheA.putObject(key, value);
+					return value;
+				}
+				return cached;
+			}));
+		}
+		start.countDown();
+
+		for (Future<Object> result : results) {
+			assertEquals(value, result.get(5, TimeUnit.SECONDS));
+		}
+		executor.shutdown();
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void nullPutOnlyReleasesTheLock() throws Exception {
+		CacheKey key = key(5);
+		assertNull(cacheA.getObject(key));
+		// TransactionalCache提交时对没有结果的查询以null调用
+		cacheA.putObject(key, null);
+		assertEquals(0, cacheA.getSize());
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			long start = System.nanoTime();
+			assertNull(executor.submit(() -> {
+				Object cached = cacheA.getObject(key);
+				cacheA.removeObject(key);
+				return cached;
+			}).get(5, TimeUnit.SECONDS));
+			// 锁已释放，不需要等待lockTimeout
+			assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void missedInvalidationIsDetectedAfterL1Ttl() throws Exception {
+		TwoLevelCacheManager shortTtl = manager(new SimpleMeterRegistry(), 1);
+		try {
+			TwoLevelCache cache = new TwoLevelCache(NAMESPACE, shortTtl);
+			CacheKey key = key(6);
+			assertNull(cache.getObject(key));
+			cache.putObject(key, Collections.singletonList("before"));
+
+			// 其他实例递增了版本号，但失效通知丢失
+			new StringRedisTemplate(connectionFactory).opsForValue()
+					.increment("mybatis:cache:" + NAMESPACE + ":generation", 1);
+
+			Thread.sleep(1200);
+			assertNull(cache.getObject(key));
+			cache.removeObject(key);
+		} finally {
+			shortTtl.destroy();
+		}
+	}
+
+	private TwoLevelCacheManager manager(SimpleMeterRegistry registry) {
+		return manager(registry, 60);
+	}
+
+	private TwoLevelCacheManager manager(SimpleMeterRegistry registry, long l1Ttl) {
+		TwoLevelCacheManager manager = new TwoLevelCacheManager(connectionFactory, registry, 1000, l1Ttl, 600, 3000,
+				"mybatis:cache:", CHANNEL);
+		manager.afterPropertiesSet();
+		return manager;
+	}
+
+	private void awaitSubscribers(long expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+		try (StatefulRedisConnection<String, String> connection = redisClient.connect()) {
+			while (connection.sync().pubsubNumsub(CHANNEL).getOrDefault(CHANNEL, 0L) < expected) {
+				assertTrue("Listeners did not subscribe", System.currentTimeMillis() < deadline);
+				Thread.sleep(20);
+			}
+		}
+	}
+
+	private static CacheKey key(int id) {
+		return new CacheKey(new Object[]{NAMESPACE + ".selectById", id});
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+}
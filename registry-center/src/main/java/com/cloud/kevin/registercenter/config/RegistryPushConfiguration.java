@@ -0,0 +1,76 @@
+package com.cloud.kevin.registercenter.config;
+
+import com.cloud.kevin.registercenter.push.RegistryChangeBroadcaster;
+import com.cloud.kevin.registercenter.push.RegistryChangeLog;
+import com.cloud.kevin.registercenter.push.StatusUpdateEventPostProcessor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.eureka.registry.PeerAwareInstanceRegistry;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 注册表变更的推送
+ * 客户端先从/registry/snapshot获取全量注册表，再以快照的id订阅/registry/stream，
+ * 实例注册、注销、被剔除或状态被覆盖时立即收到增量，不需要每30秒拉取一次。
+ *
+ * @author Kevin
+ */
+@Configuration
+@EnableConfigurationProperties(RegistryPushConfiguration.PushSetting.class)
+public class RegistryPushConfiguration {
+
+    /**
+     * 注册表没有状态覆盖的事件，由该处理器补充，需要在注册表创建前注册
+     */
+    @Bean
+    public static StatusUpdateEventPostProcessor statusUpdateEventPostProcessor() {
+        return new StatusUpdateEventPostProcessor();
+    }
+
+    @Bean
+    public RegistryChangeLog registryChangeLog(PushSetting pushSetting) {
+        return new RegistryChangeLog(pushSetting.getBufferSize());
+    }
+
+    @Bean
+    public RegistryChangeBroadcaster registryChangeBroadcaster(RegistryChangeLog registryChangeLog,
+                                                               PeerAwareInstanceRegistry registry,
+                                                               ObjectMapper objectMapper,
+                                                               PushSetting pushSetting) {
+        return new RegistryChangeBroadcaster(registryChangeLog, registry, objectMapper, pushSetting.getBatchSize(),
+                pushSetting.getDispatchThreads(), pushSetting.getHeartbeat(), pushSetting.getTimeout(),
+                pushSetting.getSnapshotInterval());
+    }
+
+    @ConfigurationProperties(prefix = "registry-center.push")
+    @Data
+    public static class PushSetting {
+        /**
+         * 保留的变更数，订阅方落后更多时需要重新获取快照
+         */
+        private int bufferSize = 10000;
+        /**
+         * 一个事件最多包含的变更数
+         */
+        private int batchSize = 500;
+        /**
+         * 推送线程数
+         */
+        private int dispatchThreads = 4;
+        /**
+         * 心跳间隔(秒)
+         */
+        private long heartbeat = 15;
+        /**
+         * 一次订阅的最长时间(秒)
+         */
+        private long timeout = 300;
+        /**
+         * 重新生成快照的最小间隔(毫秒)
+         */
+        private long snapshotInterval = 1000;
+    }
+}
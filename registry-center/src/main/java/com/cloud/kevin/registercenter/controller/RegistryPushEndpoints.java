@@ -0,0 +1,68 @@
+package com.cloud.kevin.registercenter.controller;
+
+import com.cloud.kevin.registercenter.push.RegistryChangeBroadcaster;
+import com.cloud.kevin.registercenter.push.RegistrySnapshot;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * 注册表的全量快照和变更订阅
+ *
+ * @author Kevin
+ */
+@RestController
+@RequestMapping("/registry")
+public class RegistryPushEndpoints {
+
+    @Autowired
+    private RegistryChangeBroadcaster registryChangeBroadcaster;
+
+    /**
+     * 订阅注册表的变更，断线重连时浏览器等SSE客户端会自动带上Last-Event-ID
+     *
+     * @param lastEventId
+     * @param since       不能设置请求头的客户端使用，与Last-Event-ID相同
+     * @return
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                             @RequestParam(value = "since", required = false) String since) {
+        return registryChangeBroadcaster.subscribe(null != lastEventId ? lastEventId : since);
+    }
+
+    /**
+     * 全量注册表，内容没有变化时返回304
+     *
+     * @param ifNoneMatch
+     * @param acceptEncoding
+     * @return
+     */
+    @GetMapping("/snapshot")
+    public ResponseEntity<byte[]> snapshot(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        RegistrySnapshot snapshot = registryChangeBroadcaster.getSnapshot();
+        if (snapshot.getEtag().equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(snapshot.getEtag()).build();
+        }
+
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .eTag(snapshot.getEtag())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (null != acceptEncoding && acceptEncoding.contains("gzip")) {
+            return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(snapshot.getGzipped());
+        }
+
+        return builder.body(snapshot.getPlain());
+    }
+}
@@ -0,0 +1,36 @@
+package com.cloud.kevin.registercenter.push;
+
+import com.netflix.appinfo.InstanceInfo;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * 通过Eureka的status接口覆盖或删除实例状态后发布
+ * Eureka只为注册、注销和续约发布事件，状态覆盖由{@link StatusUpdateEventPostProcessor}补充。
+ *
+ * @author Kevin
+ */
+public class InstanceStatusUpdatedEvent extends ApplicationEvent {
+
+    private final InstanceInfo instanceInfo;
+
+    private final boolean replication;
+
+    /**
+     * @param source       注册表
+     * @param instanceInfo 更新后的实例
+     * @param replication  是否为其他节点复制过来的更新
+     */
+    public InstanceStatusUpdatedEvent(Object source, InstanceInfo instanceInfo, boolean replication) {
+        super(source);
+        this.instanceInfo = instanceInfo;
+        this.replication = replication;
+    }
+
+    public InstanceInfo getInstanceInfo() {
+        return instanceInfo;
+    }
+
+    public boolean isReplication() {
+        return replication;
+    }
+}
@@ -0,0 +1,104 @@
+package com.cloud.kevin.registercenter.push;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.netflix.appinfo.InstanceInfo;
+import lombok.Data;
+
+import java.util.Objects;
+
+/**
+ * 注册表的一次变更，只包含调用方选择实例所需的字段
+ * 注销的变更只有app和instanceId。
+ *
+ * @author Kevin
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RegistryChange {
+
+    public enum Type {
+        /**
+         * 注册或状态变化
+         */
+        REGISTERED,
+        /**
+         * 注销或被剔除
+         */
+        CANCELED
+    }
+
+    /**
+     * 变更的序号，由{@link RegistryChangeLog}分配
+     */
+    private long version;
+
+    private Type type;
+
+    private String app;
+
+    private String instanceId;
+
+    private String hostName;
+
+    private String ipAddr;
+
+    private Integer port;
+
+    /**
+     * 未启用https时为空
+     */
+    private Integer securePort;
+
+    private String status;
+
+    public static RegistryChange registered(InstanceInfo info) {
+        RegistryChange change = new RegistryChange();
+        change.setType(Type.REGISTERED);
+        change.setApp(info.getAppName().toUpperCase());
+        change.setInstanceId(info.getInstanceId());
+        change.setHostName(info.getHostName());
+        change.setIpAddr(info.getIPAddr());
+        if (info.isPortEnabled(InstanceInfo.PortType.UNSECURE)) {
+            change.setPort(info.getPort());
+        }
+        if (info.isPortEnabled(InstanceInfo.PortType.SECURE)) {
+            change.setSecurePort(info.getSecurePort());
+        }
+        change.setStatus(info.getStatus().name());
+
+        return change;
+    }
+
+    public static RegistryChange canceled(String app, String instanceId) {
+        RegistryChange change = new RegistryChange();
+        change.setType(Type.CANCELED);
+        change.setApp(app.toUpperCase());
+        change.setInstanceId(instanceId);
+
+        return change;
+    }
+
+    /**
+     * @return 在注册表中的唯一标识
+     */
+    public String key() {
+        return app + '/' + instanceId;
+    }
+
+    /**
+     * 除序号外的字段是否都相同，客户端重复注册时不产生新的变更
+     *
+     * @param other
+     * @return
+     */
+    public boolean sameState(RegistryChange other) {
+        return type == other.type
+                && Objects.equals(app, other.app)
+                && Objects.equals(instanceId, other.instanceId)
+                && Objects.equals(hostName, other.hostName)
+                && Objects.equals(ipAddr, other.ipAddr)
+                && Objects.equals(port, other.port)
+                && Objects.equals(securePort, other.securePort)
+                && Objects.equals(status, other.status);
+    }
+}
@@ -0,0 +1,324 @@
+package com.cloud.kevin.registercenter.push;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.shared.Application;
+import com.netflix.eureka.registry.PeerAwareInstanceRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.netflix.eureka.server.event.EurekaInstanceCanceledEvent;
+import org.springframework.cloud.netflix.eureka.server.event.EurekaInstanceRegisteredEvent;
+import org.springframework.cloud.netflix.eureka.server.event.EurekaRegistryAvailableEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 将注册表的变更推送给SSE订阅方
+ * 注册、注销、剔除实例和覆盖实例状态时发布的事件写入{@link RegistryChangeLog}后立即通知所有订阅方。
+ * 每个订阅方只保存自己在变更日志中的位置，由分发线程池按批读取变更发送，同一订阅方同时只有一个线程在发送，
+ * 慢的订阅方不会阻塞Eureka的请求线程和其他订阅方；落后超出变更日志保留范围时发送reset事件并断开，由客户端重新加载快照。
+ * 事件：
+ * ready   订阅成功，id为当前位置
+ * changes 一批变更(JSON数组)，id为最后一个变更的位置
+ * reset   位置已失效，需要重新获取快照
+ *
+ * @author Kevin
+ */
+@Slf4j
+public class RegistryChangeBroadcaster implements DisposableBean {
+
+    private final RegistryChangeLog changeLog;
+
+    private final PeerAwareInstanceRegistry registry;
+
+    private final ObjectMapper objectMapper;
+
+    private final int batchSize;
+
+    private final long timeout;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService dispatcher;
+
+    private final ScheduledExecutorService scheduler;
+
+    private volatile RegistrySnapshot snapshot;
+
+    /**
+     * @param changeLog        变更日志
+     * @param registry         Eureka的注册表，启动时用于补齐已有的实例
+     * @param objectMapper
+     * @param batchSize        一个changes事件最多包含的变更数
+     * @param dispatchThreads  发送线程数
+     * @param heartbeat        没有变更时发送心跳的间隔(秒)，用于保持连接和发现断开的订阅方
+     * @param timeout          订阅的最长时间(秒)，到期后客户端带着Last-Event-ID重新订阅
+     * @param snapshotInterval 重新生成快照的最小间隔(毫秒)
+     */
+    public RegistryChangeBroadcaster(RegistryChangeLog changeLog, PeerAwareInstanceRegistry registry,
+                                     ObjectMapper objectMapper, int batchSize, int dispatchThreads, long heartbeat,
+                                     long timeout, long snapshotInterval) {
+        this.changeLog = changeLog;
+        this.registry = registry;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.timeout = TimeUnit.SECONDS.toMillis(timeout);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.dispatcher = Executors.newFixedThreadPool(dispatchThreads, runnable -> {
+            Thread thread = new Thread(runnable, "registry-push-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "registry-push-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        scheduler.scheduleWithFixedDelay(this::heartbeat, heartbeat, heartbeat, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refreshSnapshot();
+            } catch (RuntimeException e) {
+                log.error("Failed to build registry snapshot: ", e);
+            }
+        }, snapshotInterval, snapshotInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @EventListener
+    public void onRegistered(EurekaInstanceRegisteredEvent event) {
+        publish(RegistryChange.registered(event.getInstanceInfo()));
+    }
+
+    /**
+     * 主动注销和剔除过期实例都会发布该事件
+     */
+    @EventListener
+    public void onCanceled(EurekaInstanceCanceledEvent event) {
+        publish(RegistryChange.canceled(event.getAppName(), event.getServerId()));
+    }
+
+    /**
+     * 通过status接口覆盖或删除实例状态，包括其他节点复制过来的
+     */
+    @EventListener
+    public void onStatusUpdated(InstanceStatusUpdatedEvent event) {
+        publish(RegistryChange.registered(event.getInstanceInfo()));
+    }
+
+    /**
+     * 补齐事件监听生效前已在注册表中的实例，已记录的实例不会产生重复的变更
+     */
+    @EventListener
+    public void onRegistryAvailable(EurekaRegistryAvailableEvent event) {
+        for (Application application : registry.getApplications().getRegisteredApplications()) {
+            for (InstanceInfo instance : application.getInstances()) {
+                publish(RegistryChange.registered(instance));
+            }
+        }
+        refreshSnapshot();
+    }
+
+    /**
+     * 订阅变更
+     *
+     * @param lastEventId 已收到的最后一个事件或快照的id，为空时从当前位置开始
+     * @return
+     */
+    public SseEmitter subscribe(String lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeout);
+        Subscriber subscriber = new Subscriber(emitter);
+
+        if (null == lastEventId || lastEventId.isEmpty()) {
+            subscriber.cursor = changeLog.version();
+        } else {
+            long cursor = parseEventId(lastEventId);
+            if (cursor < 0) {
+                sendReset(subscriber);
+                return emitter;
+            }
+            subscriber.cursor = cursor;
+        }
+
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        schedule(subscriber);
+
+        return emitter;
+    }
+
+    /**
+     * @return 最近生成的快照，最多落后snapshotInterval
+     */
+    public RegistrySnapshot getSnapshot() {
+        RegistrySnapshot current = snapshot;
+        return null != current ? current : refreshSnapshot();
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    static String eventId(long epoch, long version) {
+        return epoch + "-" + version;
+    }
+
+    /**
+     * @param eventId
+     * @return 位置，不是本进程生成的id时返回-1
+     */
+    private long parseEventId(String eventId) {
+        int separator = eventId.indexOf('-');
+        try {
+            if (separator > 0 && Long.parseLong(eventId.substring(0, separator)) == changeLog.getEpoch()) {
+                return Long.parseLong(eventId.substring(separator + 1));
+            }
+        } catch (NumberFormatException e) {
+            log.debug("Invalid registry event id: {}", eventId);
+        }
+
+        return -1;
+    }
+
+    private void publish(RegistryChange change) {
+        if (changeLog.append(change)) {
+            for (Subscriber subscriber : subscribers) {
+                schedule(subscriber);
+            }
+        }
+    }
+
+    private synchronized RegistrySnapshot refreshSnapshot() {
+        RegistrySnapshot current = snapshot;
+        if (null == current || current.getVersion() != changeLog.version()) {
+            current = RegistrySnapshot.build(changeLog.getEpoch(), changeLog.state(), objectMapper);
+            snapshot = current;
+        }
+
+        return current;
+    }
+
+    private void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.heartbeatDue = true;
+            schedule(subscriber);
+        }
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.scheduled.compareAndSet(false, true)) {
+            try {
+                dispatcher.execute(() -> drain(subscriber));
+            } catch (RuntimeException e) {
+                // 已关闭
+                subscriber.scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * 将订阅方位置之后的变更全部发出，只在分发线程中执行
+     */
+    private void drain(Subscriber subscriber) {
+        boolean open = true;
+        try {
+            if (!subscriber.ready) {
+                subscriber.emitter.send(SseEmitter.event()
+                        .id(eventId(changeLog.getEpoch(), subscriber.cursor))
+                        .name("ready")
+                        .data(""));
+                subscriber.ready = true;
+            }
+
+            boolean sent = false;
+            List<RegistryChange> changes;
+            while (null != (changes = changeLog.since(subscriber.cursor, batchSize)) && !changes.isEmpty()) {
+                long last = changes.get(changes.size() - 1).getVersion();
+                subscriber.emitter.send(SseEmitter.event()
+                        .id(eventId(changeLog.getEpoch(), last))
+                        .name("changes")
+                        .data(changes, MediaType.APPLICATION_JSON));
+                subscriber.cursor = last;
+                sent = true;
+            }
+
+            if (null == changes) {
+                open = false;
+                sendReset(subscriber);
+            } else if (subscriber.heartbeatDue && !sent) {
+                subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+            }
+            subscriber.heartbeatDue = false;
+        } catch (IOException | IllegalStateException e) {
+            // 客户端已断开
+            open = false;
+            remove(subscriber);
+        } finally {
+            subscriber.scheduled.set(false);
+        }
+
+        // 清除标记前到达的变更不会再触发调度，在这里补上
+        if (open && subscriber.cursor < changeLog.version()) {
+            schedule(subscriber);
+        }
+    }
+
+    private void sendReset(Subscriber subscriber) {
+        try {
+            subscriber.emitter.send(SseEmitter.event().name("reset").data(""));
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Failed to send reset: {}", e.getMessage());
+        }
+        subscribers.remove(subscriber);
+        subscriber.emitter.complete();
+    }
+
+    private void remove(Subscriber subscriber) {
+        if (subscribers.remove(subscriber)) {
+            subscriber.emitter.complete();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        dispatcher.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            remove(subscriber);
+        }
+    }
+
+    private static final class Subscriber {
+
+        private final SseEmitter emitter;
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private volatile boolean heartbeatDue;
+
+        /**
+         * 以下字段只在持有scheduled标记的分发线程中访问
+         */
+        private long cursor;
+
+        private boolean ready;
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+    }
+}
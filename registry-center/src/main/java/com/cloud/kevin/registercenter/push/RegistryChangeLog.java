@@ -0,0 +1,115 @@
+package com.cloud.kevin.registercenter.push;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 注册表的变更日志
+ * 每次有效的变更分配一个递增的序号，最近capacity个变更保存在环形缓冲区中供订阅方按序号续传；
+ * 同时维护每个实例最近一次注册的变更，作为全量快照的数据来源，快照和续传的序号一致。
+ * 序号只在本进程内有效，epoch用于识别注册中心重启后的旧序号。
+ *
+ * @author Kevin
+ */
+public class RegistryChangeLog {
+
+    private final long epoch = System.currentTimeMillis();
+
+    private final RegistryChange[] buffer;
+
+    private final Map<String, RegistryChange> instances = new HashMap<>();
+
+    private long version;
+
+    /**
+     * @param capacity 保留的变更数，订阅方落后更多时需要重新获取快照
+     */
+    public RegistryChangeLog(int capacity) {
+        this.buffer = new RegistryChange[capacity];
+    }
+
+    /**
+     * 记录一次变更，注销不存在的实例、重复注册同样的信息时不产生变更
+     *
+     * @param change
+     * @return 是否产生了新的变更
+     */
+    public synchronized boolean append(RegistryChange change) {
+        String key = change.key();
+        if (RegistryChange.Type.CANCELED == change.getType()) {
+            if (null == instances.remove(key)) {
+                return false;
+            }
+        } else {
+            RegistryChange previous = instances.get(key);
+            if (null != previous && previous.sameState(change)) {
+                return false;
+            }
+            instances.put(key, change);
+        }
+
+        change.setVersion(++version);
+        buffer[(int) (version % buffer.length)] = change;
+
+        return true;
+    }
+
+    /**
+     * 获取某个序号之后的变更
+     *
+     * @param from 已收到的最后一个序号
+     * @param max  最多返回的变更数
+     * @return 序号不在保留范围内时返回null
+     */
+    public synchronized List<RegistryChange> since(long from, int max) {
+        if (from > version || from < version - buffer.length) {
+            return null;
+        }
+
+        long to = Math.min(version, from + max);
+        List<RegistryChange> changes = new ArrayList<>((int) (to - from));
+        for (long i = from + 1; i <= to; i++) {
+            changes.add(buffer[(int) (i % buffer.length)]);
+        }
+
+        return changes;
+    }
+
+    /**
+     * @return 当前序号和所有已注册的实例
+     */
+    public synchronized State state() {
+        return new State(version, new ArrayList<>(instances.values()));
+    }
+
+    public synchronized long version() {
+        return version;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public static final class State {
+
+        private final long version;
+
+        private final List<RegistryChange> instances;
+
+        private State(long version, List<RegistryChange> instances) {
+            this.version = version;
+            this.instances = Collections.unmodifiableList(instances);
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public List<RegistryChange> getInstances() {
+            return instances;
+        }
+    }
+}
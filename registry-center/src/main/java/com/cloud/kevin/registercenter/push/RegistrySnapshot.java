@@ -0,0 +1,87 @@
+package com.cloud.kevin.registercenter.push;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 预先生成的gzip压缩的全量注册表
+ * 内容为{"id": "<epoch>-<序号>", "instances": [...]}，客户端加载后以id作为Last-Event-ID订阅变更即可无缝衔接。
+ *
+ * @author Kevin
+ */
+public final class RegistrySnapshot {
+
+    private final String id;
+
+    private final long version;
+
+    private final byte[] gzipped;
+
+    private RegistrySnapshot(String id, long version, byte[] gzipped) {
+        this.id = id;
+        this.version = version;
+        this.gzipped = gzipped;
+    }
+
+    public static RegistrySnapshot build(long epoch, RegistryChangeLog.State state, ObjectMapper objectMapper) {
+        String id = RegistryChangeBroadcaster.eventId(epoch, state.getVersion());
+
+        Map<String, Object> content = new LinkedHashMap<>();
+        content.put("id", id);
+        content.put("instances", state.getInstances());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(bytes)) {
+            objectMapper.writeValue(gzip, content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return new RegistrySnapshot(id, state.getVersion(), bytes.toByteArray());
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getEtag() {
+        return '"' + id + '"';
+    }
+
+    public byte[] getGzipped() {
+        return gzipped;
+    }
+
+    /**
+     * 不支持gzip的客户端使用，按需解压
+     *
+     * @return
+     */
+    public byte[] getPlain() {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(gzipped.length * 8);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.cloud.kevin.registercenter.push;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.eureka.registry.PeerAwareInstanceRegistry;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+
+/**
+ * 为Eureka的注册表加上状态覆盖的事件
+ * PUT/DELETE /eureka/apps/{app}/{id}/status和其他节点复制过来的状态更新最终都调用注册表的
+ * statusUpdate和deleteStatusOverride，但Eureka不为它们发布事件，变更日志会一直保留旧的状态。
+ * 注册表的bean由Eureka的自动配置创建且不能替换，这里用代理拦截这两个方法，成功后发布{@link InstanceStatusUpdatedEvent}。
+ *
+ * @author Kevin
+ */
+public class StatusUpdateEventPostProcessor implements BeanPostProcessor, ApplicationEventPublisherAware {
+
+    private ApplicationEventPublisher publisher;
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof PeerAwareInstanceRegistry)) {
+            return bean;
+        }
+
+        PeerAwareInstanceRegistry registry = (PeerAwareInstanceRegistry) bean;
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+            Object result = invocation.proceed();
+
+            String method = invocation.getMethod().getName();
+            if (Boolean.TRUE.equals(result)
+                    && ("statusUpdate".equals(method) || "deleteStatusOverride".equals(method))) {
+                // (appName, id, newStatus, lastDirtyTimestamp, isReplication)
+                Object[] arguments = invocation.getArguments();
+                InstanceInfo info = registry.getInstanceByAppAndId((String) arguments[0], (String) arguments[1],
+                        false);
+                if (null != info) {
+                    publisher.publishEvent(new InstanceStatusUpdatedEvent(bean, info, (Boolean) arguments[4]));
+                }
+            }
+
+            return result;
+        });
+
+        return proxyFactory.getProxy();
+    }
+}
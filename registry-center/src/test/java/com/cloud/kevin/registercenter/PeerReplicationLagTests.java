@@ -0,0 +1,261 @@
+package com.cloud.kevin.registercenter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 在本机启动三个节点的集群，在第一个节点上注册和注销实例，通过其余节点的变更推送测量复制延迟
+ * Eureka的Jersey资源和配置是进程内的静态单例，同一个JVM中无法运行多个节点，因此每个节点在单独的JVM中启动。
+ * 启动三个JVM需要几十秒，默认跳过，需要测量时执行：
+ * mvn test -Dtest=PeerReplicationLagTests -Dreplication-lag-test=true
+ */
+@Slf4j
+public class PeerReplicationLagTests {
+
+	private static final String ENABLED_PROPERTY = "replication-lag-test";
+
+	private static final int NODES = 3;
+
+	private static final int INSTANCES = 500;
+
+	private static final String APP = "REPLICATION-LAG-TEST";
+
+	private static final long STARTUP_TIMEOUT = TimeUnit.MINUTES.toMillis(3);
+
+	private static final long REPLICATION_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final List<Process> processes = new ArrayList<>();
+
+	private final List<PeerStream> streams = new ArrayList<>();
+
+	private final String[] urls = new String[NODES];
+
+	@Before
+	public void startCluster() throws Exception {
+		Assume.assumeTrue("Set -D" + ENABLED_PROPERTY + "=true to measure replication lag",
+				Boolean.getBoolean(ENABLED_PROPERTY));
+
+		for (int i = 0; i < NODES; i++) {
+			urls[i] = "http://127.0.0.1:" + freePort() + "/eureka/";
+		}
+		String peers = String.join(",", urls);
+
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		new File("target").mkdirs();
+		for (int i = 0; i < NODES; i++) {
+			ProcessBuilder builder = new ProcessBuilder(java, "-Xmx256m",
+					"-cp", System.getProperty("java.class.path"),
+					RegisterCenterApplication.class.getName(),
+					"--spring.profiles.active=cluster",
+					"--server.port=" + new URL(urls[i]).getPort(),
+					"--eureka.instance.hostname=127.0.0.1",
+					"--registry-center.peers=" + peers);
+			builder.redirectErrorStream(true);
+			builder.redirectOutput(new File("target/registry-node-" + i + ".log"));
+			processes.add(builder.start());
+		}
+
+		long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT;
+		for (String url : urls) {
+			while (request("GET", base(url) + "registry/snapshot", null) != 200) {
+				assertTrue("Registry node did not start: " + url, System.currentTimeMillis() < deadline);
+				Thread.sleep(500);
+			}
+		}
+	}
+
+	@After
+	public void stopCluster() throws Exception {
+		for (PeerStream stream : streams) {
+			stream.close();
+		}
+		for (Process process : processes) {
+			process.destroy();
+		}
+		for (Process process : processes) {
+			process.waitFor(30, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	public void replicationLag() throws Exception {
+		for (int i = 1; i < NODES; i++) {
+			PeerStream stream = new PeerStream(base(urls[i]) + "registry/stream");
+			stream.start();
+			streams.add(stream);
+			assertTrue(stream.ready.await(30, TimeUnit.SECONDS));
+		}
+
+		Map<String, Long> registeredAt = new ConcurrentHashMap<>();
+		for (int i = 0; i < INSTANCES; i++) {
+			String id = "instance-" + i;
+			registeredAt.put(id, System.nanoTime());
+			assertEquals(204, request("POST", base(urls[0]) + "eureka/apps/" + APP, instance(id, 10000 + i)));
+		}
+		for (PeerStream stream : streams) {
+			report("register", stream, registeredAt, stream.registered);
+		}
+
+		Map<String, Long> canceledAt = new ConcurrentHashMap<>();
+		for (int i = 0; i < INSTANCES; i++) {
+			String id = "instance-" + i;
+			canceledAt.put(id, System.nanoTime());
+			assertEquals(200, request("DELETE", base(urls[0]) + "eureka/apps/" + APP + "/" + id, null));
+		}
+		for (PeerStream stream : streams) {
+			report("cancel", stream, canceledAt, stream.canceled);
+		}
+	}
+
+	private void report(String action, PeerStream stream, Map<String, Long> sentAt, Map<String, Long> receivedAt)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + REPLICATION_TIMEOUT;
+		while (receivedAt.size() < sentAt.size() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertEquals(action + " not replicated to " + stream.url, sentAt.size(), receivedAt.size());
+
+		List<Long> lags = new ArrayList<>();
+		for (Map.Entry<String, Long> entry : sentAt.entrySet()) {
+			lags.add(TimeUnit.NANOSECONDS.toMillis(receivedAt.get(entry.getKey()) - entry.getValue()));
+		}
+		Collections.sort(lags);
+		log.info("{} -> {}: {} instances, lag p50 {}ms, p99 {}ms, max {}ms", action, stream.url, lags.size(),
+				lags.get(lags.size() / 2), lags.get(lags.size() * 99 / 100), lags.get(lags.size() - 1));
+	}
+
+	private String instance(String id, int port) {
+		return "{\"instance\": {"
+				+ "\"instanceId\": \"" + id + "\", "
+				+ "\"app\": \"" + APP + "\", "
+				+ "\"hostName\": \"127.0.0.1\", "
+				+ "\"ipAddr\": \"127.0.0.1\", "
+				+ "\"vipAddress\": \"" + APP.toLowerCase() + "\", "
+				+ "\"status\": \"UP\", "
+				+ "\"port\": {\"$\": " + port + ", \"@enabled\": \"true\"}, "
+				+ "\"securePort\": {\"$\": 443, \"@enabled\": \"false\"}, "
+				+ "\"dataCenterInfo\": {\"@class\": \"com.netflix.appinfo.InstanceInfo$DefaultDataCenterInfo\", "
+				+ "\"name\": \"MyOwn\"}}}";
+	}
+
+	private static String base(String eurekaUrl) {
+		return eurekaUrl.substring(0, eurekaUrl.length() - "eureka/".length());
+	}
+
+	private static int request(String method, String url, String json) {
+		try {
+			HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+			connection.setRequestMethod(method);
+			connection.setConnectTimeout(1000);
+			connection.setReadTimeout(5000);
+			if (null != json) {
+				connection.setDoOutput(true);
+				connection.setRequestProperty("Content-Type", "application/json");
+				try (OutputStream out = connection.getOutputStream()) {
+					out.write(json.getBytes(StandardCharsets.UTF_8));
+				}
+			}
+			int status = connection.getResponseCode();
+			connection.disconnect();
+			return status;
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	/**
+	 * 读取一个节点的变更推送，记录每个测试实例的注册和注销到达的时间
+	 */
+	private final class PeerStream extends Thread {
+
+		private final String url;
+
+		private final CountDownLatch ready = new CountDownLatch(1);
+
+		private final Map<String, Long> registered = new ConcurrentHashMap<>();
+
+		private final Map<String, Long> canceled = new ConcurrentHashMap<>();
+
+		private volatile HttpURLConnection connection;
+
+		private PeerStream(String url) {
+			this.url = url;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try {
+				connection = (HttpURLConnection) new URL(url).openConnection();
+				connection.setRequestProperty("Accept", "text/event-stream");
+				try (BufferedReader reader = new BufferedReader(
+						new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+					String event = null;
+					String line;
+					while (null != (line = reader.readLine())) {
+						if (line.startsWith("event:")) {
+							event = line.substring("event:".length()).trim();
+							if ("ready".equals(event)) {
+								ready.countDown();
+							}
+						} else if (line.startsWith("data:") && "changes".equals(event)) {
+							onChanges(line.substring("data:".length()));
+						}
+					}
+				}
+			} catch (IOException e) {
+				// 测试结束时关闭
+			}
+		}
+
+		private void onChanges(String data) throws IOException {
+			long now = System.nanoTime();
+			for (JsonNode change : objectMapper.readTree(data)) {
+				if (APP.equals(change.path("app").asText())) {
+					String id = change.path("instanceId").asText();
+					("CANCELED".equals(change.path("type").asText()) ? canceled : registered).putIfAbsent(id, now);
+				}
+			}
+		}
+
+		private void close() {
+			if (null != connection) {
+				connection.disconnect();
+			}
+			interrupt();
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package com.cloud.kevin.registercenter.push;
+
+import com.cloud.kevin.registercenter.controller.RegistryPushEndpoints;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.eureka.registry.PeerAwareInstanceRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cloud.netflix.eureka.server.event.EurekaInstanceCanceledEvent;
+import org.springframework.cloud.netflix.eureka.server.event.EurekaInstanceRegisteredEvent;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+/**
+ * 通过/registry接口验证增量续传、落后的订阅方回退到快照，以及状态覆盖写入变更日志
+ */
+public class RegistryChangeBroadcasterTests {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private RegistryChangeLog changeLog;
+
+	private RegistryChangeBroadcaster broadcaster;
+
+	private MockMvc mockMvc;
+
+	@Before
+	public void setUp() {
+		setUp(16);
+	}
+
+	private void setUp(int bufferSize) {
+		if (null != broadcaster) {
+			broadcaster.destroy();
+		}
+		changeLog = new RegistryChangeLog(bufferSize);
+		broadcaster = new RegistryChangeBroadcaster(changeLog, null, objectMapper, 500, 2, 60, 60, 1000);
+
+		RegistryPushEndpoints endpoints = new RegistryPushEndpoints();
+		ReflectionTestUtils.setField(endpoints, "registryChangeBroadcaster", broadcaster);
+		mockMvc = MockMvcBuilders.standaloneSetup(endpoints).build();
+	}
+
+	@After
+	public void tearDown() {
+		broadcaster.destroy();
+	}
+
+	@Test
+	public void deltasAreReplayedFromSnapshotId() throws Exception {
+		register(instance("demo-1", InstanceInfo.InstanceStatus.UP));
+		String snapshotId = snapshot().get("id").asText();
+
+		register(instance("demo-2", InstanceInfo.InstanceStatus.UP));
+		broadcaster.onCanceled(new EurekaInstanceCanceledEvent(this, "demo", "demo-1", false));
+
+		MvcResult stream = stream(snapshotId);
+		String content = await(stream, "id:" + eventId(3));
+
+		assertTrue(content.contains("event:ready"));
+		assertTrue(content.contains("event:changes"));
+		assertTrue(content.contains("\"demo-2\""));
+		assertTrue(content.contains("\"CANCELED\""));
+		assertFalse(content.contains("event:reset"));
+	}
+
+	@Test
+	public void unknownEventIdIsReset() throws Exception {
+		register(instance("demo-1", InstanceInfo.InstanceStatus.UP));
+
+		// 注册中心重启前的id
+		String content = stream("1-1").getResponse().getContentAsString();
+
+		assertTrue(content.contains("event:reset"));
+		assertEquals(0, broadcaster.getSubscriberCount());
+	}
+
+	@Test
+	public void laggingSubscriberFallsBackToSnapshot() throws Exception {
+		setUp(4);
+		for (int i = 1; i <= 6; i++) {
+			register(instance("demo-" + i, InstanceInfo.InstanceStatus.UP));
+		}
+
+		// 位置0的变更已经移出缓冲区
+		await(stream(eventId(0)), "event:reset");
+
+		JsonNode snapshot = snapshot();
+		assertEquals(eventId(6), snapshot.get("id").asText());
+		assertEquals(6, snapshot.get("instances").size());
+
+		MvcResult stream = stream(snapshot.get("id").asText());
+		await(stream, "event:ready");
+		register(instance("demo-7", InstanceInfo.InstanceStatus.UP));
+
+		String content = await(stream, "id:" + eventId(7));
+		assertTrue(content.contains("\"demo-7\""));
+		assertFalse(content.contains("event:reset"));
+	}
+
+	@Test
+	public void statusOverrideIsAppendedToChangeLog() throws Exception {
+		Map<String, InstanceInfo> instances = new ConcurrentHashMap<>();
+		StatusUpdateEventPostProcessor postProcessor = new StatusUpdateEventPostProcessor();
+		postProcessor.setApplicationEventPublisher(event -> {
+			if (event instanceof InstanceStatusUpdatedEvent) {
+				broadcaster.onStatusUpdated((InstanceStatusUpdatedEvent) event);
+			}
+		});
+		PeerAwareInstanceRegistry registry = (PeerAwareInstanceRegistry) postProcessor
+				.postProcessAfterInitialization(registry(instances), "peerAwareInstanceRegistry");
+
+		InstanceInfo info = instance("demo-1", InstanceInfo.InstanceStatus.UP);
+		instances.put(info.getId(), info);
+		register(info);
+		MvcResult stream = stream(eventId(1));
+
+		assertTrue(registry.statusUpdate("DEMO", "demo-1", InstanceInfo.InstanceStatus.OUT_OF_SERVICE, "0",
+				false));
+		String content = await(stream, "id:" + eventId(2));
+		assertTrue(content.contains("\"OUT_OF_SERVICE\""));
+
+		// 其他节点复制过来的删除覆盖
+		assertTrue(registry.deleteStatusOverride("DEMO", "demo-1", InstanceInfo.InstanceStatus.UP, "0", true));
+		await(stream, "id:" + eventId(3));
+
+		// 不存在的实例不产生变更
+		assertFalse(registry.statusUpdate("DEMO", "demo-2", InstanceInfo.InstanceStatus.DOWN, "0", false));
+		assertEquals(3, changeLog.version());
+	}
+
+	private void register(InstanceInfo info) {
+		broadcaster.onRegistered(new EurekaInstanceRegisteredEvent(this, info, 90, false));
+	}
+
+	private MvcResult stream(String lastEventId) throws Exception {
+		return mockMvc.perform(get("/registry/stream").header("Last-Event-ID", lastEventId))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+	}
+
+	private JsonNode snapshot() throws Exception {
+		return objectMapper.readTree(mockMvc.perform(get("/registry/snapshot")).andReturn().getResponse()
+				.getContentAsByteArray());
+	}
+
+	private String eventId(long version) {
+		return RegistryChangeBroadcaster.eventId(changeLog.getEpoch(), version);
+	}
+
+	private static String await(MvcResult result, String expected) throws Exception {
+		long deadline = System.currentTimeMillis() + 5000;
+		String content;
+		while (!(content = result.getResponse().getContentAsString()).contains(expected)) {
+			if (System.currentTimeMillis() > deadline) {
+				fail("Expected " + expected + " in:\n" + content);
+			}
+			Thread.sleep(10);
+		}
+		return content;
+	}
+
+	private static InstanceInfo instance(String instanceId, InstanceInfo.InstanceStatus status) {
+		return InstanceInfo.Builder.newBuilder()
+				.setAppName("DEMO")
+				.setInstanceId(instanceId)
+				.setHostName("127.0.0.1")
+				.setIPAddr("127.0.0.1")
+				.setPort(8080)
+				.setStatus(status)
+				.build();
+	}
+
+	/**
+	 * 只实现状态更新相关方法的注册表
+	 */
+	private static PeerAwareInstanceRegistry registry(Map<String, InstanceInfo> instances) {
+		return (PeerAwareInstanceRegistry) Proxy.newProxyInstance(RegistryChangeBroadcasterTests.class.getClassLoader(),
+				new Class<?>[]{PeerAwareInstanceRegistry.class}, (proxy, method, args) -> {
+					switch (method.getName()) {
+						case "getInstanceByAppAndId":
+							return instances.get(args[1]);
+						case "statusUpdate":
+						case "deleteStatusOverride":
+							InstanceInfo info = instances.get(args[1]);
+							if (null == info) {
+								return false;
+							}
+							info.setStatusWithoutDirty((InstanceInfo.InstanceStatus) args[2]);
+							return true;
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "equals":
+							return proxy == args[0];
+						case "toString":
+							return "registry";
+						default:
+							throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+}
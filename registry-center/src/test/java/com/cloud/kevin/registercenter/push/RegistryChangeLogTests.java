@@ -0,0 +1,81 @@
+package com.cloud.kevin.registercenter.push;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 变更序号的分配、按序号续传和超出保留范围后的快照
+ */
+public class RegistryChangeLogTests {
+
+	@Test
+	public void changesAreReplayedAfterVersion() {
+		RegistryChangeLog changeLog = new RegistryChangeLog(16);
+		changeLog.append(registered("demo-1", "UP"));
+		changeLog.append(registered("demo-2", "UP"));
+		changeLog.append(RegistryChange.canceled("demo", "demo-1"));
+
+		List<RegistryChange> changes = changeLog.since(1, 10);
+
+		assertEquals(2, changes.size());
+		assertEquals(2, changes.get(0).getVersion());
+		assertEquals("demo-2", changes.get(0).getInstanceId());
+		assertEquals(RegistryChange.Type.CANCELED, changes.get(1).getType());
+		assertEquals(3, changes.get(1).getVersion());
+		assertTrue(changeLog.since(3, 10).isEmpty());
+		// 按批读取
+		assertEquals(1, changeLog.since(0, 1).size());
+	}
+
+	@Test
+	public void duplicateRegistrationIsNotAChange() {
+		RegistryChangeLog changeLog = new RegistryChangeLog(16);
+
+		assertTrue(changeLog.append(registered("demo-1", "UP")));
+		assertFalse(changeLog.append(registered("demo-1", "UP")));
+		assertTrue(changeLog.append(registered("demo-1", "OUT_OF_SERVICE")));
+		assertFalse(changeLog.append(RegistryChange.canceled("demo", "demo-2")));
+
+		assertEquals(2, changeLog.version());
+	}
+
+	@Test
+	public void versionOutsideBufferRequiresSnapshot() {
+		RegistryChangeLog changeLog = new RegistryChangeLog(4);
+		for (int i = 1; i <= 6; i++) {
+			changeLog.append(registered("demo-" + i, "UP"));
+		}
+		changeLog.append(RegistryChange.canceled("demo", "demo-1"));
+
+		assertNull(changeLog.since(0, 10));
+		assertNull(changeLog.since(2, 10));
+		assertEquals(4, changeLog.since(3, 10).size());
+		// 不是本进程分配的序号
+		assertNull(changeLog.since(8, 10));
+
+		RegistryChangeLog.State state = changeLog.state();
+		assertEquals(7, state.getVersion());
+		assertEquals(5, state.getInstances().size());
+		assertFalse(state.getInstances().stream().map(RegistryChange::getInstanceId).collect(Collectors.toSet())
+				.contains("demo-1"));
+	}
+
+	private static RegistryChange registered(String instanceId, String status) {
+		RegistryChange change = new RegistryChange();
+		change.setType(RegistryChange.Type.REGISTERED);
+		change.setApp("DEMO");
+		change.setInstanceId(instanceId);
+		change.setHostName("127.0.0.1");
+		change.setIpAddr("127.0.0.1");
+		change.setPort(8080);
+		change.setStatus(status);
+		return change;
+	}
+}
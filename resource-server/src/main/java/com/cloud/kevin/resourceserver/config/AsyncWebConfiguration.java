@@ -0,0 +1,66 @@
+package com.cloud.kevin.resourceserver.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * 异步请求处理
+ * 返回Callable、StreamingResponseBody的接口在这里配置的线程池中执行，Tomcat的请求线程在返回后即被释放，
+ * 等待中的请求数不再受限于Tomcat线程池的大小；返回CompletableFuture的接口完全不占用线程等待。
+ *
+ * @author Kevin
+ */
+@Configuration
+@EnableConfigurationProperties(AsyncWebConfiguration.AsyncSetting.class)
+public class AsyncWebConfiguration implements WebMvcConfigurer {
+
+    private final AsyncSetting asyncSetting;
+
+    public AsyncWebConfiguration(AsyncSetting asyncSetting) {
+        this.asyncSetting = asyncSetting;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor mvcAsyncExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("mvc-async-");
+        executor.setCorePoolSize(asyncSetting.getCorePoolSize());
+        executor.setMaxPoolSize(asyncSetting.getMaxPoolSize());
+        executor.setQueueCapacity(asyncSetting.getQueueCapacity());
+
+        return executor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(mvcAsyncExecutor());
+        configurer.setDefaultTimeout(asyncSetting.getTimeout());
+    }
+
+    @ConfigurationProperties(prefix = "resource-server.async")
+    @Data
+    public static class AsyncSetting {
+        /**
+         * 异步线程池的核心线程数
+         */
+        private int corePoolSize = 16;
+        /**
+         * 异步线程池的最大线程数，队列满后才会超过核心线程数
+         */
+        private int maxPoolSize = 64;
+        /**
+         * 等待执行的任务数上限，超出且线程数已达最大时拒绝请求
+         */
+        private int queueCapacity = 1000;
+        /**
+         * 异步请求的超时时间(毫秒)
+         */
+        private long timeout = 30000;
+    }
+}
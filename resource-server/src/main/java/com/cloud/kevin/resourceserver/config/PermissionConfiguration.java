@@ -0,0 +1,39 @@
+package com.cloud.kevin.resourceserver.config;
+
+import com.cloud.kevin.resourceserver.permission.PermissionCheckInterceptor;
+import com.cloud.kevin.resourceserver.permission.PermissionRegistry;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * 预编译的scope和权限检查，接口上使用{@link com.cloud.kevin.resourceserver.permission.RequiresPermission}
+ *
+ * @author Kevin
+ */
+@Configuration
+public class PermissionConfiguration implements WebMvcConfigurer {
+
+    private final ApplicationContext applicationContext;
+
+    public PermissionConfiguration(ApplicationContext applicationContext) {
+        this.applicationContext = applicationContext;
+    }
+
+    @Bean
+    public PermissionRegistry permissionRegistry() {
+        return new PermissionRegistry();
+    }
+
+    @Bean
+    public PermissionCheckInterceptor permissionCheckInterceptor() {
+        return new PermissionCheckInterceptor(permissionRegistry(), applicationContext);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(permissionCheckInterceptor());
+    }
+}
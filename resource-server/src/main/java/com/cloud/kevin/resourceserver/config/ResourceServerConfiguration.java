@@ -1,6 +1,20 @@
 package com.cloud.kevin.resourceserver.config;
 
+import com.cloud.kevin.resourceserver.permission.PermissionAccessTokenConverter;
+import com.cloud.kevin.resourceserver.permission.PermissionRegistry;
+import com.cloud.kevin.resourceserver.revocation.RevocationCheckingTokenStore;
+import com.cloud.kevin.resourceserver.revocation.RevocationList;
+import com.cloud.kevin.resourceserver.token.CachingJwtTokenStore;
+import com.cloud.kevin.resourceserver.token.JwkSetJwtAccessTokenConverter;
+import com.cloud.kevin.resourceserver.token.JwkSetKeyResolver;
+import lombok.Data;
 import org.apache.commons.io.IOUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.security.oauth2.resource.ResourceServerProperties;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
@@ -17,11 +31,13 @@ import org.springframework.security.oauth2.provider.token.TokenStore;
 import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
 import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
 import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestTemplate;
 
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
 
 /**
  * 用于Oauth2.0协议的资源服务器
@@ -31,6 +47,9 @@ import java.nio.charset.StandardCharsets;
 @Configuration
 @EnableResourceServer
 @EnableGlobalMethodSecurity(prePostEnabled = true)
+@EnableConfigurationProperties({ResourceServerConfiguration.TokenCacheSetting.class,
+        ResourceServerConfiguration.JwkSetting.class, ResourceServerConfiguration.OrderSetting.class,
+        ResourceServerConfiguration.RevocationSetting.class})
 public class ResourceServerConfiguration extends ResourceServerConfigurerAdapter {
 
     /**
@@ -59,6 +78,86 @@ public class ResourceServerConfiguration extends ResourceServerConfigurerAdapter
         };
     }
 
+    /**
+     * 声明TokenStore实现，开启缓存时已验证过的token在有效期内不再重复验签
+     *
+     * @param jwtTokenEnhancer   由security.oauth2.resource.jwt配置生成的token转换器
+     * @param resourceServerProperties
+     * @param tokenCacheSetting
+     * @param jwkSetKeyResolver  配置了JWK Set地址时按kid获取公钥
+     * @param permissionRegistry 解析token时同时生成权限位图
+     * @param revocationList     配置了撤销列表地址时检查token是否已被撤销
+     * @return
+     * @throws Exception
+     */
+    @Bean
+    public TokenStore jwtTokenStore(JwtAccessTokenConverter jwtTokenEnhancer,
+                                    ResourceServerProperties resourceServerProperties,
+                                    TokenCacheSetting tokenCacheSetting,
+                                    ObjectProvider<JwkSetKeyResolver> jwkSetKeyResolver,
+                                    PermissionRegistry permissionRegistry,
+                                    ObjectProvider<RevocationList> revocationList) throws Exception {
+        JwtAccessTokenConverter converter = jwtTokenEnhancer;
+
+        // 配置了JWK Set地址时按kid获取公钥验签，不带kid的token仍使用key-value中的公钥
+        JwkSetKeyResolver keyResolver = jwkSetKeyResolver.getIfAvailable();
+        if (null != keyResolver) {
+            converter = new JwkSetJwtAccessTokenConverter(keyResolver);
+            converter.setVerifierKey(resourceServerProperties.getJwt().getKeyValue());
+            converter.afterPropertiesSet();
+        }
+        converter.setAccessTokenConverter(new PermissionAccessTokenConverter(permissionRegistry));
+
+        TokenStore tokenStore = tokenCacheSetting.isEnabled()
+                ? new CachingJwtTokenStore(converter, tokenCacheSetting.getMaximumSize(),
+                tokenCacheSetting.getMaximumTtl())
+                : new JwtTokenStore(converter);
+
+        // 撤销检查在缓存之后进行，缓存中的token被撤销后同样会被拒绝
+        RevocationList revocations = revocationList.getIfAvailable();
+        return null == revocations ? tokenStore : new RevocationCheckingTokenStore(tokenStore, revocations);
+    }
+
+    /**
+     * 从auth-server的JWK Set获取验签公钥，请求设置了连接和读取超时，auth-server无响应时不会无限期占用请求线程
+     *
+     * @param restTemplateBuilder
+     * @param jwkSetting
+     * @return
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "resource-server.jwk", name = "set-uri")
+    public JwkSetKeyResolver jwkSetKeyResolver(RestTemplateBuilder restTemplateBuilder, JwkSetting jwkSetting) {
+        RestTemplate restTemplate = restTemplateBuilder
+                .setConnectTimeout(jwkSetting.getConnectTimeout())
+                .setReadTimeout(jwkSetting.getReadTimeout())
+                .build();
+
+        return new JwkSetKeyResolver(() -> restTemplate.getForObject(jwkSetting.getSetUri(), Map.class),
+                jwkSetting.getRefreshInterval(), jwkSetting.getMinRefreshInterval());
+    }
+
+    /**
+     * 从auth-server同步的已撤销token列表，布隆过滤器命中时的确认请求在请求线程上执行，需要设置超时
+     *
+     * @param restTemplateBuilder
+     * @param revocationSetting
+     * @return
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "resource-server.revocation", name = "list-uri")
+    public RevocationList revocationList(RestTemplateBuilder restTemplateBuilder,
+                                         RevocationSetting revocationSetting) {
+        RestTemplate restTemplate = restTemplateBuilder
+                .setConnectTimeout(revocationSetting.getConnectTimeout())
+                .setReadTimeout(revocationSetting.getReadTimeout())
+                .build();
+
+        return new RevocationList(restTemplate, revocationSetting.getListUri(),
+                revocationSetting.getRefreshInterval(), revocationSetting.getConfirmCacheSize(),
+                revocationSetting.getConfirmTtl());
+    }
+
     @Override
     public void configure(ResourceServerSecurityConfigurer resources) {
         resources.resourceId("resourceServer1")
@@ -81,4 +180,88 @@ public class ResourceServerConfiguration extends ResourceServerConfigurerAdapter
                 .antMatchers("/resource/**").authenticated();
         // @formatter:on
     }
+
+    @ConfigurationProperties(prefix = "resource-server.token-cache")
+    @Data
+    public static class TokenCacheSetting {
+        /**
+         * 是否缓存已验证的token
+         */
+        private boolean enabled = true;
+        /**
+         * 缓存的最大条目数
+         */
+        private long maximumSize = 10000;
+        /**
+         * 单个条目的最长缓存时间(秒)
+         */
+        private long maximumTtl = 3600;
+    }
+
+    @ConfigurationProperties(prefix = "resource-server.jwk")
+    @Data
+    public static class JwkSetting {
+        /**
+         * auth-server的JWK Set地址，为空时只使用key-value中的公钥验签
+         */
+        private String setUri;
+        /**
+         * 公钥缓存的刷新间隔(秒)
+         */
+        private long refreshInterval = 300;
+        /**
+         * 遇到未知kid时两次刷新的最小间隔(秒)
+         */
+        private long minRefreshInterval = 10;
+        /**
+         * 连接auth-server的超时时间(毫秒)
+         */
+        private int connectTimeout = 2000;
+        /**
+         * 读取JWK Set的超时时间(毫秒)，也是遇到未知kid时请求线程等待的上限
+         */
+        private int readTimeout = 3000;
+    }
+
+    @ConfigurationProperties(prefix = "resource-server.revocation")
+    @Data
+    public static class RevocationSetting {
+        /**
+         * auth-server的撤销列表地址，为空时不检查撤销
+         */
+        private String listUri;
+        /**
+         * 同步间隔(秒)，即撤销生效的最大延迟
+         */
+        private long refreshInterval = 5;
+        /**
+         * 布隆过滤器命中后确认结果的缓存条目数
+         */
+        private long confirmCacheSize = 10000;
+        /**
+         * 确认结果的缓存时间(秒)
+         */
+        private long confirmTtl = 300;
+        /**
+         * 连接auth-server的超时时间(毫秒)
+         */
+        private int connectTimeout = 1000;
+        /**
+         * 读取撤销列表和确认结果的超时时间(毫秒)
+         */
+        private int readTimeout = 1000;
+    }
+
+    @ConfigurationProperties(prefix = "resource-server.order")
+    @Data
+    public static class OrderSetting {
+        /**
+         * 批量查询一次请求最多包含的订单数
+         */
+        private int maxBatchSize = 500;
+        /**
+         * 批量查询时每次从数据源查询并输出的订单数
+         */
+        private int fetchSize = 100;
+    }
 }
@@ -1,13 +1,29 @@
 package com.cloud.kevin.resourceserver.controller.resource;
 
+import com.cloud.kevin.resourceserver.config.ResourceServerConfiguration.OrderSetting;
+import com.cloud.kevin.resourceserver.entity.Order;
+import com.cloud.kevin.resourceserver.permission.RequiresPermission;
+import com.cloud.kevin.resourceserver.service.IOrderService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  *
@@ -19,10 +35,62 @@ import org.springframework.web.bind.annotation.RestController;
 @Slf4j
 public class OrderEndpoints {
 
+    @Autowired
+    private IOrderService orderService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private OrderSetting orderSetting;
+
+    /**
+     * 在异步线程池中执行，不占用Tomcat的请求线程
+     *
+     * @param id
+     * @return
+     */
     @GetMapping("/{id}")
-    @PreAuthorize("#oauth2.hasScope('select')")
-    public String getById(@PathVariable String id) {
+    @RequiresPermission(scopes = "select")
+    public Callable<String> getById(@PathVariable String id) {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        return "order id : " + authentication.getPrincipal();
+        return () -> "order id : " + authentication.getPrincipal();
+    }
+
+    /**
+     * 一次请求查询多个订单，结果以JSON数组的形式按批次边查询边输出
+     *
+     * @param ids 订单ID，重复的ID只查询一次
+     * @return
+     */
+    @PostMapping("/batch")
+    @RequiresPermission(scopes = "select")
+    public ResponseEntity<StreamingResponseBody> getByIds(@RequestBody List<String> ids) {
+        if (ids.size() > orderSetting.getMaxBatchSize()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        String owner = SecurityContextHolder.getContext().getAuthentication().getName();
+        int fetchSize = orderSetting.getFetchSize();
+
+        StreamingResponseBody body = outputStream -> {
+            // 输出流由容器负责关闭
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream);
+            generator.writeStartArray();
+            for (int from = 0; from < distinctIds.size(); from += fetchSize) {
+                List<String> chunk = distinctIds.subList(from, Math.min(from + fetchSize, distinctIds.size()));
+                for (Order order : orderService.findByIds(chunk, owner)) {
+                    generator.writeObject(order);
+                }
+                generator.flush();
+            }
+            generator.writeEndArray();
+            generator.flush();
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .body(body);
     }
 }
@@ -0,0 +1,23 @@
+package com.cloud.kevin.resourceserver.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 订单
+ *
+ * @author Kevin
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Order {
+
+    private String id;
+
+    /**
+     * 订单所属的用户或客户端
+     */
+    private String owner;
+}
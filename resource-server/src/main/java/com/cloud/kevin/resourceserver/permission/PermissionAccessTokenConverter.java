@@ -0,0 +1,40 @@
+package com.cloud.kevin.resourceserver.permission;
+
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 解析token时生成{@link PermissionSet}并放入OAuth2Request的extensions中，
+ * 与认证信息一起被token缓存复用，每个token只计算一次
+ *
+ * @author Kevin
+ */
+public class PermissionAccessTokenConverter extends DefaultAccessTokenConverter {
+
+    private final PermissionRegistry permissionRegistry;
+
+    public PermissionAccessTokenConverter(PermissionRegistry permissionRegistry) {
+        this.permissionRegistry = permissionRegistry;
+    }
+
+    @Override
+    public OAuth2Authentication extractAuthentication(Map<String, ?> map) {
+        OAuth2Authentication authentication = super.extractAuthentication(map);
+        OAuth2Request request = authentication.getOAuth2Request();
+
+        Map<String, Serializable> extensions = new HashMap<>(request.getExtensions());
+        extensions.put(PermissionSet.EXTENSION_KEY,
+                permissionRegistry.resolve(request.getScope(), authentication.getAuthorities()));
+
+        OAuth2Request resolved = new OAuth2Request(request.getRequestParameters(), request.getClientId(),
+                request.getAuthorities(), request.isApproved(), request.getScope(), request.getResourceIds(),
+                request.getRedirectUri(), request.getResponseTypes(), extensions);
+
+        return new OAuth2Authentication(resolved, authentication.getUserAuthentication());
+    }
+}
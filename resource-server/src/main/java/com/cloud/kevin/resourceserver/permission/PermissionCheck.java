@@ -0,0 +1,33 @@
+package com.cloud.kevin.resourceserver.permission;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * 一个{@link RequiresPermission}编译后的结果
+ *
+ * @author Kevin
+ */
+public final class PermissionCheck {
+
+    private final long[] required;
+
+    private final Set<String> scopes;
+
+    private final Set<String> authorities;
+
+    PermissionCheck(long[] required, Set<String> scopes, Set<String> authorities) {
+        this.required = required;
+        this.scopes = scopes;
+        this.authorities = authorities;
+    }
+
+    public boolean test(PermissionSet permissions) {
+        return permissions.containsAll(required);
+    }
+
+    @Override
+    public String toString() {
+        return "scopes=" + scopes + ", authorities=" + authorities + ", mask=" + Arrays.toString(required);
+    }
+}
@@ -0,0 +1,104 @@
+package com.cloud.kevin.resourceserver.permission;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按{@link RequiresPermission}检查请求的权限
+ * 所有单例创建完成后扫描全部接口，编译出每个接口方法的检查并冻结{@link PermissionRegistry}，
+ * 请求时只需按方法取出检查并与token的位图做按位与。
+ *
+ * @author Kevin
+ */
+@Slf4j
+public class PermissionCheckInterceptor implements HandlerInterceptor, SmartInitializingSingleton {
+
+    private final PermissionRegistry permissionRegistry;
+
+    private final ApplicationContext applicationContext;
+
+    private volatile Map<Method, PermissionCheck> checks = Collections.emptyMap();
+
+    public PermissionCheckInterceptor(PermissionRegistry permissionRegistry, ApplicationContext applicationContext) {
+        this.permissionRegistry = permissionRegistry;
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        Map<Method, PermissionCheck> compiled = new HashMap<>();
+
+        for (RequestMappingHandlerMapping mapping
+                : applicationContext.getBeansOfType(RequestMappingHandlerMapping.class).values()) {
+            for (HandlerMethod handlerMethod : mapping.getHandlerMethods().values()) {
+                List<String> scopes = new ArrayList<>();
+                List<String> authorities = new ArrayList<>();
+                collect(AnnotatedElementUtils.findMergedAnnotation(handlerMethod.getBeanType(),
+                        RequiresPermission.class), scopes, authorities);
+                collect(AnnotatedElementUtils.findMergedAnnotation(handlerMethod.getMethod(),
+                        RequiresPermission.class), scopes, authorities);
+
+                if (!scopes.isEmpty() || !authorities.isEmpty()) {
+                    PermissionCheck check = permissionRegistry.compile(scopes, authorities);
+                    compiled.put(handlerMethod.getMethod(), check);
+                    log.debug("Compiled permission check for {}: {}", handlerMethod, check);
+                }
+            }
+        }
+
+        permissionRegistry.freeze();
+        checks = compiled;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!(handler instanceof HandlerMethod)) {
+            return true;
+        }
+
+        PermissionCheck check = checks.get(((HandlerMethod) handler).getMethod());
+        // 异步请求在首次分派时已经检查过
+        if (null == check || WebAsyncUtils.getAsyncManager(request).hasConcurrentResult()) {
+            return true;
+        }
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        PermissionSet permissions = authentication instanceof OAuth2Authentication
+                ? (PermissionSet) ((OAuth2Authentication) authentication).getOAuth2Request()
+                .getExtensions().get(PermissionSet.EXTENSION_KEY)
+                : null;
+
+        if (null == permissions || !check.test(permissions)) {
+            throw new AccessDeniedException("Access is denied");
+        }
+
+        return true;
+    }
+
+    private static void collect(RequiresPermission annotation, List<String> scopes, List<String> authorities) {
+        if (null != annotation) {
+            scopes.addAll(Arrays.asList(annotation.scopes()));
+            authorities.addAll(Arrays.asList(annotation.authorities()));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.cloud.kevin.resourceserver.permission;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * 接口用到的scope和权限的登记表，每个名称分配一个位
+ * 启动时登记所有{@link RequiresPermission}并调用{@link #freeze()}，之后只读。
+ * 权限按":"分级存放在前缀树中，每个节点预先计算出自身及所有下级权限的位图，
+ * 解析token时拥有的每个权限只需一次树查找和一次按位或。
+ *
+ * @author Kevin
+ */
+public class PermissionRegistry {
+
+    private static final char SEPARATOR = ':';
+
+    private static final String WILDCARD = ":*";
+
+    private final Map<String, Integer> scopeBits = new HashMap<>();
+
+    private final Node root = new Node();
+
+    private int size;
+
+    private volatile boolean frozen;
+
+    /**
+     * 登记一组所需的scope和权限
+     *
+     * @param scopes
+     * @param authorities
+     * @return 编译后的检查
+     */
+    public synchronized PermissionCheck compile(Collection<String> scopes, Collection<String> authorities) {
+        if (frozen) {
+            throw new IllegalStateException("Permission registry is frozen");
+        }
+
+        BitSet required = new BitSet();
+        for (String scope : scopes) {
+            required.set(scopeBits.computeIfAbsent(scope, name -> size++));
+        }
+        for (String authority : authorities) {
+            Node node = root;
+            for (String segment : authority.split(String.valueOf(SEPARATOR), -1)) {
+                node = node.children.computeIfAbsent(segment, name -> new Node());
+            }
+            if (node.bit < 0) {
+                node.bit = size++;
+            }
+            required.set(node.bit);
+        }
+
+        return new PermissionCheck(required.toLongArray(),
+                new LinkedHashSet<>(scopes), new LinkedHashSet<>(authorities));
+    }
+
+    /**
+     * 登记完成，计算前缀树中每个节点的位图
+     */
+    public synchronized void freeze() {
+        if (!frozen) {
+            computeMask(root, (size + 63) >>> 6);
+            frozen = true;
+        }
+    }
+
+    /**
+     * 将token中的scope和权限转换为位图，未登记的名称被忽略
+     *
+     * @param scopes
+     * @param authorities
+     * @return
+     */
+    public PermissionSet resolve(Collection<String> scopes, Collection<? extends GrantedAuthority> authorities) {
+        if (!frozen) {
+            throw new IllegalStateException("Permission registry is not initialized");
+        }
+
+        long[] words = new long[(size + 63) >>> 6];
+        if (null != scopes) {
+            for (String scope : scopes) {
+                Integer bit = scopeBits.get(scope);
+                if (null != bit) {
+                    words[bit >>> 6] |= 1L << bit;
+                }
+            }
+        }
+        if (null != authorities) {
+            for (GrantedAuthority authority : authorities) {
+                Node node = find(authority.getAuthority());
+                if (null != node) {
+                    for (int i = 0; i < words.length; i++) {
+                        words[i] |= node.mask[i];
+                    }
+                }
+            }
+        }
+
+        return new PermissionSet(words);
+    }
+
+    private Node find(String authority) {
+        if (null == authority) {
+            return null;
+        }
+        if (authority.endsWith(WILDCARD)) {
+            authority = authority.substring(0, authority.length() - WILDCARD.length());
+        }
+
+        Node node = root;
+        int start = 0;
+        while (null != node) {
+            int end = authority.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                return node.children.get(authority.substring(start));
+            }
+            node = node.children.get(authority.substring(start, end));
+            start = end + 1;
+        }
+
+        return null;
+    }
+
+    private static void computeMask(Node node, int length) {
+        node.mask = new long[length];
+        if (node.bit >= 0) {
+            node.mask[node.bit >>> 6] |= 1L << node.bit;
+        }
+        for (Node child : node.children.values()) {
+            computeMask(child, length);
+            for (int i = 0; i < length; i++) {
+                node.mask[i] |= child.mask[i];
+            }
+        }
+    }
+
+    private static final class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+
+        /**
+         * 该节点本身被登记时的位，否则为-1
+         */
+        private int bit = -1;
+
+        /**
+         * 自身及所有下级权限的位图
+         */
+        private long[] mask;
+    }
+}
@@ -0,0 +1,39 @@
+package com.cloud.kevin.resourceserver.permission;
+
+import java.io.Serializable;
+
+/**
+ * 一个token拥有的scope和权限，以{@link PermissionRegistry}中登记的序号为位的位图
+ * 在token解析时生成一次，随认证信息缓存，之后每次检查只需要几次按位与
+ *
+ * @author Kevin
+ */
+public final class PermissionSet implements Serializable {
+
+    /**
+     * 在OAuth2Request的extensions中的key
+     */
+    public static final String EXTENSION_KEY = "permissions";
+
+    private static final long serialVersionUID = 1L;
+
+    private final long[] words;
+
+    PermissionSet(long[] words) {
+        this.words = words;
+    }
+
+    /**
+     * @param required 所需权限的位图
+     * @return 是否拥有其中的每一位
+     */
+    public boolean containsAll(long[] required) {
+        for (int i = 0; i < required.length; i++) {
+            if (required[i] != 0 && (i >= words.length || (words[i] & required[i]) != required[i])) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
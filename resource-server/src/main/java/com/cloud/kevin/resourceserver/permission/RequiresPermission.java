@@ -0,0 +1,30 @@
+package com.cloud.kevin.resourceserver.permission;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 接口所需的scope和权限，启动时编译为位图检查，替代@PreAuthorize的SpEL表达式
+ * 同时标注在类和方法上时两者都需要满足。
+ * 权限按":"分级，拥有"USER"或"USER:*"即拥有"USER:DEL"等所有下级权限。
+ *
+ * @author Kevin
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RequiresPermission {
+
+    /**
+     * 必须全部拥有的scope，等同于#oauth2.hasScope
+     */
+    String[] scopes() default {};
+
+    /**
+     * 必须全部拥有的权限，如ROLE_ADMIN、USER:DEL
+     */
+    String[] authorities() default {};
+}
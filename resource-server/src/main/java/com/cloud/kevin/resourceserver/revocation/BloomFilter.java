@@ -0,0 +1,72 @@
+package com.cloud.kevin.resourceserver.revocation;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * auth-server下发的已撤销jti的布隆过滤器，哈希方式必须与auth-server的实现保持一致
+ *
+ * @author Kevin
+ */
+public final class BloomFilter {
+
+    private final long[] bits;
+
+    private final int hashes;
+
+    private BloomFilter(long[] bits, int hashes) {
+        this.bits = bits;
+        this.hashes = hashes;
+    }
+
+    /**
+     * @param encodedBits 位图按大端序编码后的Base64
+     * @param hashes      哈希次数
+     * @return
+     */
+    public static BloomFilter decode(String encodedBits, int hashes) {
+        byte[] bytes = Base64.getDecoder().decode(encodedBits);
+        if (bytes.length == 0 || bytes.length % 8 != 0 || hashes < 1) {
+            throw new IllegalArgumentException("Malformed bloom filter");
+        }
+
+        long[] bits = new long[bytes.length / 8];
+        ByteBuffer.wrap(bytes).asLongBuffer().get(bits);
+
+        return new BloomFilter(bits, hashes);
+    }
+
+    public boolean mightContain(String value) {
+        long h1 = mix(fnv1a(value));
+        long h2 = mix(h1 ^ 0x9e3779b97f4a7c15L);
+        long bitCount = (long) bits.length << 6;
+        for (int i = 0; i < hashes; i++) {
+            long index = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static long fnv1a(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash;
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+}
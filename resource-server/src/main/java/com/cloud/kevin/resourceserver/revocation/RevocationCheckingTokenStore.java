@@ -0,0 +1,112 @@
+package com.cloud.kevin.resourceserver.revocation;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+
+import java.util.Collection;
+
+/**
+ * 在验签(或命中已验证token的缓存)之后检查token是否已被撤销，其余操作直接交给被包装的TokenStore
+ *
+ * @author Kevin
+ */
+public class RevocationCheckingTokenStore implements TokenStore, MeterBinder {
+
+    private static final String JTI = "jti";
+
+    private final TokenStore delegate;
+
+    private final RevocationList revocationList;
+
+    public RevocationCheckingTokenStore(TokenStore delegate, RevocationList revocationList) {
+        this.delegate = delegate;
+        this.revocationList = revocationList;
+    }
+
+    @Override
+    public OAuth2AccessToken readAccessToken(String tokenValue) {
+        OAuth2AccessToken accessToken = delegate.readAccessToken(tokenValue);
+        Object jti = null == accessToken ? null : accessToken.getAdditionalInformation().get(JTI);
+
+        if (null != jti && revocationList.isRevoked(jti.toString())) {
+            throw new InvalidTokenException("Token has been revoked");
+        }
+
+        return accessToken;
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+        return delegate.readAuthentication(token);
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(String token) {
+        return delegate.readAuthentication(token);
+    }
+
+    @Override
+    public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+        delegate.storeAccessToken(token, authentication);
+    }
+
+    @Override
+    public void removeAccessToken(OAuth2AccessToken token) {
+        delegate.removeAccessToken(token);
+    }
+
+    @Override
+    public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+        delegate.storeRefreshToken(refreshToken, authentication);
+    }
+
+    @Override
+    public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+        return delegate.readRefreshToken(tokenValue);
+    }
+
+    @Override
+    public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+        return delegate.readAuthenticationForRefreshToken(token);
+    }
+
+    @Override
+    public void removeRefreshToken(OAuth2RefreshToken token) {
+        delegate.removeRefreshToken(token);
+    }
+
+    @Override
+    public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+        delegate.removeAccessTokenUsingRefreshToken(refreshToken);
+    }
+
+    @Override
+    public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+        return delegate.getAccessToken(authentication);
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
+        return delegate.findTokensByClientIdAndUserName(clientId, userName);
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+        return delegate.findTokensByClientId(clientId);
+    }
+
+    /**
+     * 被包装的TokenStore(如CachingJwtTokenStore)的指标仍然需要注册
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (delegate instanceof MeterBinder) {
+            ((MeterBinder) delegate).bindTo(registry);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.cloud.kevin.resourceserver.revocation;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 从auth-server同步的已撤销token列表，每个请求只在内存中检查
+ * 列表由布隆过滤器(基线)和之后的增量jti组成，定时按版本增量下载，基线变化时整体替换。
+ * 增量中的jti直接判定为已撤销；只命中布隆过滤器时向auth-server确认并缓存结果，
+ * 确认失败时按已撤销处理(命中的绝大多数确实已被撤销)，并且在一个同步间隔内不再发起确认请求，
+ * 避免auth-server不可用时每个命中都在请求线程上等待超时，下一次同步成功后恢复确认。首次同步完成前不拒绝任何token。
+ *
+ * @author Kevin
+ */
+@Slf4j
+public class RevocationList implements InitializingBean, DisposableBean, MeterBinder {
+
+    private final RestTemplate restTemplate;
+
+    private final String listUri;
+
+    private final long refreshInterval;
+
+    private final LoadingCache<String, Boolean> confirmed;
+
+    private volatile State state = State.EMPTY;
+
+    /**
+     * 确认失败后到这个时间之前不再请求auth-server
+     */
+    private volatile long confirmRetryAt;
+
+    private volatile Counter confirmFailures;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param restTemplate     需要设置连接和读取超时，确认请求在请求线程上执行
+     * @param listUri          auth-server的撤销列表地址
+     * @param refreshInterval  同步间隔(秒)
+     * @param confirmCacheSize 确认结果的缓存条目数
+     * @param confirmTtl       确认结果的缓存时间(秒)
+     */
+    public RevocationList(RestTemplate restTemplate, String listUri, long refreshInterval, long confirmCacheSize,
+                          long confirmTtl) {
+        this.restTemplate = restTemplate;
+        this.listUri = listUri;
+        this.refreshInterval = refreshInterval;
+        this.confirmed = Caffeine.newBuilder()
+                .maximumSize(confirmCacheSize)
+                .expireAfterWrite(confirmTtl, TimeUnit.SECONDS)
+                .recordStats()
+                .build(this::confirm);
+    }
+
+    /**
+     * @param jti
+     * @return token是否已被撤销
+     */
+    public boolean isRevoked(String jti) {
+        State current = state;
+        if (current.revoked.contains(jti)) {
+            return true;
+        }
+        if (null == current.bloom || !current.bloom.mightContain(jti)) {
+            return false;
+        }
+
+        if (System.currentTimeMillis() < confirmRetryAt) {
+            Boolean revoked = confirmed.getIfPresent(jti);
+            return null == revoked || revoked;
+        }
+
+        try {
+            return confirmed.get(jti);
+        } catch (RuntimeException e) {
+            confirmRetryAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(refreshInterval);
+            if (null != confirmFailures) {
+                confirmFailures.increment();
+            }
+            log.warn("Failed to confirm revocation of {}, rejecting bloom filter hits for {}s: {}",
+                    jti, refreshInterval, e.getMessage());
+            return true;
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "revocation-list-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (Exception e) {
+                // 同步失败时继续使用已有的列表
+                log.error("Failed to refresh revocation list: ", e);
+            }
+        }, 0, refreshInterval, TimeUnit.SECONDS);
+    }
+
+    @SuppressWarnings("unchecked")
+    void refresh() {
+        State current = state;
+        UriComponentsBuilder uri = UriComponentsBuilder.fromHttpUrl(listUri);
+        if (null != current.bloom) {
+            uri.queryParam("base", current.base).queryParam("since", current.version);
+        }
+
+        Map<String, Object> body = restTemplate.getForObject(uri.toUriString(), Map.class);
+        long base = ((Number) body.get("base")).longValue();
+        long version = ((Number) body.get("version")).longValue();
+        List<String> revoked = (List<String>) body.get("revoked");
+        Map<String, Object> bloom = (Map<String, Object>) body.get("bloom");
+
+        if (null != bloom) {
+            state = new State(base, version,
+                    BloomFilter.decode((String) bloom.get("bits"), ((Number) bloom.get("hashes")).intValue()),
+                    new HashSet<>(revoked));
+            // 基线变化后之前的确认结果可能已不准确
+            confirmed.invalidateAll();
+            log.info("Revocation list reloaded at base {}, version {}, {} recent", base, version, revoked.size());
+        } else if (!revoked.isEmpty() || version != current.version) {
+            Set<String> merged = new HashSet<>(current.revoked);
+            merged.addAll(revoked);
+            state = new State(base, version, current.bloom, merged);
+        }
+        // auth-server已经恢复
+        confirmRetryAt = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Boolean confirm(String jti) {
+        String uri = UriComponentsBuilder.fromHttpUrl(listUri).pathSegment(jti).toUriString();
+        Map<String, Object> body = restTemplate.getForObject(uri, Map.class);
+
+        return Boolean.TRUE.equals(body.get("revoked"));
+    }
+
+    @Override
+    public void destroy() {
+        if (null != scheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new CaffeineCacheMetrics(confirmed, "revocationConfirm", Tags.empty()).bindTo(registry);
+        Gauge.builder("token.revocation.version", this, list -> list.state.version)
+                .register(registry);
+        Gauge.builder("token.revocation.recent", this, list -> list.state.revoked.size())
+                .description("Revoked jtis received after the current bloom filter baseline")
+                .register(registry);
+        confirmFailures = Counter.builder("token.revocation.confirm.failures")
+                .register(registry);
+    }
+
+    private static final class State {
+
+        private static final State EMPTY = new State(0, 0, null, Collections.emptySet());
+
+        private final long base;
+
+        private final long version;
+
+        private final BloomFilter bloom;
+
+        private final Set<String> revoked;
+
+        private State(long base, long version, BloomFilter bloom, Set<String> revoked) {
+            this.base = base;
+            this.version = version;
+            this.bloom = bloom;
+            this.revoked = revoked;
+        }
+    }
+}
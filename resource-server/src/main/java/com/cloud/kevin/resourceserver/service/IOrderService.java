@@ -0,0 +1,32 @@
+package com.cloud.kevin.resourceserver.service;
+
+import com.cloud.kevin.resourceserver.entity.Order;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 订单查询
+ *
+ * @author Kevin
+ */
+public interface IOrderService {
+
+    /**
+     * 按ID查询属于owner的订单
+     *
+     * @param id
+     * @param owner
+     * @return 不存在时返回null
+     */
+    Order findById(String id, String owner);
+
+    /**
+     * 按ID批量查询属于owner的订单，实现应以一次查询完成
+     *
+     * @param ids
+     * @param owner
+     * @return 按ids的顺序返回，不存在的订单不包含在结果中
+     */
+    List<Order> findByIds(Collection<String> ids, String owner);
+}
@@ -0,0 +1,33 @@
+package com.cloud.kevin.resourceserver.service.impl;
+
+import com.cloud.kevin.resourceserver.entity.Order;
+import com.cloud.kevin.resourceserver.service.IOrderService;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 示例实现，尚无订单存储，按请求的ID生成订单
+ *
+ * @author Kevin
+ */
+@Service
+public class OrderServiceImpl implements IOrderService {
+
+    @Override
+    public Order findById(String id, String owner) {
+        return new Order(id, owner);
+    }
+
+    @Override
+    public List<Order> findByIds(Collection<String> ids, String owner) {
+        List<Order> orders = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            orders.add(new Order(id, owner));
+        }
+
+        return orders;
+    }
+}
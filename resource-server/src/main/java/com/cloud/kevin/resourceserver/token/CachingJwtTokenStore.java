@@ -0,0 +1,161 @@
+package com.cloud.kevin.resourceserver.token;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 带本地缓存的JwtTokenStore
+ * 同一个access_token在有效期内是不会变化的，因此验签和解析的结果可以缓存起来，避免每次请求都重复进行RSA验签和JSON解析。
+ * 缓存以token的SHA-256摘要为key，条目在token的exp时刻过期，并按条目数量进行淘汰。
+ *
+ * @author Kevin
+ */
+public class CachingJwtTokenStore extends JwtTokenStore implements MeterBinder {
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    });
+
+    private final Cache<String, VerifiedToken> cache;
+
+    /**
+     * @param jwtTokenEnhancer 用于验签和解析token的转换器
+     * @param maximumSize      缓存的最大条目数
+     * @param maximumTtl       单个条目的最长缓存时间(秒)，token未携带exp时以此为准
+     */
+    public CachingJwtTokenStore(JwtAccessTokenConverter jwtTokenEnhancer, long maximumSize, long maximumTtl) {
+        super(jwtTokenEnhancer);
+
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new TokenExpiry(TimeUnit.SECONDS.toNanos(maximumTtl)))
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public OAuth2AccessToken readAccessToken(String tokenValue) {
+        return verify(tokenValue).accessToken;
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+        return readAuthentication(token.getValue());
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(String token) {
+        OAuth2Authentication authentication = verify(token).authentication;
+
+        // OAuth2Authentication是可变对象(后续过滤器会设置details)，不能在并发请求之间共享同一个实例
+        return new OAuth2Authentication(authentication.getOAuth2Request(), authentication.getUserAuthentication());
+    }
+
+    /**
+     * 先从缓存中查找已验证的token，未命中时才进行验签和解析，验证失败的token不会被缓存
+     *
+     * @param tokenValue
+     * @return
+     */
+    private VerifiedToken verify(String tokenValue) {
+        String key = digest(tokenValue);
+        VerifiedToken verifiedToken = cache.getIfPresent(key);
+
+        if (null == verifiedToken) {
+            verifiedToken = new VerifiedToken(super.readAccessToken(tokenValue), super.readAuthentication(tokenValue));
+            cache.put(key, verifiedToken);
+        }
+
+        return verifiedToken;
+    }
+
+    @Override
+    public void removeAccessToken(OAuth2AccessToken token) {
+        super.removeAccessToken(token);
+        cache.invalidate(digest(token.getValue()));
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new CaffeineCacheMetrics(cache, "verifiedJwtToken", Tags.empty()).bindTo(registry);
+    }
+
+    private static String digest(String tokenValue) {
+        MessageDigest messageDigest = SHA256.get();
+        messageDigest.reset();
+
+        return Base64.getEncoder().encodeToString(messageDigest.digest(tokenValue.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static class VerifiedToken {
+
+        private final OAuth2AccessToken accessToken;
+
+        private final OAuth2Authentication authentication;
+
+        VerifiedToken(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+            this.accessToken = accessToken;
+            this.authentication = authentication;
+        }
+    }
+
+    /**
+     * 每个条目在token的exp时刻过期，最长不超过maximumTtl
+     */
+    private static class TokenExpiry implements Expiry<String, VerifiedToken> {
+
+        private final long maximumTtlNanos;
+
+        TokenExpiry(long maximumTtlNanos) {
+            this.maximumTtlNanos = maximumTtlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(String key, VerifiedToken value, long currentTime) {
+            Date expiration = value.accessToken.getExpiration();
+
+            if (null == expiration) {
+                return maximumTtlNanos;
+            }
+
+            long remaining = TimeUnit.MILLISECONDS.toNanos(expiration.getTime() - System.currentTimeMillis());
+
+            return Math.max(0, Math.min(remaining, maximumTtlNanos));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, VerifiedToken value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String key, VerifiedToken value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
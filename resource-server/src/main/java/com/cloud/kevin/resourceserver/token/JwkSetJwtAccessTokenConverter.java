@@ -0,0 +1,73 @@
+package com.cloud.kevin.resourceserver.token;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * 按JWT头中的kid从{@link JwkSetKeyResolver}获取公钥进行验签的JwtAccessTokenConverter
+ * 不带kid的token仍使用verifierKey(security.oauth2.resource.jwt.key-value)验签
+ *
+ * @author Kevin
+ */
+public class JwkSetJwtAccessTokenConverter extends JwtAccessTokenConverter {
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final JwkSetKeyResolver keyResolver;
+
+    public JwkSetJwtAccessTokenConverter(JwkSetKeyResolver keyResolver) {
+        this.keyResolver = keyResolver;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Map<String, Object> decode(String token) {
+        int headerEnd = token.indexOf('.');
+        int payloadEnd = token.indexOf('.', headerEnd + 1);
+        if (headerEnd < 0 || payloadEnd < 0 || token.indexOf('.', payloadEnd + 1) >= 0) {
+            throw new InvalidTokenException("Cannot convert access token to JSON");
+        }
+
+        try {
+            Map<String, Object> header = objectMapper.readValue(DECODER.decode(token.substring(0, headerEnd)), Map.class);
+            String kid = (String) header.get("kid");
+
+            if (null == kid) {
+                return super.decode(token);
+            }
+
+            JwkSetKeyResolver.VerificationKey key = keyResolver.resolve(kid);
+            if (null == key) {
+                throw new InvalidTokenException("Unknown signing key: " + kid);
+            }
+            if (!key.getAlgorithm().name().equals(header.get("alg"))) {
+                throw new InvalidTokenException("Signing algorithm mismatch: " + header.get("alg"));
+            }
+
+            byte[] signingInput = token.substring(0, payloadEnd).getBytes(StandardCharsets.US_ASCII);
+            byte[] signature = DECODER.decode(token.substring(payloadEnd + 1));
+            if (!key.getAlgorithm().verify(key.getPublicKey(), signingInput, signature)) {
+                throw new InvalidTokenException("Invalid token signature");
+            }
+
+            Map<String, Object> claims = objectMapper.readValue(
+                    DECODER.decode(token.substring(headerEnd + 1, payloadEnd)), Map.class);
+            if (claims.get(EXP) instanceof Integer) {
+                claims.put(EXP, ((Integer) claims.get(EXP)).longValue());
+            }
+
+            return claims;
+        } catch (InvalidTokenException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new InvalidTokenException("Cannot convert access token to JSON", e);
+        }
+    }
+}
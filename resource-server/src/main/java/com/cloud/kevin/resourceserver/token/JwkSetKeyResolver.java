@@ -0,0 +1,213 @@
+package com.cloud.kevin.resourceserver.token;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.math.BigInteger;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 从auth-server的JWK Set中获取验签公钥，并按kid缓存在内存中
+ * 缓存超过refreshInterval后在后台线程中刷新，请求线程继续使用旧的公钥；
+ * 遇到未知的kid(密钥刚刚轮换)时在请求线程中立即刷新，等待时间受jwkSetSource的超时限制，
+ * 两次刷新的间隔不小于minRefreshInterval，防止伪造的kid打满auth-server。
+ *
+ * @author Kevin
+ */
+@Slf4j
+public class JwkSetKeyResolver implements DisposableBean {
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final Supplier<Map<String, Object>> jwkSetSource;
+
+    private final long refreshInterval;
+
+    private final long minRefreshInterval;
+
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jwk-set-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Map<String, VerificationKey> keys = Collections.emptyMap();
+
+    private volatile long fetchedAt;
+
+    /**
+     * @param jwkSetSource       获取JWK Set的方式，一般为请求auth-server的/.well-known/jwks.json，需要设置超时
+     * @param refreshInterval    公钥缓存的刷新间隔(秒)
+     * @param minRefreshInterval 两次刷新的最小间隔(秒)
+     */
+    public JwkSetKeyResolver(Supplier<Map<String, Object>> jwkSetSource, long refreshInterval, long minRefreshInterval) {
+        this.jwkSetSource = jwkSetSource;
+        this.refreshInterval = TimeUnit.SECONDS.toMillis(refreshInterval);
+        this.minRefreshInterval = TimeUnit.SECONDS.toMillis(minRefreshInterval);
+    }
+
+    /**
+     * 按kid查找验签公钥
+     *
+     * @param kid
+     * @return 刷新后仍不存在时返回null
+     */
+    public VerificationKey resolve(String kid) {
+        VerificationKey key = keys.get(kid);
+        long age = System.currentTimeMillis() - fetchedAt;
+
+        if (null != key) {
+            if (age >= refreshInterval) {
+                refreshAsync();
+            }
+            return key;
+        }
+
+        if (age < minRefreshInterval) {
+            return null;
+        }
+
+        refreshLock.lock();
+        try {
+            // 等待锁期间其他线程可能已经完成了刷新
+            if (!keys.containsKey(kid) && System.currentTimeMillis() - fetchedAt >= minRefreshInterval) {
+                refresh();
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+
+        return keys.get(kid);
+    }
+
+    private void refreshAsync() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                refreshLock.lock();
+                try {
+                    if (System.currentTimeMillis() - fetchedAt >= refreshInterval) {
+                        refresh();
+                    }
+                } finally {
+                    refreshLock.unlock();
+                    refreshing.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            // 关闭后不再刷新
+            refreshing.set(false);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void refresh() {
+        fetchedAt = System.currentTimeMillis();
+
+        try {
+            Map<String, Object> jwkSet = jwkSetSource.get();
+            Map<String, VerificationKey> newKeys = new HashMap<>();
+
+            for (Map<String, Object> jwk : (List<Map<String, Object>>) jwkSet.get("keys")) {
+                String kid = (String) jwk.get("kid");
+                if (null == kid || (null != jwk.get("use") && !"sig".equals(jwk.get("use")))) {
+                    continue;
+                }
+
+                try {
+                    newKeys.put(kid, toVerificationKey(jwk));
+                } catch (Exception e) {
+                    log.warn("Skipping unsupported JWK {}: {}", kid, e.getMessage());
+                }
+            }
+
+            keys = Collections.unmodifiableMap(newKeys);
+            log.info("JWK Set refreshed, kids: {}", newKeys.keySet());
+        } catch (Exception e) {
+            // 获取失败时继续使用旧的公钥
+            log.error("Failed to fetch JWK Set: ", e);
+        }
+    }
+
+    private static VerificationKey toVerificationKey(Map<String, Object> jwk) throws GeneralSecurityException {
+        String kty = (String) jwk.get("kty");
+
+        if ("RSA".equals(kty)) {
+            RSAPublicKeySpec spec = new RSAPublicKeySpec(unsigned(jwk.get("n")), unsigned(jwk.get("e")));
+            return new VerificationKey(algorithm(jwk, JwsAlgorithm.RS256),
+                    KeyFactory.getInstance("RSA").generatePublic(spec));
+        }
+
+        if ("EC".equals(kty) && "P-256".equals(jwk.get("crv"))) {
+            AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+            parameters.init(new ECGenParameterSpec("secp256r1"));
+            ECPublicKeySpec spec = new ECPublicKeySpec(new ECPoint(unsigned(jwk.get("x")), unsigned(jwk.get("y"))),
+                    parameters.getParameterSpec(ECParameterSpec.class));
+            return new VerificationKey(algorithm(jwk, JwsAlgorithm.ES256),
+                    KeyFactory.getInstance("EC").generatePublic(spec));
+        }
+
+        throw new GeneralSecurityException("Unsupported key type: " + kty);
+    }
+
+    private static JwsAlgorithm algorithm(Map<String, Object> jwk, JwsAlgorithm defaultAlgorithm) {
+        Object alg = jwk.get("alg");
+
+        return null == alg ? defaultAlgorithm : JwsAlgorithm.valueOf((String) alg);
+    }
+
+    private static BigInteger unsigned(Object value) {
+        return new BigInteger(1, DECODER.decode((String) value));
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    public static class VerificationKey {
+
+        private final JwsAlgorithm algorithm;
+
+        private final PublicKey publicKey;
+
+        VerificationKey(JwsAlgorithm algorithm, PublicKey publicKey) {
+            this.algorithm = algorithm;
+            this.publicKey = publicKey;
+        }
+
+        public JwsAlgorithm getAlgorithm() {
+            return algorithm;
+        }
+
+        public PublicKey getPublicKey() {
+            return publicKey;
+        }
+    }
+}
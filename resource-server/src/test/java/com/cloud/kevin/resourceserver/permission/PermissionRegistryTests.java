@@ -0,0 +1,144 @@
+package com.cloud.kevin.resourceserver.permission;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 前缀树中每个节点的位图包含自身及所有下级权限
+ */
+public class PermissionRegistryTests {
+
+	private PermissionRegistry registry;
+
+	private PermissionCheck userRead;
+
+	private PermissionCheck userWrite;
+
+	private PermissionCheck userRoot;
+
+	private PermissionCheck orderRead;
+
+	private PermissionCheck selectScope;
+
+	@Before
+	public void setUp() {
+		registry = new PermissionRegistry();
+		userRead = authority("user:read");
+		userWrite = authority("user:write:all");
+		userRoot = authority("user");
+		orderRead = authority("order:read");
+		selectScope = registry.compile(Collections.singletonList("select"), Collections.emptyList());
+		registry.freeze();
+	}
+
+	@Test
+	public void parentAuthorityGrantsWholeSubtree() {
+		PermissionSet permissions = resolve("user");
+
+		assertTrue(userRoot.test(permissions));
+		assertTrue(userRead.test(permissions));
+		assertTrue(userWrite.test(permissions));
+		assertFalse(orderRead.test(permissions));
+	}
+
+	@Test
+	public void wildcardIsEquivalentToParent() {
+		PermissionSet permissions = resolve("user:*");
+
+		assertTrue(userRoot.test(permissions));
+		assertTrue(userRead.test(permissions));
+		assertTrue(userWrite.test(permissions));
+	}
+
+	@Test
+	public void intermediateNodeWithoutOwnBitGrantsItsSubtree() {
+		// user:write本身没有被登记，但仍然覆盖user:write:all
+		PermissionSet permissions = resolve("user:write");
+
+		assertTrue(userWrite.test(permissions));
+		assertFalse(userRead.test(permissions));
+		assertFalse(userRoot.test(permissions));
+	}
+
+	@Test
+	public void childAuthorityDoesNotGrantParentOrSiblings() {
+		PermissionSet permissions = resolve("user:read");
+
+		assertTrue(userRead.test(permissions));
+		assertFalse(userRoot.test(permissions));
+		assertFalse(userWrite.test(permissions));
+	}
+
+	@Test
+	public void unknownAndPartialNamesGrantNothing() {
+		PermissionSet permissions = resolve("user:rea", "users", "order:read:extra", "ROLE_USER");
+
+		assertFalse(userRead.test(permissions));
+		assertFalse(userRoot.test(permissions));
+		assertFalse(orderRead.test(permissions));
+	}
+
+	@Test
+	public void scopesAndAuthoritiesAreCheckedTogether() {
+		PermissionRegistry registry = new PermissionRegistry();
+		PermissionCheck check = registry.compile(Collections.singletonList("select"),
+				Collections.singletonList("order:read"));
+		registry.freeze();
+
+		assertTrue(check.test(registry.resolve(Collections.singletonList("select"),
+				AuthorityUtils.createAuthorityList("order"))));
+		assertFalse(check.test(registry.resolve(Collections.singletonList("select"),
+				AuthorityUtils.createAuthorityList("user"))));
+		assertFalse(check.test(registry.resolve(Collections.emptyList(),
+				AuthorityUtils.createAuthorityList("order:read"))));
+		assertTrue(selectScope.test(this.registry.resolve(Collections.singletonList("select"), null)));
+	}
+
+	@Test
+	public void masksSpanMultipleWords() {
+		PermissionRegistry registry = new PermissionRegistry();
+		List<PermissionCheck> checks = new ArrayList<>();
+		for (int i = 0; i < 150; i++) {
+			checks.add(registry.compile(Collections.emptyList(), Collections.singletonList("api:" + i)));
+		}
+		PermissionCheck other = registry.compile(Collections.emptyList(), Collections.singletonList("admin"));
+		registry.freeze();
+
+		PermissionSet permissions = registry.resolve(null, AuthorityUtils.createAuthorityList("api"));
+		for (PermissionCheck check : checks) {
+			assertTrue(check.toString(), check.test(permissions));
+		}
+		assertFalse(other.test(permissions));
+
+		PermissionSet single = registry.resolve(null, AuthorityUtils.createAuthorityList("api:130"));
+		assertTrue(checks.get(130).test(single));
+		assertFalse(checks.get(3).test(single));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void frozenRegistryRejectsNewChecks() {
+		authority("order:write");
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void resolveRequiresFrozenRegistry() {
+		new PermissionRegistry().resolve(Collections.emptyList(), Collections.emptyList());
+	}
+
+	private PermissionCheck authority(String authority) {
+		return registry.compile(Collections.emptyList(), Collections.singletonList(authority));
+	}
+
+	private PermissionSet resolve(String... authorities) {
+		return registry.resolve(Arrays.asList("select"), AuthorityUtils.createAuthorityList(authorities));
+	}
+}
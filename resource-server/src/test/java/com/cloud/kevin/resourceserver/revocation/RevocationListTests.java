@@ -0,0 +1,107 @@
+package com.cloud.kevin.resourceserver.revocation;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 布隆过滤器命中后的确认，以及auth-server不可用时不在每个请求上重复确认
+ */
+public class RevocationListTests {
+
+	private static final String LIST_URI = "http://auth-server/oauth/revocations";
+
+	private final Set<String> revoked = ConcurrentHashMap.newKeySet();
+
+	private final AtomicInteger confirms = new AtomicInteger();
+
+	private volatile boolean unavailable;
+
+	private RevocationList revocationList;
+
+	@Before
+	public void setUp() {
+		revoked.add("revoked-1");
+		RestTemplate restTemplate = new RestTemplate() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public <T> T getForObject(String url, Class<T> responseType, Object... uriVariables) {
+				if (unavailable) {
+					throw new ResourceAccessException("Read timed out");
+				}
+				if (url.startsWith(LIST_URI + "/")) {
+					confirms.incrementAndGet();
+					String jti = url.substring(url.lastIndexOf('/') + 1);
+					return (T) Collections.singletonMap("revoked", revoked.contains(jti));
+				}
+
+				// 所有位都为1的布隆过滤器，任何jti都需要确认
+				byte[] bits = new byte[64];
+				Arrays.fill(bits, (byte) 0xff);
+				Map<String, Object> bloom = new LinkedHashMap<>();
+				bloom.put("bits", Base64.getEncoder().encodeToString(bits));
+				bloom.put("hashes", 3);
+				Map<String, Object> body = new LinkedHashMap<>();
+				body.put("base", 1);
+				body.put("version", 1);
+				body.put("revoked", Collections.singletonList("recent-1"));
+				body.put("bloom", url.contains("base=") ? null : bloom);
+				return (T) body;
+			}
+		};
+		revocationList = new RevocationList(restTemplate, LIST_URI, 5, 100, 300);
+	}
+
+	@Test
+	public void nothingIsRejectedBeforeFirstSync() {
+		assertFalse(revocationList.isRevoked("revoked-1"));
+		assertEquals(0, confirms.get());
+	}
+
+	@Test
+	public void bloomFilterHitsAreConfirmedAndCached() {
+		revocationList.refresh();
+
+		assertTrue(revocationList.isRevoked("recent-1"));
+		assertEquals(0, confirms.get());
+
+		assertTrue(revocationList.isRevoked("revoked-1"));
+		assertFalse(revocationList.isRevoked("active-1"));
+		assertFalse(revocationList.isRevoked("active-1"));
+		assertEquals(2, confirms.get());
+	}
+
+	@Test
+	public void failedConfirmationBacksOffUntilNextSync() {
+		revocationList.refresh();
+		assertFalse(revocationList.isRevoked("active-1"));
+
+		unavailable = true;
+		// 失败时按已撤销处理，之后的命中不再请求auth-server
+		assertTrue(revocationList.isRevoked("active-2"));
+		assertTrue(revocationList.isRevoked("active-3"));
+		assertTrue(revocationList.isRevoked("active-2"));
+		// 已确认过的结果仍然可用
+		assertFalse(revocationList.isRevoked("active-1"));
+		assertEquals(1, confirms.get());
+
+		unavailable = false;
+		revocationList.refresh();
+		assertFalse(revocationList.isRevoked("active-2"));
+		assertEquals(2, confirms.get());
+	}
+}
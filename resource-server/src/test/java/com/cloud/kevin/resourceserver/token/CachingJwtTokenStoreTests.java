@@ -0,0 +1,120 @@
+package com.cloud.kevin.resourceserver.token;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * 已验证token的缓存，以及每次读取都返回新的OAuth2Authentication
+ */
+public class CachingJwtTokenStoreTests {
+
+	private JwtAccessTokenConverter converter;
+
+	private CachingJwtTokenStore tokenStore;
+
+	@Before
+	public void setUp() throws Exception {
+		converter = new JwtAccessTokenConverter();
+		converter.setSigningKey("test-signing-key");
+		converter.afterPropertiesSet();
+		tokenStore = new CachingJwtTokenStore(converter, 100, 3600);
+	}
+
+	@Test
+	public void repeatedReadsAreServedFromCache() {
+		String token = token(600);
+
+		assertEquals("zhangsan", tokenStore.readAuthentication(token).getName());
+		tokenStore.readAuthentication(token);
+		tokenStore.readAccessToken(token);
+
+		assertEquals(1, tokenStore.stats().missCount());
+		assertEquals(2, tokenStore.stats().hitCount());
+	}
+
+	@Test
+	public void cachedAuthenticationIsCopiedOnRead() {
+		String token = token(600);
+		OAuth2Authentication first = tokenStore.readAuthentication(token);
+		OAuth2Authentication second = tokenStore.readAuthentication(token);
+
+		assertNotSame(first, second);
+		assertEquals(first.getOAuth2Request(), second.getOAuth2Request());
+
+		// 过滤器为当前请求设置的details不能泄露到并发的其他请求
+		first.setDetails("request-1");
+		assertNull(second.getDetails());
+		assertNull(tokenStore.readAuthentication(token).getDetails());
+	}
+
+	@Test
+	public void invalidTokenIsNotCached() {
+		String token = token(600);
+		String tampered = token.substring(0, token.lastIndexOf('.') + 1) + "invalid";
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				tokenStore.readAuthentication(tampered);
+				fail("Tampered token should be rejected");
+			} catch (InvalidTokenException e) {
+				// expected
+			}
+		}
+		assertEquals(0, tokenStore.stats().hitCount());
+	}
+
+	@Test
+	public void expiredTokenIsNotServedFromCache() {
+		String token = token(-60);
+
+		tokenStore.readAccessToken(token);
+		tokenStore.readAccessToken(token);
+
+		assertEquals(0, tokenStore.stats().hitCount());
+	}
+
+	@Test
+	public void removedTokenIsVerifiedAgain() {
+		String token = token(600);
+		tokenStore.readAccessToken(token);
+
+		tokenStore.removeAccessToken(new DefaultOAuth2AccessToken(token));
+		tokenStore.readAccessToken(token);
+
+		assertEquals(2, tokenStore.stats().missCount());
+	}
+
+	/**
+	 * @param expiresIn 距离过期的秒数，负数表示已经过期
+	 */
+	private String token(int expiresIn) {
+		OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "client_1",
+				AuthorityUtils.createAuthorityList("client"), true, Collections.singleton("select"),
+				Collections.singleton("resourceServer1"), null, null, null);
+		OAuth2Authentication authentication = new OAuth2Authentication(request,
+				new UsernamePasswordAuthenticationToken("zhangsan", "N/A",
+						AuthorityUtils.createAuthorityList("ROLE_USER")));
+
+		DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+		accessToken.setExpiration(new Date(System.currentTimeMillis() + expiresIn * 1000L));
+		accessToken.setScope(Collections.singleton("select"));
+
+		return converter.enhance(accessToken, authentication).getValue();
+	}
+}
@@ -0,0 +1,132 @@
+package com.cloud.kevin.resourceserver.token;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 过期的公钥在后台刷新，请求线程不等待auth-server
+ */
+public class JwkSetKeyResolverTests {
+
+	private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+	private final List<Map<String, Object>> jwks = new CopyOnWriteArrayList<>();
+
+	private final AtomicInteger fetches = new AtomicInteger();
+
+	private volatile CountDownLatch slowFetch;
+
+	private JwkSetKeyResolver keyResolver;
+
+	@Before
+	public void setUp() throws Exception {
+		jwks.add(rsaJwk("rsa-1"));
+		keyResolver = new JwkSetKeyResolver(() -> {
+			fetches.incrementAndGet();
+			CountDownLatch latch = slowFetch;
+			if (null != latch) {
+				try {
+					latch.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return Collections.singletonMap("keys", new ArrayList<>(jwks));
+		}, 0, 0);
+	}
+
+	@After
+	public void tearDown() {
+		if (null != slowFetch) {
+			slowFetch.countDown();
+		}
+		keyResolver.destroy();
+	}
+
+	@Test
+	public void unknownKidIsFetchedOnRequestThread() {
+		assertNotNull(keyResolver.resolve("rsa-1"));
+		assertEquals(1, fetches.get());
+	}
+
+	@Test
+	public void staleKeyIsRefreshedInBackground() throws Exception {
+		assertNotNull(keyResolver.resolve("rsa-1"));
+		jwks.add(rsaJwk("rsa-2"));
+
+		// auth-server无响应时，已知kid的请求仍然立即返回旧的公钥
+		slowFetch = new CountDownLatch(1);
+		long start = System.nanoTime();
+		for (int i = 0; i < 10; i++) {
+			assertNotNull(keyResolver.resolve("rsa-1"));
+		}
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+
+		// 同一时间只有一个后台刷新
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+		while (fetches.get() < 2 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(2, fetches.get());
+
+		slowFetch.countDown();
+		slowFetch = null;
+		deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+		while (null == keyResolver.resolve("rsa-2") && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertNotNull(keyResolver.resolve("rsa-2"));
+	}
+
+	@Test
+	public void unknownKidIsRateLimited() {
+		JwkSetKeyResolver limited = new JwkSetKeyResolver(() -> {
+			fetches.incrementAndGet();
+			return Collections.singletonMap("keys", new ArrayList<>(jwks));
+		}, 300, 60);
+		try {
+			assertNotNull(limited.resolve("rsa-1"));
+			assertNull(limited.resolve("forged-1"));
+			assertNull(limited.resolve("forged-2"));
+			assertEquals(1, fetches.get());
+		} finally {
+			limited.destroy();
+		}
+	}
+
+	private static Map<String, Object> rsaJwk(String kid) throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		KeyPair keyPair = generator.generateKeyPair();
+		RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+
+		Map<String, Object> jwk = new LinkedHashMap<>();
+		jwk.put("kty", "RSA");
+		jwk.put("kid", kid);
+		jwk.put("use", "sig");
+		jwk.put("alg", "RS256");
+		jwk.put("n", ENCODER.encodeToString(publicKey.getModulus().toByteArray()));
+		jwk.put("e", ENCODER.encodeToString(publicKey.getPublicExponent().toByteArray()));
+		return jwk;
+	}
+}
@@ -0,0 +1,109 @@
+package com.cloud.kevin.servicegateway.config;
+
+import com.cloud.kevin.servicegateway.filter.JwtAuthenticationGlobalFilter;
+import com.cloud.kevin.servicegateway.filter.RequestTimeoutGatewayFilterFactory;
+import com.cloud.kevin.servicegateway.token.JwkSetKeyResolver;
+import com.cloud.kevin.servicegateway.token.JwtTokenVerifier;
+import lombok.Data;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 网关配置：在边缘完成JWT验签，并提供按路由配置的请求超时
+ *
+ * @author Kevin
+ */
+@Configuration
+@EnableConfigurationProperties(GatewayConfiguration.JwtSetting.class)
+public class GatewayConfiguration {
+
+    /**
+     * 配置了JWK Set地址时按kid获取公钥，刷新在后台线程中执行；未配置时只使用key-value中的公钥验签
+     * 启动时的同步获取和后台刷新都受连接和读取超时限制，auth-server不可用时不会长时间阻塞启动或占住刷新线程
+     *
+     * @param restTemplateBuilder
+     * @param jwtSetting
+     * @return
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "gateway.jwt", name = "jwk-set-uri")
+    public JwkSetKeyResolver jwkSetKeyResolver(RestTemplateBuilder restTemplateBuilder, JwtSetting jwtSetting) {
+        RestTemplate restTemplate = restTemplateBuilder
+                .setConnectTimeout(jwtSetting.getJwkConnectTimeout())
+                .setReadTimeout(jwtSetting.getJwkReadTimeout())
+                .build();
+
+        return new JwkSetKeyResolver(() -> restTemplate.getForObject(jwtSetting.getJwkSetUri(), Map.class),
+                jwtSetting.getJwkRefreshInterval(), jwtSetting.getJwkMinRefreshInterval());
+    }
+
+    @Bean
+    public JwtTokenVerifier jwtTokenVerifier(JwtSetting jwtSetting, ObjectProvider<JwkSetKeyResolver> keyResolver) {
+        return new JwtTokenVerifier(jwtSetting.getKeyValue(), keyResolver.getIfAvailable(),
+                jwtSetting.getCacheMaximumSize(), jwtSetting.getCacheMaximumTtl());
+    }
+
+    @Bean
+    public JwtAuthenticationGlobalFilter jwtAuthenticationGlobalFilter(JwtTokenVerifier jwtTokenVerifier,
+                                                                       JwtSetting jwtSetting) {
+        return new JwtAuthenticationGlobalFilter(jwtTokenVerifier, jwtSetting.getPermitPaths());
+    }
+
+    @Bean
+    public RequestTimeoutGatewayFilterFactory requestTimeoutGatewayFilterFactory() {
+        return new RequestTimeoutGatewayFilterFactory();
+    }
+
+    @ConfigurationProperties(prefix = "gateway.jwt")
+    @Data
+    public static class JwtSetting {
+        /**
+         * PEM格式的RSA公钥，与resource-server的security.oauth2.resource.jwt.key-value相同，用于验证不带kid的token
+         */
+        private String keyValue;
+        /**
+         * auth-server的JWK Set地址，为空时只使用key-value中的公钥验签
+         */
+        private String jwkSetUri;
+        /**
+         * 公钥缓存的刷新间隔(秒)
+         */
+        private long jwkRefreshInterval = 300;
+        /**
+         * 遇到未知kid时两次刷新的最小间隔(秒)
+         */
+        private long jwkMinRefreshInterval = 10;
+        /**
+         * 获取JWK Set的连接超时(毫秒)
+         */
+        private int jwkConnectTimeout = 2000;
+        /**
+         * 获取JWK Set的读取超时(毫秒)
+         */
+        private int jwkReadTimeout = 3000;
+        /**
+         * 不需要验证token的路径，与网关收到的请求路径匹配(去掉服务前缀之前)
+         * 注册中心自动生成的路由是/{serviceId}/**，这类路由需要带服务前缀，例如/auth-server/oauth/**；
+         * 不要为了匹配带前缀的路径而在/oauth前加通配符，否则其他服务下的同名路径也不再验证token
+         */
+        private List<String> permitPaths = new ArrayList<>();
+        /**
+         * 已验证token缓存的最大条目数
+         */
+        private long cacheMaximumSize = 10000;
+        /**
+         * 已验证token的最长缓存时间(秒)
+         */
+        private long cacheMaximumTtl = 3600;
+    }
+}
@@ -0,0 +1,160 @@
+package com.cloud.kevin.servicegateway.filter;
+
+import com.cloud.kevin.servicegateway.token.InvalidJwtException;
+import com.cloud.kevin.servicegateway.token.JwtTokenVerifier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 在网关上完成JWT验签，并把验证通过的claims以请求头的形式转发给下游服务
+ * token的获取方式与resource-server一致：Authorization头、access_token参数或access_token cookie。
+ * 客户端自带的X-Auth-*请求头会被删除，防止伪造。
+ *
+ * @author Kevin
+ */
+@Slf4j
+public class JwtAuthenticationGlobalFilter implements GlobalFilter, Ordered {
+
+    public static final String HEADER_CLIENT_ID = "X-Auth-Client-Id";
+
+    public static final String HEADER_USER_NAME = "X-Auth-User-Name";
+
+    public static final String HEADER_SCOPE = "X-Auth-Scope";
+
+    public static final String HEADER_AUTHORITIES = "X-Auth-Authorities";
+
+    public static final String HEADER_JTI = "X-Auth-Jti";
+
+    private static final String HEADER_PREFIX = "X-Auth-";
+
+    private static final String BEARER = "Bearer ";
+
+    private static final String ACCESS_TOKEN = "access_token";
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    private final JwtTokenVerifier jwtTokenVerifier;
+
+    private final List<String> permitPaths;
+
+    /**
+     * @param jwtTokenVerifier
+     * @param permitPaths      不需要验证token的路径，例如auth-server的/oauth/**，与去掉服务前缀之前的请求路径匹配
+     */
+    public JwtAuthenticationGlobalFilter(JwtTokenVerifier jwtTokenVerifier, List<String> permitPaths) {
+        this.jwtTokenVerifier = jwtTokenVerifier;
+        this.permitPaths = permitPaths;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        HttpHeaders headers = new HttpHeaders();
+
+        request.getHeaders().forEach((name, values) -> {
+            if (!name.regionMatches(true, 0, HEADER_PREFIX, 0, HEADER_PREFIX.length())) {
+                headers.put(name, values);
+            }
+        });
+
+        if (!isPermitted(request.getURI().getPath())) {
+            String token = extractToken(request);
+
+            if (null == token) {
+                return unauthorized(exchange, "Full authentication is required to access this resource");
+            }
+
+            try {
+                Map<String, Object> claims = jwtTokenVerifier.verify(token);
+                forwardClaims(claims, headers);
+            } catch (InvalidJwtException e) {
+                log.debug("Rejecting request to {}: {}", request.getURI().getPath(), e.getMessage());
+                return unauthorized(exchange, e.getMessage());
+            }
+        }
+
+        ServerHttpRequest mutated = new ServerHttpRequestDecorator(request) {
+            @Override
+            public HttpHeaders getHeaders() {
+                return headers;
+            }
+        };
+
+        return chain.filter(exchange.mutate().request(mutated).build());
+    }
+
+    private boolean isPermitted(String path) {
+        for (String pattern : permitPaths) {
+            if (pathMatcher.match(pattern, path)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String extractToken(ServerHttpRequest request) {
+        String authorization = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (null != authorization && authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            return authorization.substring(BEARER.length()).trim();
+        }
+
+        String parameter = request.getQueryParams().getFirst(ACCESS_TOKEN);
+        if (StringUtils.hasText(parameter)) {
+            return parameter;
+        }
+
+        HttpCookie cookie = request.getCookies().getFirst(ACCESS_TOKEN);
+        if (null != cookie && StringUtils.hasText(cookie.getValue())) {
+            return cookie.getValue();
+        }
+
+        return null;
+    }
+
+    private static void forwardClaims(Map<String, Object> claims, HttpHeaders headers) {
+        setHeader(headers, HEADER_CLIENT_ID, claims.get("client_id"));
+        setHeader(headers, HEADER_USER_NAME, claims.get("user_name"));
+        setHeader(headers, HEADER_SCOPE, claims.get("scope"));
+        setHeader(headers, HEADER_AUTHORITIES, claims.get("authorities"));
+        setHeader(headers, HEADER_JTI, claims.get("jti"));
+    }
+
+    private static void setHeader(HttpHeaders headers, String name, Object value) {
+        if (value instanceof Collection) {
+            headers.set(name, StringUtils.collectionToCommaDelimitedString((Collection<?>) value));
+        } else if (null != value) {
+            headers.set(name, value.toString());
+        }
+    }
+
+    private static Mono<Void> unauthorized(ServerWebExchange exchange, String description) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.UNAUTHORIZED);
+        response.getHeaders().set(HttpHeaders.WWW_AUTHENTICATE,
+                "Bearer error=\"invalid_token\", error_description=\"" + description + "\"");
+
+        return response.setComplete();
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 100;
+    }
+}
@@ -0,0 +1,58 @@
+package com.cloud.kevin.servicegateway.filter;
+
+import lombok.Data;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 按路由配置的请求超时，超时后取消上游请求并返回504
+ * 用法：filters: - RequestTimeout=5000 (单位毫秒)
+ *
+ * @author Kevin
+ */
+public class RequestTimeoutGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<RequestTimeoutGatewayFilterFactory.Config> {
+
+    public RequestTimeoutGatewayFilterFactory() {
+        super(Config.class);
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return Collections.singletonList("timeout");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        Duration timeout = Duration.ofMillis(config.getTimeout());
+
+        return (exchange, chain) -> chain.filter(exchange)
+                .timeout(timeout)
+                .onErrorResume(TimeoutException.class, e -> {
+                    ServerHttpResponse response = exchange.getResponse();
+
+                    if (response.isCommitted()) {
+                        return Mono.error(e);
+                    }
+
+                    response.setStatusCode(HttpStatus.GATEWAY_TIMEOUT);
+                    return response.setComplete();
+                });
+    }
+
+    @Data
+    public static class Config {
+        /**
+         * 超时时间(毫秒)
+         */
+        private long timeout;
+    }
+}
@@ -0,0 +1,17 @@
+package com.cloud.kevin.servicegateway.token;
+
+/**
+ * token验签失败、格式错误或已过期
+ *
+ * @author Kevin
+ */
+public class InvalidJwtException extends RuntimeException {
+
+    public InvalidJwtException(String message) {
+        super(message);
+    }
+
+    public InvalidJwtException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
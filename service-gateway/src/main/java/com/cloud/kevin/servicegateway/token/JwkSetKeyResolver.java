@@ -0,0 +1,197 @@
+package com.cloud.kevin.servicegateway.token;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.math.BigInteger;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 从auth-server的JWK Set中获取验签公钥，并按kid缓存在内存中
+ * 与resource-server的JwkSetKeyResolver相同：缓存超过refreshInterval后刷新，遇到未知的kid(密钥刚刚轮换)时立即刷新，
+ * 两次刷新的间隔不小于minRefreshInterval，防止伪造的kid打满auth-server。
+ * 不同的是网关的请求运行在Netty的事件循环线程上，不能等待HTTP请求，刷新只在后台线程中执行：
+ * 启动时同步获取一次(受jwkSetSource的连接和读取超时限制，失败时以空的公钥启动)，
+ * 之后请求线程只触发刷新，未知kid的token在刷新完成前被拒绝。
+ *
+ * @author Kevin
+ */
+@Slf4j
+public class JwkSetKeyResolver implements InitializingBean, DisposableBean {
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final Supplier<Map<String, Object>> jwkSetSource;
+
+    private final long refreshInterval;
+
+    private final long minRefreshInterval;
+
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jwk-set-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Map<String, VerificationKey> keys = Collections.emptyMap();
+
+    private volatile long fetchedAt;
+
+    /**
+     * @param jwkSetSource       获取JWK Set的方式，一般为请求auth-server的/.well-known/jwks.json
+     * @param refreshInterval    公钥缓存的刷新间隔(秒)
+     * @param minRefreshInterval 两次刷新的最小间隔(秒)
+     */
+    public JwkSetKeyResolver(Supplier<Map<String, Object>> jwkSetSource, long refreshInterval, long minRefreshInterval) {
+        this.jwkSetSource = jwkSetSource;
+        this.refreshInterval = TimeUnit.SECONDS.toMillis(refreshInterval);
+        this.minRefreshInterval = TimeUnit.SECONDS.toMillis(minRefreshInterval);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        refresh();
+    }
+
+    /**
+     * 按kid查找验签公钥，不阻塞调用线程
+     *
+     * @param kid
+     * @return 不存在时返回null，并在后台刷新
+     */
+    public VerificationKey resolve(String kid) {
+        VerificationKey key = keys.get(kid);
+        long age = System.currentTimeMillis() - fetchedAt;
+
+        if (age >= (null == key ? minRefreshInterval : refreshInterval)) {
+            refreshAsync();
+        }
+
+        return key;
+    }
+
+    private void refreshAsync() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    refresh();
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            // 关闭后不再刷新
+            refreshing.set(false);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void refresh() {
+        fetchedAt = System.currentTimeMillis();
+
+        try {
+            Map<String, Object> jwkSet = jwkSetSource.get();
+            Map<String, VerificationKey> newKeys = new HashMap<>();
+
+            for (Map<String, Object> jwk : (List<Map<String, Object>>) jwkSet.get("keys")) {
+                String kid = (String) jwk.get("kid");
+                if (null == kid || (null != jwk.get("use") && !"sig".equals(jwk.get("use")))) {
+                    continue;
+                }
+
+                try {
+                    newKeys.put(kid, toVerificationKey(jwk));
+                } catch (Exception e) {
+                    log.warn("Skipping unsupported JWK {}: {}", kid, e.getMessage());
+                }
+            }
+
+            keys = Collections.unmodifiableMap(newKeys);
+            log.info("JWK Set refreshed, kids: {}", newKeys.keySet());
+        } catch (Exception e) {
+            // 获取失败时继续使用旧的公钥
+            log.error("Failed to fetch JWK Set: ", e);
+        }
+    }
+
+    private static VerificationKey toVerificationKey(Map<String, Object> jwk) throws GeneralSecurityException {
+        String kty = (String) jwk.get("kty");
+
+        if ("RSA".equals(kty)) {
+            RSAPublicKeySpec spec = new RSAPublicKeySpec(unsigned(jwk.get("n")), unsigned(jwk.get("e")));
+            return new VerificationKey(algorithm(jwk, JwsAlgorithm.RS256),
+                    KeyFactory.getInstance("RSA").generatePublic(spec));
+        }
+
+        if ("EC".equals(kty) && "P-256".equals(jwk.get("crv"))) {
+            AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+            parameters.init(new ECGenParameterSpec("secp256r1"));
+            ECPublicKeySpec spec = new ECPublicKeySpec(new ECPoint(unsigned(jwk.get("x")), unsigned(jwk.get("y"))),
+                    parameters.getParameterSpec(ECParameterSpec.class));
+            return new VerificationKey(algorithm(jwk, JwsAlgorithm.ES256),
+                    KeyFactory.getInstance("EC").generatePublic(spec));
+        }
+
+        throw new GeneralSecurityException("Unsupported key type: " + kty);
+    }
+
+    private static JwsAlgorithm algorithm(Map<String, Object> jwk, JwsAlgorithm defaultAlgorithm) {
+        Object alg = jwk.get("alg");
+
+        return null == alg ? defaultAlgorithm : JwsAlgorithm.valueOf((String) alg);
+    }
+
+    private static BigInteger unsigned(Object value) {
+        return new BigInteger(1, DECODER.decode((String) value));
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    public static class VerificationKey {
+
+        private final JwsAlgorithm algorithm;
+
+        private final PublicKey publicKey;
+
+        VerificationKey(JwsAlgorithm algorithm, PublicKey publicKey) {
+            this.algorithm = algorithm;
+            this.publicKey = publicKey;
+        }
+
+        public JwsAlgorithm getAlgorithm() {
+            return algorithm;
+        }
+
+        public PublicKey getPublicKey() {
+            return publicKey;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.cloud.kevin.servicegateway.token;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Arrays;
+
+/**
+ * 支持验签的JWT签名算法，与auth-server签发token时使用的算法对应
+ * auth-server的jwt.JwsAlgorithm是规范副本，这里与resource-server一样只拷贝了其中的验签部分，修改时需要同步
+ *
+ * @author Kevin
+ */
+public enum JwsAlgorithm {
+
+    RS256("SHA256withRSA", 0),
+
+    ES256("SHA256withECDSA", 32);
+
+    private final String jcaName;
+
+    /**
+     * ECDSA签名中r、s的字节长度，JWS中的签名为定长的 r||s，JCA验签需要DER编码
+     */
+    private final int ecCoordinateLength;
+
+    JwsAlgorithm(String jcaName, int ecCoordinateLength) {
+        this.jcaName = jcaName;
+        this.ecCoordinateLength = ecCoordinateLength;
+    }
+
+    public boolean verify(PublicKey publicKey, byte[] content, byte[] signed) throws GeneralSecurityException {
+        if (ecCoordinateLength > 0) {
+            if (signed.length != ecCoordinateLength * 2) {
+                return false;
+            }
+            signed = concatToDer(signed, ecCoordinateLength);
+        }
+
+        Signature signature = Signature.getInstance(jcaName);
+        signature.initVerify(publicKey);
+        signature.update(content);
+
+        return signature.verify(signed);
+    }
+
+    /**
+     * 定长的 r||s 转换为DER编码的 SEQUENCE { INTEGER r, INTEGER s }
+     */
+    private static byte[] concatToDer(byte[] concat, int length) {
+        byte[] r = new BigInteger(1, Arrays.copyOfRange(concat, 0, length)).toByteArray();
+        byte[] s = new BigInteger(1, Arrays.copyOfRange(concat, length, length * 2)).toByteArray();
+
+        byte[] der = new byte[6 + r.length + s.length];
+        der[0] = 0x30;
+        der[1] = (byte) (4 + r.length + s.length);
+        der[2] = 0x02;
+        der[3] = (byte) r.length;
+        System.arraycopy(r, 0, der, 4, r.length);
+        der[4 + r.length] = 0x02;
+        der[5 + r.length] = (byte) s.length;
+        System.arraycopy(s, 0, der, 6 + r.length, s.length);
+
+        return der;
+    }
+}
@@ -0,0 +1,164 @@
+package com.cloud.kevin.servicegateway.token;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.security.jwt.Jwt;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.RsaVerifier;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 网关使用的JWT验签器，与resource-server的验签方式相同：
+ * 配置了JWK Set时按JWT头中的kid获取公钥验签(支持RS256、ES256和密钥轮换)，
+ * 不带kid的token仍使用key-value中的公钥(security.oauth2.resource.jwt.key-value)验签。
+ * 验签通过的claims按token缓存到exp时刻，同一token在有效期内只验签一次
+ *
+ * @author Kevin
+ */
+public class JwtTokenVerifier implements MeterBinder {
+
+    private static final String EXP = "exp";
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final SignatureVerifier verifier;
+
+    private final JwkSetKeyResolver keyResolver;
+
+    private final Cache<String, Map<String, Object>> cache;
+
+    /**
+     * @param keyValue    PEM格式的RSA公钥，用于验证不带kid的token
+     * @param keyResolver 按kid获取公钥，为null时所有token都使用keyValue验签
+     * @param maximumSize 缓存的最大条目数
+     * @param maximumTtl  单个条目的最长缓存时间(秒)
+     */
+    public JwtTokenVerifier(String keyValue, JwkSetKeyResolver keyResolver, long maximumSize, long maximumTtl) {
+        this.verifier = new RsaVerifier(keyValue);
+        this.keyResolver = keyResolver;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new ClaimsExpiry(TimeUnit.SECONDS.toNanos(maximumTtl)))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 验签并返回token中的claims
+     *
+     * @param token
+     * @return
+     * @throws InvalidJwtException 签名不正确、格式错误或已过期
+     */
+    public Map<String, Object> verify(String token) {
+        Map<String, Object> claims = cache.getIfPresent(token);
+
+        if (null == claims) {
+            claims = decodeAndVerify(token);
+            cache.put(token, claims);
+        }
+
+        Object exp = claims.get(EXP);
+        if (exp instanceof Number && ((Number) exp).longValue() * 1000 <= System.currentTimeMillis()) {
+            throw new InvalidJwtException("Access token expired");
+        }
+
+        return claims;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> decodeAndVerify(String token) {
+        int headerEnd = token.indexOf('.');
+        int payloadEnd = token.indexOf('.', headerEnd + 1);
+        if (headerEnd < 0 || payloadEnd < 0 || token.indexOf('.', payloadEnd + 1) >= 0) {
+            throw new InvalidJwtException("Cannot convert access token to JSON");
+        }
+
+        try {
+            Map<String, Object> header = objectMapper.readValue(DECODER.decode(token.substring(0, headerEnd)), Map.class);
+            String kid = (String) header.get("kid");
+
+            if (null == kid || null == keyResolver) {
+                Jwt jwt = JwtHelper.decodeAndVerify(token, verifier);
+                return Collections.unmodifiableMap(objectMapper.readValue(jwt.getClaims(), Map.class));
+            }
+
+            JwkSetKeyResolver.VerificationKey key = keyResolver.resolve(kid);
+            if (null == key) {
+                throw new InvalidJwtException("Unknown signing key: " + kid);
+            }
+            if (!key.getAlgorithm().name().equals(header.get("alg"))) {
+                throw new InvalidJwtException("Signing algorithm mismatch: " + header.get("alg"));
+            }
+
+            byte[] signingInput = token.substring(0, payloadEnd).getBytes(StandardCharsets.US_ASCII);
+            byte[] signature = DECODER.decode(token.substring(payloadEnd + 1));
+            if (!key.getAlgorithm().verify(key.getPublicKey(), signingInput, signature)) {
+                throw new InvalidJwtException("Invalid token signature");
+            }
+
+            return Collections.unmodifiableMap(objectMapper.readValue(
+                    DECODER.decode(token.substring(headerEnd + 1, payloadEnd)), Map.class));
+        } catch (InvalidJwtException e) {
+            throw e;
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            throw new InvalidJwtException("Cannot convert access token to JSON", e);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new CaffeineCacheMetrics(cache, "gatewayJwtToken", Tags.empty()).bindTo(registry);
+    }
+
+    /**
+     * 每个条目在token的exp时刻过期，最长不超过maximumTtl
+     */
+    private static class ClaimsExpiry implements Expiry<String, Map<String, Object>> {
+
+        private final long maximumTtlNanos;
+
+        ClaimsExpiry(long maximumTtlNanos) {
+            this.maximumTtlNanos = maximumTtlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(String key, Map<String, Object> value, long currentTime) {
+            Object exp = value.get(EXP);
+
+            if (!(exp instanceof Number)) {
+                return maximumTtlNanos;
+            }
+
+            long remaining = TimeUnit.MILLISECONDS.toNanos(((Number) exp).longValue() * 1000 - System.currentTimeMillis());
+
+            return Math.max(0, Math.min(remaining, maximumTtlNanos));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Map<String, Object> value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String key, Map<String, Object> value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.cloud.kevin.servicegateway.filter;
+
+import com.cloud.kevin.servicegateway.token.JwtTokenVerifier;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * permit-paths与网关收到的请求路径匹配，注册中心生成的路由需要带服务前缀
+ */
+public class JwtAuthenticationGlobalFilterTests {
+
+	private JwtAuthenticationGlobalFilter filter;
+
+	@Before
+	public void setUp() throws Exception {
+		KeyPairGenerator rsa = KeyPairGenerator.getInstance("RSA");
+		rsa.initialize(2048);
+		String pem = "-----BEGIN PUBLIC KEY-----\n"
+				+ Base64.getEncoder().encodeToString(rsa.generateKeyPair().getPublic().getEncoded())
+				+ "\n-----END PUBLIC KEY-----";
+
+		filter = new JwtAuthenticationGlobalFilter(new JwtTokenVerifier(pem, null, 100, 3600),
+				Arrays.asList("/oauth/**", "/auth-server/oauth/**"));
+	}
+
+	@Test
+	public void explicitRoutePathIsPermitted() {
+		assertTrue(passes("/oauth/token"));
+	}
+
+	@Test
+	public void servicePrefixedPathIsPermitted() {
+		assertTrue(passes("/auth-server/oauth/token"));
+	}
+
+	@Test
+	public void samePathUnderOtherServiceRequiresToken() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(
+				MockServerHttpRequest.get("/micro-service/oauth/token").build());
+
+		assertFalse(passes(exchange));
+		assertEquals(HttpStatus.UNAUTHORIZED, exchange.getResponse().getStatusCode());
+	}
+
+	private boolean passes(String path) {
+		return passes(MockServerWebExchange.from(MockServerHttpRequest.post(path).build()));
+	}
+
+	private boolean passes(MockServerWebExchange exchange) {
+		AtomicBoolean forwarded = new AtomicBoolean();
+		filter.filter(exchange, forwardedExchange -> {
+			forwarded.set(true);
+			return Mono.empty();
+		}).block();
+
+		return forwarded.get();
+	}
+}
@@ -0,0 +1,207 @@
+package com.cloud.kevin.servicegateway.token;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 按kid从JWK Set获取公钥验签，不带kid的token使用静态公钥
+ */
+public class JwtTokenVerifierTests {
+
+	private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final List<Map<String, Object>> jwks = new CopyOnWriteArrayList<>();
+
+	private final AtomicInteger fetches = new AtomicInteger();
+
+	private KeyPair rsaKey;
+
+	private KeyPair ecKey;
+
+	private JwkSetKeyResolver keyResolver;
+
+	private JwtTokenVerifier verifier;
+
+	@Before
+	public void setUp() throws Exception {
+		KeyPairGenerator rsa = KeyPairGenerator.getInstance("RSA");
+		rsa.initialize(2048);
+		rsaKey = rsa.generateKeyPair();
+
+		KeyPairGenerator ec = KeyPairGenerator.getInstance("EC");
+		ec.initialize(new ECGenParameterSpec("secp256r1"));
+		ecKey = ec.generateKeyPair();
+
+		jwks.add(rsaJwk("rsa-1", rsaKey));
+		keyResolver = new JwkSetKeyResolver(() -> {
+			fetches.incrementAndGet();
+			return Collections.singletonMap("keys", new ArrayList<>(jwks));
+		}, 300, 0);
+		keyResolver.afterPropertiesSet();
+
+		String pem = "-----BEGIN PUBLIC KEY-----\n"
+				+ Base64.getEncoder().encodeToString(rsaKey.getPublic().getEncoded())
+				+ "\n-----END PUBLIC KEY-----";
+		verifier = new JwtTokenVerifier(pem, keyResolver, 100, 3600);
+	}
+
+	@After
+	public void tearDown() {
+		keyResolver.destroy();
+	}
+
+	@Test
+	public void tokenWithKidIsVerifiedWithJwk() throws Exception {
+		String token = sign("RS256", "rsa-1", "SHA256withRSA", rsaKey.getPrivate(), false);
+
+		assertEquals("client", verifier.verify(token).get("client_id"));
+		assertEquals(1, fetches.get());
+	}
+
+	@Test
+	public void tokenWithoutKidIsVerifiedWithStaticKey() throws Exception {
+		String token = sign("RS256", null, "SHA256withRSA", rsaKey.getPrivate(), false);
+
+		assertEquals("client", verifier.verify(token).get("client_id"));
+	}
+
+	@Test
+	public void rotatedEs256KeyIsFetchedInBackground() throws Exception {
+		String token = sign("ES256", "ec-1", "SHA256withECDSA", ecKey.getPrivate(), true);
+		jwks.add(ecJwk("ec-1", ecKey));
+
+		// 请求线程不等待刷新，第一次遇到新kid时拒绝并触发后台刷新
+		try {
+			verifier.verify(token);
+			fail("Unknown kid should be rejected until the JWK Set is refreshed");
+		} catch (InvalidJwtException e) {
+			assertTrue(e.getMessage().contains("ec-1"));
+		}
+
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+		while (null == keyResolver.resolve("ec-1") && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals("client", verifier.verify(token).get("client_id"));
+	}
+
+	@Test
+	public void tamperedSignatureIsRejected() throws Exception {
+		jwks.add(ecJwk("ec-1", ecKey));
+		keyResolver.afterPropertiesSet();
+		String token = sign("ES256", "ec-1", "SHA256withECDSA", ecKey.getPrivate(), true);
+		String other = sign("ES256", "ec-1", "SHA256withECDSA", ecKey.getPrivate(), true, "other");
+		String tampered = token.substring(0, token.lastIndexOf('.')) + other.substring(other.lastIndexOf('.'));
+
+		try {
+			verifier.verify(tampered);
+			fail("Signature of another payload should be rejected");
+		} catch (InvalidJwtException e) {
+			assertEquals("Invalid token signature", e.getMessage());
+		}
+	}
+
+	private String sign(String alg, String kid, String jcaName, PrivateKey key, boolean concat) throws Exception {
+		return sign(alg, kid, jcaName, key, concat, "client");
+	}
+
+	private String sign(String alg, String kid, String jcaName, PrivateKey key, boolean concat, String clientId)
+			throws Exception {
+		Map<String, Object> header = new LinkedHashMap<>();
+		header.put("alg", alg);
+		if (null != kid) {
+			header.put("kid", kid);
+		}
+		header.put("typ", "JWT");
+		Map<String, Object> claims = new LinkedHashMap<>();
+		claims.put("client_id", clientId);
+		claims.put("exp", TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 600);
+
+		String signingInput = ENCODER.encodeToString(objectMapper.writeValueAsBytes(header)) + "."
+				+ ENCODER.encodeToString(objectMapper.writeValueAsBytes(claims));
+		Signature signature = Signature.getInstance(jcaName);
+		signature.initSign(key);
+		signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+		byte[] signed = signature.sign();
+
+		return signingInput + "." + ENCODER.encodeToString(concat ? derToConcat(signed) : signed);
+	}
+
+	/**
+	 * JCA输出的DER编码转换为JWS要求的定长 r||s
+	 */
+	private static byte[] derToConcat(byte[] der) {
+		int offset = 2;
+		int rLength = der[offset + 1];
+		BigInteger r = new BigInteger(1, Arrays.copyOfRange(der, offset + 2, offset + 2 + rLength));
+		offset += 2 + rLength;
+		int sLength = der[offset + 1];
+		BigInteger s = new BigInteger(1, Arrays.copyOfRange(der, offset + 2, offset + 2 + sLength));
+
+		byte[] concat = new byte[64];
+		System.arraycopy(unsigned(r, 32), 0, concat, 0, 32);
+		System.arraycopy(unsigned(s, 32), 0, concat, 32, 32);
+		return concat;
+	}
+
+	private static Map<String, Object> rsaJwk(String kid, KeyPair keyPair) {
+		RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+		Map<String, Object> jwk = new LinkedHashMap<>();
+		jwk.put("kty", "RSA");
+		jwk.put("kid", kid);
+		jwk.put("use", "sig");
+		jwk.put("alg", "RS256");
+		jwk.put("n", ENCODER.encodeToString(publicKey.getModulus().toByteArray()));
+		jwk.put("e", ENCODER.encodeToString(publicKey.getPublicExponent().toByteArray()));
+		return jwk;
+	}
+
+	private static Map<String, Object> ecJwk(String kid, KeyPair keyPair) {
+		ECPublicKey publicKey = (ECPublicKey) keyPair.getPublic();
+		Map<String, Object> jwk = new LinkedHashMap<>();
+		jwk.put("kty", "EC");
+		jwk.put("kid", kid);
+		jwk.put("use", "sig");
+		jwk.put("alg", "ES256");
+		jwk.put("crv", "P-256");
+		jwk.put("x", ENCODER.encodeToString(unsigned(publicKey.getW().getAffineX(), 32)));
+		jwk.put("y", ENCODER.encodeToString(unsigned(publicKey.getW().getAffineY(), 32)));
+		return jwk;
+	}
+
+	private static byte[] unsigned(BigInteger value, int length) {
+		byte[] bytes = value.toByteArray();
+		byte[] result = new byte[length];
+		int copy = Math.min(bytes.length, length);
+		System.arraycopy(bytes, bytes.length - copy, result, length - copy, copy);
+		return result;
+	}
+}
@@ -0,0 +1,160 @@
+package com.cloud.kevin.startup;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.Lifecycle;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.type.MethodMetadata;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.PatternMatchUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 启动优化
+ * 1. 组件索引：spring-context-indexer在编译时生成META-INF/spring.components，启动时不再扫描classpath，
+ * 加-Dspring.index.ignore=true可以关闭；
+ * 2. 按需创建bean：startup.lazy-init.enabled=true时除排除列表外的bean都在第一次使用时才创建(Boot 2.0没有全局的懒加载开关)，
+ * 启动后台线程的bean需要加入排除列表，各模块的排除列表及原因见application.yml；
+ * SmartInitializingSingleton和Lifecycle的回调只在容器启动时执行，这类bean始终立即创建；
+ * 3. AppCDS：appcds profile打包时以startup.training=true启动一次，记录加载的类并生成target/app.jsa，见startup-parent/pom.xml。
+ * <p>
+ * 通过META-INF/spring.factories自动配置，服务模块依赖本模块并以startup-parent为父工程即可。
+ *
+ * @author Kevin
+ */
+@Slf4j
+@Configuration
+public class StartupOptimizationAutoConfiguration {
+
+    /**
+     * BeanFactoryPostProcessor要在其他bean之前创建，必须是static方法，配置只能直接从Environment绑定
+     *
+     * @param environment
+     * @return
+     */
+    @Bean
+    public static LazyInitBeanFactoryPostProcessor lazyInitBeanFactoryPostProcessor(Environment environment) {
+        LazyInitSetting setting = Binder.get(environment)
+                .bind("startup.lazy-init", LazyInitSetting.class)
+                .orElseGet(LazyInitSetting::new);
+
+        return new LazyInitBeanFactoryPostProcessor(setting);
+    }
+
+    /**
+     * 生成AppCDS类列表的训练运行，启动完成后立即退出
+     *
+     * @return
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "startup", name = "training")
+    public ApplicationListener<ApplicationReadyEvent> trainingRunExit() {
+        return event -> {
+            log.info("Training run finished, exiting");
+            System.exit(SpringApplication.exit(event.getApplicationContext()));
+        };
+    }
+
+    public static class LazyInitBeanFactoryPostProcessor implements BeanFactoryPostProcessor {
+
+        private static final String CONFIGURATION_CLASS_ATTRIBUTE =
+                "org.springframework.context.annotation.ConfigurationClassPostProcessor.configurationClass";
+
+        /**
+         * 容器启动时回调的类型，延迟创建后回调不会执行
+         */
+        private static final Class<?>[] EAGER_TYPES = {SmartInitializingSingleton.class, Lifecycle.class};
+
+        private final LazyInitSetting setting;
+
+        public LazyInitBeanFactoryPostProcessor(LazyInitSetting setting) {
+            this.setting = setting;
+        }
+
+        @Override
+        public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+            if (!setting.isEnabled()) {
+                return;
+            }
+
+            String[] excludes = setting.getExcludes().toArray(new String[0]);
+            int count = 0;
+            for (String name : beanFactory.getBeanDefinitionNames()) {
+                BeanDefinition definition = beanFactory.getBeanDefinition(name);
+                if (isLazyCandidate(name, definition, excludes, beanFactory.getBeanClassLoader())) {
+                    definition.setLazyInit(true);
+                    count++;
+                }
+            }
+            log.info("Marked {} of {} beans lazy", count, beanFactory.getBeanDefinitionCount());
+        }
+
+        /**
+         * 配置类保持立即创建，否则其中@Bean方法声明的SmartLifecycle按类型查找不到，不会被启动
+         */
+        private boolean isLazyCandidate(String name, BeanDefinition definition, String[] excludes,
+                                        ClassLoader classLoader) {
+            if (definition.isAbstract() || definition.getRole() != BeanDefinition.ROLE_APPLICATION
+                    || null != definition.getAttribute(CONFIGURATION_CLASS_ATTRIBUTE)) {
+                return false;
+            }
+
+            String className = definition.getBeanClassName();
+            return !PatternMatchUtils.simpleMatch(excludes, name)
+                    && (null == className || !PatternMatchUtils.simpleMatch(excludes, className))
+                    && !requiresEagerInit(definition, classLoader);
+        }
+
+        /**
+         * 按@Bean方法的返回类型或bean的类判断，不实例化bean；无法确定类型时按需要立即创建处理
+         * 延迟创建的SmartInitializingSingleton在preInstantiateSingletons之后才创建，afterSingletonsInstantiated不会被调用
+         */
+        private boolean requiresEagerInit(BeanDefinition definition, ClassLoader classLoader) {
+            String typeName = definition.getBeanClassName();
+            if (definition instanceof AnnotatedBeanDefinition) {
+                MethodMetadata factoryMethod = ((AnnotatedBeanDefinition) definition).getFactoryMethodMetadata();
+                if (null != factoryMethod) {
+                    typeName = factoryMethod.getReturnTypeName();
+                }
+            }
+            if (null == typeName) {
+                return true;
+            }
+
+            try {
+                Class<?> type = ClassUtils.forName(typeName, classLoader);
+                for (Class<?> eagerType : EAGER_TYPES) {
+                    if (eagerType.isAssignableFrom(type)) {
+                        return true;
+                    }
+                }
+                return false;
+            } catch (ClassNotFoundException | LinkageError e) {
+                return true;
+            }
+        }
+    }
+
+    @Data
+    public static class LazyInitSetting {
+        private boolean enabled = false;
+        /**
+         * 不延迟创建的bean，按bean名称或类名匹配，支持*通配符
+         */
+        private List<String> excludes = new ArrayList<>();
+    }
+}
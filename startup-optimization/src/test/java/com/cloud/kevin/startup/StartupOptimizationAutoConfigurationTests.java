@@ -0,0 +1,88 @@
+package com.cloud.kevin.startup;
+
+import com.cloud.kevin.startup.StartupOptimizationAutoConfiguration.LazyInitBeanFactoryPostProcessor;
+import com.cloud.kevin.startup.StartupOptimizationAutoConfiguration.LazyInitSetting;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 按需创建bean时容器启动回调仍然执行
+ */
+public class StartupOptimizationAutoConfigurationTests {
+
+	private static final AtomicInteger CREATED = new AtomicInteger();
+
+	private static final AtomicInteger CALLBACKS = new AtomicInteger();
+
+	private AnnotationConfigApplicationContext context;
+
+	@Before
+	public void setUp() {
+		CREATED.set(0);
+		CALLBACKS.set(0);
+		context = new AnnotationConfigApplicationContext(Beans.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.close();
+	}
+
+	@Test
+	public void smartInitializingSingletonStaysEager() {
+		assertEquals(1, CALLBACKS.get());
+		assertTrue(context.getBeanFactory().containsSingleton("initializing"));
+	}
+
+	@Test
+	public void plainBeanIsCreatedOnFirstUse() {
+		assertFalse(context.getBeanFactory().containsSingleton("plain"));
+		assertTrue(context.getBeanFactory().containsSingleton("excluded"));
+		assertEquals(1, CREATED.get());
+
+		context.getBean("plain");
+		assertTrue(context.getBeanFactory().containsSingleton("plain"));
+		assertEquals(2, CREATED.get());
+	}
+
+	@Configuration
+	static class Beans {
+
+		@Bean
+		public static LazyInitBeanFactoryPostProcessor lazyInitBeanFactoryPostProcessor() {
+			LazyInitSetting setting = new LazyInitSetting();
+			setting.setEnabled(true);
+			setting.setExcludes(Collections.singletonList("excluded"));
+			return new LazyInitBeanFactoryPostProcessor(setting);
+		}
+
+		@Bean
+		public Object plain() {
+			CREATED.incrementAndGet();
+			return new Object();
+		}
+
+		@Bean
+		public Object excluded() {
+			CREATED.incrementAndGet();
+			return new Object();
+		}
+
+		@Bean
+		public SmartInitializingSingleton initializing() {
+			return CALLBACKS::incrementAndGet;
+		}
+	}
+}